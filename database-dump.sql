@@ -190,6 +190,96 @@ LOCK TABLES `Temperature` WRITE;
 INSERT INTO `Temperature` VALUES (1756,'2024-03-19 15:02:16',25.2),(1757,'2024-03-19 15:02:24',25.4),(1758,'2024-03-19 15:02:32',25.2),(1759,'2024-03-19 15:02:41',25.4),(1760,'2024-03-19 15:02:49',25.6),(1761,'2024-03-19 15:02:57',25.8),(1762,'2024-03-19 15:03:05',25.8),(1763,'2024-03-19 15:03:13',26),(1764,'2024-03-19 15:03:21',26.2),(1765,'2024-03-19 15:03:29',25.8),(1766,'2024-03-19 15:03:37',25.4),(1767,'2024-03-19 15:03:45',25.4),(1768,'2024-03-19 15:03:53',25.2),(1769,'2024-03-19 15:04:01',25.2),(1770,'2024-03-19 15:04:09',25.4),(1771,'2024-03-19 15:04:17',25.4),(1772,'2024-03-19 15:04:25',25.6),(1773,'2024-03-19 15:04:33',25.6),(1774,'2024-03-19 15:04:41',25.4),(1775,'2024-03-19 15:04:49',25.4),(1776,'2024-03-19 15:04:57',25.6),(1777,'2024-03-19 15:05:05',25.8),(1778,'2024-03-19 15:05:13',26),(1779,'2024-03-19 15:05:21',26),(1780,'2024-03-19 15:05:29',25.8),(1781,'2024-03-19 15:05:37',26),(1782,'2024-03-19 15:05:45',25.8),(1783,'2024-03-19 15:05:53',25.8),(1784,'2024-03-19 15:06:01',25.8),(1785,'2024-03-19 15:06:09',25.8),(1786,'2024-03-19 15:06:17',25.8),(1787,'2024-03-19 15:06:25',25.6),(1788,'2024-03-19 15:06:33',25.6),(1789,'2024-03-19 15:06:41',25.8),(1790,'2024-03-19 15:06:49',25.8),(1791,'2024-03-19 15:06:57',25.6),(1792,'2024-03-19 15:07:05',25.6),(1793,'2024-03-19 15:07:13',25.6),(1794,'2024-03-19 15:07:21',25.4),(1795,'2024-03-19 15:07:29',25.4),(1796,'2024-03-19 15:07:37',25.2),(1797,'2024-03-19 15:07:45',25),(1798,'2024-03-19 15:07:53',25.2),(1799,'2024-03-19 15:08:01',25),(1800,'2024-03-19 15:08:09',25),(1801,'2024-03-19 15:08:17',25.2),(1802,'2024-03-19 15:08:25',25.4),(1803,'2024-03-19 15:08:33',25.6),(1804,'2024-03-19 15:08:41',25.8),(1805,'2024-03-19 15:08:49',25.6),(1806,'2024-03-19 15:08:57',25.6),(1807,'2024-03-19 15:09:05',25.6),(1808,'2024-03-19 15:09:13',25.4),(1809,'2024-03-19 15:09:21',25.6),(1810,'2024-03-19 15:09:29',25.6),(1811,'2024-03-19 15:09:37',25.4),(1812,'2024-03-19 15:09:45',25.2),(1813,'2024-03-19 15:09:53',25),(1814,'2024-03-19 15:10:01',25.2),(1815,'2024-03-19 15:10:09',25.2),(1816,'2024-03-19 15:10:17',25.2),(1817,'2024-03-19 15:10:25',25),(1818,'2024-03-19 15:10:33',25.2),(1819,'2024-03-19 15:10:41',25.4),(1820,'2024-03-19 15:10:49',25.6),(1821,'2024-03-19 15:10:57',25.6),(1822,'2024-03-19 15:11:05',25.4),(1823,'2024-03-19 15:11:13',25.2),(1824,'2024-03-19 15:11:21',25.2),(1825,'2024-03-19 15:11:29',25),(1826,'2024-03-19 15:11:37',25.2),(1827,'2024-03-19 15:11:45',25),(1828,'2024-03-19 15:11:53',24.8),(1829,'2024-03-19 15:12:01',25),(1830,'2024-03-19 15:12:09',25.2),(1831,'2024-03-19 15:12:17',25.4),(1832,'2024-03-19 15:12:25',25.2),(1833,'2024-03-19 15:12:33',25.2),(1834,'2024-03-19 15:12:41',25),(1835,'2024-03-19 15:12:49',24.8),(1836,'2024-03-19 15:12:57',24.6),(1837,'2024-03-19 15:13:05',24.4),(1838,'2024-03-19 15:13:13',24.6),(1839,'2024-03-19 15:13:21',24.8),(1840,'2024-03-19 15:13:29',24.8),(1841,'2024-03-19 15:13:37',24.8),(1842,'2024-03-19 15:13:45',24.6),(1843,'2024-03-19 15:13:53',24.4),(1844,'2024-03-19 15:14:02',24.6),(1845,'2024-03-19 15:14:09',24.6),(1846,'2024-03-19 15:14:17',24.4),(1847,'2024-03-19 15:14:25',24.6),(1848,'2024-03-19 15:14:33',24.6),(1849,'2024-03-19 15:14:41',24.8),(1850,'2024-03-19 15:14:49',24.6),(1851,'2024-03-19 15:14:57',24.6),(1852,'2024-03-19 15:15:05',24.8),(1853,'2024-03-19 15:15:13',24.8),(1854,'2024-03-19 15:15:21',24.6),(1855,'2024-03-19 15:15:29',24.4),(1856,'2024-03-19 15:15:37',24.4),(1857,'2024-03-19 15:15:46',24.6),(1858,'2024-03-19 15:15:54',24.8),(1859,'2024-03-19 15:16:02',24.6),(1860,'2024-03-19 15:16:09',24.4),(1861,'2024-03-19 15:16:17',24.6),(1862,'2024-03-19 15:16:26',24.8),(1863,'2024-03-19 15:16:34',25),(1864,'2024-03-19 15:16:41',25.2),(1865,'2024-03-19 15:16:49',25.4),(1866,'2024-03-19 15:16:58',25.6),(1867,'2024-03-19 15:17:06',25.4),(1868,'2024-03-19 15:17:14',25.6),(1869,'2024-03-19 15:17:21',25.8),(1870,'2024-03-19 15:17:30',25.6),(1871,'2024-03-19 15:17:38',25.4),(1872,'2024-03-19 15:17:46',25.2),(1873,'2024-03-19 15:17:54',25.2),(1874,'2024-03-19 15:18:02',25),(1875,'2024-03-19 15:18:10',25.2),(1876,'2024-03-19 15:18:18',25),(1877,'2024-03-19 15:18:26',25.2),(1878,'2024-03-19 15:18:34',25.2),(1879,'2024-03-19 15:18:42',25),(1880,'2024-03-19 15:18:50',24.8),(1881,'2024-03-19 15:18:58',24.6),(1882,'2024-03-19 15:19:06',24.8),(1883,'2024-03-19 15:19:14',24.6),(1884,'2024-03-19 15:19:22',24.6),(1885,'2024-03-19 15:19:30',24.8),(1886,'2024-03-19 15:19:38',24.6),(1887,'2024-03-19 15:19:46',24.6),(1888,'2024-03-19 15:19:54',24.6),(1889,'2024-03-19 15:20:02',24.6),(1890,'2024-03-19 15:20:10',24.6),(1891,'2024-03-19 15:20:18',24.8),(1892,'2024-03-19 15:20:26',24.8),(1893,'2024-03-19 15:20:34',24.6),(1894,'2024-03-19 15:20:42',24.4),(1895,'2024-03-19 15:20:50',24.6),(1896,'2024-03-19 15:20:58',24.4),(1897,'2024-03-19 15:21:06',24.4),(1898,'2024-03-19 15:21:14',24.4),(1899,'2024-03-19 15:21:22',24.2),(1900,'2024-03-19 15:21:30',24),(1901,'2024-03-19 15:21:38',24),(1902,'2024-03-19 15:21:46',24.2),(1903,'2024-03-19 15:21:54',24.2),(1904,'2024-03-19 15:22:02',24.4),(1905,'2024-03-19 15:22:10',24.2),(1906,'2024-03-19 15:22:18',24),(1907,'2024-03-19 15:22:26',24.2),(1908,'2024-03-19 15:22:34',24.4),(1909,'2024-03-19 15:22:42',24.2),(1910,'2024-03-19 15:22:50',24.4),(1911,'2024-03-19 15:22:58',24.6),(1912,'2024-03-19 15:23:06',24.8),(1913,'2024-03-19 15:23:14',24.6),(1914,'2024-03-19 15:23:22',24.8),(1915,'2024-03-19 15:23:30',24.8),(1916,'2024-03-19 15:23:38',25),(1917,'2024-03-19 15:23:46',24.8),(1918,'2024-03-19 15:23:54',24.6),(1919,'2024-03-19 15:24:02',24.6),(1920,'2024-03-19 15:24:10',24.4),(1921,'2024-03-19 15:24:18',24.4),(1922,'2024-03-19 15:24:26',24.2),(1923,'2024-03-19 15:24:34',24),(1924,'2024-03-19 15:24:42',23.8),(1925,'2024-03-19 15:24:50',24.2),(1926,'2024-03-19 15:24:58',24.6),(1927,'2024-03-19 15:25:06',24.4),(1928,'2024-03-19 15:25:14',24.6),(1929,'2024-03-19 15:25:22',24.4),(1930,'2024-03-19 15:25:30',24.4),(1931,'2024-03-19 15:25:38',24.2),(1932,'2024-03-19 15:25:46',24.2),(1933,'2024-03-19 15:25:54',24),(1934,'2024-03-19 15:26:02',23.8),(1935,'2024-03-19 15:26:10',24.2),(1936,'2024-03-19 15:26:18',24.6),(1937,'2024-03-19 15:26:26',24.6),(1938,'2024-03-19 15:26:34',24.4),(1939,'2024-03-19 15:26:42',24.4),(1940,'2024-03-19 15:26:50',24.6),(1941,'2024-03-19 15:26:58',24.6),(1942,'2024-03-19 15:27:06',24.6),(1943,'2024-03-19 15:27:14',24.4),(1944,'2024-03-19 15:27:22',24.2),(1945,'2024-03-19 15:27:30',24.4),(1946,'2024-03-19 15:27:38',24.6),(1947,'2024-03-19 15:27:46',24.4),(1948,'2024-03-19 15:27:54',24.4),(1949,'2024-03-19 15:28:02',24.6),(1950,'2024-03-19 15:28:10',24.8),(1951,'2024-03-19 15:28:18',24.8),(1952,'2024-03-19 15:28:26',25),(1953,'2024-03-19 15:28:34',25.2),(1954,'2024-03-19 15:28:42',25.2),(1955,'2024-03-19 15:28:50',25),(1956,'2024-03-19 15:28:58',25),(1957,'2024-03-19 15:29:06',25.2),(1958,'2024-03-19 15:29:14',25.2),(1959,'2024-03-19 15:29:22',25.2),(1960,'2024-03-19 15:29:30',25),(1961,'2024-03-19 15:29:38',25.2),(1962,'2024-03-19 15:29:46',25),(1963,'2024-03-19 15:29:54',24.8),(1964,'2024-03-19 15:30:02',24.8),(1965,'2024-03-19 15:30:10',24.8),(1966,'2024-03-19 15:30:18',24.8),(1967,'2024-03-19 15:30:26',24.6),(1968,'2024-03-19 15:30:34',24.8),(1969,'2024-03-19 15:30:42',24.8),(1970,'2024-03-19 15:30:50',24.6),(1971,'2024-03-19 15:30:58',24.4),(1972,'2024-03-19 15:31:06',24.4),(1973,'2024-03-19 15:31:14',24.6),(1974,'2024-03-19 15:31:22',24.4),(1975,'2024-03-19 15:31:30',24.6),(1976,'2024-03-19 15:31:38',24.6),(1977,'2024-03-19 15:31:46',24.6),(1978,'2024-03-19 15:31:54',24.6),(1979,'2024-03-19 15:32:02',24.8),(1980,'2024-03-19 15:32:10',25),(1981,'2024-03-19 15:32:18',25),(1982,'2024-03-19 15:32:26',25.2),(1983,'2024-03-19 15:32:34',25.2),(1984,'2024-03-19 15:32:42',25.2),(1985,'2024-03-19 15:32:50',25.2),(1986,'2024-03-19 15:32:58',25),(1987,'2024-03-19 15:33:06',24.8),(1988,'2024-03-19 15:33:14',24.8),(1989,'2024-03-19 15:33:22',24.6),(1990,'2024-03-19 15:33:30',24.4),(1991,'2024-03-19 15:33:38',24.2),(1992,'2024-03-19 15:33:46',24.2),(1993,'2024-03-19 15:33:54',24.2),(1994,'2024-03-19 15:34:02',24),(1995,'2024-03-19 15:34:10',24),(1996,'2024-03-19 15:34:18',23.8),(1997,'2024-03-19 15:34:26',24.2),(1998,'2024-03-19 15:34:34',24.6),(1999,'2024-03-19 15:34:42',24.8),(2000,'2024-03-19 15:34:50',24.8),(2001,'2024-03-19 15:34:58',25),(2002,'2024-03-19 15:35:06',24.8),(2003,'2024-03-19 15:35:14',25),(2004,'2024-03-19 15:35:22',25),(2005,'2024-03-19 15:35:30',25.2),(2006,'2024-03-19 15:35:38',25.2),(2007,'2024-03-19 15:35:46',25.2),(2008,'2024-03-19 15:35:54',25),(2009,'2024-03-19 15:36:02',24.8),(2010,'2024-03-19 15:36:10',25),(2011,'2024-03-19 15:36:18',24.8),(2012,'2024-03-19 15:36:26',24.6),(2013,'2024-03-19 15:36:34',24.6),(2014,'2024-03-19 15:36:42',24.8),(2015,'2024-03-19 15:36:50',25),(2016,'2024-03-19 15:36:58',24.8),(2017,'2024-03-19 15:37:06',25),(2018,'2024-03-19 15:37:14',24.8),(2019,'2024-03-19 15:37:22',24.8),(2020,'2024-03-19 15:37:30',25),(2021,'2024-03-19 15:37:38',25),(2022,'2024-03-19 15:37:46',25.2),(2023,'2024-03-19 15:37:54',25.2),(2024,'2024-03-19 15:38:02',25.4),(2025,'2024-03-19 15:38:10',25.6),(2026,'2024-03-19 15:38:18',25.8),(2027,'2024-03-19 15:38:27',25.8),(2028,'2024-03-19 15:38:34',25.8),(2029,'2024-03-19 15:38:43',25.8),(2030,'2024-03-19 15:38:50',25.6),(2031,'2024-03-19 15:38:59',25.4),(2032,'2024-03-19 15:39:06',25.6),(2033,'2024-03-19 15:39:15',25.6),(2034,'2024-03-19 15:39:23',25.4),(2035,'2024-03-19 15:39:31',25.6),(2036,'2024-03-19 15:39:39',25.6),(2037,'2024-03-19 15:39:47',25.4),(2038,'2024-03-19 15:39:55',25.6),(2039,'2024-03-19 15:40:03',25.4),(2040,'2024-03-19 15:40:11',25.2),(2041,'2024-03-19 15:40:19',25.4),(2042,'2024-03-19 15:40:27',25.6),(2043,'2024-03-19 15:40:35',25.4),(2044,'2024-03-19 15:40:43',25.6),(2045,'2024-03-19 15:40:51',25.6),(2046,'2024-03-19 15:40:59',25.8),(2047,'2024-03-19 15:41:07',26),(2048,'2024-03-19 15:41:15',26),(2049,'2024-03-19 15:41:23',26),(2050,'2024-03-19 15:41:31',26.2),(2051,'2024-03-19 15:41:39',25.8),(2052,'2024-03-19 15:41:47',25.4),(2053,'2024-03-19 15:41:55',25.2),(2054,'2024-03-19 15:42:03',25.2),(2055,'2024-03-19 15:42:11',25),(2056,'2024-03-19 15:42:19',24.8),(2057,'2024-03-19 15:42:27',25),(2058,'2024-03-19 15:42:35',25),(2059,'2024-03-19 15:42:43',24.8),(2060,'2024-03-19 15:42:51',24.6),(2061,'2024-03-19 15:42:59',24.6),(2062,'2024-03-19 15:43:07',24.4),(2063,'2024-03-19 15:43:15',24.6),(2064,'2024-03-19 15:43:23',24.4),(2065,'2024-03-19 15:43:31',24.4),(2066,'2024-03-19 15:43:39',24.2),(2067,'2024-03-19 15:43:47',24.4),(2068,'2024-03-19 15:43:55',24.2),(2069,'2024-03-19 15:44:03',24),(2070,'2024-03-19 15:44:11',23.8),(2071,'2024-03-19 15:44:19',24.2),(2072,'2024-03-19 15:44:27',24.6),(2073,'2024-03-19 15:44:35',24.4),(2074,'2024-03-19 15:44:43',24.6),(2075,'2024-03-19 15:44:51',24.4),(2076,'2024-03-19 15:44:59',24.2),(2077,'2024-03-19 15:45:07',24),(2078,'2024-03-19 15:45:15',24),(2079,'2024-03-19 15:45:23',24),(2080,'2024-03-19 15:45:31',24.2),(2081,'2024-03-19 15:45:39',24.2),(2082,'2024-03-19 15:45:47',24.2),(2083,'2024-03-19 15:45:55',24.4),(2084,'2024-03-19 15:46:03',24.2),(2085,'2024-03-19 15:46:11',24),(2086,'2024-03-19 15:46:19',24.2),(2087,'2024-03-19 15:46:27',24.4),(2088,'2024-03-19 15:46:35',24.6),(2089,'2024-03-19 15:46:43',24.8),(2090,'2024-03-19 15:46:51',24.6),(2091,'2024-03-19 15:46:59',24.4),(2092,'2024-03-19 15:47:07',24.6),(2093,'2024-03-19 15:47:15',24.6),(2094,'2024-03-19 15:47:23',24.4),(2095,'2024-03-19 15:47:31',24.2),(2096,'2024-03-19 15:47:39',24.2),(2097,'2024-03-19 15:47:47',24.2),(2098,'2024-03-19 15:47:55',24),(2099,'2024-03-19 15:48:03',23.8),(2100,'2024-03-19 15:48:11',24.2),(2101,'2024-03-19 15:48:19',24.6),(2102,'2024-03-19 15:48:27',24.6),(2103,'2024-03-19 15:48:35',24.4),(2104,'2024-03-19 15:48:43',24.2),(2105,'2024-03-19 15:48:51',24.2),(2106,'2024-03-19 15:48:59',24.4),(2107,'2024-03-19 15:49:07',24.6),(2108,'2024-03-19 15:49:15',24.4),(2109,'2024-03-19 15:49:23',24.4),(2110,'2024-03-19 15:49:31',24.6),(2111,'2024-03-19 15:49:39',24.6),(2112,'2024-03-19 15:49:47',24.6),(2113,'2024-03-19 15:49:55',24.6),(2114,'2024-03-19 15:50:03',24.8),(2115,'2024-03-19 15:50:11',24.8),(2116,'2024-03-19 15:50:19',25),(2117,'2024-03-19 15:50:27',25),(2118,'2024-03-19 15:50:35',25.2),(2119,'2024-03-19 15:50:43',25.4),(2120,'2024-03-19 15:50:51',25.4),(2121,'2024-03-19 15:50:59',25.2),(2122,'2024-03-19 15:51:07',25),(2123,'2024-03-19 15:51:15',25.2),(2124,'2024-03-19 15:51:23',25.2),(2125,'2024-03-19 15:51:31',25.2),(2126,'2024-03-19 15:51:39',25.4),(2127,'2024-03-19 15:51:47',25.6),(2128,'2024-03-19 15:51:55',25.4),(2129,'2024-03-19 15:52:03',25.4),(2130,'2024-03-19 15:52:11',25.2),(2131,'2024-03-19 15:52:19',25),(2132,'2024-03-19 15:52:27',24.8),(2133,'2024-03-19 15:52:35',24.8),(2134,'2024-03-19 15:52:43',24.8),(2135,'2024-03-19 15:52:51',24.8),(2136,'2024-03-19 15:52:59',25),(2137,'2024-03-19 15:53:07',25.2),(2138,'2024-03-19 15:53:15',25.4),(2139,'2024-03-19 15:53:23',25.2),(2140,'2024-03-19 15:53:31',25.2),(2141,'2024-03-19 15:53:39',25.2),(2142,'2024-03-19 15:53:47',25.2),(2143,'2024-03-19 15:53:55',25.2),(2144,'2024-03-19 15:54:03',25.4),(2145,'2024-03-19 15:54:11',25.4),(2146,'2024-03-19 15:54:19',25.6),(2147,'2024-03-19 15:54:27',25.8),(2148,'2024-03-19 15:54:35',25.6),(2149,'2024-03-19 15:54:43',25.4),(2150,'2024-03-19 15:54:51',25.4),(2151,'2024-03-19 15:54:59',25.2),(2152,'2024-03-19 15:55:07',25.4),(2153,'2024-03-19 15:55:15',25.6),(2154,'2024-03-19 15:55:23',25.8),(2155,'2024-03-19 15:55:31',25.8),(2156,'2024-03-19 15:55:39',26),(2157,'2024-03-19 15:55:47',26.2),(2158,'2024-03-19 15:55:55',25.8),(2159,'2024-03-19 15:56:03',25.4),(2160,'2024-03-19 15:56:11',25.4),(2161,'2024-03-19 15:56:19',25.6),(2162,'2024-03-19 15:56:27',25.6),(2163,'2024-03-19 15:56:35',25.6),(2164,'2024-03-19 15:56:43',25.8),(2165,'2024-03-19 15:56:51',25.6),(2166,'2024-03-19 15:56:59',25.6);
 /*!40000 ALTER TABLE `Temperature` ENABLE KEYS */;
 UNLOCK TABLES;
+--
+-- Aquarium that produced each row (multi-aquarium support), the rows already present belong to the default aquarium
+--
+
+ALTER TABLE `CO2Dispenser` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `Fan` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `Heater` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `KH` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `OsmoticWaterTank` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `PH` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+ALTER TABLE `Temperature` ADD COLUMN `aquarium` varchar(64) NOT NULL DEFAULT 'default' AFTER `id`, ADD KEY `aquarium_timestamp` (`aquarium`,`timestamp`);
+
+--
+-- Table structure for table `SpoolCheckpoint`
+-- Position of the local spool up to which the rows have been replayed in the database
+--
+
+DROP TABLE IF EXISTS `SpoolCheckpoint`;
+CREATE TABLE `SpoolCheckpoint` (
+  `id` tinyint(4) NOT NULL,
+  `generation` bigint(20) NOT NULL,
+  `position` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+--
+-- Table structure for tables `RollupMinute` and `RollupHour`
+-- Aggregates of the sensor tables per aquarium, maintained by the application at 1-minute and 1-hour granularity
+--
+
+DROP TABLE IF EXISTS `RollupMinute`;
+CREATE TABLE `RollupMinute` (
+  `aquarium` varchar(64) NOT NULL,
+  `sensor` varchar(64) NOT NULL,
+  `timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `min` float NOT NULL,
+  `max` float NOT NULL,
+  `avg` float NOT NULL,
+  `count` int(11) NOT NULL,
+  PRIMARY KEY (`aquarium`,`sensor`,`timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+DROP TABLE IF EXISTS `RollupHour`;
+CREATE TABLE `RollupHour` (
+  `aquarium` varchar(64) NOT NULL,
+  `sensor` varchar(64) NOT NULL,
+  `timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `min` float NOT NULL,
+  `max` float NOT NULL,
+  `avg` float NOT NULL,
+  `count` int(11) NOT NULL,
+  PRIMARY KEY (`aquarium`,`sensor`,`timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+--
+-- Partitioning of the tables of the samples
+-- The tables are partitioned by day (UTC) on the timestamp, the daily partitions are created ahead by the application and
+-- dropped when older than the retention of the table; pmax receives the rows beyond the last daily partition
+--
+
+ALTER TABLE `CO2Dispenser` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `Fan` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `Heater` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `KH` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `OsmoticWaterTank` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `PH` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `Temperature` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`,`timestamp`);
+ALTER TABLE `CO2Dispenser` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `Fan` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `Heater` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `KH` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `OsmoticWaterTank` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `PH` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+ALTER TABLE `Temperature` PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
+
+--
+-- Table structure for table `Nitrate`
+-- Additional sensor of the configuration file, each additional sensor needs a table with these columns
+--
+
+DROP TABLE IF EXISTS `Nitrate`;
+CREATE TABLE `Nitrate` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `aquarium` varchar(64) NOT NULL DEFAULT 'default',
+  `timestamp` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `value` float NOT NULL,
+  PRIMARY KEY (`id`,`timestamp`),
+  KEY `aquarium_timestamp` (`aquarium`,`timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1
+PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (PARTITION pmax VALUES LESS THAN MAXVALUE);
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
@@ -0,0 +1,73 @@
+package it.unipi.iot.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Properties;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import it.unipi.iot.configuration.ConfigurationXML;
+import it.unipi.iot.log.Log;
+import it.unipi.iot.log.LogLevel;
+
+/**
+ * Environment shared by the benchmarks: the configuration of the application and the embedded MQTT broker. <br>
+ * The configuration is read from ./config.xml, so the benchmarks must be started from the smart-aquarium-java-app folder.
+ *
+ * @author Fabi8997
+ */
+public class BenchmarkConfiguration {
+	
+	private BenchmarkConfiguration() {
+	}
+	
+	/**
+	 * Reads the configuration of the application; only the warnings are logged, so that the console is not measured.
+	 * @return the configuration file, its parameters can be changed before creating the components.
+	 * @throws IllegalStateException if the configuration file is not valid or not found.
+	 */
+	public static ConfigurationXML load() {
+		
+		ConfigurationXML configurationXML = new ConfigurationXML();
+		if(!configurationXML.isValid()) {
+			throw new IllegalStateException("Invalid or missing " + configurationXML.getPathXML() + ", run the benchmarks from the smart-aquarium-java-app folder.");
+		}
+		
+		Log.configure(configurationXML.configurationParameters);
+		Log.setLevel(LogLevel.WARN);
+		return configurationXML;
+	}
+	
+	/**
+	 * @return a TCP port not used at the moment of the call.
+	 */
+	public static int freePort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Starts an MQTT broker on the loopback interface, without persistence, authentication and telemetry.
+	 * @param port TCP port of the broker
+	 * @return the started broker, to be stopped with stopServer().
+	 */
+	public static Server startBroker(int port) throws IOException {
+		
+		Properties properties = new Properties();
+		properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, "127.0.0.1");
+		properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, Integer.toString(port));
+		properties.setProperty(BrokerConstants.WEB_SOCKET_PORT_PROPERTY_NAME, BrokerConstants.DISABLED_PORT_BIND);
+		properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+		properties.setProperty(BrokerConstants.PERSISTENCE_ENABLED_PROPERTY_NAME, "false");
+		properties.setProperty(BrokerConstants.ENABLE_TELEMETRY_NAME, "false");
+		
+		Server broker = new Server();
+		broker.startServer(new MemoryConfig(properties));
+		return broker;
+	}
+}
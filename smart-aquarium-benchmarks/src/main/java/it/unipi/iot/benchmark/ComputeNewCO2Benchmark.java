@@ -0,0 +1,56 @@
+package it.unipi.iot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unipi.iot.coap.CO2.CO2Dispenser;
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * Computation of the CO2 to be dispensed from the optimal values of the configuration. The variation stays under the
+ * threshold, so no request is sent to the dispenser and only the formula is measured.
+ *
+ * @author Fabi8997
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ComputeNewCO2Benchmark {
+	
+	private CO2Dispenser co2Dispenser;
+	private float pH;
+	private float kH;
+	private float temperature;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		
+		ConfigurationParameters configurationParameters = BenchmarkConfiguration.load().configurationParameters;
+		pH = configurationParameters.pHOptimalValue;
+		kH = configurationParameters.kHOptimalValue;
+		temperature = configurationParameters.temperatureOptimalValue;
+		
+		//The initial CO2 is computed from the same values, the only request is sent here to the loopback address
+		co2Dispenser = new CO2Dispenser("[::1]", configurationParameters);
+	}
+	
+	@Benchmark
+	public float computeNewCO2() {
+		co2Dispenser.computeNewCO2(pH, kH, temperature);
+		return co2Dispenser.getCurrentCO2();
+	}
+}
@@ -0,0 +1,107 @@
+package it.unipi.iot.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.database.DatabaseManager;
+import it.unipi.iot.storage.SampleKind;
+
+/**
+ * In-memory H2 database in MYSQL mode used in place of the MYSQL server, with the tables of the dump. <br>
+ * The rollups and the partitions are disabled, since they rely on statements specific to MYSQL.
+ *
+ * @author Fabi8997
+ */
+public class EmbeddedDatabase {
+	
+	private static final String URL = "jdbc:h2:mem:smart_aquarium;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final String USERNAME = "sa";
+	private static final String PASSWORD = "";
+	
+	private final DatabaseManager databaseManager;
+	private final File spoolFile;
+	
+	/**
+	 * Creates the tables of the kinds of samples registered so far and connects the database manager.
+	 * @param configurationParameters configuration of the database manager, changed to use the embedded database
+	 * @throws IllegalStateException if the database manager cannot connect.
+	 */
+	public EmbeddedDatabase(ConfigurationParameters configurationParameters) throws IOException, SQLException {
+		
+		spoolFile = File.createTempFile("smart-aquarium", ".spool");
+		spoolFile.delete();
+		
+		configurationParameters.databaseUsername = USERNAME;
+		configurationParameters.databasePassword = PASSWORD;
+		configurationParameters.rollupSweepInterval = 0;
+		configurationParameters.partitionMaintenanceInterval = 0;
+		configurationParameters.spoolFile = spoolFile.getPath();
+		
+		createTables(configurationParameters);
+		databaseManager = new DatabaseManager(configurationParameters, URL);
+		if(!databaseManager.isOnline()) {
+			throw new IllegalStateException("Cannot connect to " + URL);
+		}
+	}
+	
+	/**
+	 * Creates a table for each kind of sample, with the columns of the dump, and the table of the checkpoint of the spool.
+	 */
+	private static void createTables(ConfigurationParameters configurationParameters) throws SQLException {
+		
+		Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+		try {
+			Statement statement = connection.createStatement();
+			for(SampleKind kind : SampleKind.values()) {
+				
+				String columns;
+				switch(kind.getLayout()) {
+				case LEVEL_VALUE:
+					columns = "level float NOT NULL, value float NOT NULL";
+					break;
+				case ACTIVE:
+					columns = "active tinyint(1) NOT NULL";
+					break;
+				default:
+					columns = "value float NOT NULL";
+				}
+				
+				statement.execute("CREATE TABLE IF NOT EXISTS " + kind.getTable(configurationParameters) + " ("
+						+ "id int NOT NULL AUTO_INCREMENT, aquarium varchar(64) NOT NULL DEFAULT 'default', "
+						+ "timestamp timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, " + columns + ", PRIMARY KEY (id))");
+			}
+			statement.execute("CREATE TABLE IF NOT EXISTS SpoolCheckpoint (id tinyint NOT NULL, generation bigint NOT NULL, "
+					+ "position bigint NOT NULL, PRIMARY KEY (id))");
+			statement.close();
+		} finally {
+			connection.close();
+		}
+	}
+	
+	public DatabaseManager getDatabaseManager() {
+		return databaseManager;
+	}
+	
+	/**
+	 * Closes the database manager and drops the tables and their rows.
+	 */
+	public void close() throws SQLException {
+		
+		databaseManager.close();
+		spoolFile.delete();
+		
+		Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("DROP ALL OBJECTS");
+			statement.close();
+		} finally {
+			connection.close();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package it.unipi.iot.benchmark;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.database.DatabaseManager;
+import it.unipi.iot.storage.SampleKind;
+
+/**
+ * Insertion of a pH sample with the database manager, connected to the {@link EmbeddedDatabase} in place of the MYSQL
+ * server. With batchSize greater than 1 the rows are written in batches.
+ *
+ * @author Fabi8997
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class InsertSampleBenchmark {
+	
+	@Param({"1", "100"})
+	public int batchSize;
+	
+	private EmbeddedDatabase database;
+	private DatabaseManager databaseManager;
+	private String aquariumId;
+	private long timestamp;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		
+		ConfigurationParameters configurationParameters = BenchmarkConfiguration.load().configurationParameters;
+		configurationParameters.databaseBatchSize = batchSize;
+		
+		database = new EmbeddedDatabase(configurationParameters);
+		databaseManager = database.getDatabaseManager();
+		aquariumId = configurationParameters.defaultAquariumId;
+		timestamp = System.currentTimeMillis();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		database.close();
+	}
+	
+	@Benchmark
+	public boolean insertSample() {
+		return databaseManager.insertSample(aquariumId, SampleKind.PH, 7.25f, timestamp++);
+	}
+}
@@ -0,0 +1,88 @@
+package it.unipi.iot.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.moquette.broker.Server;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.mqtt.MQTTCollector;
+
+/**
+ * Dispatch of a message received by the MQTT collector: decoding, update of the current value of the aquarium and
+ * submission to the ingestion pipeline, whose storage discards the samples. <br>
+ * With callbackThreads greater than 0 only the hand-off to the callback threads is measured on the calling thread.
+ *
+ * @author Fabi8997
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MessageArrivedBenchmark {
+
+	@Param({"0", "4"})
+	public int callbackThreads;
+
+	@Param({"pH", "kH", "temperature"})
+	public String sensor;
+
+	private Server broker;
+	private MQTTCollector mqttCollector;
+	private String topic;
+	private MqttMessage message;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+
+		ConfigurationParameters configurationParameters = BenchmarkConfiguration.load().configurationParameters;
+		int port = BenchmarkConfiguration.freePort();
+		broker = BenchmarkConfiguration.startBroker(port);
+
+		configurationParameters.MQTTBroker = "tcp://127.0.0.1:" + port;
+		configurationParameters.MQTTClientId = "benchmark-" + port;
+		configurationParameters.MQTTPersistentSession = false;
+		configurationParameters.MQTTCallbackThreads = callbackThreads;
+
+		AquariumRegistry aquariumRegistry = new AquariumRegistry(configurationParameters.defaultAquariumId, configurationParameters.aquariumRegistryShards,
+				configurationParameters.historyCapacity, configurationParameters.historyHours * 60 * 60 * 1000L);
+		mqttCollector = new MQTTCollector(configurationParameters, new NullSampleStore(), aquariumRegistry);
+
+		if(sensor.equals("pH")) {
+			topic = configurationParameters.pHTopic;
+		} else if(sensor.equals("kH")) {
+			topic = configurationParameters.kHTopic;
+		} else {
+			topic = configurationParameters.temperatureTopic;
+		}
+		message = new MqttMessage(("{\"" + sensor + "\": 7.25}").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mqttCollector.close();
+		broker.stopServer();
+	}
+
+	@Benchmark
+	public void messageArrived() throws Exception {
+		mqttCollector.messageArrived(topic, message);
+	}
+}
@@ -0,0 +1,45 @@
+package it.unipi.iot.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleStore;
+import it.unipi.iot.storage.SampleVisitor;
+
+/**
+ * Storage that accepts and discards every sample, so that the benchmarks of the reception do not measure the database.
+ *
+ * @author Fabi8997
+ */
+public class NullSampleStore implements SampleStore {
+
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp) {
+		return true;
+	}
+
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp) {
+		return true;
+	}
+
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp) {
+		return true;
+	}
+
+	@Override
+	public List<String> aquariums(SampleKind kind) {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor) {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+}
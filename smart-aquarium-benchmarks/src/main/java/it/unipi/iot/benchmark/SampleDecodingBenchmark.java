@@ -0,0 +1,52 @@
+package it.unipi.iot.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.unipi.iot.kh.KHSample;
+import it.unipi.iot.ph.PHSample;
+import it.unipi.iot.temperature.TemperatureSample;
+
+/**
+ * Construction of the samples from the bytes of the MQTT payloads published by the sensors.
+ *
+ * @author Fabi8997
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SampleDecodingBenchmark {
+
+	private final byte[] pHPayload = "{\"pH\": 7.12}".getBytes(StandardCharsets.US_ASCII);
+	private final byte[] kHPayload = "{\"kH\": 4.87}".getBytes(StandardCharsets.US_ASCII);
+	private final byte[] temperaturePayload = "{\"temperature\": 25.43}".getBytes(StandardCharsets.US_ASCII);
+
+	@Benchmark
+	public PHSample pHSample() throws ParseException {
+		return new PHSample(pHPayload);
+	}
+
+	@Benchmark
+	public KHSample kHSample() throws ParseException {
+		return new KHSample(kHPayload);
+	}
+
+	@Benchmark
+	public TemperatureSample temperatureSample() throws ParseException {
+		return new TemperatureSample(temperaturePayload);
+	}
+}
@@ -0,0 +1,116 @@
+package it.unipi.iot.control;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.moquette.broker.Server;
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.aquarium.Metric;
+import it.unipi.iot.benchmark.BenchmarkConfiguration;
+import it.unipi.iot.benchmark.NullSampleStore;
+import it.unipi.iot.coap.CO2.CO2Dispenser;
+import it.unipi.iot.coap.osmoticwater.OsmoticWaterTank;
+import it.unipi.iot.coap.temperature.TemperatureController;
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.configuration.ConfigurationService;
+import it.unipi.iot.configuration.ConfigurationXML;
+import it.unipi.iot.mqtt.MQTTCollector;
+import it.unipi.iot.storage.SampleStore;
+
+/**
+ * One evaluation step of the control logic: a new value of the metric is stored in the aquarium and its evaluation is
+ * executed as done by the threads of the control loop. <br>
+ * The values are kept at the optimal ones, so the step runs all the checks without changing the state of the actuators,
+ * which are registered with the loopback address.
+ *
+ * @author Fabi8997
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ControlEvaluationBenchmark {
+	
+	@Param({"PH", "KH", "TEMPERATURE"})
+	public String metricName;
+	
+	private Server broker;
+	private MQTTCollector mqttCollector;
+	private ControlLogicThread controlLogicThread;
+	private Aquarium aquarium;
+	private Metric metric;
+	private float value;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		
+		ConfigurationXML configurationXML = BenchmarkConfiguration.load();
+		ConfigurationParameters configurationParameters = configurationXML.configurationParameters;
+		int port = BenchmarkConfiguration.freePort();
+		broker = BenchmarkConfiguration.startBroker(port);
+		
+		configurationParameters.MQTTBroker = "tcp://127.0.0.1:" + port;
+		configurationParameters.MQTTClientId = "benchmark-" + port;
+		configurationParameters.MQTTPersistentSession = false;
+		
+		SampleStore store = new NullSampleStore();
+		AquariumRegistry aquariumRegistry = new AquariumRegistry(configurationParameters.defaultAquariumId, configurationParameters.aquariumRegistryShards,
+				configurationParameters.historyCapacity, configurationParameters.historyHours * 60 * 60 * 1000L);
+		mqttCollector = new MQTTCollector(configurationParameters, store, aquariumRegistry);
+		
+		//Every actuator registered, so the evaluation is not skipped
+		aquarium = aquariumRegistry.getDefault();
+		aquarium.setOsmoticWaterTank(new OsmoticWaterTank("[::1]", configurationParameters), null);
+		aquarium.setTemperatureController(new TemperatureController("[::1]", configurationParameters, store, aquarium.getId()));
+		aquarium.setCo2Dispenser(new CO2Dispenser("[::1]", configurationParameters), null);
+		
+		long timestamp = System.currentTimeMillis();
+		aquarium.setCurrentValue(Metric.PH, configurationParameters.pHOptimalValue, timestamp);
+		aquarium.setCurrentValue(Metric.KH, configurationParameters.kHOptimalValue, timestamp);
+		aquarium.setCurrentValue(Metric.TEMPERATURE, configurationParameters.temperatureOptimalValue, timestamp);
+		
+		//The thread is not started, the evaluations are executed by the benchmark thread
+		controlLogicThread = new ControlLogicThread(new ConfigurationService(configurationXML), mqttCollector, null);
+		
+		metric = Metric.valueOf(metricName);
+		switch(metric) {
+		case KH:
+			value = configurationParameters.kHOptimalValue;
+			break;
+		case PH:
+			value = configurationParameters.pHOptimalValue;
+			break;
+		default:
+			value = configurationParameters.temperatureOptimalValue;
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		controlLogicThread.stopControlLogicLoop();
+		mqttCollector.close();
+		broker.stopServer();
+	}
+	
+	@Benchmark
+	public void evaluate() {
+		aquarium.setCurrentValue(metric, value, System.currentTimeMillis());
+		controlLogicThread.evaluate(new EvaluationRequest(aquarium, metric, System.nanoTime()));
+	}
+}
@@ -0,0 +1,134 @@
+package it.unipi.iot.control;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import it.unipi.iot.benchmark.BenchmarkConfiguration;
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.log.Colors;
+
+/**
+ * Offline simulation of the temperature control strategies on the model of the MQTT temperature device
+ * (MQTT-network/temperature/temperature-device.c): at each sample the temperature stays the same, rises or falls by 0.2 C with
+ * the same probability while the fan and the heater are off, otherwise it falls by 0.4 C with the fan on or rises by 0.4 C
+ * with the heater on. The status decided for a sample acts from the next one, as the device receives it after the publication.
+ * <br>
+ * The bounds, the optimal value, the gains, the hysteresis and the dwell time are read from ./config.xml, so the simulation
+ * must be started from the smart-aquarium-java-app folder. Options, passed as name=value: strategies to compare (bangbang,pid),
+ * samples of each run (200000), runs with different seeds (5), sampleInterval in milliseconds (8000, the publish interval of
+ * the device) and temperatureKp, temperatureKi, temperatureKd, temperatureHysteresis and temperatureMinDwellTime to override
+ * the configuration. <br>
+ * For each strategy it reports the mean and the RMS of the error with respect to the optimal value, the time out of the bounds
+ * and the commands sent to the actuators per hour, e.g.
+ * java -cp ../smart-aquarium-benchmarks/target/benchmarks.jar it.unipi.iot.control.TemperatureControlSimulation temperatureKi=0.01
+ *
+ * @author Fabi8997
+ */
+public class TemperatureControlSimulation {
+	
+	private static final String LOG = "[" + Colors.ANSI_CYAN + "Temperature Simulation" + Colors.ANSI_RESET + "]";
+	
+	//Variations of the model of the device, in tenths of degree to avoid the drift of the float sums
+	private static final int RANDOM_VARIATION = 2;
+	private static final int ACTUATOR_VARIATION = 4;
+	
+	private TemperatureControlSimulation() {
+	}
+	
+	/**
+	 * @return the value of the option name=value, or the default value if it is not passed.
+	 */
+	private static String option(String[] args, String name, String defaultValue) {
+		for(String arg : args) {
+			if(arg.startsWith(name + "=")) {
+				return arg.substring(name.length() + 1);
+			}
+		}
+		return defaultValue;
+	}
+	
+	public static void main(String[] args) {
+		
+		ConfigurationParameters configurationParameters = BenchmarkConfiguration.load().configurationParameters;
+		configurationParameters.temperatureKp = Float.parseFloat(option(args, "temperatureKp", String.valueOf(configurationParameters.temperatureKp)));
+		configurationParameters.temperatureKi = Float.parseFloat(option(args, "temperatureKi", String.valueOf(configurationParameters.temperatureKi)));
+		configurationParameters.temperatureKd = Float.parseFloat(option(args, "temperatureKd", String.valueOf(configurationParameters.temperatureKd)));
+		configurationParameters.temperatureHysteresis = Float.parseFloat(option(args, "temperatureHysteresis", String.valueOf(configurationParameters.temperatureHysteresis)));
+		configurationParameters.temperatureMinDwellTime = Integer.parseInt(option(args, "temperatureMinDwellTime", String.valueOf(configurationParameters.temperatureMinDwellTime)));
+		
+		String[] strategies = option(args, "strategies", "bangbang,pid").split(",");
+		long samples = Long.parseLong(option(args, "samples", "200000"));
+		int runs = Integer.parseInt(option(args, "runs", "5"));
+		long sampleInterval = Long.parseLong(option(args, "sampleInterval", "8000"));
+		
+		System.out.println(LOG + " " + runs + " runs of " + samples + " samples every " + sampleInterval + " ms, bounds ["
+				+ configurationParameters.temperatureLowerBound + ", " + configurationParameters.temperatureUpperBound + "], optimal value "
+				+ configurationParameters.temperatureOptimalValue + ".");
+		System.out.println(LOG + " PID: Kp " + configurationParameters.temperatureKp + ", Ki " + configurationParameters.temperatureKi
+				+ ", Kd " + configurationParameters.temperatureKd + ", hysteresis " + configurationParameters.temperatureHysteresis
+				+ ", dwell " + configurationParameters.temperatureMinDwellTime + " ms.");
+		
+		for(String strategy : strategies) {
+			simulate(configurationParameters, TemperatureControlMode.fromString(strategy), samples, runs, sampleInterval);
+		}
+	}
+	
+	/**
+	 * Runs the simulation of a strategy and prints its results. The runs use the seeds from 0 to runs - 1, so every strategy
+	 * sees the same random variations as long as it keeps the actuators off at the same samples.
+	 */
+	private static void simulate(ConfigurationParameters configurationParameters, TemperatureControlMode mode, long samples, int runs, long sampleInterval) {
+		
+		int optimalValue = Math.round(configurationParameters.temperatureOptimalValue * 10);
+		double sumError = 0;
+		double sumSquaredError = 0;
+		long outOfBounds = 0;
+		long commands = 0;
+		
+		for(int seed = 0; seed < runs; seed++) {
+			
+			Random random = new Random(seed);
+			TemperatureControlStrategy strategy = mode.create(TemperatureAction.IDLE);
+			TemperatureAction action = TemperatureAction.IDLE;
+			int temperature = optimalValue;
+			
+			//Timestamps in the same time base of the control loop
+			long timestamp = System.nanoTime();
+			
+			for(long i = 0; i < samples; i++) {
+				
+				timestamp += TimeUnit.MILLISECONDS.toNanos(sampleInterval);
+				switch(action) {
+				case COOL:
+					temperature -= ACTUATOR_VARIATION;
+					break;
+				case HEAT:
+					temperature += ACTUATOR_VARIATION;
+					break;
+				default:
+					temperature += (random.nextInt(3) - 1) * RANDOM_VARIATION;
+				}
+				
+				float value = temperature / 10f;
+				double error = value - configurationParameters.temperatureOptimalValue;
+				sumError += Math.abs(error);
+				sumSquaredError += error * error;
+				if(value < configurationParameters.temperatureLowerBound || value > configurationParameters.temperatureUpperBound) {
+					outOfBounds++;
+				}
+				
+				//A change of status turns off the active actuator, if any, and turns on the new one, if any
+				TemperatureAction next = strategy.decide(configurationParameters, value, timestamp);
+				if(next != action) {
+					commands += (action != TemperatureAction.IDLE ? 1 : 0) + (next != TemperatureAction.IDLE ? 1 : 0);
+					action = next;
+				}
+			}
+		}
+		
+		long total = samples * runs;
+		double hours = total * sampleInterval / 3600000.0;
+		System.out.println(String.format("%s %-8s mean |error| %.3f C, RMS error %.3f C, out of bounds %.2f%%, %.1f commands/hour",
+				LOG, mode.name().toLowerCase(), sumError / total, Math.sqrt(sumSquaredError / total), 100.0 * outOfBounds / total, commands / hours));
+	}
+}
@@ -0,0 +1,316 @@
+package it.unipi.iot.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.core.network.config.NetworkConfig;
+
+import io.moquette.broker.Server;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.benchmark.BenchmarkConfiguration;
+import it.unipi.iot.benchmark.EmbeddedDatabase;
+import it.unipi.iot.coap.CoAPNetworkController;
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.configuration.ConfigurationService;
+import it.unipi.iot.configuration.ConfigurationXML;
+import it.unipi.iot.control.ControlLogicThread;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Log;
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.HistogramSnapshot;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
+import it.unipi.iot.mqtt.MQTTCollector;
+import it.unipi.iot.storage.SampleStore;
+import it.unipi.iot.storage.TimedSampleStore;
+
+/**
+ * Load test of the application without the Contiki devices: an embedded MQTT broker, the embedded database and N simulated
+ * aquariums run in this process together with the MQTT collector, the CoAP network controller and the control logic. <br>
+ * Options, passed as name=value: aquariums (10), rate in samples per second of each sensor (1), warmup and duration in seconds
+ * (10 and 60), excursionEvery in temperature samples (10) and reportInterval in seconds (10). <br>
+ * At the end it reports the sustained rates of publication, reception and storage, the percentiles of the sample-to-actuation
+ * latency, the commands sent to the actuators and the heap usage. It must be started from the smart-aquarium-java-app folder, e.g.
+ * java -cp ../smart-aquarium-benchmarks/target/benchmarks.jar it.unipi.iot.loadtest.LoadTest aquariums=100 rate=2
+ *
+ * @author Fabi8997
+ */
+public class LoadTest {
+	
+	private static final String LOG = "[" + Colors.ANSI_CYAN + "Load Test" + Colors.ANSI_RESET + "]";
+	
+	//Histograms of the application used to count the received and the stored samples
+	private static final LatencyHistogram MESSAGE_ARRIVED = MetricsRegistry.DEFAULT.histogram("mqtt_message_arrived_seconds",
+			"Time spent in the MQTT callback for each message.");
+	private static final LatencyHistogram INSERT_LATENCY = MetricsRegistry.DEFAULT.histogram("storage_insert_seconds",
+			"Duration of the inserts in the storage of the samples.");
+	
+	//Counters of the commands to the actuators
+	private static final Counter COMMANDS_SENT = MetricsRegistry.DEFAULT.counter("coap_actuator_commands_sent_total",
+			"Commands sent to the actuators.");
+	private static final Counter COMMANDS_SUPPRESSED = MetricsRegistry.DEFAULT.counter("coap_actuator_commands_suppressed_total",
+			"Commands not sent because the actuator already had, or was going to have, the requested value.");
+	
+	private LoadTest() {
+	}
+	
+	/**
+	 * @return the value of the option name=value, or the default value if it is not passed.
+	 */
+	private static String option(String[] args, String name, String defaultValue) {
+		for(String arg : args) {
+			if(arg.startsWith(name + "=")) {
+				return arg.substring(name.length() + 1);
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * @return a UDP port not used at the moment of the call.
+	 */
+	private static int freeUdpPort() throws SocketException {
+		DatagramSocket socket = new DatagramSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Heap used, sampled every second during the measurement.
+	 */
+	private static class HeapSampler implements Runnable {
+		
+		private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		private volatile boolean measuring = false;
+		private long samples = 0;
+		private long sum = 0;
+		private long peak = 0;
+		
+		@Override
+		public synchronized void run() {
+			if(measuring) {
+				long used = memory.getHeapMemoryUsage().getUsed();
+				samples++;
+				sum += used;
+				peak = Math.max(peak, used);
+			}
+		}
+		
+		void start() {
+			measuring = true;
+		}
+		
+		synchronized String summary() {
+			long max = memory.getHeapMemoryUsage().getMax();
+			return "average: " + megabytes(samples == 0 ? 0 : sum / samples) + ", peak: " + megabytes(peak)
+					+ ", max: " + (max < 0 ? "undefined" : megabytes(max));
+		}
+	}
+	
+	private static String megabytes(long bytes) {
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+	
+	private static long collections() {
+		long count = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+	
+	private static long collectionTime() {
+		long time = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+	
+	private static String rate(long count, long nanos) {
+		return String.format("%.1f/s", count * 1e9 / Math.max(1, nanos));
+	}
+	
+	/**
+	 * Stops the simulated aquariums in parallel, since stopping a CoAP server waits for its threads.
+	 */
+	private static void close(List<SimulatedAquarium> simulatedAquariums) throws InterruptedException {
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(simulatedAquariums.size(), 32)));
+		for(final SimulatedAquarium simulatedAquarium : simulatedAquariums) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					simulatedAquarium.close();
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+	
+	public static void main(String[] args) {
+		
+		int status = 0;
+		try {
+			run(args);
+		} catch (Exception e) {
+			e.printStackTrace();
+			status = 1;
+		}
+		
+		//The CoAP endpoints and the broker keep non daemon threads, also when the start fails
+		System.exit(status);
+	}
+	
+	private static void run(String[] args) throws Exception {
+		
+		int aquariums = Integer.parseInt(option(args, "aquariums", "10"));
+		double rate = Double.parseDouble(option(args, "rate", "1"));
+		long warmup = Long.parseLong(option(args, "warmup", "10"));
+		long duration = Long.parseLong(option(args, "duration", "60"));
+		int excursionEvery = Integer.parseInt(option(args, "excursionEvery", "10"));
+		long reportInterval = Long.parseLong(option(args, "reportInterval", "10"));
+		
+		System.out.println(LOG + " " + aquariums + " aquariums, " + rate + " samples/s for each sensor, warm-up " + warmup
+				+ " s, duration " + duration + " s.");
+		
+		//Environment: broker and database
+		ConfigurationXML configurationXML = BenchmarkConfiguration.load();
+		ConfigurationParameters configurationParameters = configurationXML.configurationParameters;
+		int brokerPort = BenchmarkConfiguration.freePort();
+		Server broker = BenchmarkConfiguration.startBroker(brokerPort);
+		String brokerURI = "tcp://127.0.0.1:" + brokerPort;
+		configurationParameters.MQTTBroker = brokerURI;
+		configurationParameters.MQTTClientId = "load-test-collector";
+		configurationParameters.MQTTPersistentSession = false;
+		EmbeddedDatabase database = new EmbeddedDatabase(configurationParameters);
+		SampleStore store = new TimedSampleStore(database.getDatabaseManager());
+		
+		//Components of the application
+		AquariumRegistry aquariumRegistry = new AquariumRegistry(configurationParameters.defaultAquariumId, configurationParameters.aquariumRegistryShards,
+				configurationParameters.historyCapacity, configurationParameters.historyHours * 60 * 60 * 1000L);
+		MQTTCollector mqttCollector = new MQTTCollector(configurationParameters, store, aquariumRegistry);
+		CoAPNetworkController coapNetworkController = new CoAPNetworkController(configurationParameters, store, aquariumRegistry);
+		coapNetworkController.start();
+		ControlLogicThread controlLogicThread = new ControlLogicThread(new ConfigurationService(configurationXML), mqttCollector, coapNetworkController);
+		controlLogicThread.start();
+		String registrationURI = "coap://127.0.0.1:" + NetworkConfig.getStandard().getInt(NetworkConfig.Keys.COAP_PORT) + "/registration";
+		
+		//Simulated aquariums, the latency of the warm-up is discarded
+		MetricsRegistry metricsRegistry = new MetricsRegistry();
+		LatencyHistogram warmupLatency = metricsRegistry.histogram("warmup_actuation_seconds", "Sample-to-actuation latency during the warm-up.");
+		LatencyHistogram actuationLatency = metricsRegistry.histogram("actuation_seconds", "Sample-to-actuation latency.");
+		AtomicLong published = new AtomicLong(0);
+		AtomicLong failed = new AtomicLong(0);
+		List<SimulatedAquarium> simulatedAquariums = new ArrayList<SimulatedAquarium>();
+		for(int i = 1; i <= aquariums; i++) {
+			SimulatedAquarium simulatedAquarium = new SimulatedAquarium("load" + i, freeUdpPort(), configurationParameters, excursionEvery,
+					warmupLatency, published, failed);
+			if(!simulatedAquarium.start(registrationURI, brokerURI)) {
+				System.out.println(LOG + " Registration of the aquarium " + simulatedAquarium.getId() + " failed.");
+			}
+			simulatedAquariums.add(simulatedAquarium);
+		}
+		System.out.println(LOG + " " + aquariums + " aquariums started.");
+		
+		//Each aquarium publishes at the rate, the first publications are spread over a period
+		long period = (long) (1e9 / rate);
+		Random random = new Random();
+		ScheduledExecutorService publishers = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+		for(SimulatedAquarium simulatedAquarium : simulatedAquariums) {
+			publishers.scheduleAtFixedRate(simulatedAquarium, (long) (random.nextDouble() * period), period, TimeUnit.NANOSECONDS);
+		}
+		
+		HeapSampler heapSampler = new HeapSampler();
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(heapSampler, 1, 1, TimeUnit.SECONDS);
+		
+		Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+		
+		//Measurement
+		for(SimulatedAquarium simulatedAquarium : simulatedAquariums) {
+			simulatedAquarium.measure(actuationLatency);
+		}
+		heapSampler.start();
+		long start = System.nanoTime();
+		long startPublished = published.get();
+		long startFailed = failed.get();
+		long startReceived = MESSAGE_ARRIVED.snapshot().getCount();
+		long startStored = INSERT_LATENCY.snapshot().getCount();
+		long startSent = COMMANDS_SENT.sum();
+		long startSuppressed = COMMANDS_SUPPRESSED.sum();
+		long startCollections = collections();
+		long startCollectionTime = collectionTime();
+		System.out.println(LOG + " Warm-up ended, measuring...");
+		
+		long end = start + TimeUnit.SECONDS.toNanos(duration);
+		long lastReport = start;
+		long lastPublished = startPublished;
+		long lastStored = startStored;
+		while(System.nanoTime() < end) {
+			
+			Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(reportInterval), Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+			
+			long now = System.nanoTime();
+			long nowPublished = published.get();
+			long nowStored = INSERT_LATENCY.snapshot().getCount();
+			System.out.println(LOG + " " + TimeUnit.NANOSECONDS.toSeconds(now - start) + " s: published " + rate(nowPublished - lastPublished, now - lastReport)
+					+ ", stored " + rate(nowStored - lastStored, now - lastReport)
+					+ ", heap used " + megabytes(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()));
+			lastReport = now;
+			lastPublished = nowPublished;
+			lastStored = nowStored;
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		long totalPublished = published.get() - startPublished;
+		long totalFailed = failed.get() - startFailed;
+		long totalReceived = MESSAGE_ARRIVED.snapshot().getCount() - startReceived;
+		long totalStored = INSERT_LATENCY.snapshot().getCount() - startStored;
+		long totalSent = COMMANDS_SENT.sum() - startSent;
+		long totalSuppressed = COMMANDS_SUPPRESSED.sum() - startSuppressed;
+		long totalCollections = collections() - startCollections;
+		long totalCollectionTime = collectionTime() - startCollectionTime;
+		HistogramSnapshot latency = actuationLatency.snapshot();
+		int pending = 0;
+		for(SimulatedAquarium simulatedAquarium : simulatedAquariums) {
+			if(simulatedAquarium.isExcursionPending()) {
+				pending++;
+			}
+		}
+		
+		System.out.println(LOG + " Results over " + TimeUnit.NANOSECONDS.toSeconds(elapsed) + " s:");
+		System.out.println(LOG + " - samples published: " + totalPublished + " (" + rate(totalPublished, elapsed) + "), failed: " + totalFailed);
+		System.out.println(LOG + " - messages received: " + totalReceived + " (" + rate(totalReceived, elapsed) + ")");
+		System.out.println(LOG + " - rows stored: " + totalStored + " (" + rate(totalStored, elapsed) + ")");
+		System.out.println(LOG + " - sample-to-actuation latency: " + latency + ", excursions pending: " + pending);
+		System.out.println(LOG + " - actuator commands sent: " + totalSent + " (" + rate(totalSent, elapsed) + "), suppressed: " + totalSuppressed);
+		System.out.println(LOG + " - heap " + heapSampler.summary() + ", " + totalCollections + " collections in " + totalCollectionTime + " ms");
+		
+		//Shutdown, the application turns off the actuators before they are stopped
+		publishers.shutdownNow();
+		sampler.shutdownNow();
+		controlLogicThread.stopControlLogicLoop();
+		coapNetworkController.close();
+		mqttCollector.close();
+		close(simulatedAquariums);
+		database.close();
+		broker.stopServer();
+		Log.flush(1000);
+	}
+}
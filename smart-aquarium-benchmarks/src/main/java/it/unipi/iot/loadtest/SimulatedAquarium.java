@@ -0,0 +1,213 @@
+package it.unipi.iot.loadtest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.metrics.LatencyHistogram;
+
+/**
+ * Devices of a simulated aquarium: the MQTT sensors of pH, kH and temperature and a CoAP server with the resources of the
+ * actuators, registered to the application as a single coapDevice. <br>
+ * Each run publishes a sample of each sensor. The values are the optimal ones, except every excursionEvery temperature
+ * samples, when the temperature is published above the upper bound until the fan is turned on: the time from the publication
+ * of the first sample above the bound to the PUT on the fan is the sample-to-actuation latency.
+ *
+ * @author Fabi8997
+ */
+public class SimulatedAquarium implements Runnable {
+	
+	//Maximum number of publications waiting for the acknowledgement of the broker
+	private static final int MAX_INFLIGHT = 1000;
+	
+	private final String id;
+	private final int port;
+	
+	//Topics and payloads of the sensors
+	private final String pHTopic;
+	private final String kHTopic;
+	private final String temperatureTopic;
+	private final byte[] pHPayload;
+	private final byte[] kHPayload;
+	private final byte[] temperaturePayload;
+	private final byte[] hotTemperaturePayload;
+	private final int qos;
+	
+	//Actuators
+	private final CoapServer server;
+	private final SimulatedSwitch fan;
+	
+	//Temperature samples between two excursions above the upper bound
+	private final int excursionEvery;
+	private long temperatureSamples;
+	
+	//System.nanoTime() of the first sample of the current excursion, 0 if no excursion is in progress
+	private final AtomicLong excursionStart;
+	
+	//Latency of the actuations, replaced at the end of the warm-up
+	private volatile LatencyHistogram actuationLatency;
+	
+	//Samples published and lost, shared by all the aquariums
+	private final AtomicLong published;
+	private final AtomicLong failed;
+	
+	private MqttAsyncClient mqttClient;
+	
+	/**
+	 * Class constructor.
+	 * @param id identifier of the aquarium
+	 * @param port UDP port of the CoAP server of the actuators
+	 * @param configurationParameters configuration of the application, for the topics and the optimal values
+	 * @param excursionEvery temperature samples between two excursions above the upper bound
+	 * @param actuationLatency histogram of the sample-to-actuation latency
+	 * @param published counter of the samples published
+	 * @param failed counter of the samples that could not be published
+	 */
+	public SimulatedAquarium(String id, int port, ConfigurationParameters configurationParameters, int excursionEvery,
+			LatencyHistogram actuationLatency, AtomicLong published, AtomicLong failed) {
+		
+		this.id = id;
+		this.port = port;
+		this.pHTopic = configurationParameters.pHTopic + "/" + id;
+		this.kHTopic = configurationParameters.kHTopic + "/" + id;
+		this.temperatureTopic = configurationParameters.temperatureTopic + "/" + id;
+		this.pHPayload = payload("pH", configurationParameters.pHOptimalValue);
+		this.kHPayload = payload("kH", configurationParameters.kHOptimalValue);
+		this.temperaturePayload = payload("temperature", configurationParameters.temperatureOptimalValue);
+		this.hotTemperaturePayload = payload("temperature", configurationParameters.temperatureUpperBound + 1);
+		this.qos = configurationParameters.MQTTSensorQoS;
+		this.excursionEvery = Math.max(1, excursionEvery);
+		this.temperatureSamples = 0;
+		this.excursionStart = new AtomicLong(0);
+		this.actuationLatency = actuationLatency;
+		this.published = published;
+		this.failed = failed;
+		
+		//Same resources of the CoAP device: <topic>/tank for the tanks, temperature/fan and temperature/heater
+		this.server = new CoapServer(port);
+		this.fan = new SimulatedSwitch("fan", this);
+		CoapResource temperature = new CoapResource("temperature");
+		temperature.add(fan);
+		temperature.add(new SimulatedSwitch("heater", this));
+		CoapResource osmoticWaterTank = new CoapResource(configurationParameters.osmoticWaterTankTopic);
+		osmoticWaterTank.add(new SimulatedTank("tank"));
+		CoapResource co2Dispenser = new CoapResource(configurationParameters.co2DispenserTopic);
+		co2Dispenser.add(new SimulatedTank("tank"));
+		server.add(temperature, osmoticWaterTank, co2Dispenser);
+	}
+	
+	private static byte[] payload(String key, float value) {
+		return ("{\"" + key + "\": " + value + "}").getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * Starts the actuators, registers them to the application and connects the sensors to the broker.
+	 * @param registrationURI URI of the registration resource of the application
+	 * @param broker URI of the MQTT broker
+	 * @return true if the actuators have been registered.
+	 */
+	public boolean start(String registrationURI, String broker) throws MqttException {
+		
+		server.start();
+		
+		CoapClient registration = new CoapClient(registrationURI);
+		registration.setTimeout(5000);
+		CoapResponse response = registration.post("{\"device\": \"coapDevice\", \"aquarium\": \"" + id + "\", \"port\": " + port + "}",
+				MediaTypeRegistry.APPLICATION_JSON);
+		registration.shutdown();
+		
+		mqttClient = new MqttAsyncClient(broker, "load-test-" + id, new MemoryPersistence());
+		MqttConnectOptions connectOptions = new MqttConnectOptions();
+		connectOptions.setMaxInflight(MAX_INFLIGHT);
+		mqttClient.connect(connectOptions).waitForCompletion();
+		
+		return (response != null) && (response.getCode() == ResponseCode.CREATED);
+	}
+	
+	/**
+	 * Replaces the histogram of the sample-to-actuation latency.
+	 */
+	public void measure(LatencyHistogram actuationLatency) {
+		this.actuationLatency = actuationLatency;
+	}
+	
+	/**
+	 * @return true if the temperature is above the upper bound and the fan has not been turned on yet.
+	 */
+	public boolean isExcursionPending() {
+		return excursionStart.get() != 0;
+	}
+	
+	/**
+	 * Publishes a sample of each sensor. It is executed periodically, one run at a time.
+	 */
+	@Override
+	public void run() {
+		
+		publish(pHTopic, pHPayload);
+		publish(kHTopic, kHPayload);
+		
+		//Start an excursion when the fan is off and the previous one has been handled
+		temperatureSamples++;
+		if(temperatureSamples % excursionEvery == 0 && !fan.isActive()) {
+			excursionStart.compareAndSet(0, System.nanoTime());
+		}
+		publish(temperatureTopic, isExcursionPending() ? hotTemperaturePayload : temperaturePayload);
+	}
+	
+	private void publish(String topic, byte[] payload) {
+		try {
+			mqttClient.publish(topic, payload, qos, false);
+			published.incrementAndGet();
+		} catch (MqttException e) {
+			failed.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Called by the actuators when the application turns them on or off: the activation of the fan ends the excursion.
+	 */
+	void switchChanged(SimulatedSwitch simulatedSwitch, boolean active) {
+		
+		if(simulatedSwitch != fan || !active) {
+			return;
+		}
+		
+		long start = excursionStart.getAndSet(0);
+		if(start != 0) {
+			actuationLatency.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Disconnects the sensors and stops the actuators.
+	 */
+	public void close() {
+		
+		try {
+			if(mqttClient != null) {
+				mqttClient.disconnect().waitForCompletion();
+				mqttClient.close();
+			}
+		} catch (MqttException e) {
+			//Closed anyway
+		}
+		
+		server.destroy();
+	}
+}
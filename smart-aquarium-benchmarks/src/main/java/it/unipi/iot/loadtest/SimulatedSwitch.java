@@ -0,0 +1,46 @@
+package it.unipi.iot.loadtest;
+
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+
+/**
+ * Resource of a simulated fan or heater: it is turned on and off with a PUT request whose payload is mode=on or mode=off,
+ * as the actuators of the temperature controller.
+ *
+ * @author Fabi8997
+ */
+public class SimulatedSwitch extends CoapResource {
+	
+	//Aquarium notified when the switch is turned on or off
+	private final SimulatedAquarium aquarium;
+	
+	private volatile boolean active;
+	
+	public SimulatedSwitch(String name, SimulatedAquarium aquarium) {
+		super(name);
+		this.aquarium = aquarium;
+		this.active = false;
+	}
+	
+	public boolean isActive() {
+		return active;
+	}
+	
+	@Override
+	public void handlePUT(CoapExchange exchange) {
+		
+		String mode = exchange.getRequestText();
+		if(mode.equals("mode=on")) {
+			active = true;
+		} else if(mode.equals("mode=off")) {
+			active = false;
+		} else {
+			exchange.respond(ResponseCode.BAD_REQUEST);
+			return;
+		}
+		
+		exchange.respond(ResponseCode.CHANGED);
+		aquarium.switchChanged(this, active);
+	}
+}
@@ -0,0 +1,53 @@
+package it.unipi.iot.loadtest;
+
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+
+/**
+ * Observable resource of a simulated tank, the osmotic water tank or the CO2 tank: the flow is started and stopped with a
+ * PUT request whose payload is mode=on or mode=off, and the CO2 dispensed is set with value=&lt;CO2&gt;. <br>
+ * The observers are notified with {"mode": "on", "level": 100.0} when the flow changes; the tank is never emptied.
+ *
+ * @author Fabi8997
+ */
+public class SimulatedTank extends CoapResource {
+	
+	private static final float LEVEL = 100.0f;
+	
+	private volatile boolean active;
+	
+	public SimulatedTank(String name) {
+		super(name);
+		this.active = false;
+		setObservable(true);
+		getAttributes().setObservable();
+	}
+	
+	@Override
+	public void handleGET(CoapExchange exchange) {
+		exchange.respond(ResponseCode.CONTENT, "{\"mode\": \"" + (active ? "on" : "off") + "\", \"level\": " + LEVEL + "}",
+				MediaTypeRegistry.APPLICATION_JSON);
+	}
+	
+	@Override
+	public void handlePUT(CoapExchange exchange) {
+		
+		String request = exchange.getRequestText();
+		if(request.equals("mode=on") || request.equals("mode=off")) {
+			
+			boolean newActive = request.equals("mode=on");
+			exchange.respond(ResponseCode.CHANGED);
+			if(newActive != active) {
+				active = newActive;
+				changed();
+			}
+		
+		} else if(request.startsWith("value=")) {
+			exchange.respond(ResponseCode.CHANGED);
+		} else {
+			exchange.respond(ResponseCode.BAD_REQUEST);
+		}
+	}
+}
@@ -1,15 +1,40 @@
 package it.unipi.iot;
 
+import java.io.IOException;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.paho.client.mqttv3.MqttException;
 
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.aquarium.Metric;
+import it.unipi.iot.aquarium.WarmStart;
+import it.unipi.iot.configuration.ConfigurationListener;
 import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.configuration.ConfigurationService;
 import it.unipi.iot.configuration.ConfigurationXML;
+import it.unipi.iot.configuration.SensorDefinition;
 import it.unipi.iot.control.ControlLogicThread;
 import it.unipi.iot.database.DatabaseManager;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Log;
+import it.unipi.iot.log.LogLevel;
+import it.unipi.iot.metrics.MetricsRegistry;
+import it.unipi.iot.metrics.MetricsServer;
 import it.unipi.iot.mqtt.MQTTCollector;
+import it.unipi.iot.storage.DeferredSampleStore;
+import it.unipi.iot.storage.FileSampleStore;
+import it.unipi.iot.storage.SampleStore;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.StorageBackend;
+import it.unipi.iot.storage.TimedSampleStore;
 import it.unipi.iot.coap.CoAPNetworkController;
 
 /**
@@ -21,15 +46,24 @@ import it.unipi.iot.coap.CoAPNetworkController;
  * resources provided by the devices), starts the thread to check the sensors data
  * and to interact with the actuators and starts a loop to interact with the user 
  * receiving commands from the console.<br>
+ * The status commands accept an optional trailing aquarium identifier (e.g. ":get ph status tank42"), when it is missing the
+ * default aquarium is shown.<br>
+ * The history commands show the aggregates of the samples received in the last minutes and hours, computed on the history kept
+ * in memory by each aquarium without accessing the database.<br>
+ * The ":get metrics" command shows the counters and the latency histograms of the ingestion, the storage, the control logic
+ * and the CoAP requests, that are also exported in the Prometheus format at http://metricsAddress:metricsPort/metrics.<br>
  * 
  * 
  * @author Fabi8997
  */
 public class SmartAquariumApp {
 
-	// To retrieve the configuration parameters
+	// To retrieve the configuration parameters read at startup
 	private static ConfigurationParameters configurationParameters;
 
+	// To retrieve the current configuration parameters, reloaded when the configuration file changes
+	private static ConfigurationService configurationService;
+
 	// To better visualize the terminal logs
 	private static final String LOG = "[" + Colors.ANSI_CYAN + "Smart Aquarium " + Colors.ANSI_RESET + "]";
 	
@@ -43,6 +77,11 @@ public class SmartAquariumApp {
     		":get CO2 dispenser status",
     		":get fan status",
     		":get heater status",
+    		":get temperature history",
+    		":get ph history",
+    		":get kh history",
+    		":get aquariums",
+    		":get metrics",
     		":get configuration",
     		":help",
     		":quit"};
@@ -57,48 +96,144 @@ public class SmartAquariumApp {
 
 		ConfigurationXML configurationXML = new ConfigurationXML();
 		configurationParameters = configurationXML.configurationParameters;
+		configurationService = new ConfigurationService(configurationXML);
+		
+		// The components log through a background writer, with the level of the configuration
+		Log.configure(configurationParameters);
 
 		System.out.println(configurationParameters);
 
-		System.out.println(LOG + " Connecting to the database...");
+		// Register the kinds of samples of the additional sensors, the storage creates a table or a file for each kind
+		if (configurationParameters.sensors != null) {
+			for (SensorDefinition sensor : configurationParameters.sensors) {
+				try {
+					SampleKind.register(sensor.name, sensor.table, SampleKind.Layout.VALUE);
+				} catch (IllegalArgumentException e) {
+					System.out.println(LOG + " Discarded the sensor " + sensor + ": " + e.getMessage());
+				}
+			}
+		}
+
+		// Registry of the aquariums, shared by the MQTT collector, the CoAP network controller and the control logic
+		final AquariumRegistry aquariumRegistry = new AquariumRegistry(configurationParameters.defaultAquariumId, configurationParameters.aquariumRegistryShards,
+				configurationParameters.historyCapacity, configurationParameters.historyHours * 60 * 60 * 1000L);
+
+		// The storage, the MQTT collector and the CoAP network controller are started concurrently, so the startup lasts as the
+		// slowest of them instead of their sum
+		ExecutorService startup = Executors.newFixedThreadPool(3, new ThreadFactory() {
 
-		// Initialize database manager using the configuration parameters
-		DatabaseManager db = new DatabaseManager(configurationParameters);
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "startup-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// Initialize the storage of the samples using the configuration parameters
+		final Future<SampleStore> storageReady = startup.submit(new Callable<SampleStore>() {
+			@Override
+			public SampleStore call() {
+
+				SampleStore store;
+				if (StorageBackend.fromString(configurationParameters.storageBackend) == StorageBackend.FILE) {
+					System.out.println(LOG + " Opening the local storage...");
+					store = new FileSampleStore(configurationParameters);
+				} else {
+					System.out.println(LOG + " Connecting to the database...");
+					store = new DatabaseManager(configurationParameters);
+				}
+
+				// Rebuild the last known state of the aquariums, so the control logic does not start from zeroed readings
+				new WarmStart(configurationParameters).restore(store, aquariumRegistry);
+
+				// Measure the duration of the inserts
+				return new TimedSampleStore(store);
+			}
+		});
+
+		// The samples received before the storage is open wait for it
+		final SampleStore db = new DeferredSampleStore(storageReady);
 
 		// Launch mqttCollector
-		MQTTCollector mqttCollector = new MQTTCollector(configurationParameters, db);
+		Future<MQTTCollector> mqttReady = startup.submit(new Callable<MQTTCollector>() {
+			@Override
+			public MQTTCollector call() throws MqttException {
 
-		System.out.println(LOG + " Launching the CoAP Network Manager...");
+				System.out.println(LOG + " Launching the MQTT Collector...");
+				MQTTCollector mqttCollector = new MQTTCollector(configurationParameters, db, aquariumRegistry);
 
-		// Create a new CoAP Server to handle the CoAP network
-		CoAPNetworkController coapNetworkController = new CoAPNetworkController(configurationParameters, db);
+				// Process the readings published while the application was stopped, before the control logic evaluates them
+				mqttCollector.awaitCatchUp();
+				return mqttCollector;
+			}
+		});
 
-		// Start the CoAP Server
-		coapNetworkController.start();
+		Future<CoAPNetworkController> coapReady = startup.submit(new Callable<CoAPNetworkController>() {
+			@Override
+			public CoAPNetworkController call() throws Exception {
 
-		System.out.println(LOG + " Waiting for the registration of all the devices...");
+				System.out.println(LOG + " Launching the CoAP Network Manager...");
 
-		// Wait until all the devices are registered
-		while (!coapNetworkController.allDevicesRegistered()) {
+				// Create a new CoAP Server to handle the CoAP network
+				CoAPNetworkController coapNetworkController = new CoAPNetworkController(configurationParameters, db, aquariumRegistry);
+
+				// The devices are accepted once the state of their aquarium is restored
+				storageReady.get();
+
+				// Start the CoAP Server
+				coapNetworkController.start();
+				return coapNetworkController;
+			}
+		});
+
+		awaitStartup(storageReady);
+		MQTTCollector mqttCollector = awaitStartup(mqttReady);
+		CoAPNetworkController coapNetworkController = awaitStartup(coapReady);
+		startup.shutdown();
+
+		// Export the metrics to the monitoring system
+		MetricsServer metricsServer = null;
+		if (configurationParameters.metricsPort > 0) {
 			try {
+				metricsServer = new MetricsServer(MetricsRegistry.DEFAULT, configurationParameters.metricsAddress, configurationParameters.metricsPort);
+				metricsServer.start();
+			} catch (IOException e) {
+				System.out.println(LOG + " Cannot export the metrics: " + e.getMessage());
+				metricsServer = null;
+			}
+		}
 
-				// Sleep for 5 seconds to wait for registration
-				Thread.sleep(configurationParameters.sleepIntervalApp);
+		// From now on the changes of the configuration file are applied without a restart
+		configurationService.addListener(coapNetworkController);
+		configurationService.addListener(new ConfigurationListener() {
+			@Override
+			public void configurationChanged(ConfigurationParameters previous, ConfigurationParameters current) {
+				Log.setLevel(LogLevel.fromString(current.logLevel));
+			}
+		});
+		configurationService.start();
+
+		System.out.println(LOG + " Waiting for the registration of all the devices...");
 
+		// Released by the CoAP Network Controller when all the devices of at least an aquarium are registered
+		boolean registered = false;
+		while (!registered) {
+			try {
+				coapNetworkController.awaitAllDevicesRegistered();
+				registered = true;
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
 		}
 
-		System.out.println(LOG + " All the devices are registered to the CoAP Network Controller");
-
-		// When all the devices are registered then the flow of CO2 starts
-		if (coapNetworkController.co2DispenserRegistered()) {
-			coapNetworkController.getCo2Dispenser().startDispenser();
-		}
+		System.out.println(LOG + " All the devices of an aquarium are registered to the CoAP Network Controller");
 		
 		//Once all the devices are correctly started and registered then start the control logic loop
-		ControlLogicThread controlLogic = new ControlLogicThread(configurationParameters, mqttCollector, coapNetworkController);
+		//The flow of CO2 of each aquarium is started by the CoAP Network Controller when all its devices are registered
+		ControlLogicThread controlLogic = new ControlLogicThread(configurationService, mqttCollector, coapNetworkController);
 		controlLogic.start();
 		
 		//Start the loop to receive commands from the user
@@ -110,16 +245,46 @@ public class SmartAquariumApp {
 		while(true) {
 
 	        // Read user input
-	        String userInput = scanner.nextLine().trim().toLowerCase();
+	        String rawInput = scanner.nextLine().trim();
+	        String userInput = rawInput.toLowerCase();
+	        
+	        // The last word can be the identifier of the aquarium, it is case sensitive
+	        String aquariumId = null;
+	        int separator = rawInput.lastIndexOf(' ');
+	        if (!isValidCommand(userInput) && separator > 0 && isValidCommand(userInput.substring(0, separator).trim())) {
+	        	aquariumId = rawInput.substring(separator + 1);
+	        	userInput = userInput.substring(0, separator).trim();
+	        }
 
 	        // Process the user input
 	        if (isValidCommand(userInput)) {
 	            System.out.println(LOG + " Executing command: " + userInput);
 	            
-	            if (userInput.equals(":quit")) {
+	            // Aquarium to which the status commands refer
+	            Aquarium aquarium = (aquariumId == null) ? aquariumRegistry.getDefault() : aquariumRegistry.get(aquariumId);
+	            
+	            if (userInput.startsWith(":get") && userInput.endsWith("status") && (aquarium == null || !aquarium.allDevicesRegistered())) {
+	            	
+	            	//The status can be shown only when all the devices of the aquarium are registered
+	            	System.out.println(LOG + " The aquarium " + ((aquariumId == null) ? configurationParameters.defaultAquariumId : aquariumId) + " has not all its devices registered.");
+	            	
+	            }else if (userInput.endsWith("history") && aquarium == null) {
+	            	
+	            	//Nothing has been received from the aquarium
+	            	System.out.println(LOG + " The aquarium " + ((aquariumId == null) ? configurationParameters.defaultAquariumId : aquariumId) + " does not exist.");
+	            	
+	            }else if (userInput.equals(":quit")) {
 	            	
 	            	//Stop the control logic thread
-	            	ControlLogicThread.stopControlLogicLoop();
+	            	controlLogic.stopControlLogicLoop();
+	            	
+	            	//Stop watching the configuration file
+	            	configurationService.close();
+	            	
+	            	//Stop exporting the metrics
+	            	if (metricsServer != null) {
+	            		metricsServer.close();
+	            	}
 	            	
 	            	//Release the MQTT collector resources and remove the registration from the topics
 	            	mqttCollector.close();
@@ -128,7 +293,7 @@ public class SmartAquariumApp {
 	                //So they stop and tries to register again, so they move back to the previous state!
 	            	coapNetworkController.close();
 	            	
-	            	//Close the connection with the DB
+	            	//Close the connection with the DB or the local storage
 	            	db.close();
 	            	
 	            	//Close the scanner
@@ -138,64 +303,85 @@ public class SmartAquariumApp {
 	                
 	            }else if (userInput.equals(":get status")) {
 	            	StringBuilder sb = new StringBuilder(LOG + " Current status of the system:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"PH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentPH() + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"KH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentKH() + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Temperature"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentTemperature() + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED +"Osmotic water tank"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().getOsmoticWaterTankLevel()+"/"+ configurationParameters.maxOsmoticWaterTankLevel + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " -                     flow active:" + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().isOsmoticWaterTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
-	            	sb.append(LOG + " -                     to be filled:" + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().toBeFilled() + Colors.ANSI_RESET +"\n"); 	
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"CO2 dispenser"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().getCo2DispenserTankLevel()+"/"+ configurationParameters.maxCO2tankLevel + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " -                flow active:" + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().isCo2DispenserTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
-	            	sb.append(LOG + " -                to be filled:" + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().toBeFilled() + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Fan"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + coapNetworkController.getTemperatureController().isFanActive() + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Heater"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + coapNetworkController.getTemperatureController().isHeaterActive() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"PH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentPH() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"KH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentKH() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Temperature"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentTemperature() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED +"Osmotic water tank"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().getOsmoticWaterTankLevel()+"/"+ configurationService.get().maxOsmoticWaterTankLevel + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " -                     flow active:" + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().isOsmoticWaterTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " -                     to be filled:" + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().toBeFilled() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"CO2 dispenser"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().getCo2DispenserTankLevel()+"/"+ configurationService.get().maxCO2tankLevel + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " -                flow active:" + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().isCo2DispenserTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " -                to be filled:" + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().toBeFilled() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Fan"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getTemperatureController().isFanActive() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Heater"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getTemperatureController().isHeaterActive() + Colors.ANSI_RESET +"\n");
 	     
 	            	System.out.print(sb.toString());
 	            	
 	            }else if(userInput.equals(":get ph status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current PHstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"PH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentPH() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"PH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentPH() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 
 	            }else if(userInput.equals(":get kh status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current KHstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"KH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentKH() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"KH"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentKH() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 
 	            }else if(userInput.equals(":get temperature status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current temperaturestatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Temperature"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + mqttCollector.getCurrentTemperature() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Temperature"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getCurrentTemperature() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 
 	            }else if(userInput.equals(":get osmotic water tank status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current osmotic water tankstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED +"Osmotic water tank"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().getOsmoticWaterTankLevel()+"/"+ configurationParameters.maxOsmoticWaterTankLevel + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " -                     flow active:" + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().isOsmoticWaterTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
-	            	sb.append(LOG + " -                     to be filled:" + Colors.ANSI_GREEN + coapNetworkController.getOsmoticWaterTank().toBeFilled() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED +"Osmotic water tank"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().getOsmoticWaterTankLevel()+"/"+ configurationService.get().maxOsmoticWaterTankLevel + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " -                     flow active:" + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().isOsmoticWaterTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " -                     to be filled:" + Colors.ANSI_GREEN + aquarium.getOsmoticWaterTank().toBeFilled() + Colors.ANSI_RESET +"\n"); 	
 	            	System.out.println(sb.toString());
 	           
-	            }else if(userInput.equals(":get CO2 dispenser status")){
+	            }else if(userInput.equals(":get co2 dispenser status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current CO2 dispenserstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"CO2 dispenser"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().getCo2DispenserTankLevel()+"/"+ configurationParameters.maxCO2tankLevel + Colors.ANSI_RESET +"\n");
-	            	sb.append(LOG + " -                flow active:" + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().isCo2DispenserTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
-	            	sb.append(LOG + " -                to be filled:" + Colors.ANSI_GREEN + coapNetworkController.getCo2Dispenser().toBeFilled() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"CO2 dispenser"+Colors.ANSI_RESET +": tank level: " + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().getCo2DispenserTankLevel()+"/"+ configurationService.get().maxCO2tankLevel + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " -                flow active:" + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().isCo2DispenserTankFlowActive() + Colors.ANSI_RESET +"\n"); 	
+	            	sb.append(LOG + " -                to be filled:" + Colors.ANSI_GREEN + aquarium.getCo2Dispenser().toBeFilled() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 
 	            }else if(userInput.equals(":get fan status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current fanstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Fan"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + coapNetworkController.getTemperatureController().isFanActive() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Fan"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getTemperatureController().isFanActive() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 
 	            }else if(userInput.equals(":get heater status")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current heaterstatus:\n");
-	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Heater"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + coapNetworkController.getTemperatureController().isHeaterActive() + Colors.ANSI_RESET +"\n");
+	            	sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+"Heater"+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getTemperatureController().isHeaterActive() + Colors.ANSI_RESET +"\n");
 	            	System.out.println(sb.toString());
 	            	
+	            }else if(userInput.equals(":get temperature history")){
+	            	System.out.println(history(aquarium, Metric.TEMPERATURE, "Temperature"));
+	            	
+	            }else if(userInput.equals(":get ph history")){
+	            	System.out.println(history(aquarium, Metric.PH, "PH"));
+	            	
+	            }else if(userInput.equals(":get kh history")){
+	            	System.out.println(history(aquarium, Metric.KH, "KH"));
+	            	
 	            }else if(userInput.equals(":get configuration")){
 	            	StringBuilder sb = new StringBuilder(LOG + " Current configuration of the system:\n");
-	            	System.out.println(sb.toString() + configurationParameters.toString());
+	            	System.out.println(sb.toString() + configurationService.get().toString());
 	            	
-	            }else if(userInput.equals(":get configuration")){
+	            }else if(userInput.equals(":get aquariums")){
+	            	StringBuilder sb = new StringBuilder(LOG + " Aquariums:\n");
+	            	for (Aquarium a : aquariumRegistry.getAll()) {
+	            		sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+a.getId()+Colors.ANSI_RESET +": all devices registered: "+ Colors.ANSI_GREEN + a.allDevicesRegistered() + Colors.ANSI_RESET +"\n");
+	            	}
+	            	System.out.println(sb.toString());
+	            	
+	            }else if(userInput.equals(":get metrics")){
+	            	StringBuilder sb = new StringBuilder(LOG + " Metrics:\n");
+	            	sb.append(MetricsRegistry.DEFAULT.summary(LOG + " - "));
+	            	System.out.println(sb.toString());
+	            	
+	            }else if(userInput.equals(":help")){
 	            	printPossibleCommands();
 	            }
 	            
@@ -204,10 +390,36 @@ public class SmartAquariumApp {
 	        }
 		}
 		
+		// Write the records still in the queue before exiting
+		Log.flush(1000);
+		
 		System.out.println(LOG + " Bye!");
 		 
 	}
 
+	/**
+	 * Waits for the startup of a subsystem.
+	 * @param subsystem future completed when the subsystem is started
+	 * @return the started subsystem
+	 * @throws MqttException if the MQTT collector cannot connect to the broker
+	 */
+	private static <T> T awaitStartup(Future<T> subsystem) throws MqttException {
+		try {
+			return subsystem.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Startup interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MqttException) {
+				throw (MqttException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Startup failed", e.getCause());
+		}
+	}
+
 	/**
 	 * Prints the available commands
 	 */
@@ -226,6 +438,26 @@ public class SmartAquariumApp {
         System.out.println(sb.toString());
 	}
 	
+	/**
+	 * Builds the aggregates of a metric over the last minute, the last 15 minutes, the last hour and the whole history.
+	 * @param aquarium aquarium of the metric
+	 * @param metric metric to show
+	 * @param name name of the metric shown to the user
+	 * @return the text to print
+	 */
+	private static String history(Aquarium aquarium, Metric metric, String name) {
+		
+		long[] durations = {60 * 1000L, 15 * 60 * 1000L, 60 * 60 * 1000L, configurationParameters.historyHours * 60 * 60 * 1000L};
+		String[] labels = {"last minute", "last 15 minutes", "last hour", "last " + configurationParameters.historyHours + " hours"};
+		
+		StringBuilder sb = new StringBuilder(LOG + " " + name + " history of the aquarium " + aquarium.getId() + ":\n");
+		for (int i = 0; i < durations.length; i++) {
+			sb.append(LOG + " - "+Colors.WHITE_UNDERLINED+labels[i]+Colors.ANSI_RESET +": "+ Colors.ANSI_GREEN + aquarium.getHistory().aggregateLast(metric, durations[i]) + Colors.ANSI_RESET +"\n");
+		}
+		
+		return sb.toString();
+	}
+	
 	/**
 	 * Checks if the user input is in the list of available commands
 	 * @param userInput user input
@@ -235,7 +467,7 @@ public class SmartAquariumApp {
 		
 		//Check
 		for (String command : possibleCommands) {
-            if (userInput.equals(command)) {
+            if (userInput.equals(command.toLowerCase())) {
                 return true;
             }
         }
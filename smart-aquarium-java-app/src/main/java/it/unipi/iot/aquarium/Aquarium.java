@@ -0,0 +1,265 @@
+package it.unipi.iot.aquarium;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.californium.core.CoapObserveRelation;
+
+import it.unipi.iot.coap.CO2.CO2Dispenser;
+import it.unipi.iot.coap.osmoticwater.OsmoticWaterTank;
+import it.unipi.iot.coap.temperature.TemperatureController;
+
+/**
+ * State of a single aquarium handled by the application. <br>
+ * It contains the last values published by the MQTT sensors of the aquarium, the CoAP clients of its registered actuators and
+ * the status of the simulation driven by the control logic.
+ * 
+ * @author Fabi8997
+ */
+public class Aquarium {
+	
+	//Value of the pH simulation status when it is not known, so that the first evaluation publishes it again
+	public static final String PH_SIMULATION_UNKNOWN = "UNKNOWN";
+	
+	//Identifier of the aquarium, carried by the topics and by the CoAP registrations
+	private final String id;
+	
+	//Last values published by the sensors and their freshness, replaced atomically at every update
+	private final AtomicReference<SensorSnapshot> snapshot;
+	
+	//Samples received in the last hours
+	private final SampleHistory history;
+	
+	//CoAP Clients
+	private volatile OsmoticWaterTank osmoticWaterTank;
+	private volatile TemperatureController temperatureController;
+	private volatile CO2Dispenser co2Dispenser;
+	private CoapObserveRelation observeWaterTankRelation;
+	private CoapObserveRelation observeCO2TankRelation;
+	
+	//To know if the flow of CO2 has been started
+	private boolean co2DispenserStarted;
+	
+	// To keep track of the pH simulation status
+	private String pHSimulationType;
+	
+	//State read from the storage at startup, null if the aquarium has not been restored
+	private volatile RestoredState restoredState;
+	
+	/**
+	 * Class constructor, no value has been received yet and no device is registered.
+	 * @param id identifier of the aquarium
+	 * @param historyCapacity maximum number of samples kept in the history of each metric
+	 * @param historyRetention milliseconds for which a sample is kept in the history
+	 */
+	public Aquarium(String id, int historyCapacity, long historyRetention) {
+		this.id = id;
+		this.snapshot = new AtomicReference<SensorSnapshot>(SensorSnapshot.EMPTY);
+		this.history = new SampleHistory(historyCapacity, historyRetention);
+		this.co2DispenserStarted = false;
+		this.pHSimulationType = "OFF";
+	}
+
+	public String getId() {
+		return id;
+	}
+	
+	/**
+	 * @return a consistent view of the last values of the sensors; it does not change their freshness.
+	 */
+	public SensorSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+	
+	public SampleHistory getHistory() {
+		return history;
+	}
+	
+	/**
+	 * Stores a new value of a sensor, marks it as fresh and appends it to the history.
+	 * @param metric metric of the new value
+	 * @param value new value
+	 * @param timestamp time at which the value was received
+	 */
+	public void setCurrentValue(Metric metric, float value, long timestamp) {
+		SensorSnapshot current;
+		do {
+			current = snapshot.get();
+		} while(!snapshot.compareAndSet(current, current.withValue(metric, value, timestamp)));
+		history.record(metric, timestamp, value);
+	}
+	
+	/**
+	 * Consumes the freshness of a metric: the returned snapshot is the one in which the value of the metric was still fresh,
+	 * while the stored one has the metric no more fresh.
+	 * @param metric metric consumed
+	 * @return the snapshot on which the metric must be evaluated, or null if its value was already consumed.
+	 */
+	public SensorSnapshot consumeFresh(Metric metric) {
+		SensorSnapshot current;
+		do {
+			current = snapshot.get();
+			if(!current.isFresh(metric)) {
+				return null;
+			}
+		} while(!snapshot.compareAndSet(current, current.withoutFresh(metric)));
+		return current;
+	}
+	
+	/**
+	 * Restores the state read from the storage at startup. The restored values of the sensors are not fresh, so they are not
+	 * evaluated by the control logic, and they replace only the values older than them, since the MQTT collector can receive
+	 * new values while the state is restored.
+	 * @param restoredState state read from the storage
+	 */
+	public void restore(RestoredState restoredState) {
+		
+		for(Metric metric : Metric.values()) {
+			
+			if(!restoredState.hasValue(metric)) {
+				continue;
+			}
+			
+			float value = restoredState.getValue(metric);
+			long timestamp = restoredState.getTimestamp(metric);
+			SensorSnapshot current;
+			do {
+				current = snapshot.get();
+				
+				//A value has already been received after the restart
+				if(current.getTimestamp(metric) >= timestamp) {
+					current = null;
+					break;
+				}
+			} while(!snapshot.compareAndSet(current, current.withValue(metric, value, timestamp).withoutFresh(metric)));
+			
+			if(current != null) {
+				history.record(metric, timestamp, value);
+			}
+		}
+		
+		//The simulation status is not stored, if CO2 was dispensed it must be published again
+		if(restoredState.hasCo2Dispensed()) {
+			setpHSimulationType(PH_SIMULATION_UNKNOWN);
+		}
+		
+		this.restoredState = restoredState;
+	}
+	
+	public RestoredState getRestoredState() {
+		return restoredState;
+	}
+	
+	public float getCurrentKH() {
+		return snapshot.get().getKH();
+	}
+
+	public float getCurrentPH() {
+		return snapshot.get().getPH();
+	}
+
+	public float getCurrentTemperature() {
+		return snapshot.get().getTemperature();
+	}
+
+	public OsmoticWaterTank getOsmoticWaterTank() {
+		return osmoticWaterTank;
+	}
+
+	public void setOsmoticWaterTank(OsmoticWaterTank osmoticWaterTank, CoapObserveRelation observeWaterTankRelation) {
+		this.osmoticWaterTank = osmoticWaterTank;
+		this.observeWaterTankRelation = observeWaterTankRelation;
+	}
+
+	public TemperatureController getTemperatureController() {
+		return temperatureController;
+	}
+
+	public void setTemperatureController(TemperatureController temperatureController) {
+		this.temperatureController = temperatureController;
+	}
+
+	public CO2Dispenser getCo2Dispenser() {
+		return co2Dispenser;
+	}
+
+	public void setCo2Dispenser(CO2Dispenser co2Dispenser, CoapObserveRelation observeCO2TankRelation) {
+		this.co2Dispenser = co2Dispenser;
+		this.observeCO2TankRelation = observeCO2TankRelation;
+	}
+	
+	public boolean osmoticWaterTankRegistered() {
+		return osmoticWaterTank != null;
+	}
+	
+	public boolean temperatureControllerRegistered() {
+		return temperatureController != null;
+	}
+	
+	public boolean co2DispenserRegistered() {
+		return co2Dispenser != null;
+	}
+
+	public boolean allDevicesRegistered() {
+		return ((osmoticWaterTank != null) && (temperatureController != null) && (co2Dispenser != null));
+	}
+	
+	/**
+	 * When all the devices of the aquarium are registered the flow of CO2 starts; it is started only once.
+	 * @return true if the flow has been started by this call, false otherwise.
+	 */
+	public synchronized boolean startCo2DispenserIfReady() {
+		if(co2DispenserStarted || !allDevicesRegistered()) {
+			return false;
+		}
+		co2DispenserStarted = true;
+		co2Dispenser.startDispenser();
+		return true;
+	}
+
+	public String getpHSimulationType() {
+		return pHSimulationType;
+	}
+
+	public void setpHSimulationType(String pHSimulationType) {
+		this.pHSimulationType = pHSimulationType;
+	}
+	
+	/**
+	 * Stops the actuators of the aquarium and cancels the observe relations.
+	 */
+	public synchronized void close() {
+		
+		//Turn off the dispenser
+		if(this.co2Dispenser != null) {
+			this.co2Dispenser.stop();
+			this.co2Dispenser = null;
+		}
+		
+		//Turn off the osmotic water tank
+		if(this.osmoticWaterTank != null) {
+			this.osmoticWaterTank.stop();
+			this.osmoticWaterTank = null;
+		}
+		
+		//Turn off the temperature controller, the fan and the heater
+		if(this.temperatureController != null) {
+			this.temperatureController.stop();
+			this.temperatureController = null;
+		}
+		
+		//Remove the observe relations
+		if(this.observeCO2TankRelation != null) {
+			this.observeCO2TankRelation.reactiveCancel();
+			this.observeCO2TankRelation = null;
+		}
+		if(this.observeWaterTankRelation != null) {
+			this.observeWaterTankRelation.reactiveCancel();
+			this.observeWaterTankRelation = null;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return id;
+	}
+}
@@ -0,0 +1,141 @@
+package it.unipi.iot.aquarium;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent registry of the aquariums handled by the application. <br>
+ * The aquariums are split in shards by their identifier: each shard is an independent concurrent map, so that the MQTT callback,
+ * the CoAP registrations and the control logic can access different aquariums without contention, and the control logic can
+ * evaluate the shards in parallel.
+ * 
+ * @author Fabi8997
+ */
+public class AquariumRegistry {
+	
+	//Identifier used when a topic or a registration carries no aquarium identifier
+	private final String defaultAquariumId;
+	
+	//Size and retention in milliseconds of the history of the aquariums
+	private final int historyCapacity;
+	private final long historyRetention;
+	
+	//Shards of the registry
+	private final ConcurrentHashMap<String, Aquarium>[] shards;
+	
+	/**
+	 * Class constructor.
+	 * @param defaultAquariumId identifier of the default aquarium
+	 * @param shardCount number of shards
+	 * @param historyCapacity maximum number of samples kept in the history of each metric of an aquarium
+	 * @param historyRetention milliseconds for which a sample is kept in the history
+	 */
+	public AquariumRegistry(String defaultAquariumId, int shardCount, int historyCapacity, long historyRetention) {
+		this.defaultAquariumId = defaultAquariumId;
+		this.historyCapacity = historyCapacity;
+		this.historyRetention = historyRetention;
+		
+		//No generic array creation in Java, every element is set below to a map of aquariums
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		ConcurrentHashMap<String, Aquarium>[] shards = new ConcurrentHashMap[Math.max(1, shardCount)];
+		this.shards = shards;
+		for(int i = 0; i < shards.length; i++) {
+			shards[i] = new ConcurrentHashMap<String, Aquarium>();
+		}
+	}
+	
+	private ConcurrentHashMap<String, Aquarium> shardOf(String id) {
+		return shards[(id.hashCode() & 0x7fffffff) % shards.length];
+	}
+	
+	/**
+	 * Returns the aquarium with the passed identifier, creating it if it does not exist.
+	 * @param id identifier of the aquarium, if null the default aquarium is returned
+	 * @return the aquarium
+	 */
+	public Aquarium getOrCreate(String id) {
+		
+		if(id == null) {
+			id = defaultAquariumId;
+		}
+		
+		ConcurrentHashMap<String, Aquarium> shard = shardOf(id);
+		Aquarium aquarium = shard.get(id);
+		
+		if(aquarium == null) {
+			Aquarium newAquarium = new Aquarium(id, historyCapacity, historyRetention);
+			aquarium = shard.putIfAbsent(id, newAquarium);
+			if(aquarium == null) {
+				aquarium = newAquarium;
+			}
+		}
+		
+		return aquarium;
+	}
+	
+	/**
+	 * @param id identifier of the aquarium
+	 * @return the aquarium with the passed identifier or null if it does not exist.
+	 */
+	public Aquarium get(String id) {
+		return shardOf(id).get(id);
+	}
+	
+	/**
+	 * @return the default aquarium or null if nothing has been received from it.
+	 */
+	public Aquarium getDefault() {
+		return get(defaultAquariumId);
+	}
+	
+	public String getDefaultAquariumId() {
+		return defaultAquariumId;
+	}
+	
+	public int getShardCount() {
+		return shards.length;
+	}
+	
+	/**
+	 * @param index index of the shard
+	 * @return a live view of the aquariums of the shard.
+	 */
+	public Collection<Aquarium> getShard(int index) {
+		return shards[index].values();
+	}
+	
+	/**
+	 * @return a copy of the list of all the aquariums.
+	 */
+	public List<Aquarium> getAll() {
+		List<Aquarium> aquariums = new ArrayList<Aquarium>();
+		for(ConcurrentHashMap<String, Aquarium> shard : shards) {
+			aquariums.addAll(shard.values());
+		}
+		return aquariums;
+	}
+	
+	public int size() {
+		int size = 0;
+		for(ConcurrentHashMap<String, Aquarium> shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * @return true if at least an aquarium has all its devices registered.
+	 */
+	public boolean anyAquariumReady() {
+		for(ConcurrentHashMap<String, Aquarium> shard : shards) {
+			for(Aquarium aquarium : shard.values()) {
+				if(aquarium.allDevicesRegistered()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
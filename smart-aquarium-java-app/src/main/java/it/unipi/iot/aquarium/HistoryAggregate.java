@@ -0,0 +1,70 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Aggregates of the samples of a sensor in a time range, returned by the queries of the {@link SampleHistory}.
+ *
+ * @author Fabi8997
+ */
+public class HistoryAggregate {
+	
+	//Result of a range without samples
+	public static final HistoryAggregate EMPTY = new HistoryAggregate(0, Float.NaN, Float.NaN, Float.NaN, 0, 0, Float.NaN);
+	
+	private final int count;
+	private final float min;
+	private final float max;
+	private final float avg;
+	
+	//Timestamps of the first and of the last sample in the range, and value of the last one
+	private final long firstTimestamp;
+	private final long lastTimestamp;
+	private final float last;
+	
+	HistoryAggregate(int count, float min, float max, float avg, long firstTimestamp, long lastTimestamp, float last) {
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.avg = avg;
+		this.firstTimestamp = firstTimestamp;
+		this.lastTimestamp = lastTimestamp;
+		this.last = last;
+	}
+	
+	public int getCount() {
+		return count;
+	}
+	
+	public float getMin() {
+		return min;
+	}
+	
+	public float getMax() {
+		return max;
+	}
+	
+	public float getAvg() {
+		return avg;
+	}
+	
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+	
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+	
+	public float getLast() {
+		return last;
+	}
+	
+	@Override
+	public String toString() {
+		
+		if(count == 0) {
+			return "no samples";
+		}
+		
+		return "count: " + count + ", min: " + min + ", max: " + max + ", avg: " + avg + ", last: " + last;
+	}
+}
@@ -0,0 +1,38 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Samples of a sensor in a time range, returned by the queries of the {@link SampleHistory}. The arrays are copies owned by
+ * the caller, ordered by timestamp.
+ *
+ * @author Fabi8997
+ */
+public class HistoryRange {
+	
+	private final long[] timestamps;
+	private final float[] values;
+	
+	HistoryRange(long[] timestamps, float[] values) {
+		this.timestamps = timestamps;
+		this.values = values;
+	}
+	
+	public int size() {
+		return timestamps.length;
+	}
+	
+	public long getTimestamp(int i) {
+		return timestamps[i];
+	}
+	
+	public float getValue(int i) {
+		return values[i];
+	}
+	
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+	
+	public float[] getValues() {
+		return values;
+	}
+}
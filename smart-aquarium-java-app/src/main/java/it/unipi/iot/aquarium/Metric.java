@@ -0,0 +1,12 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Metrics measured by the MQTT sensors of an aquarium and evaluated by the control logic.
+ * 
+ * @author Fabi8997
+ */
+public enum Metric {
+	KH,
+	PH,
+	TEMPERATURE
+}
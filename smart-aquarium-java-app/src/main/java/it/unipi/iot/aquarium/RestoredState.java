@@ -0,0 +1,111 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * State of an aquarium read from the storage at the startup by the {@link WarmStart}: the last values of the sensors, the last
+ * levels of the tanks, the last states of the fan and of the heater and the recent values of CO2 dispensed. <br>
+ * The values that are not present in the storage are NaN, or null for the states of the actuators.
+ * 
+ * @author Fabi8997
+ */
+public class RestoredState {
+	
+	//Last value of each metric and its timestamp, indexed by ordinal; 0 if the metric has not been restored
+	private final float[] values;
+	private final long[] timestamps;
+	
+	private float osmoticWaterTankLevel;
+	private float co2TankLevel;
+	
+	//Values of CO2 dispensed, from the most recent one
+	private float[] co2Dispensed;
+	
+	private Boolean fanActive;
+	private Boolean heaterActive;
+	
+	RestoredState() {
+		this.values = new float[Metric.values().length];
+		this.timestamps = new long[values.length];
+		this.osmoticWaterTankLevel = Float.NaN;
+		this.co2TankLevel = Float.NaN;
+		this.co2Dispensed = new float[0];
+	}
+	
+	synchronized void setValue(Metric metric, float value, long timestamp) {
+		values[metric.ordinal()] = value;
+		timestamps[metric.ordinal()] = timestamp;
+	}
+	
+	public synchronized boolean hasValue(Metric metric) {
+		return timestamps[metric.ordinal()] > 0;
+	}
+	
+	public synchronized float getValue(Metric metric) {
+		return values[metric.ordinal()];
+	}
+	
+	public synchronized long getTimestamp(Metric metric) {
+		return timestamps[metric.ordinal()];
+	}
+	
+	synchronized void setOsmoticWaterTankLevel(float osmoticWaterTankLevel) {
+		this.osmoticWaterTankLevel = osmoticWaterTankLevel;
+	}
+	
+	public synchronized float getOsmoticWaterTankLevel() {
+		return osmoticWaterTankLevel;
+	}
+	
+	synchronized void setCo2TankLevel(float co2TankLevel) {
+		this.co2TankLevel = co2TankLevel;
+	}
+	
+	public synchronized float getCo2TankLevel() {
+		return co2TankLevel;
+	}
+	
+	synchronized void setCo2Dispensed(float[] co2Dispensed) {
+		this.co2Dispensed = co2Dispensed;
+	}
+	
+	/**
+	 * @return true if at least a value of CO2 dispensed has been restored.
+	 */
+	public synchronized boolean hasCo2Dispensed() {
+		return co2Dispensed.length > 0;
+	}
+	
+	/**
+	 * @return the last value of CO2 dispensed, NaN if it has not been restored.
+	 */
+	public synchronized float getLastCo2Dispensed() {
+		return (co2Dispensed.length > 0) ? co2Dispensed[0] : Float.NaN;
+	}
+	
+	/**
+	 * @return the variation of the last change of the CO2 dispensed in the recent history, 0 if it did not change.
+	 */
+	public synchronized float getLastCo2Variation() {
+		for(int i = 1; i < co2Dispensed.length; i++) {
+			if(co2Dispensed[i] != co2Dispensed[0]) {
+				return Math.abs(co2Dispensed[0] - co2Dispensed[i]);
+			}
+		}
+		return 0;
+	}
+	
+	synchronized void setFanActive(boolean fanActive) {
+		this.fanActive = fanActive;
+	}
+	
+	public synchronized Boolean getFanActive() {
+		return fanActive;
+	}
+	
+	synchronized void setHeaterActive(boolean heaterActive) {
+		this.heaterActive = heaterActive;
+	}
+	
+	public synchronized Boolean getHeaterActive() {
+		return heaterActive;
+	}
+}
@@ -0,0 +1,64 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Recent history of the sensors of an aquarium, kept in memory so that the queries on the last hours are answered without
+ * accessing the database. <br>
+ * Each metric has its own {@link SampleRingBuffer}, filled by the MQTT collector when a sample is received.
+ *
+ * @author Fabi8997
+ */
+public class SampleHistory {
+	
+	//Ring buffer of each metric, indexed by ordinal
+	private final SampleRingBuffer[] buffers;
+	
+	/**
+	 * Class constructor.
+	 * @param capacity maximum number of samples kept for each metric
+	 * @param retention milliseconds for which a sample is kept
+	 */
+	public SampleHistory(int capacity, long retention) {
+		Metric[] metrics = Metric.values();
+		this.buffers = new SampleRingBuffer[metrics.length];
+		for(Metric metric : metrics) {
+			buffers[metric.ordinal()] = new SampleRingBuffer(capacity, retention);
+		}
+	}
+	
+	/**
+	 * Appends a sample to the history of its metric.
+	 */
+	public void record(Metric metric, long timestamp, float value) {
+		buffers[metric.ordinal()].add(timestamp, value);
+	}
+	
+	/**
+	 * @param metric metric of the samples
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @return a copy of the samples of the metric in the range.
+	 */
+	public HistoryRange range(Metric metric, long from, long to) {
+		return buffers[metric.ordinal()].range(from, to);
+	}
+	
+	/**
+	 * @param metric metric of the samples
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @return the aggregates of the samples of the metric in the range.
+	 */
+	public HistoryAggregate aggregate(Metric metric, long from, long to) {
+		return buffers[metric.ordinal()].aggregate(from, to);
+	}
+	
+	/**
+	 * @param metric metric of the samples
+	 * @param duration milliseconds before the current time
+	 * @return the aggregates of the samples of the metric received in the last duration milliseconds.
+	 */
+	public HistoryAggregate aggregateLast(Metric metric, long duration) {
+		long now = System.currentTimeMillis();
+		return aggregate(metric, now - duration, Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,18 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Listener notified every time a sensor of an aquarium publishes a new value. <br>
+ * It is invoked on the MQTT callback thread after the value has been stored in the aquarium, so the implementations must
+ * return quickly.
+ * 
+ * @author Fabi8997
+ */
+public interface SampleListener {
+	
+	/**
+	 * Called when a new value of the metric has been received.
+	 * @param aquarium aquarium to which the sensor belongs
+	 * @param metric metric of the new value
+	 */
+	void sampleArrived(Aquarium aquarium, Metric metric);
+}
@@ -0,0 +1,139 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Fixed-size ring buffer of the recent samples of a sensor, stored in primitive arrays. <br>
+ * The samples are appended in arrival order, so their timestamps are ordered and a range is located with a binary search.
+ * When the buffer is full the oldest sample is overwritten; the samples older than the retention are ignored by the queries.
+ *
+ * @author Fabi8997
+ */
+public class SampleRingBuffer {
+	
+	private final long[] timestamps;
+	private final float[] values;
+	
+	//Milliseconds for which a sample is kept, with respect to the current time
+	private final long retention;
+	
+	//Position of the next sample and number of samples stored
+	private int head;
+	private int size;
+	
+	/**
+	 * Class constructor.
+	 * @param capacity maximum number of samples
+	 * @param retention milliseconds for which a sample is kept
+	 */
+	public SampleRingBuffer(int capacity, long retention) {
+		this.timestamps = new long[Math.max(1, capacity)];
+		this.values = new float[timestamps.length];
+		this.retention = retention;
+		this.head = 0;
+		this.size = 0;
+	}
+	
+	/**
+	 * Appends a sample, overwriting the oldest one if the buffer is full. A sample older than the last one is stored with the
+	 * timestamp of the last one, to keep the buffer ordered.
+	 * @param timestamp of the sample in milliseconds
+	 * @param value of the sample
+	 */
+	public synchronized void add(long timestamp, float value) {
+		
+		if(size > 0) {
+			timestamp = Math.max(timestamp, timestamps[index(size - 1)]);
+		}
+		
+		timestamps[head] = timestamp;
+		values[head] = value;
+		head = (head + 1) % timestamps.length;
+		if(size < timestamps.length) {
+			size++;
+		}
+	}
+	
+	/**
+	 * @param i logical position, 0 is the oldest sample
+	 * @return the position in the arrays.
+	 */
+	private int index(int i) {
+		return (head - size + i + timestamps.length) % timestamps.length;
+	}
+	
+	/**
+	 * @return the logical position of the first sample with timestamp greater or equal to the passed one.
+	 */
+	private int lowerBound(long timestamp) {
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(timestamps[index(middle)] < timestamp) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * @return the first timestamp that can be returned by a query.
+	 */
+	private long oldestRetained(long from) {
+		return Math.max(from, System.currentTimeMillis() - retention);
+	}
+	
+	/**
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @return a copy of the samples in the range.
+	 */
+	public synchronized HistoryRange range(long from, long to) {
+		
+		int first = lowerBound(oldestRetained(from));
+		int last = lowerBound(to);
+		int count = Math.max(0, last - first);
+		
+		long[] rangeTimestamps = new long[count];
+		float[] rangeValues = new float[count];
+		for(int i = 0; i < count; i++) {
+			int index = index(first + i);
+			rangeTimestamps[i] = timestamps[index];
+			rangeValues[i] = values[index];
+		}
+		
+		return new HistoryRange(rangeTimestamps, rangeValues);
+	}
+	
+	/**
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @return the aggregates of the samples in the range, computed without copying them.
+	 */
+	public synchronized HistoryAggregate aggregate(long from, long to) {
+		
+		int first = lowerBound(oldestRetained(from));
+		int last = lowerBound(to);
+		if(last <= first) {
+			return HistoryAggregate.EMPTY;
+		}
+		
+		float min = Float.MAX_VALUE;
+		float max = -Float.MAX_VALUE;
+		double sum = 0;
+		for(int i = first; i < last; i++) {
+			float value = values[index(i)];
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value;
+		}
+		
+		return new HistoryAggregate(last - first, min, max, (float) (sum / (last - first)),
+				timestamps[index(first)], timestamps[index(last - 1)], values[index(last - 1)]);
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+}
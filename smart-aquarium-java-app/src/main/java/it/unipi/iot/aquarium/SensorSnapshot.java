@@ -0,0 +1,111 @@
+package it.unipi.iot.aquarium;
+
+/**
+ * Immutable view of the last values published by the sensors of an aquarium. <br>
+ * It contains the pH, kH and temperature values, the time at which each of them was received and a freshness bitmask, with
+ * one bit for each Metric (1 &lt;&lt; Metric.ordinal()), set when a value is received and cleared when the control logic
+ * consumes it. Every update creates a new snapshot, so a reader always sees the three values and their freshness as they
+ * were published together.
+ * 
+ * @author Fabi8997
+ */
+public final class SensorSnapshot {
+	
+	//Snapshot of an aquarium from which nothing has been received yet
+	public static final SensorSnapshot EMPTY = new SensorSnapshot(0, 0, 0, 0, 0, 0, 0);
+	
+	//Last values
+	private final float kH;
+	private final float pH;
+	private final float temperature;
+	
+	//Time at which the last values were received, in milliseconds
+	private final long kHTimestamp;
+	private final long pHTimestamp;
+	private final long temperatureTimestamp;
+	
+	//Values not yet consumed by the control logic
+	private final int freshMask;
+	
+	private SensorSnapshot(float kH, float pH, float temperature, long kHTimestamp, long pHTimestamp, long temperatureTimestamp, int freshMask) {
+		this.kH = kH;
+		this.pH = pH;
+		this.temperature = temperature;
+		this.kHTimestamp = kHTimestamp;
+		this.pHTimestamp = pHTimestamp;
+		this.temperatureTimestamp = temperatureTimestamp;
+		this.freshMask = freshMask;
+	}
+	
+	/**
+	 * @param metric metric of the new value
+	 * @param value new value
+	 * @param timestamp time at which the value was received
+	 * @return a copy of this snapshot with the new value marked as fresh.
+	 */
+	public SensorSnapshot withValue(Metric metric, float value, long timestamp) {
+		
+		int mask = freshMask | (1 << metric.ordinal());
+		
+		switch(metric) {
+		case KH:
+			return new SensorSnapshot(value, pH, temperature, timestamp, pHTimestamp, temperatureTimestamp, mask);
+		case PH:
+			return new SensorSnapshot(kH, value, temperature, kHTimestamp, timestamp, temperatureTimestamp, mask);
+		default:
+			return new SensorSnapshot(kH, pH, value, kHTimestamp, pHTimestamp, timestamp, mask);
+		}
+	}
+	
+	/**
+	 * @param metric metric consumed
+	 * @return a copy of this snapshot with the value of the metric no more fresh.
+	 */
+	public SensorSnapshot withoutFresh(Metric metric) {
+		return new SensorSnapshot(kH, pH, temperature, kHTimestamp, pHTimestamp, temperatureTimestamp, freshMask & ~(1 << metric.ordinal()));
+	}
+
+	public float getKH() {
+		return kH;
+	}
+
+	public float getPH() {
+		return pH;
+	}
+
+	public float getTemperature() {
+		return temperature;
+	}
+	
+	/**
+	 * @param metric
+	 * @return the time at which the last value of the metric was received, 0 if nothing has been received.
+	 */
+	public long getTimestamp(Metric metric) {
+		switch(metric) {
+		case KH:
+			return kHTimestamp;
+		case PH:
+			return pHTimestamp;
+		default:
+			return temperatureTimestamp;
+		}
+	}
+	
+	/**
+	 * @param metric
+	 * @return true if the last value of the metric has not been consumed yet.
+	 */
+	public boolean isFresh(Metric metric) {
+		return (freshMask & (1 << metric.ordinal())) != 0;
+	}
+
+	public int getFreshMask() {
+		return freshMask;
+	}
+	
+	@Override
+	public String toString() {
+		return "{pH=" + pH + ", kH=" + kH + ", temperature=" + temperature + ", fresh=" + Integer.toBinaryString(freshMask) + "}";
+	}
+}
@@ -0,0 +1,234 @@
+package it.unipi.iot.aquarium;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleStore;
+import it.unipi.iot.storage.SampleVisitor;
+
+/**
+ * Startup phase that rebuilds the state of the aquariums from the storage, so that the control logic resumes from the last known
+ * values instead of zeroed readings. <br>
+ * For each aquarium found in the storage it reads the last value of each sensor and actuator and the recent history of the CO2
+ * dispensed; each read is a query on the index (aquarium, timestamp) of a table, and the reads are run in parallel on
+ * warmStartThreads threads. The state is applied with {@link Aquarium#restore(RestoredState)} before the MQTT collector starts.
+ * 
+ * @author Fabi8997
+ */
+public class WarmStart {
+	
+	private static final Logger LOGGER = new Logger("Warm Start", Colors.ANSI_CYAN);
+	
+	//Kinds of samples from which the state is restored
+	private static final SampleKind[] KINDS = {
+			SampleKind.PH,
+			SampleKind.KH,
+			SampleKind.TEMPERATURE,
+			SampleKind.OSMOTIC_WATER_TANK,
+			SampleKind.CO2_DISPENSER,
+			SampleKind.FAN,
+			SampleKind.HEATER};
+	
+	//Number of threads running the reads, 0 to disable the warm start
+	private final int threads;
+	
+	//Number of values of CO2 dispensed read for each aquarium
+	private final int co2History;
+	
+	//Maximum milliseconds spent on the reads
+	private final long timeout;
+	
+	/**
+	 * Class constructor.
+	 * @param configurationParameters
+	 */
+	public WarmStart(ConfigurationParameters configurationParameters) {
+		this.threads = configurationParameters.warmStartThreads;
+		this.co2History = Math.max(1, configurationParameters.warmStartCO2History);
+		this.timeout = configurationParameters.warmStartTimeout;
+	}
+	
+	/**
+	 * Reads the state of the aquariums from the storage and restores it in the registry.
+	 * @param db storage of the samples
+	 * @param aquariumRegistry registry in which the aquariums are restored
+	 * @return the number of restored aquariums.
+	 */
+	public int restore(final SampleStore db, AquariumRegistry aquariumRegistry) {
+		
+		if(threads <= 0) {
+			return 0;
+		}
+		
+		long start = System.currentTimeMillis();
+		long deadline = start + timeout;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger(0);
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "warm-start-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		try {
+			
+			//Aquariums that stored at least a sample
+			List<Future<List<String>>> aquariumReads = new ArrayList<Future<List<String>>>();
+			for(final SampleKind kind : KINDS) {
+				aquariumReads.add(executor.submit(new Callable<List<String>>() {
+					@Override
+					public List<String> call() {
+						return db.aquariums(kind);
+					}
+				}));
+			}
+			
+			Set<String> aquariumIds = new LinkedHashSet<String>();
+			for(Future<List<String>> aquariumRead : aquariumReads) {
+				List<String> ids = get(aquariumRead, deadline);
+				if(ids != null) {
+					aquariumIds.addAll(ids);
+				}
+			}
+			
+			//One read for each kind of each aquarium
+			Map<String, RestoredState> states = new LinkedHashMap<String, RestoredState>();
+			List<Future<Boolean>> latestReads = new ArrayList<Future<Boolean>>();
+			for(final String aquariumId : aquariumIds) {
+				
+				RestoredState state = new RestoredState();
+				states.put(aquariumId, state);
+				
+				for(final SampleKind kind : KINDS) {
+					final int count = (kind == SampleKind.CO2_DISPENSER) ? co2History : 1;
+					final SampleVisitor visitor = visitorOf(kind, state, count);
+					latestReads.add(executor.submit(new Callable<Boolean>() {
+						@Override
+						public Boolean call() {
+							return db.latest(kind, aquariumId, count, visitor);
+						}
+					}));
+				}
+			}
+			
+			int failed = 0;
+			for(Future<Boolean> latestRead : latestReads) {
+				if(!Boolean.TRUE.equals(get(latestRead, deadline))) {
+					failed++;
+				}
+			}
+			if(failed > 0) {
+				LOGGER.error("{} reads failed or timed out, the missing values start from zero.", failed);
+			}
+			
+			for(Map.Entry<String, RestoredState> entry : states.entrySet()) {
+				aquariumRegistry.getOrCreate(entry.getKey()).restore(entry.getValue());
+			}
+			
+			LOGGER.info("Restored the state of {} aquariums in {} ms.", states.size(), System.currentTimeMillis() - start);
+			return states.size();
+		
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * @return the result of the future, or null if it failed or it is not completed before the deadline.
+	 */
+	private static <T> T get(Future<T> future, long deadline) {
+		try {
+			return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.error("Problem during the reading of the state.", e.getCause());
+		} catch (TimeoutException e) {
+			future.cancel(true);
+		}
+		return null;
+	}
+	
+	/**
+	 * @param kind kind of the samples
+	 * @param state state in which the samples are restored
+	 * @param count number of samples read
+	 * @return the visitor that stores the samples of the kind, received from the most recent one, in the state.
+	 */
+	private static SampleVisitor visitorOf(SampleKind kind, final RestoredState state, final int count) {
+		
+		if(kind == SampleKind.PH || kind == SampleKind.KH || kind == SampleKind.TEMPERATURE) {
+			final Metric metric = (kind == SampleKind.PH) ? Metric.PH : (kind == SampleKind.KH) ? Metric.KH : Metric.TEMPERATURE;
+			return new SampleVisitor() {
+				@Override
+				public void visit(long timestamp, float value, float level) {
+					state.setValue(metric, value, timestamp);
+				}
+			};
+		}
+		
+		if(kind == SampleKind.OSMOTIC_WATER_TANK) {
+			return new SampleVisitor() {
+				@Override
+				public void visit(long timestamp, float value, float level) {
+					state.setOsmoticWaterTankLevel(value);
+				}
+			};
+		}
+		
+		if(kind == SampleKind.CO2_DISPENSER) {
+			return new SampleVisitor() {
+				
+				private final float[] dispensed = new float[count];
+				private int size = 0;
+				
+				@Override
+				public void visit(long timestamp, float value, float level) {
+					if(size == 0) {
+						state.setCo2TankLevel(level);
+					}
+					if(size < dispensed.length) {
+						dispensed[size++] = value;
+						float[] copy = new float[size];
+						System.arraycopy(dispensed, 0, copy, 0, size);
+						state.setCo2Dispensed(copy);
+					}
+				}
+			};
+		}
+		
+		final boolean fan = (kind == SampleKind.FAN);
+		return new SampleVisitor() {
+			@Override
+			public void visit(long timestamp, float value, float level) {
+				if(fan) {
+					state.setFanActive(value != 0);
+				} else {
+					state.setHeaterActive(value != 0);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,280 @@
+package it.unipi.iot.coap;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
+
+/**
+ * State of an actuator set with PUT requests of the form parameter=value, e.g. mode=on or value=12.50. <br>
+ * It keeps the value requested by the control logic, the value of the request in flight and the last value acknowledged by the
+ * device, so that: <br>
+ * - a value already acknowledged, or already going to be sent, is not sent again <br>
+ * - only one request at a time is in flight: a newer value supersedes the one waiting to be sent and it is sent when the
+ * response of the request in flight arrives <br>
+ * - a value requested within coalescingWindow milliseconds from the previous request is sent at the end of the window, so
+ * rapid on/off flips are sent as their last value only, or not at all if it is the acknowledged one. <br>
+ * The subclasses handle the changes acknowledged by the device, e.g. logging them and writing them on the database.
+ *
+ * @author Fabi8997
+ */
+public abstract class ActuatorState {
+	
+	public static final String ON = "on";
+	public static final String OFF = "off";
+	
+	private static final Logger LOGGER = new Logger("Smart Aquarium ", Colors.ANSI_CYAN);
+	
+	private static final Counter SENT = MetricsRegistry.DEFAULT.counter("coap_actuator_commands_sent_total",
+			"Commands sent to the actuators.");
+	private static final Counter SUPPRESSED = MetricsRegistry.DEFAULT.counter("coap_actuator_commands_suppressed_total",
+			"Commands not sent because the actuator already had, or was going to have, the requested value.");
+	private static final Counter SUPERSEDED = MetricsRegistry.DEFAULT.counter("coap_actuator_commands_superseded_total",
+			"Commands replaced by a newer one while waiting to be sent.");
+	
+	//Sends the commands delayed by the coalescing window of all the actuators
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "actuator-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	
+	private final String device;
+	private final CoapClient client;
+	private final String parameter;
+	private final LatencyHistogram roundTrip;
+	private final long coalescingWindow;
+	
+	//Last value requested, value of the request in flight and last value acknowledged by the device, null if none
+	private String desired;
+	private String inFlight;
+	private String acknowledged;
+	
+	//True if a send is scheduled at the end of the coalescing window
+	private boolean delayed;
+	
+	//System.currentTimeMillis() of the last request sent
+	private long lastSent;
+	
+	/**
+	 * Class constructor.
+	 * @param device name of the device in the logs
+	 * @param client client of the resource of the actuator
+	 * @param parameter name of the parameter of the PUT requests, e.g. mode
+	 * @param roundTrip histogram of the round trip time of the PUT requests
+	 * @param coalescingWindow minimum time between two requests in milliseconds, 0 to send every change immediately
+	 */
+	public ActuatorState(String device, CoapClient client, String parameter, LatencyHistogram roundTrip, long coalescingWindow) {
+		this.device = device;
+		this.client = client;
+		this.parameter = parameter;
+		this.roundTrip = roundTrip;
+		this.coalescingWindow = Math.max(0, coalescingWindow);
+		this.lastSent = 0;
+	}
+	
+	/**
+	 * Called when the device acknowledges a value different from the previous one.
+	 * @param value value acknowledged
+	 */
+	protected abstract void changed(String value);
+	
+	/**
+	 * Requests a new value for the actuator. It is sent immediately only if it differs from the acknowledged one, no request is
+	 * in flight and the coalescing window of the previous request is over.
+	 * @param value value requested
+	 * @return true if the request has been sent.
+	 */
+	public boolean request(String value) {
+		return request(value, false);
+	}
+	
+	/**
+	 * Requests a new value for the actuator ignoring the coalescing window, e.g. when the device is stopped.
+	 * @param value value requested
+	 * @return true if the request has been sent.
+	 */
+	public boolean requestNow(String value) {
+		return request(value, true);
+	}
+	
+	private boolean request(String value, boolean now) {
+		
+		String toSend;
+		synchronized(this) {
+			
+			//While a request is pending the value to compare with is the last one requested
+			boolean pending = (inFlight != null) || delayed;
+			if(value.equals(pending ? desired : acknowledged)) {
+				SUPPRESSED.increment();
+				return false;
+			}
+			
+			//A value still waiting to be sent is replaced
+			if(pending && !desired.equals((inFlight != null) ? inFlight : acknowledged)) {
+				SUPERSEDED.increment();
+			}
+			
+			desired = value;
+			toSend = next(now);
+		}
+		
+		if(toSend == null) {
+			return false;
+		}
+		
+		send(toSend);
+		return true;
+	}
+	
+	/**
+	 * Decides if the desired value must be sent now, at the end of the coalescing window or not at all. It must be called
+	 * holding the lock.
+	 * @param now true to ignore the coalescing window
+	 * @return the value to be sent, null if none.
+	 */
+	private String next(boolean now) {
+		
+		if(inFlight != null || desired == null || desired.equals(acknowledged)) {
+			return null;
+		}
+		
+		long delay = now ? 0 : lastSent + coalescingWindow - System.currentTimeMillis();
+		if(delay > 0) {
+			if(!delayed) {
+				delayed = true;
+				SCHEDULER.schedule(new Runnable() {
+					@Override
+					public void run() {
+						dispatch();
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+			return null;
+		}
+		
+		delayed = false;
+		inFlight = desired;
+		lastSent = System.currentTimeMillis();
+		return inFlight;
+	}
+	
+	/**
+	 * Sends the desired value at the end of the coalescing window.
+	 */
+	private void dispatch() {
+		
+		String toSend;
+		synchronized(this) {
+			
+			//Already sent by requestNow
+			if(!delayed) {
+				return;
+			}
+			
+			delayed = false;
+			toSend = next(false);
+		}
+		
+		if(toSend != null) {
+			send(toSend);
+		}
+	}
+	
+	private void send(final String value) {
+		
+		SENT.increment();
+		client.put(new TimedCoapHandler(roundTrip, new CoapHandler() {
+			
+			@Override
+			public void onLoad(CoapResponse response) {
+				if(response == null || !response.isSuccess()) {
+					
+					LOGGER.warn("Put operation failed [device: {}].", device);
+					completed(value, false);
+				} else {
+					completed(value, true);
+				}
+			}
+			
+			@Override
+			public void onError() {
+				LOGGER.warn("Put operation failed [device: {}].", device);
+				completed(value, false);
+			}
+		
+		}), parameter + "=" + value, MediaTypeRegistry.TEXT_PLAIN);
+	}
+	
+	/**
+	 * Handles the response of the request in flight and sends the value requested meanwhile, if any.
+	 * @param value value of the request
+	 * @param success true if the device acknowledged the value
+	 */
+	private void completed(String value, boolean success) {
+		
+		boolean changed = false;
+		String toSend;
+		synchronized(this) {
+			
+			inFlight = null;
+			if(success) {
+				changed = !value.equals(acknowledged);
+				acknowledged = value;
+			} else if(value.equals(desired)) {
+				
+				//Not retried, the control logic requests it again while the actuator is not in the requested state
+				desired = acknowledged;
+			}
+			
+			toSend = next(false);
+		}
+		
+		if(changed) {
+			changed(value);
+		}
+		
+		if(toSend != null) {
+			send(toSend);
+		}
+	}
+	
+	/**
+	 * Sets the value reported by the device, e.g. in a notification, without sending any request.
+	 * @param value value reported by the device
+	 */
+	public synchronized void reported(String value) {
+		acknowledged = value;
+		if(inFlight == null && !delayed) {
+			desired = value;
+		}
+	}
+	
+	/**
+	 * @return the last value acknowledged or reported by the device, null if not known.
+	 */
+	public synchronized String getAcknowledged() {
+		return acknowledged;
+	}
+	
+	/**
+	 * @return true if the last value acknowledged or reported by the device is "on".
+	 */
+	public boolean isOn() {
+		return ON.equals(getAcknowledged());
+	}
+}
@@ -1,34 +1,44 @@
 package it.unipi.iot.coap.CO2;
 
 import org.eclipse.californium.core.CoapClient;
-import org.eclipse.californium.core.CoapHandler;
-import org.eclipse.californium.core.CoapResponse;
-import org.eclipse.californium.core.coap.MediaTypeRegistry;
 
+import it.unipi.iot.aquarium.Metric;
+import it.unipi.iot.aquarium.RestoredState;
+import it.unipi.iot.aquarium.SensorSnapshot;
+import it.unipi.iot.coap.ActuatorState;
+import it.unipi.iot.coap.TimedCoapHandler;
 import it.unipi.iot.configuration.ConfigurationParameters;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.LatencyHistogram;
 
 /**
  * 
  * This class extends the CoapClient class. <br> It provides the methods to: <br>
  * - compute a new level of Co2 <br>
  * - activate the dispenser <br>
- * - change the CO2 dispensed
+ * - change the CO2 dispensed <br>
+ * The requests that would not change the status of the dispenser are not sent, see {@link ActuatorState}.
  * 
  * @author Fabi8997
  * 
  */
 public class CO2Dispenser extends CoapClient {
 	
-	private static final String LOG = "[" + Colors.ANSI_CYAN + "Smart Aquarium " + Colors.ANSI_RESET + "]";
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "Smart Aquarium " + Colors.ANSI_RESET + " ]";
+	private static final Logger LOGGER = new Logger("Smart Aquarium ", Colors.ANSI_CYAN);
+	
+	//Round trip time of the PUT requests
+	private static final LatencyHistogram PUT_ROUND_TRIP = TimedCoapHandler.putRoundTrip("co2_dispenser");
 	
 	//Status
 	float co2DispenserTankLevel; 
-	boolean co2DispenserTankFlowActive;
 	private float currentVariation;
 	private float currentCO2;
-	float minLevel;
+	volatile float minLevel;
+	
+	//Requested and acknowledged status of the flow and value of CO2 dispensed
+	private final ActuatorState flow;
+	private final ActuatorState dose;
 	
 	//TODO Define the threshold
 	private static float THRESHOLD = (float) 2;
@@ -38,16 +48,44 @@ public class CO2Dispenser extends CoapClient {
 	/**
 	 * Class constructor.
 	 * 
-	 * @param ipAddress of the URI
+	 * @param address host of the device in the URI, followed by the port if it is not the default one, e.g. [fd00::202:2:2:2]
+	 * or 127.0.0.1:5690
 	 * @param configurationParameters configuration parameters
 	 */
-	public CO2Dispenser(String ipAddress, ConfigurationParameters configurationParameters) {
+	public CO2Dispenser(String address, ConfigurationParameters configurationParameters) {
+		this(address, configurationParameters, null, null);
+	}
+	
+	
+	/**
+	 * Class constructor, resuming the dosing from the state restored at startup. <br>
+	 * If CO2 was dispensed before the restart the dispenser starts from the last value and variation stored, and the initial
+	 * value is computed from the restored values of the sensors, if all of them are known.
+	 * 
+	 * @param address host of the device in the URI, followed by the port if it is not the default one, e.g. [fd00::202:2:2:2]
+	 * or 127.0.0.1:5690
+	 * @param configurationParameters configuration parameters
+	 * @param restoredState state restored at startup, null if not available
+	 * @param snapshot last values of the sensors, null if not available
+	 */
+	public CO2Dispenser(String address, ConfigurationParameters configurationParameters, RestoredState restoredState, SensorSnapshot snapshot) {
 			
-			super("coap://[" + ipAddress + "]/"+configurationParameters.co2DispenserTopic+"/tank");
+			super("coap://" + address + "/"+configurationParameters.co2DispenserTopic+"/tank");
 			
 			this.minLevel = configurationParameters.minCO2tankLevel;
 			
-			this.co2DispenserTankFlowActive = false;
+			this.flow = new ActuatorState("CO2Dispenser", this, "mode", PUT_ROUND_TRIP, configurationParameters.actuatorCoalescingWindow) {
+				@Override
+				protected void changed(String mode) {
+					LOGGER.info("CO2 dispenser [ mode = {} ].", mode);
+				}
+			};
+			this.dose = new ActuatorState("CO2Dispenser", this, "value", PUT_ROUND_TRIP, configurationParameters.actuatorCoalescingWindow) {
+				@Override
+				protected void changed(String value) {
+					LOGGER.info("Changed CO2 dispensed [ value = {} ].", value);
+				}
+			};
 			
 			//Initialize current variation, this is needed to know how much must be increase or decrease the PH value
 			this.currentVariation = 0;
@@ -55,10 +93,27 @@ public class CO2Dispenser extends CoapClient {
 			//Set to 0 so the new value is over the threshold always
 			this.currentCO2 = 0;
 			
-			//Set the initial level of CO2 to be dispensed based on the optimal values
-			computeNewCO2(configurationParameters.pHOptimalValue,
-						  configurationParameters.kHOptimalValue,
-						  configurationParameters.temperatureOptimalValue);
+			//Resume from the last value dispensed before the restart
+			if(restoredState != null && restoredState.hasCo2Dispensed()) {
+				this.currentCO2 = restoredState.getLastCo2Dispensed();
+				this.currentVariation = restoredState.getLastCo2Variation();
+				if(!Float.isNaN(restoredState.getCo2TankLevel())) {
+					this.co2DispenserTankLevel = restoredState.getCo2TankLevel();
+				}
+			}
+			
+			if(snapshot != null && snapshot.getTimestamp(Metric.PH) > 0 && snapshot.getTimestamp(Metric.KH) > 0
+					&& snapshot.getTimestamp(Metric.TEMPERATURE) > 0) {
+				
+				//Set the initial level of CO2 to be dispensed based on the last values of the sensors
+				computeNewCO2(snapshot.getPH(), snapshot.getKH(), snapshot.getTemperature());
+			} else {
+				
+				//Set the initial level of CO2 to be dispensed based on the optimal values
+				computeNewCO2(configurationParameters.pHOptimalValue,
+							  configurationParameters.kHOptimalValue,
+							  configurationParameters.temperatureOptimalValue);
+			}
 		}
 	
 	
@@ -99,109 +154,32 @@ public class CO2Dispenser extends CoapClient {
 	
 	
 	/**
-	 * Send a put request to activate the flow of CO2, the post variable set is mode = on.<br>
-	 * The put request is handled by a CoapHandler that onLoad changes the value of the flag to check the flow status,
-	 * while onError \\TODO.
+	 * Request the activation of the flow of CO2, the post variable set is mode = on.<br>
+	 * The flag to check the flow status is set when the device acknowledges it.
 	 * 
 	 */
 	public void activateFlow() {
-		
-		//send put mode on
-		this.put(new CoapHandler() {
-            
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: CO2Dispenser].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " CO2 dispenser [ mode = "+Colors.ANSI_GREEN+"on"+Colors.ANSI_RESET+" ].");
-                    	
-                    	//Set the flag to signal that the flow is active
-                		co2DispenserTankFlowActive = true;
-                    }
-                }
-            }
-
-            public void onError() {
-                System.out.println(LOG_ERROR + " Put operation failed [device: CO2Dispenser].");
-            }
-
-			
-
-        }, "mode=on", MediaTypeRegistry.TEXT_PLAIN);
+		flow.request(ActuatorState.ON);
 	}
 	
 	
 	/**
-	 * Send a put request to change the value of CO2 dispensed, the post variable set is value = currentCO2.<br>
-	 * The put request is handled by a CoapHandler.
+	 * Request to change the value of CO2 dispensed, the post variable set is value = currentCO2.<br>
+	 * It is not sent if the device already dispenses the same value.
 	 * 
 	 */
 	public void setCO2Dispensed() {
-		
-		//send put mode on
-		this.put(new CoapHandler() {
-            
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: CO2Dispenser].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " Changed CO2 dispensed [ value = "+Colors.ANSI_GREEN+String.format("%.2f",currentCO2)+Colors.ANSI_RESET+" ].");
-                    }
-                }
-            }
-
-            public void onError() {
-                System.out.println(LOG_ERROR + " Put operation failed [device: CO2Dispenser].");
-            }
-
-			
-
-        }, "value="+String.format("%.2f",currentCO2), MediaTypeRegistry.TEXT_PLAIN);
+		dose.request(String.format("%.2f",currentCO2));
 	}
 	
 	
 	/**
-	 * Send a put request to stop the flow of CO2, the post variable set is mode = off.<br>
-	 * The put request is handled by a CoapHandler that onLoad changes the value of the flag to check the flow status,
-	 * while onError \\TODO.
+	 * Request to stop the flow of CO2, the post variable set is mode = off.<br>
+	 * The flag to check the flow status is set when the device acknowledges it.
 	 * 
 	 */
 	public void stopFlow() {
-		
-		//send put mode off
-		this.put(new CoapHandler() {
-            
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: CO2Dispenser].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " CO2 dispenser [ mode = "+Colors.ANSI_RED+"off"+Colors.ANSI_RESET+" ].");
-                    	
-                    	//Set the flag to signal that the flow is active
-                		co2DispenserTankFlowActive = false;
-                    }
-                }
-            }
-
-            public void onError() {
-                System.out.println(LOG_ERROR + " Put operation failed [device: CO2Dispenser].");
-            }
-
-			
-
-        }, "mode=off", MediaTypeRegistry.TEXT_PLAIN);
+		flow.request(ActuatorState.OFF);
 	}
 	
 	public boolean isHighVariation() {
@@ -218,15 +196,22 @@ public class CO2Dispenser extends CoapClient {
 
 
 	public boolean isCo2DispenserTankFlowActive() {
-		return co2DispenserTankFlowActive;
+		return flow.isOn();
 	}
 
 	public boolean toBeFilled() {
 		return (this.co2DispenserTankLevel <= this.minLevel);
 	}
+	
+	public void setMinLevel(float minLevel) {
+		this.minLevel = minLevel;
+	}
 
+	/**
+	 * Set the status of the flow reported by the device, without sending any request.
+	 */
 	public void setCo2DispenserTankFlowActive(boolean co2DispenserTankFlowActive) {
-		this.co2DispenserTankFlowActive = co2DispenserTankFlowActive;
+		flow.reported(co2DispenserTankFlowActive ? ActuatorState.ON : ActuatorState.OFF);
 	}
 
 
@@ -243,7 +228,7 @@ public class CO2Dispenser extends CoapClient {
 	 * Stop the flow of CO2 and stop the device.
 	 */
 	public void stop() {
-		this.stopFlow();
+		flow.requestNow(ActuatorState.OFF);
 		this.delete();
 	}
 	
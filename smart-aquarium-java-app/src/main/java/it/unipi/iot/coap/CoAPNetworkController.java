@@ -1,5 +1,9 @@
 package it.unipi.iot.coap;
 
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+
 import org.eclipse.californium.core.CoapHandler;
 import org.eclipse.californium.core.CoapObserveRelation;
 import org.eclipse.californium.core.CoapResource;
@@ -11,12 +15,18 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.aquarium.RestoredState;
 import it.unipi.iot.coap.CO2.CO2Dispenser;
 import it.unipi.iot.coap.osmoticwater.OsmoticWaterTank;
 import it.unipi.iot.coap.temperature.TemperatureController;
+import it.unipi.iot.configuration.ConfigurationListener;
 import it.unipi.iot.configuration.ConfigurationParameters;
-import it.unipi.iot.database.DatabaseManager;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleStore;
 
 /**
  * 
@@ -26,81 +36,79 @@ import it.unipi.iot.log.Colors;
  *  to make available their IP addresses to be contacted by the application. When acts as a client it sends commands to the actuators 
  *  and queries informations about their status in order to be stored inside the DB.
  */
-public class CoAPNetworkController extends CoapServer {
+public class CoAPNetworkController extends CoapServer implements ConfigurationListener {
 	
-	private static final String LOG = "[" + Colors.ANSI_PURPLE + "CoAP Controller" + Colors.ANSI_RESET + "]";
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "CoAP Controller" + Colors.ANSI_RESET + " ]";
+	//Qualified inside the resources, where it is hidden by the logger inherited from CoapResource
+	private static final Logger LOGGER = new Logger("CoAP Controller", Colors.ANSI_PURPLE);
 	
-	//CoAP Clients
-	OsmoticWaterTank osmoticWaterTank;
-	CoapObserveRelation observeWaterTankRelation;
-	CoapObserveRelation observeCO2TankRelation;
-	TemperatureController temperatureController;
-	CO2Dispenser co2Dispenser;
+	//Registry of the aquariums, each aquarium keeps the CoAP clients of its actuators
+	private final AquariumRegistry aquariumRegistry;
 	
 	//DB table names
     private final String osmoticWaterTankDatabaseTableName;
 	private final String co2DispenserDatabaseTableName;
 	
-	//ConfigurationParameters
-	ConfigurationParameters configurationParameters;
+	//ConfigurationParameters, replaced when the configuration is reloaded
+	volatile ConfigurationParameters configurationParameters;
+	
+	//Storage of the values observed on the actuators
+	private final SampleStore db;
 	
-	//DB manager to set up the connection to the DB and to query it
-	private final DatabaseManager db;
+	//Released when all the devices of the first aquarium are registered
+	private final CountDownLatch aquariumReady;
 	
 	/**
 	 * Constructs a CoAP server. <br>
 	 * Add the registration resource to be handled by the server.
 	 * @param configurationParameters
+	 * @param db storage used to store the values observed on the actuators
+	 * @param aquariumRegistry registry in which the registered devices of each aquarium are stored
 	 */
-	public CoAPNetworkController(ConfigurationParameters configurationParameters, DatabaseManager db) {
+	public CoAPNetworkController(ConfigurationParameters configurationParameters, SampleStore db, AquariumRegistry aquariumRegistry) {
 		super();
 		this.add(new CoAPRegistrationResource("registration"));
 		this.configurationParameters = configurationParameters;
 		this.db = db;
+		this.aquariumRegistry = aquariumRegistry;
+		this.aquariumReady = new CountDownLatch(1);
 		this.osmoticWaterTankDatabaseTableName = configurationParameters.osmoticWaterTankDatabaseTableName;
 		this.co2DispenserDatabaseTableName = configurationParameters.co2DispenserDatabaseTableName;
 	}
 	
 	/**
-	 * Getter
-	 * @return CoAP Client for the osmotic water tank
+	 * @return true if at least an aquarium has all its devices registered.
 	 */
-	public OsmoticWaterTank getOsmoticWaterTank() {
-		return osmoticWaterTank;
-	}
-
-    
-	public boolean osmoticWaterTankRegistered() {
-		return osmoticWaterTank != null;
-	}
-	
-	public boolean temperatureControllerRegistered() {
-		return temperatureController != null;
-	}
-	
-	public boolean co2DispenserRegistered() {
-		return co2Dispenser != null;
+	public boolean allDevicesRegistered() {
+		return aquariumRegistry.anyAquariumReady();
 	}
 	
 	/**
-	 * Getter
-	 * @return CoAP Client for the temperature controller
+	 * Applies the reloaded configuration to the devices registered from now on and updates the minimum levels of the tanks
+	 * of the registered ones.
 	 */
-	public TemperatureController getTemperatureController() {
-		return temperatureController;
+	@Override
+	public void configurationChanged(ConfigurationParameters previous, ConfigurationParameters current) {
+		
+		this.configurationParameters = current;
+		
+		for(Aquarium aquarium : aquariumRegistry.getAll()) {
+			OsmoticWaterTank osmoticWaterTank = aquarium.getOsmoticWaterTank();
+			if(osmoticWaterTank != null) {
+				osmoticWaterTank.setMinLevel(current.minOsmoticWaterTankLevel);
+			}
+			CO2Dispenser co2Dispenser = aquarium.getCo2Dispenser();
+			if(co2Dispenser != null) {
+				co2Dispenser.setMinLevel(current.minCO2tankLevel);
+			}
+		}
 	}
-
+	
 	/**
-	 * Getter
-	 * @return CoAP Client for the CO2 dispenser
+	 * Waits until all the devices of at least an aquarium are registered.
+	 * @throws InterruptedException
 	 */
-	public CO2Dispenser getCo2Dispenser() {
-		return co2Dispenser;
-	}
-
-	public boolean allDevicesRegistered() {
-		return ((osmoticWaterTank != null) && (temperatureController != null) && (co2Dispenser != null));
+	public void awaitAllDevicesRegistered() throws InterruptedException {
+		aquariumReady.await();
 	}
 
 	/**
@@ -108,7 +116,9 @@ public class CoAPNetworkController extends CoapServer {
 	 * @author Fabi8997
 	 *
 	 *	Registration resource. It defines the methods to handle the POST requests coming from the devices that want to register to the 
-	 *  application.
+	 *  application.<br>
+	 *  Example of a registration: {"device": "osmoticWaterTank", "aquarium": "tank42"}; if the aquarium is missing the device belongs
+	 *  to the default aquarium. A device whose CoAP server does not listen on the default port adds it, e.g. "port": 5690.
 	 */
 	private class CoAPRegistrationResource extends CoapResource {
 
@@ -127,11 +137,10 @@ public class CoAPNetworkController extends CoapServer {
 			//Debug
 			//System.out.println(LOG + " new message received: " + exchange.getRequestText());
 			
-			//Retrieve the ipAddress of the sender
-			String ipAddress = exchange.getSourceAddress().getHostAddress();
-			
-			//To contain the device name
+			//To contain the device name, the aquarium identifier and the port of the device, 0 if it is the default one
 			String device = null;
+			String aquariumId = null;
+			long port = 0;
 			
 			//Objects to handle the JSON format
 			JSONParser parser = new JSONParser();
@@ -141,413 +150,354 @@ public class CoAPNetworkController extends CoapServer {
 				//Parse the payload of the request
 				requestTextJSON = (JSONObject) parser.parse(exchange.getRequestText());
 				
-				//Retrieve the value associated to the key "device"
+				//Retrieve the value associated to the key "device", to the key "aquarium" and to the optional key "port"
 				device = (String) requestTextJSON.get("device");
+				aquariumId = (String) requestTextJSON.get("aquarium");
+				if(requestTextJSON.get("port") != null) {
+					port = ((Number) requestTextJSON.get("port")).longValue();
+				}
 				
 			} catch (ParseException e) {
 				
 				//If the JSON document is malformed send BAD_REQUEST response
 				exchange.respond(ResponseCode.BAD_REQUEST);
-				e.printStackTrace();
+				CoAPNetworkController.LOGGER.error("Malformed JSON in the registration request.", e);
+				return;
+			} catch (ClassCastException e) {
+			
+				//A field of the wrong type
+				exchange.respond(ResponseCode.BAD_REQUEST);
+				return;
+			}
+			
+			//No device specified or port out of range
+			if(device == null || port < 0 || port > 65535) {
+				exchange.respond(ResponseCode.BAD_REQUEST);
+				return;
 			}
 			
+			//Address of the sender, used to contact the device
+			String address = deviceAddress(exchange.getSourceAddress(), (int) port);
+			
+			//Aquarium to which the device belongs
+			Aquarium aquarium = aquariumRegistry.getOrCreate(aquariumId);
+			
 			//Check the device value and create a new CoAP Client accordingly
+			boolean registered;
 			if(device.equals("osmoticWaterTank")) {
 				
-				//If no device already registered
-				if(osmoticWaterTank == null) {
-					
-					//Create a new CoAP Client
-					osmoticWaterTank = new OsmoticWaterTank(ipAddress,configurationParameters);
-					
-					//Create the observer relation
-					observeWaterTankRelation = osmoticWaterTank.observe(
-							new CoapHandler() {
-								@Override public void onLoad(CoapResponse response) {
-									
-									//Objects to handle the JSON format
-									JSONParser parser = new JSONParser();
-									JSONObject requestTextJSON = null;
-									
-									try {
-										requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
-									} catch (ParseException e) {
-										
-										System.out.println(LOG_ERROR + " " + e.getMessage());	
-									}
-
-									//If correctly parsed
-									if(requestTextJSON != null) {
-										
-										//Retrieve the mode field since if the flow can be stopped due to low level 
-										String mode = (String) requestTextJSON.get("mode");
-										
-										//Check if the mode is changed and set the flag
-										if(mode.equals("on") && !osmoticWaterTank.isOsmoticWaterTankFlowActive()) {
-											
-											//Set the flow as active
-											osmoticWaterTank.setOsmoticWaterTankFlowActive(true);
-											
-										}else if(mode.equals("off") && osmoticWaterTank.isOsmoticWaterTankFlowActive()){
-											
-											//Set the flow as inactive
-											osmoticWaterTank.setOsmoticWaterTankFlowActive(false);
-											
-										}
-						
-										//Retrieve the tank level
-									    osmoticWaterTank.setOsmoticWaterTankLevel(new Float((Double) requestTextJSON.get("level")));
-									    
-									    //Insert the sample in the DB
-									    db.insertSample(osmoticWaterTankDatabaseTableName, osmoticWaterTank.getOsmoticWaterTankLevel(), null);
-									    
-									    //LOG
-									    System.out.println(LOG + " Inserted " + requestTextJSON.toJSONString() + " in " + osmoticWaterTankDatabaseTableName + "." );
-									}
-								}
-								@Override public void onError() {
-									System.out.println(LOG_ERROR + " Connection to the osmotic water tank resource lost...");
-								}
-							});
-
-					
-					System.out.println(LOG + " new " + device + " registered!");
-					
-					//Set the response code and the payload message
-					exchange.respond(ResponseCode.CREATED, "registered");
-				}else {
-					
-					System.out.println(LOG + " " + device + " already registered!");
-					
-					//Device already registered
-					exchange.respond(ResponseCode.BAD_REQUEST);
-				}
-				
+				registered = registerOsmoticWaterTank(aquarium, address, device);
 				
 			} else if(device.equals("CO2Dispenser")) {
 				
-				//If no device already registered
-				if(co2Dispenser == null) {
-					
-					//Create a new CoAP Client
-					co2Dispenser = new CO2Dispenser(ipAddress,configurationParameters);
-					
-					//Create the observer relation
-					observeCO2TankRelation = co2Dispenser.observe(
-							new CoapHandler() {
-								@Override public void onLoad(CoapResponse response) {
-									
-									//Objects to handle the JSON format
-									JSONParser parser = new JSONParser();
-									JSONObject requestTextJSON = null;
-									
-									try {
-										requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
-									} catch (ParseException e) {
-										System.out.println(LOG_ERROR + " " + e.getMessage());
-										
-									}
-
-									//If correctly parsed
-									if(requestTextJSON != null) {
-										
-										//Retrieve the mode field since if the flow can be stopped due to low level 
-										String mode = (String) requestTextJSON.get("mode");
-										
-										//Check if the mode is changed and set the flag
-										if(mode.equals("on") && !co2Dispenser.isCo2DispenserTankFlowActive()) {
-											
-											//Set the flow as active
-											co2Dispenser.setCo2DispenserTankFlowActive(true);
-											
-										}else if(mode.equals("off") && co2Dispenser.isCo2DispenserTankFlowActive()){
-											
-											//Set the flow as inactive
-											co2Dispenser.setCo2DispenserTankFlowActive(false);
-											
-										}
-						
-										//Retrieve the tank level
-									    co2Dispenser.setCo2DispenserTankLevel(new Float((Double) requestTextJSON.get("level")));
-									    
-									    //Insert the sample in the DB
-									    db.insertSample(co2DispenserDatabaseTableName,
-									    				co2Dispenser.getCurrentCO2(),
-									    				co2Dispenser.getCo2DispenserTankLevel());
-									    
-									    //LOG
-									    System.out.println(LOG + " Inserted {" +
-									    				"\"Level\": " + co2Dispenser.getCo2DispenserTankLevel() + "," +
-									    				"\"Value\": " + co2Dispenser.getCurrentCO2() + 
-									    				"} in " + co2DispenserDatabaseTableName + "." );
-									}
-								}
-								
-								@Override public void onError() {
-									System.out.println(LOG_ERROR + " Connection to the CO2 tank resource lost...");
-								}
-							});
-				
-					System.out.println(LOG + " new " + device + " registered!");
-					
-					//Set the response code and the payload message
-					exchange.respond(ResponseCode.CREATED, "registered");
-				}else {
-					
-					System.out.println(LOG + " " + device + " already registered!");
-					
-					//Device already registered
-					exchange.respond(ResponseCode.BAD_REQUEST);
-				}
-				
+				registered = registerCO2Dispenser(aquarium, address, device);
 				
 			}else if(device.equals("temperatureController")) {
 				
-				//If no device already registered
-				if(temperatureController == null) {
-					
-					//Create a new CoAP Client
-					temperatureController = new TemperatureController(ipAddress,configurationParameters,db);
-					
-					System.out.println(LOG + " new " + device + " registered!");
-					
-					//Set the response code and the payload message
-					exchange.respond(ResponseCode.CREATED, "registered");
-				}else {
-					
-					System.out.println(LOG + " " + device + " already registered!");
-					
-					//Device already registered
-					exchange.respond(ResponseCode.BAD_REQUEST);
-				}
+				registered = registerTemperatureDevice(aquarium, address, device);
 				
 			}else if(device.equals("coapDevice")) {
 				
 				//Register all the devices
-				registerTemperatureDevice(exchange, ipAddress, "temperatureController");
-				registerOsmoticWaterTank(exchange, ipAddress, "osmoticWaterTank");
-				registerCO2Dispenser(exchange, ipAddress, "CO2Dispenser");
+				registerTemperatureDevice(aquarium, address, "temperatureController");
+				registerOsmoticWaterTank(aquarium, address, "osmoticWaterTank");
+				registerCO2Dispenser(aquarium, address, "CO2Dispenser");
 				
 				//ONLY FOR DEBUG
-				System.out.println(LOG + " new " + device + " registered --> ip address: "+ipAddress);
+				CoAPNetworkController.LOGGER.debug("new {} registered --> address: {}", device, address);
 				
-				//Set the response code and the payload message
-				exchange.respond(ResponseCode.CREATED, "registered");
+				registered = true;
 				
 			}else {
 				
 				//IF IT REACHES THIS POINT SOMETHING IN THE REQUEST IS WRONG
 				exchange.respond(ResponseCode.BAD_REQUEST);
+				return;
+			}
+			
+			if(registered) {
+				
+				//Set the response code and the payload message
+				exchange.respond(ResponseCode.CREATED, "registered");
+			}else {
+				
+				//Device already registered
+				exchange.respond(ResponseCode.BAD_REQUEST);
+			}
+			
+			//When all the devices of the aquarium are registered then the flow of CO2 starts
+			if(aquarium.startCo2DispenserIfReady()) {
+				CoAPNetworkController.LOGGER.info("All the devices of the aquarium {} are registered, CO2 flow started.", aquarium.getId());
+				
+				//Release the threads waiting for the first aquarium ready
+				aquariumReady.countDown();
 			}
 	 	}
 	}
 	
 	/**
-	 * Register a new temperature controller (used in case of coapDevice)
-	 * @param exchange
-	 * @param ipAddress
+	 * @param sourceAddress IP address of the device
+	 * @param port port of the CoAP server of the device, 0 for the default one
+	 * @return the authority of the URIs of the device: an IPv6 address is enclosed in brackets, an IPv4 address or a host name
+	 * is not.
+	 */
+	static String deviceAddress(InetAddress sourceAddress, int port) {
+		
+		String host = sourceAddress.getHostAddress();
+		if(sourceAddress instanceof Inet6Address) {
+			host = "[" + host + "]";
+		}
+		
+		return (port > 0) ? host + ":" + port : host;
+	}
+	
+	/**
+	 * Register a new temperature controller
+	 * @param aquarium aquarium to which the device belongs
+	 * @param address host and port of the device in its URIs
 	 * @param device
+	 * @return true if the device has been registered, false if it was already registered.
 	 */
-	private void registerTemperatureDevice(CoapExchange exchange, String ipAddress, String device) {
+	private boolean registerTemperatureDevice(Aquarium aquarium, String address, String device) {
 		
-		//If no device already registered
-		if(temperatureController == null) {
-			
-			//Create a new CoAP Client
-			temperatureController = new TemperatureController(ipAddress,configurationParameters,db);
-			
-			System.out.println(LOG + " new " + device + " created!");
+		synchronized(aquarium) {
 			
-		}else {
-			
-			System.out.println(LOG + " " + device + " already created!");
-
+			//If no device already registered
+			if(!aquarium.temperatureControllerRegistered()) {
+					
+				//Create a new CoAP Client
+				TemperatureController temperatureController = new TemperatureController(address,configurationParameters,db,aquarium.getId());
+				aquarium.setTemperatureController(temperatureController);
+				
+				//Turn on again the actuators that were active before the restart
+				RestoredState restoredState = aquarium.getRestoredState();
+				if(restoredState != null && Boolean.TRUE.equals(restoredState.getFanActive())) {
+					temperatureController.activateFan();
+				}
+				if(restoredState != null && Boolean.TRUE.equals(restoredState.getHeaterActive())) {
+					temperatureController.activateHeater();
+				}
+				
+				LOGGER.info("new {} registered [aquarium: {}]!", device, aquarium.getId());
+				return true;
+			}
 		}
+			
+		LOGGER.info("{} already registered [aquarium: {}]!", device, aquarium.getId());
+		return false;
 	}
 	
 	/**
 	 * Register a new osmotic water tank device
-	 * @param exchange
-	 * @param ipAddress
+	 * @param aquarium aquarium to which the device belongs
+	 * @param address host and port of the device in its URIs
 	 * @param device
+	 * @return true if the device has been registered, false if it was already registered.
 	 */
-	private void registerOsmoticWaterTank(CoapExchange exchange, String ipAddress, String device) {
+	private boolean registerOsmoticWaterTank(Aquarium aquarium, String address, String device) {
 		
-		//If no device already registered
-		if(osmoticWaterTank == null) {
-			
-			//Create a new CoAP Client
-			osmoticWaterTank = new OsmoticWaterTank(ipAddress,configurationParameters);
+		synchronized(aquarium) {
 			
-			//Create the observer relation
-			observeWaterTankRelation = osmoticWaterTank.observe(
-					new CoapHandler() {
-						@Override public void onLoad(CoapResponse response) {
-							
-							//Objects to handle the JSON format
-							JSONParser parser = new JSONParser();
-							JSONObject requestTextJSON = null;
-							
-							try {
-								requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
-							} catch (ParseException e) {
-								
-								System.out.println(LOG_ERROR + " " + e.getMessage());	
-							}
-
-							//If correctly parsed
-							if(requestTextJSON != null) {
-								
-								//Retrieve the mode field since if the flow can be stopped due to low level 
-								String mode = (String) requestTextJSON.get("mode");
-								
-								//Check if the mode is changed and set the flag
-								if(mode.equals("on") && !osmoticWaterTank.isOsmoticWaterTankFlowActive()) {
-									
-									//Set the flow as active
-									osmoticWaterTank.setOsmoticWaterTankFlowActive(true);
-									
-								}else if(mode.equals("off") && osmoticWaterTank.isOsmoticWaterTankFlowActive()){
-									
-									//Set the flow as inactive
-									osmoticWaterTank.setOsmoticWaterTankFlowActive(false);
-									
-								}
+			//If no device already registered
+			if(!aquarium.osmoticWaterTankRegistered()) {
 				
-								//Retrieve the tank level
-							    osmoticWaterTank.setOsmoticWaterTankLevel(new Float((Double) requestTextJSON.get("level")));
-							    
-							    //Insert the sample in the DB
-							    db.insertSample(osmoticWaterTankDatabaseTableName, osmoticWaterTank.getOsmoticWaterTankLevel(), null);
-							    
-							    //LOG
-							    System.out.println(LOG + " Inserted " + requestTextJSON.toJSONString() + " in " + osmoticWaterTankDatabaseTableName + "." );
-							}
-						}
-						@Override public void onError() {
-							System.out.println(LOG_ERROR + " Connection to the osmotic water tank resource lost...");
-						}
-					});
-
-			
-			System.out.println(LOG + " new " + device + " created!");
-			
-		}else {
-			
-			System.out.println(LOG + " " + device + " already created!");
-			
+				//Create a new CoAP Client
+				OsmoticWaterTank osmoticWaterTank = new OsmoticWaterTank(address,configurationParameters);
+				
+				//Start from the last level stored, until the first notification
+				RestoredState restoredState = aquarium.getRestoredState();
+				if(restoredState != null && !Float.isNaN(restoredState.getOsmoticWaterTankLevel())) {
+					osmoticWaterTank.setOsmoticWaterTankLevel(restoredState.getOsmoticWaterTankLevel());
+				}
+					
+				//Create the observer relation
+				CoapObserveRelation observeWaterTankRelation = osmoticWaterTank.observe(new OsmoticWaterTankObserver(aquarium.getId(), osmoticWaterTank));
+				
+				aquarium.setOsmoticWaterTank(osmoticWaterTank, observeWaterTankRelation);
+				
+				LOGGER.info("new {} registered [aquarium: {}]!", device, aquarium.getId());
+				return true;
+			}
 		}
 		
+		LOGGER.info("{} already registered [aquarium: {}]!", device, aquarium.getId());
+		return false;
 	}
 	
 	/**
-	 * Register a new CO2Dispenser (used in case of coapDevice)
-	 * @param exchange
-	 * @param ipAddress
+	 * Register a new CO2Dispenser
+	 * @param aquarium aquarium to which the device belongs
+	 * @param address host and port of the device in its URIs
 	 * @param device
+	 * @return true if the device has been registered, false if it was already registered.
 	 */
-	private void registerCO2Dispenser(CoapExchange exchange, String ipAddress, String device) {
+	private boolean registerCO2Dispenser(Aquarium aquarium, String address, String device) {
 		
-		//If no device already registered
-		if(co2Dispenser == null) {
+		synchronized(aquarium) {
 			
-			//Create a new CoAP Client
-			co2Dispenser = new CO2Dispenser(ipAddress,configurationParameters);
-			
-			//Create the observer relation
-			observeCO2TankRelation = co2Dispenser.observe(
-					new CoapHandler() {
-						@Override public void onLoad(CoapResponse response) {
-							
-							//Objects to handle the JSON format
-							JSONParser parser = new JSONParser();
-							JSONObject requestTextJSON = null;
-							
-							try {
-								requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
-							} catch (ParseException e) {
-								System.out.println(LOG_ERROR + " " + e.getMessage());
-								
-							}
-
-							//If correctly parsed
-							if(requestTextJSON != null) {
-								
-								//Retrieve the mode field since if the flow can be stopped due to low level 
-								String mode = (String) requestTextJSON.get("mode");
-								
-								//Check if the mode is changed and set the flag
-								if(mode.equals("on") && !co2Dispenser.isCo2DispenserTankFlowActive()) {
-									
-									//Set the flow as active
-									co2Dispenser.setCo2DispenserTankFlowActive(true);
-									
-								}else if(mode.equals("off") && co2Dispenser.isCo2DispenserTankFlowActive()){
+			//If no device already registered
+			if(!aquarium.co2DispenserRegistered()) {
+				
+				//Create a new CoAP Client
+				CO2Dispenser co2Dispenser = new CO2Dispenser(address,configurationParameters,aquarium.getRestoredState(),aquarium.getSnapshot());
+				
+				//Create the observer relation
+				CoapObserveRelation observeCO2TankRelation = co2Dispenser.observe(new CO2TankObserver(aquarium.getId(), co2Dispenser));
+				
+				aquarium.setCo2Dispenser(co2Dispenser, observeCO2TankRelation);
+				
+				LOGGER.info("new {} registered [aquarium: {}]!", device, aquarium.getId());
+				return true;
+			}
+		}
+		
+		LOGGER.info("{} already registered [aquarium: {}]!", device, aquarium.getId());
+		return false;
+	}
+	
+	/**
+	 * Handler of the notifications of the osmotic water tank resource: it updates the status of the tank and stores its level in the DB.
+	 */
+	private class OsmoticWaterTankObserver implements CoapHandler {
+		
+		private final String aquariumId;
+		private final OsmoticWaterTank osmoticWaterTank;
+		
+		public OsmoticWaterTankObserver(String aquariumId, OsmoticWaterTank osmoticWaterTank) {
+			this.aquariumId = aquariumId;
+			this.osmoticWaterTank = osmoticWaterTank;
+		}
+		
+		@Override public void onLoad(CoapResponse response) {
 									
-									//Set the flow as inactive
-									co2Dispenser.setCo2DispenserTankFlowActive(false);
+			//Objects to handle the JSON format
+			JSONParser parser = new JSONParser();
+			JSONObject requestTextJSON = null;
 									
-								}
-				
-								//Retrieve the tank level
-							    co2Dispenser.setCo2DispenserTankLevel(new Float((Double) requestTextJSON.get("level")));
-							    
-							    //Insert the sample in the DB
-							    db.insertSample(co2DispenserDatabaseTableName,
-							    				co2Dispenser.getCurrentCO2(),
-							    				co2Dispenser.getCo2DispenserTankLevel());
-							    
-							    //LOG
-							    System.out.println(LOG + " Inserted {" +
-							    				"\"Level\": " + co2Dispenser.getCo2DispenserTankLevel() + "," +
-							    				"\"Value\": " + co2Dispenser.getCurrentCO2() + 
-							    				"} in " + co2DispenserDatabaseTableName + "." );
-							}
-						}
+			try {
+				requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
+			} catch (ParseException e) {
+										
+				LOGGER.warn(e.getMessage());
+			}
+
+			//If correctly parsed
+			if(requestTextJSON != null) {
+										
+				//Retrieve the mode field since if the flow can be stopped due to low level 
+				String mode = (String) requestTextJSON.get("mode");
+										
+				//Check if the mode is changed and set the flag
+				if(mode.equals("on") && !osmoticWaterTank.isOsmoticWaterTankFlowActive()) {
+											
+					//Set the flow as active
+					osmoticWaterTank.setOsmoticWaterTankFlowActive(true);
+											
+				}else if(mode.equals("off") && osmoticWaterTank.isOsmoticWaterTankFlowActive()){
+											
+					//Set the flow as inactive
+					osmoticWaterTank.setOsmoticWaterTankFlowActive(false);
+											
+				}
 						
-						@Override public void onError() {
-							System.out.println(LOG_ERROR + " Connection to the CO2 tank resource lost...");
-						}
-					});
+				//Retrieve the tank level
+			    osmoticWaterTank.setOsmoticWaterTankLevel(new Float((Double) requestTextJSON.get("level")));
+									    
+			    //Insert the sample in the DB
+			    db.insertSample(aquariumId, SampleKind.OSMOTIC_WATER_TANK, osmoticWaterTank.getOsmoticWaterTankLevel(), System.currentTimeMillis());
+									    
+			    //LOG
+			    LOGGER.debug("Inserted {} in {} [aquarium: {}].", requestTextJSON, osmoticWaterTankDatabaseTableName, aquariumId);
+			}
+		}
 		
-			System.out.println(LOG + " new " + device + " created!");
-			
-		}else {
-			
-			System.out.println(LOG + " " + device + " already created!");
+		@Override public void onError() {
+			LOGGER.warn("Connection to the osmotic water tank resource lost [aquarium: {}]...", aquariumId);
+		}
+	}
+				
+	/**
+	 * Handler of the notifications of the CO2 tank resource: it updates the status of the tank and stores its level and the CO2
+	 * dispensed in the DB.
+	 */
+	private class CO2TankObserver implements CoapHandler {
+				
+		private final String aquariumId;
+		private final CO2Dispenser co2Dispenser;
+				
+		public CO2TankObserver(String aquariumId, CO2Dispenser co2Dispenser) {
+			this.aquariumId = aquariumId;
+			this.co2Dispenser = co2Dispenser;
+		}
+					
+		@Override public void onLoad(CoapResponse response) {
+									
+			//Objects to handle the JSON format
+			JSONParser parser = new JSONParser();
+			JSONObject requestTextJSON = null;
+									
+			try {
+				requestTextJSON = (JSONObject) parser.parse(response.getResponseText());
+			} catch (ParseException e) {
+				LOGGER.warn(e.getMessage());
+										
+			}
 
+			//If correctly parsed
+			if(requestTextJSON != null) {
+										
+				//Retrieve the mode field since if the flow can be stopped due to low level 
+				String mode = (String) requestTextJSON.get("mode");
+										
+				//Check if the mode is changed and set the flag
+				if(mode.equals("on") && !co2Dispenser.isCo2DispenserTankFlowActive()) {
+											
+					//Set the flow as active
+					co2Dispenser.setCo2DispenserTankFlowActive(true);
+											
+				}else if(mode.equals("off") && co2Dispenser.isCo2DispenserTankFlowActive()){
+											
+					//Set the flow as inactive
+					co2Dispenser.setCo2DispenserTankFlowActive(false);
+											
+				}
+						
+				//Retrieve the tank level
+			    co2Dispenser.setCo2DispenserTankLevel(new Float((Double) requestTextJSON.get("level")));
+									    
+			    //Insert the sample in the DB
+			    db.insertSample(aquariumId,
+			    				SampleKind.CO2_DISPENSER,
+			    				co2Dispenser.getCo2DispenserTankLevel(),
+			    				co2Dispenser.getCurrentCO2(),
+			    				System.currentTimeMillis());
+									    
+			    //LOG
+			    if(LOGGER.isDebugEnabled()) {
+			    	LOGGER.debug("Inserted {\"Level\": {},\"Value\": {}} in {} [aquarium: {}].",
+			    			co2Dispenser.getCo2DispenserTankLevel(), co2Dispenser.getCurrentCO2(), co2DispenserDatabaseTableName, aquariumId);
+			    }
+			}
 		}
+								
+		@Override public void onError() {
+			LOGGER.warn("Connection to the CO2 tank resource lost [aquarium: {}]...", aquariumId);
+	 	}
 	}
 	
 	/**
-	* Cancel the observe relation, release the CoAP Client resources and destroy the CoAP server.
+	* Cancel the observe relations, release the CoAP Client resources of all the aquariums and destroy the CoAP server.
 	*/
 	public void close() {
 		
-		//Turn off the dispenser
-		this.co2Dispenser.stop();
-		this.co2Dispenser = null;
-		
-		//Turn off the osmotic water tank
-		this.osmoticWaterTank.stop();
-		this.osmoticWaterTank = null;
-		
-		//Turn off the temperature controller, the fan and the heater
-		this.temperatureController.stop();
-		this.temperatureController = null;
-		
-		//Remove the observe relations
-		if(this.observeCO2TankRelation != null) {
-			this.observeCO2TankRelation.reactiveCancel();
-			System.out.println(LOG + " CO2 tank observe relation cancelled.");
-		}
-		if(this.observeWaterTankRelation != null) {
-			this.observeWaterTankRelation.reactiveCancel();
-			System.out.println(LOG + " Osmotic water tank observe relation cancelled.");
+		//Turn off the actuators of each aquarium and remove the observe relations
+		for(Aquarium aquarium : aquariumRegistry.getAll()) {
+			aquarium.close();
+			LOGGER.info("Devices of the aquarium {} stopped.", aquarium.getId());
 		}
 		
 		//Close the server
 		this.destroy();
-		System.out.println(LOG + " CoAP server closed correctly.");
+		LOGGER.info("CoAP server closed correctly.");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package it.unipi.iot.coap;
+
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
+
+/**
+ * Handler of an asynchronous CoAP request that measures its round trip time, from the creation of the handler to the
+ * response or the error, and then forwards the result to another handler. <br>
+ * It must be created right before sending the request.
+ * 
+ * @author Fabi8997
+ */
+public class TimedCoapHandler implements CoapHandler {
+	
+	private static final Counter ERRORS = MetricsRegistry.DEFAULT.counter("coap_request_errors_total",
+			"CoAP requests to the actuators without a response.");
+	
+	private final LatencyHistogram roundTrip;
+	private final CoapHandler handler;
+	private final long start;
+	
+	/**
+	 * Class constructor.
+	 * @param roundTrip histogram in which the round trip time is recorded
+	 * @param handler handler of the response
+	 */
+	public TimedCoapHandler(LatencyHistogram roundTrip, CoapHandler handler) {
+		this.roundTrip = roundTrip;
+		this.handler = handler;
+		this.start = System.nanoTime();
+	}
+	
+	/**
+	 * @param device name of the device in the name of the metric, e.g. co2_dispenser
+	 * @return the histogram of the round trip time of the PUT requests sent to the device.
+	 */
+	public static LatencyHistogram putRoundTrip(String device) {
+		return MetricsRegistry.DEFAULT.histogram("coap_put_" + device + "_seconds", "Round trip time of the CoAP PUT requests sent to the " + device + ".");
+	}
+	
+	@Override
+	public void onLoad(CoapResponse response) {
+		roundTrip.recordSince(start);
+		handler.onLoad(response);
+	}
+	
+	@Override
+	public void onError() {
+		roundTrip.recordSince(start);
+		ERRORS.increment();
+		handler.onError();
+	}
+}
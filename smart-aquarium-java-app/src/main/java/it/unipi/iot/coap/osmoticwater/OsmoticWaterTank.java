@@ -1,107 +1,71 @@
 package it.unipi.iot.coap.osmoticwater;
 
 import org.eclipse.californium.core.CoapClient;
-import org.eclipse.californium.core.CoapHandler;
-import org.eclipse.californium.core.CoapResponse;
-import org.eclipse.californium.core.coap.MediaTypeRegistry;
 
+import it.unipi.iot.coap.ActuatorState;
+import it.unipi.iot.coap.TimedCoapHandler;
 import it.unipi.iot.configuration.ConfigurationParameters;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.LatencyHistogram;
 
 /**
  * 
  * This class extends the CoapClient class. <br> It provides the methods to: <br>
  * 
  * - activate the flow of osmotic water <br>
- * - stop the flow of osmotic water
+ * - stop the flow of osmotic water <br>
+ * The requests that would not change the status of the flow are not sent, see {@link ActuatorState}.
  * 
  * @author Fabi8997
  * 
  */
 public class OsmoticWaterTank extends CoapClient{
 	
-	private static final String LOG = "[" + Colors.ANSI_CYAN + "Smart Aquarium " + Colors.ANSI_RESET + "]";
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "Smart Aquarium " + Colors.ANSI_RESET + " ]";
+	private static final Logger LOGGER = new Logger("Smart Aquarium ", Colors.ANSI_CYAN);
+	
+	//Round trip time of the PUT requests
+	private static final LatencyHistogram PUT_ROUND_TRIP = TimedCoapHandler.putRoundTrip("osmotic_water_tank");
 
 	//Osmotic water tank status
 	float osmoticWaterTankLevel;
-	boolean osmoticWaterTankFlowActive;
-	float minLevel;
+	volatile float minLevel;
+	
+	//Requested and acknowledged status of the flow
+	private final ActuatorState flow;
 	
 	/**
 	 * Class constructor.
 	 * 
-	 * @param ipAddress of the URI
+	 * @param address host of the device in the URI, followed by the port if it is not the default one, e.g. [fd00::202:2:2:2]
+	 * or 127.0.0.1:5690
 	 * @param configurationParameters configuration parameters
 	 */
-	public OsmoticWaterTank(String ipAddress, ConfigurationParameters configurationParameters) {
+	public OsmoticWaterTank(String address, ConfigurationParameters configurationParameters) {
 		
-		super("coap://[" + ipAddress + "]/"+configurationParameters.osmoticWaterTankTopic+"/tank");
+		super("coap://" + address + "/"+configurationParameters.osmoticWaterTankTopic+"/tank");
 		
-		this.osmoticWaterTankFlowActive = false;
+		this.flow = new ActuatorState("OsmoticWaterTank", this, "mode", PUT_ROUND_TRIP, configurationParameters.actuatorCoalescingWindow) {
+			@Override
+			protected void changed(String mode) {
+				LOGGER.info("Osmotic water tank [ mode = {} ].", mode);
+			}
+		};
 		this.minLevel = configurationParameters.minOsmoticWaterTankLevel;
 	}
 	
+	/**
+	 * Request the activation of the flow; the flag is set when the device acknowledges it.
+	 */
 	public void activateFlow() {
-		
-		//send put mode on
-		this.put(new CoapHandler() {
-           
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: OsmoticWaterTank].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " Osmotic water tank [ mode = "+Colors.ANSI_GREEN+"on"+Colors.ANSI_RESET+" ].");
-                    	
-                    	//Set the flag to signal that the flow is active
-                		osmoticWaterTankFlowActive = true;
-                    }
-                }
+		flow.request(ActuatorState.ON);
             }
 
-            public void onError() {
-                System.out.println(LOG_ERROR + " Put operation failed [device: OsmoticWaterTank].");
-            }
-
-			
-
-        }, "mode=on", MediaTypeRegistry.TEXT_PLAIN);
-
-	
-	}
-	
+	/**
+	 * Request to stop the flow; the flag is set when the device acknowledges it.
+	 */
 	public void stopFlow() {
-		
-		//send put mode off
-				this.put(new CoapHandler() {
-		            
-					@Override
-		            public void onLoad(CoapResponse response) {
-		                if (response != null) {
-		                    if(!response.isSuccess()) {
-		                    	
-		                        System.out.println(LOG + " Put operation failed [device: OsmoticWaterTank].");
-		                    }else {
-		                    	
-		                    	System.out.println(LOG + " Osmotic water tank [ mode = "+Colors.ANSI_RED+"off"+Colors.ANSI_RESET+" ].");
-		                    	
-		                    	//Set the flag to signal that the flow is stopped
-		                		osmoticWaterTankFlowActive = false;
-		                    }
-		                }
-		            }
-
-		            public void onError() {
-		                System.out.println(LOG_ERROR + " Put operation failed [device: OsmoticWaterTank].");
-		            }
-
-					
-
-		        }, "mode=off", MediaTypeRegistry.TEXT_PLAIN);
+		flow.request(ActuatorState.OFF);
 	}
 
 	public float getOsmoticWaterTankLevel() {
@@ -115,20 +79,27 @@ public class OsmoticWaterTank extends CoapClient{
 	public boolean toBeFilled() {
 		return (this.osmoticWaterTankLevel <= this.minLevel);
 	}
+	
+	public void setMinLevel(float minLevel) {
+		this.minLevel = minLevel;
+	}
 
 	public boolean isOsmoticWaterTankFlowActive() {
-		return osmoticWaterTankFlowActive;
+		return flow.isOn();
 	}
 
+	/**
+	 * Set the status of the flow reported by the device, without sending any request.
+	 */
 	public void setOsmoticWaterTankFlowActive(boolean osmoticWaterTankFlowActive) {
-		this.osmoticWaterTankFlowActive = osmoticWaterTankFlowActive;
+		flow.reported(osmoticWaterTankFlowActive ? ActuatorState.ON : ActuatorState.OFF);
 	}
 			
 	/**
 	 * Stop the flow of osmotic water flow and stop the device.
 	 */
 	public void stop() {
-		this.stopFlow();
+		flow.requestNow(ActuatorState.OFF);
 		this.delete();
 	}
 	
@@ -1,13 +1,15 @@
 package it.unipi.iot.coap.temperature;
 
 import org.eclipse.californium.core.CoapClient;
-import org.eclipse.californium.core.CoapHandler;
-import org.eclipse.californium.core.CoapResponse;
-import org.eclipse.californium.core.coap.MediaTypeRegistry;
 
+import it.unipi.iot.coap.ActuatorState;
+import it.unipi.iot.coap.TimedCoapHandler;
 import it.unipi.iot.configuration.ConfigurationParameters;
-import it.unipi.iot.database.DatabaseManager;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleStore;
 
 /**
  * 
@@ -22,16 +24,21 @@ import it.unipi.iot.log.Colors;
  */
 public class TemperatureController {
 	
-	private static final String LOG = "[" + Colors.ANSI_CYAN + "Smart Aquarium " + Colors.ANSI_RESET + "]";
-	private static final String LOG2 = "[" + Colors.ANSI_PURPLE + "CoAP Controller" + Colors.ANSI_RESET + "]";
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "Smart Aquarium " + Colors.ANSI_RESET + " ]";
+	private static final Logger LOGGER = new Logger("Smart Aquarium ", Colors.ANSI_CYAN);
+	private static final Logger STORAGE_LOGGER = new Logger("CoAP Controller", Colors.ANSI_PURPLE);
 	
-	//DB manager to set up the connection to the DB and to query it
-	private final DatabaseManager db;
+	//Round trip time of the PUT requests
+	private static final LatencyHistogram PUT_ROUND_TRIP = TimedCoapHandler.putRoundTrip("temperature_controller");
 	
-	//Status
-	private boolean fanActive;
-	private boolean heaterActive;
+	//Storage of the status of the fan and the heater
+	private final SampleStore db;
+	
+	//Aquarium to which the controller belongs
+	private final String aquariumId;
+	
+	//Requested and acknowledged status
+	private final ActuatorState fan;
+	private final ActuatorState heater;
 	
 	//CoAP Clients
 	private CoapClient fanClient;
@@ -42,203 +49,102 @@ public class TemperatureController {
 	/**
 	 * Class constructor. It creates two CoapClient to interact with the fan resource and the heater resource.
 	 * 
-	 * @param ipAddress of the URI
+	 * @param address host of the device in the URI, followed by the port if it is not the default one, e.g. [fd00::202:2:2:2]
+	 * or 127.0.0.1:5690
 	 * @param configurationParameters configuration parameters
+	 * @param db storage used to store the status of the fan and the heater
+	 * @param aquariumId identifier of the aquarium to which the controller belongs
 	 */
-	public TemperatureController(String ipAddress, ConfigurationParameters configurationParameters, DatabaseManager db) {
+	public TemperatureController(String address, final ConfigurationParameters configurationParameters, SampleStore db, String aquariumId) {
 			
 			//Create two clients to interact with the specified URI
-			this.fanClient = new CoapClient("coap://[" + ipAddress + "]/temperature/fan");
-			this.heaterClient = new CoapClient("coap://[" + ipAddress + "]/temperature/heater");
-		
-			this.fanActive = false;
-			this.heaterActive = false;
+			this.fanClient = new CoapClient("coap://" + address + "/temperature/fan");
+			this.heaterClient = new CoapClient("coap://" + address + "/temperature/heater");
 			
 			this.configurationParameters = configurationParameters;
 			this.db = db;
+			this.aquariumId = aquariumId;
+			
+			this.fan = new ActuatorState("temperatureController", fanClient, "mode", PUT_ROUND_TRIP, configurationParameters.actuatorCoalescingWindow) {
+				@Override
+				protected void changed(String mode) {
+					statusChanged("Fan", SampleKind.FAN, configurationParameters.fanDatabaseTableName, mode);
+				}
+			};
+			this.heater = new ActuatorState("temperatureController", heaterClient, "mode", PUT_ROUND_TRIP, configurationParameters.actuatorCoalescingWindow) {
+				@Override
+				protected void changed(String mode) {
+					statusChanged("Heater", SampleKind.HEATER, configurationParameters.heaterDatabaseTableName, mode);
+				}
+			};
 			
-			if(db.insertSample(configurationParameters.fanDatabaseTableName, 0, null)) {
+			//Both are stopped when the device registers
+			fan.reported(ActuatorState.OFF);
+			heater.reported(ActuatorState.OFF);
+			
+			if(db.insertSample(aquariumId, SampleKind.FAN, false, System.currentTimeMillis())) {
 				//LOG
-			    System.out.println(LOG2 + " Inserted {" +
-			    				"\"active\": " + fanActive +
-			    				"} in " + configurationParameters.fanDatabaseTableName + "." );
+			    STORAGE_LOGGER.debug("Inserted {\"active\": {}} in {}.", false, configurationParameters.fanDatabaseTableName);
 			}
-			if(db.insertSample(configurationParameters.heaterDatabaseTableName, 0, null)) {
+			if(db.insertSample(aquariumId, SampleKind.HEATER, false, System.currentTimeMillis())) {
 				//LOG
-			    System.out.println(LOG2 + " Inserted {" +
-			    				"\"active\": " + heaterActive +
-			    				"} in " + configurationParameters.heaterDatabaseTableName + "." );
+			    STORAGE_LOGGER.debug("Inserted {\"active\": {}} in {}.", false, configurationParameters.heaterDatabaseTableName);
 			}
 			
 	}
 	
 	/**
-	 * Send a put request to activate the fan and set accordingly the flag in case of success. It writes also the active flag 
-	 * on the database.
+	 * Log a status acknowledged by the fan or the heater and write it on the database.
 	 */
-	public void activateFan() {
+	private void statusChanged(String name, SampleKind kind, String tableName, String mode) {
 		
-		//send put mode on
-		fanClient.put(new CoapHandler() {
+		boolean active = ActuatorState.ON.equals(mode);
+		LOGGER.info("{} [ mode = {} ].", name, mode);
             
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: temperatureController].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " Fan [ mode = "+Colors.ANSI_GREEN+"on"+Colors.ANSI_RESET+" ].");
-                    	
-                    	
-                    	//Set the flag to signal that the flow is active
-                		fanActive = true;
-                		
-                		if(db.insertSample(configurationParameters.fanDatabaseTableName, 1, null)) {
+		if(db.insertSample(aquariumId, kind, active, System.currentTimeMillis())) {
             				//LOG
-            			    System.out.println(LOG2 + " Inserted {" +
-            			    				"\"active\": " + fanActive +
-            			    				"} in " + configurationParameters.fanDatabaseTableName + "." );
-            			}
-                    }
+		    STORAGE_LOGGER.debug("Inserted {\"active\": {}} in {}.", active, tableName);
                 }
             }
 
-            public void onError() {
-                System.err.println(LOG + " Put operation failed [device: temperatureController].");
-            }
-
-        }, "mode=on", MediaTypeRegistry.TEXT_PLAIN);
+	/**
+	 * Request the activation of the fan; the flag and the database are updated when the device acknowledges it.
+	 */
+	public void activateFan() {
+		fan.request(ActuatorState.ON);
 	}
 
 	/**
-	 * Send a put request to activate the heater and set accordingly the flag in case of success. It writes also the active flag 
-	 * on the database.
+	 * Request the activation of the heater; the flag and the database are updated when the device acknowledges it.
 	 */
 	public void activateHeater() {
-		
-		//send put mode on
-		heaterClient.put(new CoapHandler() {
-            
-			@Override
-            public void onLoad(CoapResponse response) {
-                if (response != null) {
-                    if(!response.isSuccess()) {
-                    	
-                        System.out.println(LOG + " Put operation failed [device: temperatureController].");
-                    }else {
-                    	
-                    	System.out.println(LOG + " Heater [ mode = "+Colors.ANSI_GREEN+"on"+Colors.ANSI_RESET+" ].");
-                    	
-                    	//Set the flag to signal that the flow is active
-                		heaterActive = true;
-                		
-                		if(db.insertSample(configurationParameters.heaterDatabaseTableName, 1, null)) {
-            				//LOG
-            			    System.out.println(LOG2 + " Inserted {" +
-            			    				"\"active\": " + heaterActive +
-            			    				"} in " + configurationParameters.heaterDatabaseTableName + "." );
-            			}
-                    }
-                }
-            }
-
-            public void onError() {
-                System.err.println(LOG + " Put operation failed [device: temperatureController].");
-            }
-
-        }, "mode=on", MediaTypeRegistry.TEXT_PLAIN);
+		heater.request(ActuatorState.ON);
 	}
 	
 	/**
-	 * Send a put request to stop the fan and set accordingly the flag in case of success. It writes also the active flag 
-	 * on the database.
+	 * Request to stop the fan; the flag and the database are updated when the device acknowledges it.
 	 */
 	public void stopFan() {
-		
-		//send put mode off
-		fanClient.put(new CoapHandler() {
-		            
-				@Override
-		        public void onLoad(CoapResponse response) {
-					if (response != null) {
-						if(!response.isSuccess()) {
-		                    	
-							System.out.println(LOG + " Put operation failed [device: temperatureController].");
-		                }else {
-		                    	
-		                	System.out.println(LOG + " Fan [ mode = "+Colors.ANSI_RED+"off"+Colors.ANSI_RESET+" ].");
-		                	
-		                    //Set the flag to signal that the fan is stopped
-		                	fanActive = false;
-		                	
-		                	if(db.insertSample(configurationParameters.fanDatabaseTableName, 0, null)) {
-		        				//LOG
-		        			    System.out.println(LOG2 + " Inserted {" +
-		        			    				"\"active\": " + false +
-		        			    				"} in " + configurationParameters.fanDatabaseTableName + "." );
-		        			}
-		                }
-		             }
-		        }
-	
-		        public void onError() {
-		                System.err.println(LOG + " Put operation failed [device: temperatureController].");
-		        }
-
-		}, "mode=off", MediaTypeRegistry.TEXT_PLAIN);
+		fan.request(ActuatorState.OFF);
 	}
 	
 	/**
-	 * Send a put request to stop the heater and set accordingly the flag in case of success. It writes also the active flag 
-	 * on the database.
+	 * Request to stop the heater; the flag and the database are updated when the device acknowledges it.
 	 */
 	public void stopHeater() {
-		
-		//send put mode off
-		heaterClient.put(new CoapHandler() {
-		            
-				@Override
-		        public void onLoad(CoapResponse response) {
-					if (response != null) {
-						if(!response.isSuccess()) {
-		                    	
-							System.out.println(LOG + " Put operation failed [device: temperatureController].");
-		                }else {
-		                    	
-		                	System.out.println(LOG + " Heater [ mode = "+Colors.ANSI_RED+"off"+Colors.ANSI_RESET+" ].");
-		                    	
-		                    //Set the flag to signal that the heater is stopped
-		                	heaterActive = false;
-		                	
-		                	if(db.insertSample(configurationParameters.heaterDatabaseTableName, 0, null)) {
-		        				//LOG
-		        			    System.out.println(LOG2 + " Inserted {" +
-		        			    				"\"active\": " + heaterActive +
-		        			    				"} in " + configurationParameters.heaterDatabaseTableName + "." );
-		        			}
-		                }
-		             }
-		        }
-	
-		        public void onError() {
-		                System.out.println(LOG_ERROR + " Put operation failed [device: temperatureController].");
-		        }
-
-		}, "mode=off", MediaTypeRegistry.TEXT_PLAIN);
+		heater.request(ActuatorState.OFF);
 	}
 
 	public boolean isFanActive() {
-		return fanActive;
+		return fan.isOn();
 	}
 	
 	public boolean isHeaterActive() {
-		return heaterActive;
+		return heater.isOn();
 	}
 	
 	public boolean areFanHeaterInactive() {
-		return ((!fanActive) && (!heaterActive));
+		return ((!fan.isOn()) && (!heater.isOn()));
 	}
 	
 	public CoapClient getFanClient() {
@@ -253,7 +159,7 @@ public class TemperatureController {
 	 * Stop the fan, the heater and send a message to stop the devices.
 	 */
 	public void stop() {
-		this.stopFan();
-		this.stopHeater();
+		fan.requestNow(ActuatorState.OFF);
+		heater.requestNow(ActuatorState.OFF);
 	}
 }
\ No newline at end of file
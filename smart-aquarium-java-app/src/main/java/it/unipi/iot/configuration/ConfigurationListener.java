@@ -0,0 +1,17 @@
+package it.unipi.iot.configuration;
+
+/**
+ * Listener notified when the {@link ConfigurationService} publishes a new configuration. <br>
+ * It is invoked on the thread watching the configuration file, after the new configuration has been published.
+ * 
+ * @author Fabi8997
+ */
+public interface ConfigurationListener {
+	
+	/**
+	 * Called when the configuration file has been reloaded.
+	 * @param previous configuration replaced
+	 * @param current configuration published
+	 */
+	void configurationChanged(ConfigurationParameters previous, ConfigurationParameters current);
+}
@@ -1,11 +1,18 @@
 package it.unipi.iot.configuration;
 
+import java.util.Arrays;
+
 /**
  * 
  * @author Fabi8997
- * Class that contains all the configuration parameters.
+ * Class that contains all the configuration parameters. <br>
+ * The fields stay public and mutable because the instance is filled by XStream from config.xml, but once an instance is
+ * published by the {@link ConfigurationService} it is shared by all the threads without locks and must never be modified:
+ * the components read it at every step and would see a half-changed configuration. To change some parameters, e.g. in the
+ * tests and in the benchmarks, modify an instance before publishing it or change a {@link #copy()}; a new configuration is
+ * applied at runtime by editing config.xml, which publishes a new instance.
  */
-public class ConfigurationParameters {
+public class ConfigurationParameters implements Cloneable {
 
 	public String databaseIP;
 	public int databasePort;
@@ -43,7 +50,94 @@ public class ConfigurationParameters {
 	public float minOsmoticWaterTankLevel;
 	public float maxCO2tankLevel;
 	public float maxOsmoticWaterTankLevel;
-	public int sleepIntervalApp;
+	public int ingestionQueueCapacity;
+	public int ingestionWriterThreads;
+	public String ingestionOverflowPolicy;
+	public int databaseBatchSize;
+	public int databaseBatchFlushInterval;
+	public String defaultAquariumId;
+	public int aquariumRegistryShards;
+	public int controlThreads;
+	public int kHEvaluationDebounce;
+	public int pHEvaluationDebounce;
+	public int temperatureEvaluationDebounce;
+	public int kHMinEvaluationInterval;
+	public int pHMinEvaluationInterval;
+	public int temperatureMinEvaluationInterval;
+	public String spoolFile;
+	public int spoolReplayBatchSize;
+	public int databaseReconnectInterval;
+	public int databasePoolSize;
+	public int databasePoolValidationIdle;
+	public String rollupMinuteDatabaseTableName;
+	public String rollupHourDatabaseTableName;
+	public int rollupSweepInterval;
+	public int rollupCloseDelay;
+	public int historyCapacity;
+	public int historyHours;
+	public String storageBackend;
+	public String timeSeriesDirectory;
+	public int timeSeriesSegmentPoints;
+	public int timeSeriesFlushInterval;
+	public int pHRetentionDays;
+	public int kHRetentionDays;
+	public int temperatureRetentionDays;
+	public int osmoticWaterTankRetentionDays;
+	public int co2DispenserRetentionDays;
+	public int fanRetentionDays;
+	public int heaterRetentionDays;
+	public int partitionsAhead;
+	public int partitionMaintenanceInterval;
+	public SensorDefinition[] sensors;
+	public String MQTTClientMode;
+	public int MQTTSensorQoS;
+	public int MQTTSimulationQoS;
+	public int MQTTMaxInflight;
+	public int MQTTCallbackThreads;
+	public int MQTTCallbackQueueCapacity;
+	public boolean MQTTPersistentSession;
+	public String MQTTPersistenceDirectory;
+	public int MQTTCatchUpQuietPeriod;
+	public int MQTTCatchUpTimeout;
+	public int warmStartThreads;
+	public int warmStartCO2History;
+	public int warmStartTimeout;
+	public boolean configurationReloadEnabled;
+	public int configurationReloadDelay;
+	public String metricsAddress;
+	public int metricsPort;
+	public String logLevel;
+	public boolean logColors;
+	public int logQueueCapacity;
+	public int actuatorCoalescingWindow;
+	public String temperatureControlStrategy;
+	public float temperatureKp;
+	public float temperatureKi;
+	public float temperatureKd;
+	public float temperatureHysteresis;
+	public int temperatureMinDwellTime;
+	
+	/**
+	 * @return a copy of the parameters that can be modified without affecting this instance.
+	 */
+	public ConfigurationParameters copy() {
+		
+		ConfigurationParameters copy;
+		try {
+			copy = (ConfigurationParameters) super.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+		
+		//The definitions of the sensors are mutable as well
+		if(sensors != null) {
+			copy.sensors = new SensorDefinition[sensors.length];
+			for(int i = 0; i < sensors.length; i++) {
+				copy.sensors[i] = (sensors[i] != null) ? sensors[i].copy() : null;
+			}
+		}
+		return copy;
+	}
 	
 	@Override
 	public String toString() {
@@ -120,8 +214,138 @@ public class ConfigurationParameters {
 		builder.append(maxCO2tankLevel);
 		builder.append(",\n maxOsmoticWaterTankLevel=");
 		builder.append(maxOsmoticWaterTankLevel);
-		builder.append(",\n sleepIntervalApp=");
-		builder.append(sleepIntervalApp);
+		builder.append(",\n ingestionQueueCapacity=");
+		builder.append(ingestionQueueCapacity);
+		builder.append(",\n ingestionWriterThreads=");
+		builder.append(ingestionWriterThreads);
+		builder.append(",\n ingestionOverflowPolicy=");
+		builder.append(ingestionOverflowPolicy);
+		builder.append(",\n databaseBatchSize=");
+		builder.append(databaseBatchSize);
+		builder.append(",\n databaseBatchFlushInterval=");
+		builder.append(databaseBatchFlushInterval);
+		builder.append(",\n defaultAquariumId=");
+		builder.append(defaultAquariumId);
+		builder.append(",\n aquariumRegistryShards=");
+		builder.append(aquariumRegistryShards);
+		builder.append(",\n controlThreads=");
+		builder.append(controlThreads);
+		builder.append(",\n kHEvaluationDebounce=");
+		builder.append(kHEvaluationDebounce);
+		builder.append(",\n pHEvaluationDebounce=");
+		builder.append(pHEvaluationDebounce);
+		builder.append(",\n temperatureEvaluationDebounce=");
+		builder.append(temperatureEvaluationDebounce);
+		builder.append(",\n kHMinEvaluationInterval=");
+		builder.append(kHMinEvaluationInterval);
+		builder.append(",\n pHMinEvaluationInterval=");
+		builder.append(pHMinEvaluationInterval);
+		builder.append(",\n temperatureMinEvaluationInterval=");
+		builder.append(temperatureMinEvaluationInterval);
+		builder.append(",\n spoolFile=");
+		builder.append(spoolFile);
+		builder.append(",\n spoolReplayBatchSize=");
+		builder.append(spoolReplayBatchSize);
+		builder.append(",\n databaseReconnectInterval=");
+		builder.append(databaseReconnectInterval);
+		builder.append(",\n databasePoolSize=");
+		builder.append(databasePoolSize);
+		builder.append(",\n databasePoolValidationIdle=");
+		builder.append(databasePoolValidationIdle);
+		builder.append(",\n rollupMinuteDatabaseTableName=");
+		builder.append(rollupMinuteDatabaseTableName);
+		builder.append(",\n rollupHourDatabaseTableName=");
+		builder.append(rollupHourDatabaseTableName);
+		builder.append(",\n rollupSweepInterval=");
+		builder.append(rollupSweepInterval);
+		builder.append(",\n rollupCloseDelay=");
+		builder.append(rollupCloseDelay);
+		builder.append(",\n historyCapacity=");
+		builder.append(historyCapacity);
+		builder.append(",\n historyHours=");
+		builder.append(historyHours);
+		builder.append(",\n storageBackend=");
+		builder.append(storageBackend);
+		builder.append(",\n timeSeriesDirectory=");
+		builder.append(timeSeriesDirectory);
+		builder.append(",\n timeSeriesSegmentPoints=");
+		builder.append(timeSeriesSegmentPoints);
+		builder.append(",\n timeSeriesFlushInterval=");
+		builder.append(timeSeriesFlushInterval);
+		builder.append(",\n pHRetentionDays=");
+		builder.append(pHRetentionDays);
+		builder.append(",\n kHRetentionDays=");
+		builder.append(kHRetentionDays);
+		builder.append(",\n temperatureRetentionDays=");
+		builder.append(temperatureRetentionDays);
+		builder.append(",\n osmoticWaterTankRetentionDays=");
+		builder.append(osmoticWaterTankRetentionDays);
+		builder.append(",\n co2DispenserRetentionDays=");
+		builder.append(co2DispenserRetentionDays);
+		builder.append(",\n fanRetentionDays=");
+		builder.append(fanRetentionDays);
+		builder.append(",\n heaterRetentionDays=");
+		builder.append(heaterRetentionDays);
+		builder.append(",\n partitionsAhead=");
+		builder.append(partitionsAhead);
+		builder.append(",\n partitionMaintenanceInterval=");
+		builder.append(partitionMaintenanceInterval);
+		builder.append(",\n sensors=");
+		builder.append(Arrays.toString(sensors));
+		builder.append(",\n MQTTClientMode=");
+		builder.append(MQTTClientMode);
+		builder.append(",\n MQTTSensorQoS=");
+		builder.append(MQTTSensorQoS);
+		builder.append(",\n MQTTSimulationQoS=");
+		builder.append(MQTTSimulationQoS);
+		builder.append(",\n MQTTMaxInflight=");
+		builder.append(MQTTMaxInflight);
+		builder.append(",\n MQTTCallbackThreads=");
+		builder.append(MQTTCallbackThreads);
+		builder.append(",\n MQTTCallbackQueueCapacity=");
+		builder.append(MQTTCallbackQueueCapacity);
+		builder.append(",\n MQTTPersistentSession=");
+		builder.append(MQTTPersistentSession);
+		builder.append(",\n MQTTPersistenceDirectory=");
+		builder.append(MQTTPersistenceDirectory);
+		builder.append(",\n MQTTCatchUpQuietPeriod=");
+		builder.append(MQTTCatchUpQuietPeriod);
+		builder.append(",\n MQTTCatchUpTimeout=");
+		builder.append(MQTTCatchUpTimeout);
+		builder.append(",\n warmStartThreads=");
+		builder.append(warmStartThreads);
+		builder.append(",\n warmStartCO2History=");
+		builder.append(warmStartCO2History);
+		builder.append(",\n warmStartTimeout=");
+		builder.append(warmStartTimeout);
+		builder.append(",\n configurationReloadEnabled=");
+		builder.append(configurationReloadEnabled);
+		builder.append(",\n configurationReloadDelay=");
+		builder.append(configurationReloadDelay);
+		builder.append(",\n metricsAddress=");
+		builder.append(metricsAddress);
+		builder.append(",\n metricsPort=");
+		builder.append(metricsPort);
+		builder.append(",\n logLevel=");
+		builder.append(logLevel);
+		builder.append(",\n logColors=");
+		builder.append(logColors);
+		builder.append(",\n logQueueCapacity=");
+		builder.append(logQueueCapacity);
+		builder.append(",\n actuatorCoalescingWindow=");
+		builder.append(actuatorCoalescingWindow);
+		builder.append(",\n temperatureControlStrategy=");
+		builder.append(temperatureControlStrategy);
+		builder.append(",\n temperatureKp=");
+		builder.append(temperatureKp);
+		builder.append(",\n temperatureKi=");
+		builder.append(temperatureKi);
+		builder.append(",\n temperatureKd=");
+		builder.append(temperatureKd);
+		builder.append(",\n temperatureHysteresis=");
+		builder.append(temperatureHysteresis);
+		builder.append(",\n temperatureMinDwellTime=");
+		builder.append(temperatureMinDwellTime);
 		builder.append("\n");
 		return builder.toString();
 	}
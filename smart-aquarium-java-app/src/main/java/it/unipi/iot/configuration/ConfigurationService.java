@@ -0,0 +1,190 @@
+package it.unipi.iot.configuration;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
+/**
+ * Holder of the current configuration, reloaded when the configuration file changes. <br>
+ * The configuration is published as a whole: each reload validates the file against its XSD schema and deserializes it into a
+ * new ConfigurationParameters, that replaces the previous one with a single volatile write. The published instances are never
+ * modified, so the readers call {@link #get()} at each step without locks and see all the parameters of the same file: the
+ * configuration read at startup is published as a private copy, and the readers must not modify the instance returned by
+ * {@link #get()}, see {@link ConfigurationParameters}.<br>
+ * The parameters read at each step (bounds, optimal values, debounces, minimum levels of the tanks) take effect immediately,
+ * the ones used to create the connections, the threads and the tables take effect at the next restart.
+ * 
+ * @author Fabi8997
+ */
+public class ConfigurationService {
+	
+	private static final Logger LOGGER = new Logger("Configuration", Colors.ANSI_YELLOW);
+	
+	//Configuration currently published
+	private volatile ConfigurationParameters current;
+	
+	//Components notified at every reload
+	private final List<ConfigurationListener> listeners;
+	
+	//Configuration file watched
+	private final Path pathXML;
+	
+	//Milliseconds waited after a change of the file, so the events of a single save produce a single reload
+	private final long reloadDelay;
+	
+	private WatchService watchService;
+	
+	/**
+	 * Class constructor, it publishes a copy of the configuration read at startup, so later changes to the parameters of the
+	 * configuration file are not seen by the readers.
+	 * @param configurationXML configuration file read at startup
+	 */
+	public ConfigurationService(ConfigurationXML configurationXML) {
+		this.current = configurationXML.configurationParameters.copy();
+		this.listeners = new CopyOnWriteArrayList<ConfigurationListener>();
+		this.pathXML = Paths.get(configurationXML.getPathXML()).toAbsolutePath().normalize();
+		this.reloadDelay = Math.max(0, current.configurationReloadDelay);
+	}
+	
+	/**
+	 * @return the current configuration, shared by all the readers; it must not be modified, use
+	 * {@link ConfigurationParameters#copy()} to change some parameters.
+	 */
+	public ConfigurationParameters get() {
+		return current;
+	}
+	
+	public void addListener(ConfigurationListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(ConfigurationListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Starts watching the configuration file, if the reload is enabled in the configuration.
+	 */
+	public synchronized void start() {
+		
+		if(!current.configurationReloadEnabled || watchService != null) {
+			return;
+		}
+		
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			pathXML.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			LOGGER.error("Cannot watch {}, the configuration will not be reloaded: {}", pathXML, e.getMessage());
+			return;
+		}
+		
+		final WatchService watched = watchService;
+		Thread watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(watched);
+			}
+		}, "configuration-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+		
+		LOGGER.info("Watching {} for changes.", pathXML);
+	}
+	
+	/**
+	 * Waits for the changes of the configuration file and reloads it, until the watch service is closed.
+	 */
+	private void watch(WatchService watched) {
+		
+		try {
+			while(true) {
+				
+				WatchKey key = watched.take();
+				boolean changed = false;
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(pathXML.getFileName().equals(event.context())) {
+						changed = true;
+					}
+				}
+				if(!key.reset()) {
+					return;
+				}
+				
+				if(changed) {
+					
+					//Wait for the file to be completely written and discard the events of the same save
+					Thread.sleep(reloadDelay);
+					while((key = watched.poll()) != null) {
+						key.pollEvents();
+						key.reset();
+					}
+					
+					reload();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			//Closed by close()
+		}
+	}
+	
+	/**
+	 * Reads the configuration file and publishes it if it is valid, otherwise the current configuration is kept.
+	 * @return true if the new configuration has been published, false otherwise.
+	 */
+	public boolean reload() {
+		
+		ConfigurationXML configurationXML;
+		try {
+			configurationXML = new ConfigurationXML();
+		} catch (RuntimeException e) {
+			LOGGER.error("Cannot read {}, the current configuration is kept: {}", pathXML, e.getMessage());
+			return false;
+		}
+		
+		if(!configurationXML.isValid() || configurationXML.configurationParameters == null) {
+			LOGGER.error("{} is not valid, the current configuration is kept.", pathXML);
+			return false;
+		}
+		
+		ConfigurationParameters previous = current;
+		current = configurationXML.configurationParameters;
+		
+		for(ConfigurationListener listener : listeners) {
+			listener.configurationChanged(previous, current);
+		}
+		
+		LOGGER.info("Configuration reloaded.");
+		return true;
+	}
+	
+	/**
+	 * Stops watching the configuration file.
+	 */
+	public synchronized void close() {
+		
+		if(watchService == null) {
+			return;
+		}
+		
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			LOGGER.error("Problem during the closing of the watch service.", e);
+		}
+		watchService = null;
+	}
+}
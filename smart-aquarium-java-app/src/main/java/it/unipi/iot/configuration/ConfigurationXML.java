@@ -21,6 +21,9 @@ public class ConfigurationXML {
     //Object that will contain the configuration parameters read from the configuration file
     public ConfigurationParameters configurationParameters;
     
+    //Result of the validation of the configuration file
+    private boolean valid;
+    
     /**
      * Constructor of the class.<br>
      * It will validate the XML configuration file using its XSD schema, then the XML configuration file is deserialized 
@@ -28,10 +31,21 @@ public class ConfigurationXML {
      */
     public ConfigurationXML(){
        configurationParameters = new ConfigurationParameters();
-       validateXML();
+       valid = validateXML();
        deserializeXML();
     }
     
+    /**
+     * @return true if the configuration file respects its XSD schema.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+    
+    public String getPathXML() {
+        return pathXML;
+    }
+    
     /**
      * Deserialize the XML Configuration file into a ConfigurationParameters class.
      */
@@ -40,6 +54,9 @@ public class ConfigurationXML {
     XStream xs = new XStream();
     xs.addPermission(AnyTypePermission.ANY);
     
+    //Name of the elements of the list of the additional sensors
+    xs.alias("sensor", SensorDefinition.class);
+    
     String x = new String(); 
     try {   
         x = new String(Files.readAllBytes(Paths.get(pathXML)));       
@@ -50,8 +67,9 @@ public class ConfigurationXML {
     
     /**
      * Validate the XML configuration file using its XSD schema.
+     * @return true if the configuration file is valid, false otherwise.
      */
-    private void validateXML(){
+    private boolean validateXML(){
          
         try {  
             DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder(); 
@@ -59,11 +77,13 @@ public class ConfigurationXML {
             Document d = db.parse(new File(pathXML)); 
             Schema s = sf.newSchema(new StreamSource(new File(pathXSD)));
             s.newValidator().validate(new DOMSource(d));
+            return true;
         } catch (Exception e) {
             if (e instanceof SAXException) 
                 System.out.println("Validation XML error: " + e.getMessage());
             else
                 System.out.println("Other error: " + e.getMessage());    
+            return false;
         }  
     }
 }
\ No newline at end of file
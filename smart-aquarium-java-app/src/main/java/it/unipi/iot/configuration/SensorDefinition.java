@@ -0,0 +1,37 @@
+package it.unipi.iot.configuration;
+
+/**
+ * 
+ * @author Fabi8997
+ * Definition of an additional MQTT sensor read from the configuration file. <br>
+ * The sensor publishes a JSON document containing a decimal value in the topic "&lt;topic&gt;" or "&lt;topic&gt;/&lt;aquarium id&gt;"
+ * (e.g. {"nitrate": 12.5}), the value associated to the key is stored in the table, with the columns (aquarium, timestamp, value).
+ */
+public class SensorDefinition {
+	
+	public String name;
+	public String topic;
+	public String key;
+	public String table;
+	
+	//Quality of service of the subscription, if missing MQTTSensorQoS is used
+	public Integer qos;
+	
+	/**
+	 * @return a copy of the definition.
+	 */
+	SensorDefinition copy() {
+		SensorDefinition copy = new SensorDefinition();
+		copy.name = name;
+		copy.topic = topic;
+		copy.key = key;
+		copy.table = table;
+		copy.qos = qos;
+		return copy;
+	}
+	
+	@Override
+	public String toString() {
+		return "{name=" + name + ", topic=" + topic + ", key=" + key + ", table=" + table + ", qos=" + qos + "}";
+	}
+}
@@ -0,0 +1,50 @@
+package it.unipi.iot.control;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * Original control of the temperature: the heater is turned on under the lower bound, the fan above the upper bound and both
+ * are turned off when the temperature is back in [optimal value - epsilonTemperature, optimal value + epsilonTemperature].
+ * 
+ * @author Fabi8997
+ */
+public class BangBangTemperatureControl implements TemperatureControlStrategy {
+	
+	private TemperatureAction action;
+	
+	/**
+	 * Class constructor.
+	 * @param action current status of the actuators
+	 */
+	public BangBangTemperatureControl(TemperatureAction action) {
+		this.action = action;
+	}
+	
+	@Override
+	public TemperatureAction getAction() {
+		return action;
+	}
+	
+	@Override
+	public TemperatureAction decide(ConfigurationParameters configurationParameters, float temperature, long timestamp) {
+		
+		float optimalValue = configurationParameters.temperatureOptimalValue;
+		float epsilon = configurationParameters.epsilonTemperature;
+		
+		//An actuator is turned on only if both are off
+		if(action == TemperatureAction.IDLE) {
+			
+			if(temperature < configurationParameters.temperatureLowerBound) {
+				action = TemperatureAction.HEAT;
+			} else if(temperature > configurationParameters.temperatureUpperBound) {
+				action = TemperatureAction.COOL;
+			}
+		
+		//If temperature in [ OptTemp - epsilon, OptTemp + epsilon] turn off the active one
+		} else if((temperature > optimalValue - epsilon) && (temperature < optimalValue + epsilon)) {
+			action = TemperatureAction.IDLE;
+		}
+		
+		return action;
+	}
+}
@@ -1,8 +1,25 @@
 package it.unipi.iot.control;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.Metric;
+import it.unipi.iot.aquarium.SampleListener;
+import it.unipi.iot.aquarium.SensorSnapshot;
 import it.unipi.iot.coap.CoAPNetworkController;
+import it.unipi.iot.coap.temperature.TemperatureController;
 import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.configuration.ConfigurationService;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
 import it.unipi.iot.mqtt.MQTTCollector;
 
 /**
@@ -10,105 +27,272 @@ import it.unipi.iot.mqtt.MQTTCollector;
  * Class extending Thread, that implements a control loop.<br>
  * The main function of this class is to manage the different devices in order
  * to provide a safe environment for the tank life.<br>
- * It periodically checks the different values retrieved by the sensors and,
+ * It checks the different values retrieved by the sensors as soon as they are received and,
  * when it's needed, it sends commands to the actuator aimed at balancing the
  * values in order to keep them inside the safe intervals.<br>
+ * Each new sample schedules an evaluation of its (aquarium, metric) pair after a debounce delay; the samples received while
+ * an evaluation is pending are coalesced in it, and two evaluations of the same pair are at least a minimum interval apart.
+ * The due evaluations are executed by a pool of threads, the evaluations of the same aquarium are serialized.<br>
  * 
  * @author Fabi8997
  *
  */
-public class ControlLogicThread extends Thread {
-
+public class ControlLogicThread extends Thread implements SampleListener {
+	
 	// To better visualize the terminal logs
-	private static final String LOG = "[" + Colors.ANSI_CYAN + "Smart Aquarium " + Colors.ANSI_RESET + "]";
+	private static final Logger LOGGER = new Logger("Smart Aquarium ", Colors.ANSI_CYAN);
 	
-	private ConfigurationParameters configurationParameters;
+	//Metrics of the evaluations
+	private static final LatencyHistogram EVALUATION_TIME = MetricsRegistry.DEFAULT.histogram("control_evaluation_seconds",
+			"Duration of the evaluations of the control logic, including the commands sent to the actuators.");
+	private static final LatencyHistogram EVALUATION_DELAY = MetricsRegistry.DEFAULT.histogram("control_evaluation_delay_seconds",
+			"Delay between the due time of an evaluation and its start.");
+	
+	//Current configuration, read at each evaluation so the bounds can be changed without a restart
+	private final ConfigurationService configuration;
 	private MQTTCollector mqttCollector;
 	private CoAPNetworkController coapNetworkController;
 	
-	// To keep track of the pH simulation status
-	private String pHSimulationType = "OFF";
+	//Evaluations waiting for their due time
+	private final DelayQueue<EvaluationRequest> evaluations;
+	
+	//Scheduling status of the metrics of each aquarium
+	private final ConcurrentHashMap<Aquarium, EvaluationState> states;
+	
+	//Pool of threads used to execute the due evaluations
+	private final ExecutorService executor;
 	
 	//To notify when the Thread should be stopped
-	private static boolean toStop = false;
+	private volatile boolean toStop = false;
 	
 	/**
 	 * Class constructor.
-	 * @param configurationParameters configuration parameters.
+	 * @param configuration service publishing the current configuration parameters.
 	 * @param mqttCollector MQTT collector to retrieve the current values and interact with the sensors.
 	 * @param coapNetworkController CoAP controller to interact with the actuators.
 	 */
-	public ControlLogicThread(ConfigurationParameters configurationParameters, MQTTCollector mqttCollector, CoAPNetworkController coapNetworkController) {
+	public ControlLogicThread(ConfigurationService configuration, MQTTCollector mqttCollector, CoAPNetworkController coapNetworkController) {
 		super();
-		this.configurationParameters = configurationParameters;
+		this.configuration = configuration;
 		this.mqttCollector = mqttCollector;
 		this.coapNetworkController = coapNetworkController;
+		this.evaluations = new DelayQueue<EvaluationRequest>();
+		this.states = new ConcurrentHashMap<Aquarium, EvaluationState>();
+		
+		//0 means one thread for each available processor
+		ConfigurationParameters configurationParameters = configuration.get();
+		int controlThreads = configurationParameters.controlThreads > 0 ? configurationParameters.controlThreads : Runtime.getRuntime().availableProcessors();
+		this.executor = Executors.newFixedThreadPool(controlThreads);
 	}
-
-
-
+	
+	/**
+	 * Scheduling status of the metrics of an aquarium, indexed by Metric.ordinal().
+	 */
+	private static class EvaluationState {
+		
+		//1 if an evaluation of the metric is in the queue
+		final AtomicIntegerArray scheduled = new AtomicIntegerArray(Metric.values().length);
+		
+		//System.nanoTime() of the last evaluation of the metric
+		final AtomicLongArray lastEvaluation = new AtomicLongArray(Metric.values().length);
+		
+		//Control of the temperature and its mode, used holding the lock of the aquarium
+		TemperatureControlStrategy temperatureControl;
+		TemperatureControlMode temperatureControlMode;
+		
+		EvaluationState() {
+			long now = System.nanoTime();
+			for(int i = 0; i < lastEvaluation.length(); i++) {
+				lastEvaluation.set(i, now - TimeUnit.DAYS.toNanos(1));
+			}
+		}
+	}
+	
+	/**
+	 * @return the debounce of the evaluations of the metric in nanoseconds.
+	 */
+	private static long debounce(ConfigurationParameters configurationParameters, Metric metric) {
+		switch(metric) {
+		case KH:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.kHEvaluationDebounce);
+		case PH:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.pHEvaluationDebounce);
+		default:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.temperatureEvaluationDebounce);
+		}
+	}
+	
+	/**
+	 * @return the minimum interval between two evaluations of the metric in nanoseconds.
+	 */
+	private static long minEvaluationInterval(ConfigurationParameters configurationParameters, Metric metric) {
+		switch(metric) {
+		case KH:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.kHMinEvaluationInterval);
+		case PH:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.pHMinEvaluationInterval);
+		default:
+			return TimeUnit.MILLISECONDS.toNanos(configurationParameters.temperatureMinEvaluationInterval);
+		}
+	}
+	
+	private EvaluationState stateOf(Aquarium aquarium) {
+		EvaluationState state = states.get(aquarium);
+		if(state == null) {
+			EvaluationState newState = new EvaluationState();
+			state = states.putIfAbsent(aquarium, newState);
+			if(state == null) {
+				state = newState;
+			}
+		}
+		return state;
+	}
+	
+	/**
+	 * Schedules the evaluation of the metric, unless one is already pending. It is called on the MQTT callback thread.
+	 */
+	@Override
+	public void sampleArrived(Aquarium aquarium, Metric metric) {
+		
+		if(toStop) {
+			return;
+		}
+		
+		EvaluationState state = stateOf(aquarium);
+		int index = metric.ordinal();
+		
+		//The new value will be read by the pending evaluation
+		if(!state.scheduled.compareAndSet(index, 0, 1)) {
+			return;
+		}
+		
+		//Wait for the debounce but respect the minimum interval from the last evaluation
+		ConfigurationParameters configurationParameters = configuration.get();
+		long dueTime = Math.max(System.nanoTime() + debounce(configurationParameters, metric),
+				state.lastEvaluation.get(index) + minEvaluationInterval(configurationParameters, metric));
+		evaluations.offer(new EvaluationRequest(aquarium, metric, dueTime));
+	}
+	
 	@Override
 	public void run() {
+		
+		//From now on every new sample triggers an evaluation
+		mqttCollector.setSampleListener(this);
+		
 		//Main cycle
-				while(!toStop && (!mqttCollector.isClosed()) && (coapNetworkController != null)) {
-					
-					//Every sleepIntervalApp milliseconds the status of the values is checked
-					try {
-						Thread.sleep(configurationParameters.sleepIntervalApp);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-					
-					if(toStop) {
-						break;
-					}
-				
-					//If the kH sensor has published a new kH value then check its value
-					if((coapNetworkController != null) && (!mqttCollector.isClosed()) && (mqttCollector.isNewCurrentKH())) {
-						checkKHStatus(
-								mqttCollector,
-								coapNetworkController,
-								configurationParameters.kHLowerBound,
-								configurationParameters.kHUpperBound,
-								configurationParameters.kHOptimalValue,
-								configurationParameters.epsilon);
-					}
-					
-					//If the temperature sensor has published a new temperature value then check its value
-					if((coapNetworkController != null) && (!mqttCollector.isClosed()) && (mqttCollector.isNewCurrentTemperature())) {
-						checkTemperatureStatus(
-								mqttCollector,
-								coapNetworkController,
-								configurationParameters.temperatureLowerBound,
-								configurationParameters.temperatureUpperBound,
-								configurationParameters.temperatureOptimalValue,
-								configurationParameters.epsilonTemperature);
-					}
-					
-					
-					//If the pH sensor has published a new pH value then check its value
-					//The control of the pH is more difficult, since we've to modify it only when the kH and the temperature  is stable
-					// only in this case we can modify the pH in order to not harm the fishes.
-					if((coapNetworkController != null) && (!mqttCollector.isClosed()) && (mqttCollector.isNewCurrentPH())) {
-						checkPHStatus(
-								mqttCollector,
-								coapNetworkController,
-								configurationParameters.pHLowerBound,
-								configurationParameters.pHUpperBound,
-								configurationParameters.pHOptimalValue,
-								configurationParameters.epsilon);
-					}
-					
-					//If all the values are good, then compute the new level of CO2 to be dispensed
-					if((coapNetworkController != null) && (!mqttCollector.isClosed()) && (coapNetworkController.getCo2Dispenser() != null) && (areAllMeasuresStable(mqttCollector))) {
-						coapNetworkController.getCo2Dispenser().computeNewCO2(
-								mqttCollector.getCurrentPH(),
-								mqttCollector.getCurrentKH(),
-								mqttCollector.getCurrentTemperature());
-					}
+		while(!toStop && (!mqttCollector.isClosed()) && (coapNetworkController != null)) {
+			
+			//Wait until an evaluation is due, nothing is done while no sample is received
+			final EvaluationRequest request;
+			try {
+				request = evaluations.take();
+			} catch (InterruptedException e) {
+				//Interrupted to be stopped
+				continue;
+			}
+			
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+					EVALUATION_DELAY.record(Math.max(0, start - request.dueTime));
+					evaluate(request);
+					EVALUATION_TIME.recordSince(start);
 				}
+			});
+		}
+		
+		mqttCollector.setSampleListener(null);
+		executor.shutdown();
+		
+		LOGGER.info("Control loop ended.");
+	}
+	
+	/**
+	 * Executes a due evaluation holding the lock of the aquarium, so that its actuators are driven by one thread at a time.
+	 * @param request evaluation to be executed.
+	 */
+	void evaluate(EvaluationRequest request) {
+		
+		Aquarium aquarium = request.aquarium;
+		EvaluationState state = stateOf(aquarium);
+		int index = request.metric.ordinal();
+		
+		synchronized(aquarium) {
+			
+			//The samples received from now on schedule a new evaluation
+			state.lastEvaluation.set(index, System.nanoTime());
+			state.scheduled.set(index, 0);
+			
+			//Only the aquariums with all the actuators registered can be controlled
+			if(toStop || mqttCollector.isClosed() || !aquarium.allDevicesRegistered()) {
+				return;
+			}
+			
+			//Consistent view of the values, the freshness of the metric is consumed by this evaluation
+			SensorSnapshot snapshot = aquarium.consumeFresh(request.metric);
+			if(snapshot == null) {
+				return;
+			}
+			
+			try {
+				checkAquarium(configuration.get(), aquarium, snapshot, request.metric);
+			}catch(RuntimeException e) {
+				//An error on an aquarium must not stop the control loop
+				LOGGER.error("Control of the aquarium " + aquarium.getId() + " failed.", e);
+			}
+		}
+	}
+	
+	/**
+	 * Checks the new value of a metric of an aquarium and sends the commands to its actuators.
+	 * @param configurationParameters configuration used by the whole evaluation.
+	 * @param aquarium aquarium to be checked.
+	 * @param snapshot values of the sensors of the aquarium.
+	 * @param metric metric that has a new value.
+	 */
+	private void checkAquarium(ConfigurationParameters configurationParameters, Aquarium aquarium, SensorSnapshot snapshot, Metric metric) {
+		
+		switch(metric) {
 		
-	            System.out.println(LOG + " Control loop ended.");
+		//The kH sensor has published a new kH value then check its value
+		case KH:
+			checkKHStatus(
+					aquarium,
+					snapshot,
+					configurationParameters.kHLowerBound,
+					configurationParameters.kHUpperBound,
+					configurationParameters.kHOptimalValue,
+					configurationParameters.epsilon);
+			break;
+		
+		//The temperature sensor has published a new temperature value then check its value
+		case TEMPERATURE:
+			checkTemperatureStatus(configurationParameters, aquarium, snapshot);
+			break;
+		
+		//The pH sensor has published a new pH value then check its value
+		//The control of the pH is more difficult, since we've to modify it only when the kH and the temperature  is stable
+		// only in this case we can modify the pH in order to not harm the fishes.
+		case PH:
+			checkPHStatus(
+					aquarium,
+					snapshot,
+					configurationParameters.pHLowerBound,
+					configurationParameters.pHUpperBound,
+					configurationParameters.pHOptimalValue,
+					configurationParameters.epsilon,
+					configurationParameters);
+			break;
+		}
+		
+		//If all the values are good, then compute the new level of CO2 to be dispensed
+		if((aquarium.getCo2Dispenser() != null) && (areAllMeasuresStable(configurationParameters, snapshot))) {
+			aquarium.getCo2Dispenser().computeNewCO2(
+					snapshot.getPH(),
+					snapshot.getKH(),
+					snapshot.getTemperature());
+		}
 	}
 	
 	/**
@@ -117,124 +301,114 @@ public class ControlLogicThread extends Thread {
 	 * osmotic water flow.<br>
 	 * To implement the simulation are sent MQTT messages to the sensors.
 	 * 
-	 * @param mqttCollector to retrieve the current values and interact with the sensors.
-	 * @param coapNetworkController to interact with the actuator.
+	 * @param aquarium to interact with the actuators.
+	 * @param snapshot current values of the sensors.
 	 * @param lowerBound of kH interval.
 	 * @param upperBound of kH interval.
 	 * @param optimalValue of kH.
 	 * @param epsilon around the optimal value.
 	 */
-	private void checkKHStatus(MQTTCollector mqttCollector, CoAPNetworkController coapNetworkController, float lowerBound, float upperBound, float optimalValue, float epsilon) {
+	private void checkKHStatus(Aquarium aquarium, SensorSnapshot snapshot, float lowerBound, float upperBound, float optimalValue, float epsilon) {
 		
 		//If kH < LB
-		if(((mqttCollector.getCurrentKH()) < lowerBound) && !coapNetworkController.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
+		if(((snapshot.getKH()) < lowerBound) && !aquarium.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
 			
 			//Activate the simulation on kH device
-			mqttCollector.simulateOsmoticWaterTank("INC");
+			mqttCollector.simulateOsmoticWaterTank(aquarium.getId(), "INC");
 			
 			//Send the command to the actuator to start the flow: mode=on
-			coapNetworkController.getOsmoticWaterTank().activateFlow();
-			
+			aquarium.getOsmoticWaterTank().activateFlow();
+		
 		//If kH > UB	
-		}else if ((mqttCollector.getCurrentKH() > upperBound ) && !coapNetworkController.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
+		}else if ((snapshot.getKH() > upperBound ) && !aquarium.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
 			
 			//Activate the simulation on kH device
-			mqttCollector.simulateOsmoticWaterTank("DEC");
+			mqttCollector.simulateOsmoticWaterTank(aquarium.getId(), "DEC");
 			
 			//Send the command to the actuator to start the flow: mode=on
-			coapNetworkController.getOsmoticWaterTank().activateFlow();
-			
-			
+			aquarium.getOsmoticWaterTank().activateFlow();
+		
+		
 		//If    kH in [ OptKH - epsilon, OptKH + epsilon] where optKH is the optimum value for kH
-		}else if ((mqttCollector.getCurrentKH() > optimalValue - epsilon) && (mqttCollector.getCurrentKH() < (optimalValue + epsilon)) && coapNetworkController.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
+		}else if ((snapshot.getKH() > optimalValue - epsilon) && (snapshot.getKH() < (optimalValue + epsilon)) && aquarium.getOsmoticWaterTank().isOsmoticWaterTankFlowActive()) {
 			
 			//Activate the simulation on kH device
-			mqttCollector.simulateOsmoticWaterTank("OFF");
+			mqttCollector.simulateOsmoticWaterTank(aquarium.getId(), "OFF");
 			
 			//Send the command to the actuator to stop the flow: mode=off
-			coapNetworkController.getOsmoticWaterTank().stopFlow();
+			aquarium.getOsmoticWaterTank().stopFlow();
 		}
 	}
-
-
+	
+	
 	/**
-	 * Checks if the temperature is under the lower bound, above the upper bound or around the optimal value. In the first case
-	 * turn on the heater, in the second turn on the fan and in the latter case turn off the fan or the heater.<br>
-	 * To implement the simulation are sent MQTT messages to the sensors.
+	 * Decides with the {@link TemperatureControlStrategy} of the aquarium which of the fan and the heater must be active and
+	 * sends the commands to the actuators that are not in the decided status.<br>
+	 * To implement the simulation are sent MQTT messages to the sensors when the decided status changes.
 	 * 
-	 * @param mqttCollector to retrieve the current values and interact with the sensors.
-	 * @param coapNetworkController to interact with the actuator.
-	 * @param lowerBound of temperature interval.
-	 * @param upperBound of temperature interval.
-	 * @param optimalValue of temperature.
-	 * @param epsilon around the optimal value.
+	 * @param configurationParameters configuration used by the whole evaluation.
+	 * @param aquarium to interact with the actuators.
+	 * @param snapshot current values of the sensors.
 	 */
-	private void checkTemperatureStatus(MQTTCollector mqttCollector, CoAPNetworkController coapNetworkController, float lowerBound, float upperBound, float optimalValue, float epsilon) {
+	private void checkTemperatureStatus(ConfigurationParameters configurationParameters, Aquarium aquarium, SensorSnapshot snapshot) {
 		
-	
-		//If kH < LB and the heater is not active
-		if(((mqttCollector.getCurrentTemperature()) < lowerBound) && coapNetworkController.getTemperatureController().areFanHeaterInactive()) {
-			
-			//If the fan is active it means that we've reduced too much the temperature
-			if(coapNetworkController.getTemperatureController().isFanActive()) {
-				
-				//Activate the simulation on temperature device
-				mqttCollector.simulateFan("off");
-				
-				//Send the command to the actuator to stop the fan: mode=off
-				coapNetworkController.getTemperatureController().stopFan();
-			}
-			
-			//Activate the simulation on temperature device
-			mqttCollector.simulateHeater("on");
-			
-			//Send the command to the actuator to start the heater: mode=on
-			coapNetworkController.getTemperatureController().activateHeater();
-			
-		//If kH > UB and the fan is not active
-		}else if ((mqttCollector.getCurrentTemperature() > upperBound && coapNetworkController.getTemperatureController().areFanHeaterInactive()) ) {
+		TemperatureController temperatureController = aquarium.getTemperatureController();
+		EvaluationState state = stateOf(aquarium);
+		
+		//A new strategy starts from the current status of the actuators, also when the mode is changed in the configuration file
+		TemperatureControlMode mode = TemperatureControlMode.fromString(configurationParameters.temperatureControlStrategy);
+		if(state.temperatureControl == null || state.temperatureControlMode != mode) {
+			state.temperatureControl = mode.create(currentAction(temperatureController));
+			state.temperatureControlMode = mode;
+		}
+		
+		TemperatureAction previous = state.temperatureControl.getAction();
+		TemperatureAction action = state.temperatureControl.decide(configurationParameters, snapshot.getTemperature(), System.nanoTime());
+		
+		//Activate the simulation on temperature device, the device cannot have the fan and the heater on together
+		if(action != previous) {
 			
-			//If the heater is active it means that we've incremented too much the temperature
-			if(coapNetworkController.getTemperatureController().isHeaterActive()) {
-				
-				//Activate the simulation on temperature device
-				mqttCollector.simulateHeater("off");
-				
-				//Send the command to the actuator to stop the heater: mode=off
-				coapNetworkController.getTemperatureController().stopHeater();;
+			if(previous == TemperatureAction.COOL) {
+				mqttCollector.simulateFan(aquarium.getId(), "off");
+			} else if(previous == TemperatureAction.HEAT) {
+				mqttCollector.simulateHeater(aquarium.getId(), "off");
 			}
 			
-			//Activate the simulation on temperature device
-			mqttCollector.simulateFan("on");
-			
-			//Send the command to the actuator to start the fan: mode=on
-			coapNetworkController.getTemperatureController().activateFan();
-			
-			
-		//If temperature in [ OptTemp - epsilon, OptTemp + epsilon] where optTemp is the optimum value for temperature
-		}else if ((mqttCollector.getCurrentTemperature() > optimalValue - epsilon) && (mqttCollector.getCurrentTemperature() < (optimalValue + epsilon) && (coapNetworkController.getTemperatureController().isFanActive() || coapNetworkController.getTemperatureController().isHeaterActive()))) {
-			
-			//If the fan is active, turn it off
-			if(coapNetworkController.getTemperatureController().isFanActive()) {
-				
-				//Activate the simulation on temperature device
-				mqttCollector.simulateFan("off");
-				
-				//Send the command to the actuator to stop the fan: mode=off
-				coapNetworkController.getTemperatureController().stopFan();
-				
-			//If the heater is active, turn it off
-			}else if(coapNetworkController.getTemperatureController().isHeaterActive()) {
-				
-				//Activate the simulation on temperature device
-				mqttCollector.simulateHeater("off");
-				
-				//Send the command to the actuator to stop the heater: mode=off
-				coapNetworkController.getTemperatureController().stopHeater();;
+			if(action == TemperatureAction.COOL) {
+				mqttCollector.simulateFan(aquarium.getId(), "on");
+			} else if(action == TemperatureAction.HEAT) {
+				mqttCollector.simulateHeater(aquarium.getId(), "on");
 			}
 		}
+		
+		//Send the commands to the actuators, first the ones to be stopped
+		if(action != TemperatureAction.COOL && temperatureController.isFanActive()) {
+			temperatureController.stopFan();
+		}
+		if(action != TemperatureAction.HEAT && temperatureController.isHeaterActive()) {
+			temperatureController.stopHeater();
+		}
+		if(action == TemperatureAction.COOL && !temperatureController.isFanActive()) {
+			temperatureController.activateFan();
+		}
+		if(action == TemperatureAction.HEAT && !temperatureController.isHeaterActive()) {
+			temperatureController.activateHeater();
+		}
 	}
-
+	
+	/**
+	 * @return the status of the temperature actuators acknowledged by the device.
+	 */
+	private static TemperatureAction currentAction(TemperatureController temperatureController) {
+		if(temperatureController.isFanActive()) {
+			return TemperatureAction.COOL;
+		}
+		if(temperatureController.isHeaterActive()) {
+			return TemperatureAction.HEAT;
+		}
+		return TemperatureAction.IDLE;
+	}
+	
 	/**
 	 * Checks the pH status: if it is under the lower bound or above the upper bound and the kH and the temperature are 
 	 * close to their optimal value, then the pH can be modified and the simulation of the pH sensor can be started accordingly
@@ -242,73 +416,75 @@ public class ControlLogicThread extends Thread {
 	 * If the pH value is now inside the desired interval then the simulation is stopped.<br>
 	 * The simulation is performed using MQTT messages.
 	 * 
-	 * @param mqttCollector to retrieve the current values and interact with the sensors.
-	 * @param coapNetworkController to interact with the actuator.
+	 * @param aquarium to interact with the actuators.
+	 * @param snapshot current values of the sensors.
 	 * @param lowerBound of pH interval.
 	 * @param upperBound of pH interval.
 	 * @param optimalValue of pH.
 	 * @param epsilon around the optimal value.
+	 * @param configurationParameters configuration containing the intervals of the kH and of the temperature.
 	 */
-	private void checkPHStatus(MQTTCollector mqttCollector, CoAPNetworkController coapNetworkController, float lowerBound, float upperBound, float optimalValue, float epsilon) {
+	private void checkPHStatus(Aquarium aquarium, SensorSnapshot snapshot, float lowerBound, float upperBound, float optimalValue, float epsilon,
+			ConfigurationParameters configurationParameters) {
 		
 		//If kH < LB ADD; The pH can be modified only when the temperature and the kH is stable
-		if(((mqttCollector.getCurrentPH()) < lowerBound) && tempAndKHStable(mqttCollector)) {
-				
+		if(((snapshot.getPH()) < lowerBound) && tempAndKHStable(configurationParameters, snapshot)) {
+			
 			//Compute the new value of CO2 to be dispensed
-			coapNetworkController.getCo2Dispenser().computeNewCO2(
-					mqttCollector.getCurrentPH(),
-					mqttCollector.getCurrentKH(),
-					mqttCollector.getCurrentTemperature());	
-				
+			aquarium.getCo2Dispenser().computeNewCO2(
+					snapshot.getPH(),
+					snapshot.getKH(),
+					snapshot.getTemperature());	
+			
 			//Activate the simulation on pH device
-			if(!coapNetworkController.getCo2Dispenser().isHighVariation() && !pHSimulationType.equals("SDEC")) {
-	
+			if(!aquarium.getCo2Dispenser().isHighVariation() && !aquarium.getpHSimulationType().equals("SDEC")) {
+				
 				//If the variation in CO2 is low => low variation of PH
-				mqttCollector.simulateCo2Dispenser("SDEC");
+				mqttCollector.simulateCo2Dispenser(aquarium.getId(), "SDEC");
+				
+				aquarium.setpHSimulationType("SDEC");
+			
+			}else if(aquarium.getCo2Dispenser().isHighVariation() && !aquarium.getpHSimulationType().equals("DEC")){
 				
-				this.pHSimulationType = "SDEC";
-					
-			}else if(coapNetworkController.getCo2Dispenser().isHighVariation() && !pHSimulationType.equals("DEC")){
-					
 				//If the variation in CO2 is high => high variation of PH
-				mqttCollector.simulateCo2Dispenser("DEC");
+				mqttCollector.simulateCo2Dispenser(aquarium.getId(), "DEC");
 				
-				this.pHSimulationType = "DEC";
+				aquarium.setpHSimulationType("DEC");
 			}	
-			
-			
+		
+		
 		//If kH > UB ADD; The pH can be modified only when the temperature and the kH is stable
-		}else if ((mqttCollector.getCurrentPH() > upperBound ) && tempAndKHStable(mqttCollector) ) {
+		}else if ((snapshot.getPH() > upperBound ) && tempAndKHStable(configurationParameters, snapshot) ) {
 			
 			//Compute the new value of CO2 to be dispensed
-			coapNetworkController.getCo2Dispenser().computeNewCO2(
-					mqttCollector.getCurrentPH(),
-					mqttCollector.getCurrentKH(),
-					mqttCollector.getCurrentTemperature());	
-				
+			aquarium.getCo2Dispenser().computeNewCO2(
+					snapshot.getPH(),
+					snapshot.getKH(),
+					snapshot.getTemperature());	
+			
 			//Activate the simulation on pH device
-			if(!coapNetworkController.getCo2Dispenser().isHighVariation() && !pHSimulationType.equals("SINC")) {
-	
+			if(!aquarium.getCo2Dispenser().isHighVariation() && !aquarium.getpHSimulationType().equals("SINC")) {
+				
 				//If the variation in CO2 is low => low variation of PH
-				mqttCollector.simulateCo2Dispenser("SINC");
+				mqttCollector.simulateCo2Dispenser(aquarium.getId(), "SINC");
+				
+				aquarium.setpHSimulationType("SINC");
+			
+			}else if(aquarium.getCo2Dispenser().isHighVariation() && !aquarium.getpHSimulationType().equals("INC")){
 				
-				this.pHSimulationType = "SINC";
-					
-			}else if(coapNetworkController.getCo2Dispenser().isHighVariation() && !pHSimulationType.equals("INC")){
-					
 				//If the variation in CO2 is high => high variation of PH
-				mqttCollector.simulateCo2Dispenser("INC");
+				mqttCollector.simulateCo2Dispenser(aquarium.getId(), "INC");
 				
-				this.pHSimulationType = "INC";
+				aquarium.setpHSimulationType("INC");
 			}				
-			
+		
 		//If pH in [ OptPH - epsilon, OptPH + epsilon] where optPH is the optimum value for kH
-		}else if ((mqttCollector.getCurrentPH() > optimalValue - epsilon) && (mqttCollector.getCurrentPH() < (optimalValue + epsilon)) && !pHSimulationType.equals("OFF")) {
+		}else if ((snapshot.getPH() > optimalValue - epsilon) && (snapshot.getPH() < (optimalValue + epsilon)) && !aquarium.getpHSimulationType().equals("OFF")) {
 			
 			//Activate the simulation on kH device
-			mqttCollector.simulateCo2Dispenser("OFF");
+			mqttCollector.simulateCo2Dispenser(aquarium.getId(), "OFF");
 			
-			this.pHSimulationType = "OFF";
+			aquarium.setpHSimulationType("OFF");
 			
 			//The flow of CO2 is always active!
 			//No need to compute the CO2 since all the three measures are stable!
@@ -317,23 +493,24 @@ public class ControlLogicThread extends Thread {
 	
 	/**
 	 * Checks if all the measures are inside the required interval.
-	 * @param mqttCollector
+	 * @param configurationParameters configuration containing the intervals.
+	 * @param snapshot values of the sensors.
 	 * @return true if all the measures are inside the required interval, false otherwise.
 	 */
-	private boolean areAllMeasuresStable(MQTTCollector mqttCollector) {
+	private boolean areAllMeasuresStable(ConfigurationParameters configurationParameters, SensorSnapshot snapshot) {
 		
 		//Check if the kH belongs to (LB, UB)
-		if(mqttCollector.getCurrentKH() < configurationParameters.kHLowerBound || mqttCollector.getCurrentKH() > configurationParameters.kHUpperBound) {
+		if(snapshot.getKH() < configurationParameters.kHLowerBound || snapshot.getKH() > configurationParameters.kHUpperBound) {
 			return false;
 		}
 		
 		//Check if the pH belongs to (LB, UB)
-		if(mqttCollector.getCurrentPH() < configurationParameters.pHLowerBound || mqttCollector.getCurrentPH() > configurationParameters.pHUpperBound) {
+		if(snapshot.getPH() < configurationParameters.pHLowerBound || snapshot.getPH() > configurationParameters.pHUpperBound) {
 			return false;
 		}
 		
 		//Check if the temperature belongs to (LB, UB)
-		if(mqttCollector.getCurrentTemperature() < configurationParameters.temperatureLowerBound || mqttCollector.getCurrentTemperature() > configurationParameters.temperatureUpperBound) {
+		if(snapshot.getTemperature() < configurationParameters.temperatureLowerBound || snapshot.getTemperature() > configurationParameters.temperatureUpperBound) {
 			return false;
 		}
 		
@@ -344,18 +521,19 @@ public class ControlLogicThread extends Thread {
 	
 	/**
 	 * Checks if the temperature and the kH are inside the desired interval.
-	 * @param mqttCollector to retrieve the values.
+	 * @param configurationParameters configuration containing the intervals.
+	 * @param snapshot values of the sensors.
 	 * @return true if the temperature and the kH are inside the desired interval, false otherwise.
 	 */
-	private boolean tempAndKHStable(MQTTCollector mqttCollector) {
+	private boolean tempAndKHStable(ConfigurationParameters configurationParameters, SensorSnapshot snapshot) {
 		
 		//Check if the kH belongs to (LB, UB)
-		if(mqttCollector.getCurrentKH() < configurationParameters.kHLowerBound || mqttCollector.getCurrentKH() > configurationParameters.kHUpperBound) {
+		if(snapshot.getKH() < configurationParameters.kHLowerBound || snapshot.getKH() > configurationParameters.kHUpperBound) {
 			return false;
 		}
 		
 		//Check if the temperature belongs to (LB, UB)
-		if(mqttCollector.getCurrentTemperature() < configurationParameters.temperatureLowerBound || mqttCollector.getCurrentTemperature() > configurationParameters.temperatureUpperBound) {
+		if(snapshot.getTemperature() < configurationParameters.temperatureLowerBound || snapshot.getTemperature() > configurationParameters.temperatureUpperBound) {
 			return false;
 		}
 		
@@ -366,8 +544,11 @@ public class ControlLogicThread extends Thread {
 	/**
 	 * Stops the control logic loop.
 	 */
-	public static void stopControlLogicLoop() {
+	public void stopControlLogicLoop() {
 		toStop = true;
+		
+		//Wake up the thread waiting for the next evaluation
+		this.interrupt();
 	}
 
 }
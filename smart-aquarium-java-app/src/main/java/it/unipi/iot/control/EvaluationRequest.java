@@ -0,0 +1,44 @@
+package it.unipi.iot.control;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.Metric;
+
+/**
+ * Request to evaluate a metric of an aquarium, queued in the DelayQueue of the control logic until its due time.
+ * 
+ * @author Fabi8997
+ */
+class EvaluationRequest implements Delayed {
+	
+	final Aquarium aquarium;
+	final Metric metric;
+	
+	//Due time, in nanoseconds with the same origin of System.nanoTime()
+	final long dueTime;
+	
+	EvaluationRequest(Aquarium aquarium, Metric metric, long dueTime) {
+		this.aquarium = aquarium;
+		this.metric = metric;
+		this.dueTime = dueTime;
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed other) {
+		
+		if(other instanceof EvaluationRequest) {
+			long difference = dueTime - ((EvaluationRequest) other).dueTime;
+			return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+		}
+		
+		long difference = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+		return (difference < 0) ? -1 : ((difference > 0) ? 1 : 0);
+	}
+}
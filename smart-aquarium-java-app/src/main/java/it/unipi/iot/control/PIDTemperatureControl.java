@@ -0,0 +1,109 @@
+package it.unipi.iot.control;
+
+import java.util.concurrent.TimeUnit;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * PID control of the temperature. The output is computed from the error with respect to the optimal value: <br>
+ * output = temperatureKp * error + temperatureKi * integral of the error + temperatureKd * derivative of the temperature <br>
+ * The actuators are on/off, so the output is turned into a status with a hysteresis band: from IDLE the heater is turned on
+ * when the output is above temperatureHysteresis and the fan when it is below -temperatureHysteresis, then the active one is
+ * turned off when the output crosses 0. <br>
+ * A status is kept for at least temperatureMinDwellTime milliseconds, unless the temperature is out of the bounds or the active
+ * actuator has moved it past the optimal value.
+ *
+ * @author Fabi8997
+ */
+public class PIDTemperatureControl implements TemperatureControlStrategy {
+	
+	private TemperatureAction action;
+	
+	//System.nanoTime() of the last change of status
+	private long lastSwitch;
+	
+	//Integral of the error in degrees per second
+	private float integral;
+	
+	//Last temperature and System.nanoTime() of its evaluation, NaN before the first one
+	private float lastTemperature;
+	private long lastTimestamp;
+	
+	/**
+	 * Class constructor.
+	 * @param action current status of the actuators
+	 */
+	public PIDTemperatureControl(TemperatureAction action) {
+		this.action = action;
+		this.lastSwitch = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+		this.integral = 0;
+		this.lastTemperature = Float.NaN;
+	}
+	
+	@Override
+	public TemperatureAction getAction() {
+		return action;
+	}
+	
+	@Override
+	public TemperatureAction decide(ConfigurationParameters configurationParameters, float temperature, long timestamp) {
+		
+		float lowerBound = configurationParameters.temperatureLowerBound;
+		float upperBound = configurationParameters.temperatureUpperBound;
+		float error = configurationParameters.temperatureOptimalValue - temperature;
+		
+		//The derivative is computed on the temperature, so a change of the optimal value does not cause a spike
+		float derivative = 0;
+		if(!Float.isNaN(lastTemperature) && timestamp > lastTimestamp) {
+			float seconds = (timestamp - lastTimestamp) / 1e9f;
+			integral += error * seconds;
+			derivative = -(temperature - lastTemperature) / seconds;
+		}
+		lastTemperature = temperature;
+		lastTimestamp = timestamp;
+		
+		//Anti-windup: the integral term alone cannot ask for more than half of the safe interval
+		if(configurationParameters.temperatureKi > 0) {
+			float limit = (upperBound - lowerBound) / 2 / configurationParameters.temperatureKi;
+			integral = Math.max(-limit, Math.min(limit, integral));
+		}
+		
+		float output = configurationParameters.temperatureKp * error
+				+ configurationParameters.temperatureKi * integral
+				+ configurationParameters.temperatureKd * derivative;
+		
+		TemperatureAction next = action;
+		switch(action) {
+		case IDLE:
+			if(output > configurationParameters.temperatureHysteresis) {
+				next = TemperatureAction.HEAT;
+			} else if(output < -configurationParameters.temperatureHysteresis) {
+				next = TemperatureAction.COOL;
+			}
+			break;
+		case HEAT:
+			if(output <= 0) {
+				next = TemperatureAction.IDLE;
+			}
+			break;
+		case COOL:
+			if(output >= 0) {
+				next = TemperatureAction.IDLE;
+			}
+			break;
+		}
+		
+		//The dwell time is not respected out of the bounds or when the active actuator has moved the temperature past the optimal value
+		boolean urgent = (temperature < lowerBound) || (temperature > upperBound)
+				|| (action == TemperatureAction.COOL && error > 0) || (action == TemperatureAction.HEAT && error < 0);
+		if(next != action && (urgent || timestamp - lastSwitch >= TimeUnit.MILLISECONDS.toNanos(configurationParameters.temperatureMinDwellTime))) {
+			action = next;
+			lastSwitch = timestamp;
+			
+			//The error accumulated before would keep the new status beyond the optimal value
+			integral = 0;
+		}
+		
+		return action;
+	}
+}
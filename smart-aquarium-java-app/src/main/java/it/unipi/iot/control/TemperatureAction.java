@@ -0,0 +1,15 @@
+package it.unipi.iot.control;
+
+/**
+ * Status of the temperature actuators decided by a {@link TemperatureControlStrategy}: <br>
+ * - IDLE: the fan and the heater are off <br>
+ * - COOL: the fan is on <br>
+ * - HEAT: the heater is on
+ * 
+ * @author Fabi8997
+ */
+public enum TemperatureAction {
+	IDLE,
+	COOL,
+	HEAT
+}
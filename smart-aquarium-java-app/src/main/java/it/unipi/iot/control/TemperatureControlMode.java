@@ -0,0 +1,45 @@
+package it.unipi.iot.control;
+
+/**
+ * Strategies available to control the temperature: <br>
+ * - BANGBANG: the fan or the heater are turned on out of the bounds and off around the optimal value, as the original
+ *   control logic <br>
+ * - PID: the actuators follow the output of a PID controller, with a hysteresis band and a minimum dwell time in each status
+ * 
+ * @author Fabi8997
+ */
+public enum TemperatureControlMode {
+	BANGBANG,
+	PID;
+	
+	/**
+	 * Returns the mode with the given name, ignoring the case. If the name is null or unknown the BANGBANG mode is returned,
+	 * since it is the original behavior of the application.
+	 * @param name name of the mode read from the configuration file
+	 * @return the corresponding mode
+	 */
+	public static TemperatureControlMode fromString(String name) {
+		if(name != null) {
+			for(TemperatureControlMode mode : values()) {
+				if(mode.name().equalsIgnoreCase(name.trim())) {
+					return mode;
+				}
+			}
+		}
+		return BANGBANG;
+	}
+	
+	/**
+	 * Creates a strategy of this mode.
+	 * @param action current status of the actuators
+	 * @return the new strategy
+	 */
+	public TemperatureControlStrategy create(TemperatureAction action) {
+		switch(this) {
+		case PID:
+			return new PIDTemperatureControl(action);
+		default:
+			return new BangBangTemperatureControl(action);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package it.unipi.iot.control;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * Strategy deciding from the temperature of an aquarium which of its temperature actuators must be active. <br>
+ * An instance controls a single aquarium and it is called by one thread at a time, so it can keep the history of the
+ * aquarium between two evaluations.
+ * 
+ * @author Fabi8997
+ */
+public interface TemperatureControlStrategy {
+	
+	/**
+	 * @return the status decided by the last evaluation.
+	 */
+	TemperatureAction getAction();
+	
+	/**
+	 * Decides the status of the actuators from a new temperature.
+	 * @param configurationParameters current configuration, for the bounds, the optimal value and the tuning of the strategy
+	 * @param temperature temperature received
+	 * @param timestamp System.nanoTime() of the evaluation
+	 * @return the status the actuators must have
+	 */
+	TemperatureAction decide(ConfigurationParameters configurationParameters, float temperature, long timestamp);
+}
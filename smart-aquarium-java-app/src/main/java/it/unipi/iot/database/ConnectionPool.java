@@ -0,0 +1,227 @@
+package it.unipi.iot.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Small pool of JDBC connections used by the DatabaseManager, so that the writers on different threads (ingestion pipeline,
+ * CoAP callbacks, flusher) insert in parallel instead of serializing on a single connection. <br>
+ * Each pooled connection has its own cache of prepared statements. A connection is validated when it is borrowed after being
+ * idle for more than validationIdle milliseconds, and a broken connection is reopened at the next borrow or by
+ * {@link #reconnect()}, called periodically by the DatabaseManager while the database is unreachable.
+ *
+ * @author Fabi8997
+ */
+class ConnectionPool {
+
+	/**
+	 * A slot of the pool: the connection, null if it is broken, and its prepared statements.
+	 */
+	static class PooledConnection {
+
+		Connection connection;
+		private final HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+		private long lastUsed;
+
+		/**
+		 * @param sql SQL of the statement
+		 * @return the cached prepared statement, created at the first use.
+		 * @throws SQLException
+		 */
+		PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement preparedStatement = statements.get(sql);
+			if(preparedStatement == null) {
+				preparedStatement = connection.prepareStatement(sql);
+				statements.put(sql, preparedStatement);
+			}
+			return preparedStatement;
+		}
+
+		/**
+		 * @return true if the connection is still usable.
+		 */
+		boolean isValid() {
+			try {
+				return connection != null && connection.isValid(2);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Closes the statements and the connection, ignoring the errors.
+		 */
+		private void close() {
+			for(PreparedStatement preparedStatement : statements.values()) {
+				try {
+					preparedStatement.close();
+				} catch (SQLException e) {
+					//The connection is already lost
+				}
+			}
+			statements.clear();
+
+			try {
+				if(connection != null) {
+					connection.close();
+				}
+			} catch (SQLException e) {
+				//The connection is already lost
+			}
+			connection = null;
+		}
+	}
+
+	//Parameters of the connections
+	private final String url;
+	private final String username;
+	private final String password;
+	private final boolean autoCommit;
+	private final long validationIdle;
+
+	//Slots not borrowed
+	private final ArrayBlockingQueue<PooledConnection> idle;
+	private final int size;
+	private volatile boolean closed;
+
+	/**
+	 * Class constructor, no connection is opened until it is borrowed or {@link #reconnect()} is called.
+	 * @param url JDBC URL of the DB
+	 * @param username
+	 * @param password
+	 * @param size number of connections
+	 * @param autoCommit auto-commit mode of the connections
+	 * @param validationIdle milliseconds after which an idle connection is validated before being borrowed
+	 */
+	ConnectionPool(String url, String username, String password, int size, boolean autoCommit, long validationIdle) {
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.autoCommit = autoCommit;
+		this.validationIdle = validationIdle;
+		this.size = Math.max(1, size);
+		this.idle = new ArrayBlockingQueue<PooledConnection>(this.size);
+		for(int i = 0; i < this.size; i++) {
+			idle.add(new PooledConnection());
+		}
+	}
+
+	private void open(PooledConnection pooledConnection) throws SQLException {
+		pooledConnection.close();
+		Connection connection = DriverManager.getConnection(url, username, password);
+		connection.setAutoCommit(autoCommit);
+		pooledConnection.connection = connection;
+	}
+
+	/**
+	 * Borrows a connection, waiting if all of them are in use. The connection is validated if it was idle for too long and it is
+	 * reopened if it is broken.
+	 * @return a valid connection, that must be given back with {@link #release} or {@link #invalidate}, or null if the DB is
+	 * unreachable.
+	 */
+	PooledConnection borrow() {
+
+		PooledConnection pooledConnection;
+		try {
+			pooledConnection = idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+
+		//The pool has been closed
+		if(closed) {
+			idle.add(pooledConnection);
+			return null;
+		}
+
+		boolean stale = System.currentTimeMillis() - pooledConnection.lastUsed > validationIdle;
+		if(pooledConnection.connection == null || (stale && !pooledConnection.isValid())) {
+			try {
+				open(pooledConnection);
+			} catch (SQLException e) {
+				pooledConnection.close();
+				idle.add(pooledConnection);
+				return null;
+			}
+		}
+
+		return pooledConnection;
+	}
+
+	/**
+	 * Gives back a borrowed connection.
+	 */
+	void release(PooledConnection pooledConnection) {
+		pooledConnection.lastUsed = System.currentTimeMillis();
+
+		//Given back after the closing of the pool
+		if(closed) {
+			pooledConnection.close();
+		}
+		idle.add(pooledConnection);
+	}
+
+	/**
+	 * Gives back a borrowed connection that is broken, it will be reopened later.
+	 */
+	void invalidate(PooledConnection pooledConnection) {
+		pooledConnection.close();
+		idle.add(pooledConnection);
+	}
+
+	/**
+	 * Reopens the broken connections that are not borrowed.
+	 * @return the number of valid connections among the ones checked.
+	 */
+	int reconnect() {
+
+		List<PooledConnection> pooledConnections = new ArrayList<PooledConnection>(size);
+		idle.drainTo(pooledConnections);
+
+		int valid = 0;
+		for(PooledConnection pooledConnection : pooledConnections) {
+			if(closed) {
+				break;
+			}
+			if(!pooledConnection.isValid()) {
+				try {
+					open(pooledConnection);
+				} catch (SQLException e) {
+					pooledConnection.close();
+					continue;
+				}
+			}
+			valid++;
+		}
+
+		for(PooledConnection pooledConnection : pooledConnections) {
+			release(pooledConnection);
+		}
+
+		return valid;
+	}
+
+	/**
+	 * Closes the connections that are not borrowed, the other ones are closed when they are given back.
+	 */
+	void close() {
+		closed = true;
+		List<PooledConnection> pooledConnections = new ArrayList<PooledConnection>(size);
+		idle.drainTo(pooledConnections);
+		for(PooledConnection pooledConnection : pooledConnections) {
+			pooledConnection.close();
+			idle.add(pooledConnection);
+		}
+	}
+
+	int getSize() {
+		return size;
+	}
+}
@@ -1,258 +1,1033 @@
 package it.unipi.iot.database;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.io.IOException;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.database.ConnectionPool.PooledConnection;
+import it.unipi.iot.database.RollupAggregator.RollupWindow;
 import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleKind.Layout;
+import it.unipi.iot.storage.SampleStore;
+import it.unipi.iot.storage.SampleVisitor;
 
 /**
  * 
  * @author Fabi8997
  * This class allow the Smart Aquarium Application to interact with the MYSQL database smart_aquarium. <br>
- * Offers the methods to insert the data in the different tables. 
+ * Offers the methods to insert the data in the different tables, it is the MYSQL backend of the {@link SampleStore}. <br>
+ * The rows are written using a small pool of connections, each one with its own prepared statements, so that the writers on
+ * different threads proceed in parallel.<br>
+ * When the database is unreachable the rows are appended to a local spool file and a reconnection is attempted periodically;
+ * once reconnected the spool is replayed in batches, in arrival order, before accepting new rows. The position reached by the
+ * replay is stored in the table SpoolCheckpoint in the same transaction of each batch, so a crash during the replay neither
+ * duplicates nor loses rows.<br>
+ * A write that fails because the connection is lost, or because the transaction has been rolled back by the DB (e.g. a
+ * deadlock), is handled in the same way: the rows are spooled and written by the replay. If instead the DB rejects a row, e.g.
+ * a value out of range, a violated constraint or a missing table, writing it again would fail again: the rows of the batch are
+ * then written one at a time and the rejected ones are logged and discarded, both when they are flushed and when the spool is
+ * replayed, so they never block the following rows.
  *
  */
-public class DatabaseManager {
+public class DatabaseManager implements SampleStore {
 	
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "Database Manager" + Colors.ANSI_RESET + "]";
+	private static final Logger LOGGER = new Logger("Database Manager", Colors.ANSI_GREEN);
+
+	//Table in which the position of the replay of the spool is stored
+	private static final String SPOOL_CHECKPOINT_TABLE = "SpoolCheckpoint";
+	private static final String SELECT_CHECKPOINT = "SELECT generation, position FROM " + SPOOL_CHECKPOINT_TABLE + " WHERE id = 1";
+	private static final String UPDATE_CHECKPOINT = "INSERT INTO " + SPOOL_CHECKPOINT_TABLE + " (id, generation, position) VALUES (1,?,?) "
+			+ "ON DUPLICATE KEY UPDATE generation = VALUES(generation), position = VALUES(position)";
 	
 	//Configuration parameters to access the DB
     private final String databaseUsername;
     private final String databasePassword;
     private final String databaseName;
-    private final String databaseIP;
-    private final int databasePort;
     
-    //DB tables name
-    private final String pHDatabaseTableName;
-    private final String kHDatabaseTableName;
-    private final String temperatureDatabaseTableName;
-    private final String osmoticWaterTankDatabaseTableName;
-    private final String co2DispenserDatabaseTableName;
-    private final String fanDatabaseTableName;
-    private final String heaterDatabaseTableName;
+    //Name, layout and INSERT statement of the table of each kind of sample, indexed by kind. The index also identifies the table
+    //inside the spool
+    private final String[] tables;
+    private final Layout[] layouts;
+    private final String[] insertStatements;
+    private final String[] latestStatements;
+
+    //Rows per flush and maximum time in milliseconds a row waits in the batch, a batch size lower than 2 disables the batching
+    private final int batchSize;
+    private final long batchFlushInterval;
+    private final boolean batching;
     
-    //Prepared statement to be used during the insertion
-    private PreparedStatement preparedStatementPH;
-    private PreparedStatement preparedStatementKH;
-    private PreparedStatement preparedStatementTemperature;
-    private PreparedStatement preparedStatementOsmoticWaterTank;
-    private PreparedStatement preparedStatementCO2Dispenser;
-    private PreparedStatement preparedStatementFan;
-    private PreparedStatement preparedStatementHeater;
+    //Batches being filled (used only in batching mode) and batches ready to be reused after a flush or a replay
+    private TableBatch[] tableBatches;
+    private int pendingRows;
+    private final ConcurrentLinkedQueue<TableBatch[]> freeTableBatches;
+
+    //Pool of connections to the DB
+    private final ConnectionPool connectionPool;
     
-    //Connection to the DB
-    private Connection connection;
+    //Local spool used while the DB is unreachable, null if it cannot be opened
+    private SampleSpool spool;
+    private final int spoolReplayBatchSize;
+    
+    //Lock of the spool, the rows are appended and replayed in order
+    private final Object spoolLock;
+    
+    //Serializes the flushes, so the batches are written or spooled in the order in which they have been filled
+    private final Object flushLock;
+
+    //True while the spool contains rows not yet replayed, the new rows are appended after them
+    private volatile boolean spoolPending;
+
+    //Milliseconds between two attempts to reconnect to the DB
+    private final long reconnectInterval;
+    private final AtomicBoolean reconnectScheduled;
+
+    //Aggregates of the sensor tables at 1-minute and 1-hour granularity, null if disabled
+    private final RollupAggregator rollupAggregator;
+    private final String[] rollupUpsertStatements;
+    private final long rollupSweepInterval;
+
+    //Creates the daily partitions of the tables and drops the expired ones, null if disabled
+    private final PartitionManager partitionManager;
+    private final long partitionMaintenanceInterval;
+
+    //Thread that flushes the pending rows every batchFlushInterval milliseconds, writes the rollups and reconnects to the DB
+    private final ScheduledExecutorService scheduler;
+
+    //True if the DB is reachable and the spool has been replayed
+    private volatile boolean online;
     
     /**
-     * Constructor that instantiate the parameters read from the configuration, creates the connection with the DB and create the
-     * prepared statements to query the different tables.
+     * Constructor that instantiate the parameters read from the configuration, creates the pool of connections with the DB and
+     * connects to the DB.<br>
+     * If the batching is enabled the auto-commit is disabled, the rows are grouped per table and written with a single transaction
+     * when databaseBatchSize rows are accumulated or after databaseBatchFlushInterval milliseconds, whichever comes first.<br>
+     * If the DB is unreachable the rows are written in the spool until the connection is established.
      * @param configurationParameters
      */
 	public DatabaseManager(ConfigurationParameters configurationParameters) {
+		this(configurationParameters, mysqlURL(configurationParameters));
+	}
+	
+	/**
+	 * Constructor that connects to the DB with the passed JDBC URL instead of the MYSQL server of the configuration, used to run
+	 * the storage against an embedded database. The DB must accept the MYSQL dialect and contain the tables of the dump.
+	 * @param configurationParameters
+	 * @param url JDBC URL of the DB
+	 */
+	public DatabaseManager(ConfigurationParameters configurationParameters, String url) {
 		
 		//Retrieve the parameters from the configuration
 		this.databaseUsername = configurationParameters.databaseUsername;
 		this.databasePassword = configurationParameters.databasePassword;
 		this.databaseName = configurationParameters.databaseName;
-		this.databaseIP = configurationParameters.databaseIP;
-		this.databasePort = configurationParameters.databasePort;
-		this.pHDatabaseTableName = configurationParameters.pHDatabaseTableName;
-		this.kHDatabaseTableName = configurationParameters.kHDatabaseTableName;
-		this.temperatureDatabaseTableName = configurationParameters.temperatureDatabaseTableName;
-		this.osmoticWaterTankDatabaseTableName = configurationParameters.osmoticWaterTankDatabaseTableName;
-		this.co2DispenserDatabaseTableName = configurationParameters.co2DispenserDatabaseTableName;
-		this.fanDatabaseTableName = configurationParameters.fanDatabaseTableName;
-		this.heaterDatabaseTableName = configurationParameters.heaterDatabaseTableName;
-		
-		//Create the connection to MYSQL
-		StringBuilder stringBuilder = new StringBuilder("jdbc:mysql://");
-		stringBuilder.append(this.databaseIP).append(":")
-		.append(this.databasePort).append("/")
-		.append(this.databaseName);
+		this.batchSize = configurationParameters.databaseBatchSize;
+		this.batchFlushInterval = configurationParameters.databaseBatchFlushInterval;
+		this.batching = this.batchSize > 1;
+		this.pendingRows = 0;
+		this.spoolReplayBatchSize = Math.max(1, configurationParameters.spoolReplayBatchSize);
+		this.reconnectInterval = configurationParameters.databaseReconnectInterval;
+		this.reconnectScheduled = new AtomicBoolean(false);
+		this.rollupSweepInterval = configurationParameters.rollupSweepInterval;
+		this.partitionMaintenanceInterval = configurationParameters.partitionMaintenanceInterval;
+		this.spoolLock = new Object();
+		this.flushLock = new Object();
+		this.online = false;
 		
+		//One table for each kind of sample registered so far
+		List<SampleKind> kinds = SampleKind.values();
+		this.tables = new String[kinds.size()];
+		this.layouts = new Layout[kinds.size()];
+		this.insertStatements = new String[kinds.size()];
+		this.latestStatements = new String[kinds.size()];
+		int[] retentionDays = new int[kinds.size()];
+		for(SampleKind kind : kinds) {
+			retentionDays[kind.ordinal()] = kind.getRetentionDays(configurationParameters);
+			tables[kind.ordinal()] = kind.getTable(configurationParameters);
+			layouts[kind.ordinal()] = kind.getLayout();
+			insertStatements[kind.ordinal()] = TableBatch.insertStatement(tables[kind.ordinal()], layouts[kind.ordinal()]);
+			latestStatements[kind.ordinal()] = TableBatch.latestStatement(tables[kind.ordinal()], layouts[kind.ordinal()]);
+		}
+		this.freeTableBatches = new ConcurrentLinkedQueue<TableBatch[]>();
+		this.tableBatches = takeTableBatches();
+
+		//Only the sensor readings are aggregated, one rollup table for each granularity
+		if(rollupSweepInterval > 0) {
+			String[] sensors = new String[tables.length];
+			for(int i = 0; i < tables.length; i++) {
+				sensors[i] = (layouts[i] == Layout.VALUE) ? tables[i] : null;
+			}
+			this.rollupAggregator = new RollupAggregator(sensors, configurationParameters.rollupCloseDelay);
+			this.rollupUpsertStatements = new String[] {
+					RollupAggregator.upsertStatement(configurationParameters.rollupMinuteDatabaseTableName),
+					RollupAggregator.upsertStatement(configurationParameters.rollupHourDatabaseTableName)
+			};
+		} else {
+			this.rollupAggregator = null;
+			this.rollupUpsertStatements = null;
+		}
+
+		//In batching mode each flush is a single transaction
+		this.connectionPool = new ConnectionPool(url, this.databaseUsername, this.databasePassword,
+				configurationParameters.databasePoolSize, !batching, configurationParameters.databasePoolValidationIdle);
 		
-		try {
-			//Connect to database
-			connection = DriverManager.getConnection(stringBuilder.toString(), this.databaseUsername, this.databasePassword);
-			
-			//Create a prepared statement to interact when the table is PH
-			preparedStatementPH = connection.prepareStatement("INSERT INTO " +  this.pHDatabaseTableName + " (value) VALUES (?)");
-			
-			//Create a prepared statement to interact when the table is KH
-			preparedStatementKH = connection.prepareStatement("INSERT INTO " +  this.kHDatabaseTableName + " (value) VALUES (?)");
-			
-			//Create a prepared statement to interact when the table is Temperature
-			preparedStatementTemperature = connection.prepareStatement("INSERT INTO " +  this.temperatureDatabaseTableName + " (value) VALUES (?)");
-		
-			//Create a prepared statement to interact when the table is OsmoticWaterTank
-			preparedStatementOsmoticWaterTank = connection.prepareStatement("INSERT INTO " +  this.osmoticWaterTankDatabaseTableName + " (value) VALUES (?)");
-		
-			//Create a prepared statement to interact when the table is CO2Dispenser
-			preparedStatementCO2Dispenser = connection.prepareStatement("INSERT INTO " +  this.co2DispenserDatabaseTableName + " (level, value) VALUES (?,?)");
+		if(partitionMaintenanceInterval > 0) {
+			this.partitionManager = new PartitionManager(connectionPool, databaseName, tables, retentionDays,
+					configurationParameters.partitionsAhead);
+		} else {
+			this.partitionManager = null;
+		}
 			
-			//Create a prepared statement to interact when the table is Fan
-			preparedStatementFan = connection.prepareStatement("INSERT INTO " +  this.fanDatabaseTableName + " (active) VALUES (?)");
+		//Open the spool, the rows left by a previous execution are replayed at the connection
+		try {
+			spool = new SampleSpool(configurationParameters.spoolFile);
+			spoolPending = !spool.isEmpty();
+		} catch (IOException e) {
+			LOGGER.error("Cannot open the spool " + configurationParameters.spoolFile + ", the rows will be lost while the database is unreachable.", e);
+			spool = null;
+			spoolPending = false;
+		}
+				
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "database-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		//Connect to database, if it is not reachable retry later
+		if(!connect()) {
+			LOGGER.error("Error during the connection to the database, the rows are written in the spool.");
+			scheduleReconnect();
+		}
+
+		//Flush periodically the rows, so that no row waits more than batchFlushInterval milliseconds
+		if(batching && batchFlushInterval > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, batchFlushInterval, batchFlushInterval, TimeUnit.MILLISECONDS);
+		}
+
+		//Close periodically the expired windows and write them in the rollup tables
+		if(rollupAggregator != null) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					rollupAggregator.sweep(System.currentTimeMillis());
+					flushRollups();
+				}
+			}, rollupSweepInterval, rollupSweepInterval, TimeUnit.MILLISECONDS);
+		}
+
+		//Keep the partitions ahead of the current day and apply the retention, while the DB is offline the run is skipped
+		if(partitionManager != null) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					if(online) {
+						partitionManager.maintain();
+					}
+				}
+			}, 0, partitionMaintenanceInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * @return the URL of the MYSQL server of the configuration, the rewriting allows the driver to send a batch as a single
+	 * multi-row INSERT.
+	 */
+	private static String mysqlURL(ConfigurationParameters configurationParameters) {
+		StringBuilder stringBuilder = new StringBuilder("jdbc:mysql://");
+		stringBuilder.append(configurationParameters.databaseIP).append(":")
+		.append(configurationParameters.databasePort).append("/")
+		.append(configurationParameters.databaseName)
+		.append("?rewriteBatchedStatements=true");
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * @return a set of empty batches, one for each table.
+	 */
+	private TableBatch[] takeTableBatches() {
+
+		TableBatch[] batches = freeTableBatches.poll();
+		if(batches == null) {
+			batches = new TableBatch[tables.length];
+			for(int i = 0; i < tables.length; i++) {
+				batches[i] = new TableBatch(tables[i], layouts[i], batchSize);
+			}
+		}
+		return batches;
+	}
+
+	/**
+	 * Empties the batches and makes them available for a new flush.
+	 */
+	private void recycleTableBatches(TableBatch[] batches) {
+		for(TableBatch tableBatch : batches) {
+			tableBatch.clear();
+		}
+		freeTableBatches.offer(batches);
+	}
+
+	/**
+	 * Opens the connections of the pool and replays the spool.
+	 * @return true if the DB is connected and the spool has been completely replayed, false otherwise.
+	 */
+	private boolean connect() {
+
+		if(connectionPool.reconnect() == 0) {
+			return false;
+		}
+
+		//The new rows are accepted only after the old ones
+		if(!replaySpool()) {
+			return false;
+		}
+
+		LOGGER.info("Connected to the database.");
+		return true;
+	}
 
-			//Create a prepared statement to interact when the table is Heater
-			preparedStatementHeater = connection.prepareStatement("INSERT INTO " +  this.heaterDatabaseTableName + " (active) VALUES (?)");
+	/**
+	 * Replays the spool from the checkpoint stored in the DB. Each batch of rows is committed in the same transaction of the
+	 * new checkpoint; when the spool is completely replayed it is emptied, a new generation starts and the DB is set online
+	 * while holding the lock of the spool, so no row can be appended in the meantime.
+	 * @return true if the spool has been completely replayed, false otherwise.
+	 */
+	private boolean replaySpool() {
+
+		if(spool == null) {
+			online = true;
+			return true;
+		}
+
+		PooledConnection pooledConnection = connectionPool.borrow();
+		if(pooledConnection == null) {
+			return false;
+		}
+
+		TableBatch[] batches = takeTableBatches();
+		try {
+
+			pooledConnection.connection.setAutoCommit(false);
+
+			//Position from which to replay, a checkpoint of another generation refers to an older content of the spool
+			long position = SampleSpool.HEADER_SIZE;
+			ResultSet resultSet = pooledConnection.prepare(SELECT_CHECKPOINT).executeQuery();
+			if(resultSet.next() && resultSet.getLong(1) == spool.getGeneration()) {
+				position = Math.max(resultSet.getLong(2), SampleSpool.HEADER_SIZE);
+			}
+			resultSet.close();
+
+			boolean replaying = false;
+			while(true) {
+
+				long generation;
+				long next;
+				synchronized(spoolLock) {
+
+					if(position >= spool.getEnd()) {
+
+						//Every row has been replayed, start a new generation
+						if(!spool.isEmpty()) {
+							spool.reset();
+							writeCheckpoint(pooledConnection, spool.getGeneration(), SampleSpool.HEADER_SIZE);
+							pooledConnection.connection.commit();
+							LOGGER.info("Spool replayed.");
+						}
+
+						//From now on the rows are written in the DB
+						spoolPending = false;
+						online = true;
+						return true;
+					}
+
+					if(!replaying) {
+						LOGGER.info("Replaying the spool from position {} to {}...", position, spool.getEnd());
+						replaying = true;
+					}
+
+					generation = spool.getGeneration();
+					next = spool.read(position, spoolReplayBatchSize, batches);
+				}
+
+				try {
+					for(int i = 0; i < batches.length; i++) {
+						batches[i].execute(pooledConnection.prepare(insertStatements[i]));
+					}
+				} catch (SQLException e) {
+					
+					//The rows rejected by the DB are skipped, otherwise the replay would stop at them at every connection
+					if(isRetryable(e, pooledConnection)) {
+						throw e;
+					}
+					pooledConnection.connection.rollback();
+					executeRowByRow(pooledConnection, batches);
+				}
+				writeCheckpoint(pooledConnection, generation, next);
+				pooledConnection.connection.commit();
+
+				for(TableBatch tableBatch : batches) {
+					tableBatch.clear();
+				}
+				position = next;
+			}
 
 		} catch (SQLException e) {
-			System.out.println(LOG_ERROR + " Error during the connection to the database.");
-			e.printStackTrace();
-		}   
+			LOGGER.error("Problem during the replay of the spool, it will be retried at the next connection.", e);
+		} catch (IOException e) {
+			LOGGER.error("Problem during the reading of the spool, it will be retried at the next connection.", e);
+		} finally {
+
+			//Restore the mode of the pooled connections
+			try {
+				pooledConnection.connection.rollback();
+				pooledConnection.connection.setAutoCommit(!batching);
+				connectionPool.release(pooledConnection);
+			} catch (SQLException e) {
+				connectionPool.invalidate(pooledConnection);
+			}
+			recycleTableBatches(batches);
+		}
+
+		//The rows of the last batch are still in the spool
+		return false;
+	}
+
+	/**
+	 * Writes the rows of the batches one at a time in the current transaction, after the batch has been rolled back because the
+	 * DB rejected some of its rows. The rejected rows are logged and discarded, the caller commits the others.
+	 * @return the number of discarded rows.
+	 * @throws SQLException if a row fails for a retryable reason, the transaction must be rolled back
+	 */
+	private int executeRowByRow(PooledConnection pooledConnection, TableBatch[] batches) throws SQLException {
+
+		int discarded = 0;
+		for(int i = 0; i < batches.length; i++) {
+
+			int rejected = 0;
+			for(int row = 0; row < batches[i].size(); row++) {
+				try {
+					batches[i].executeRow(pooledConnection.prepare(insertStatements[i]), row);
+				} catch (SQLException e) {
+					if(isRetryable(e, pooledConnection)) {
+						throw e;
+					}
+
+					//A missing table rejects every row, only the first one is logged
+					if(rejected == 0) {
+						LOGGER.error("Row of {} rejected by the database and discarded {}: {}", tables[i], batches[i].describeRow(row), e.getMessage());
+					}
+					rejected++;
+				}
+			}
+
+			if(rejected > 1) {
+				LOGGER.error("{} rows of {} rejected by the database and discarded.", rejected, tables[i]);
+			}
+			discarded += rejected;
+		}
+		return discarded;
+	}
+
+	/**
+	 * @return true if the write failed because of the connection or because the DB rolled back the transaction, so the same
+	 * rows can be written later; false if the DB rejected the statement, e.g. a value out of range, a violated constraint or a
+	 * missing table.
+	 */
+	private static boolean isRetryable(SQLException e, PooledConnection pooledConnection) {
+
+		for(SQLException exception = e; exception != null; exception = exception.getNextException()) {
+			String sqlState = exception.getSQLState();
+			if((sqlState != null && (sqlState.startsWith("08") || sqlState.startsWith("40")))
+					|| exception instanceof SQLTransientConnectionException || exception instanceof SQLNonTransientConnectionException
+					|| exception instanceof SQLTransactionRollbackException) {
+				return true;
+			}
+		}
+		return !pooledConnection.isValid();
+	}
+
+	private void writeCheckpoint(PooledConnection pooledConnection, long generation, long position) throws SQLException {
+		PreparedStatement checkpointStatement = pooledConnection.prepare(UPDATE_CHECKPOINT);
+		checkpointStatement.setLong(1, generation);
+		checkpointStatement.setLong(2, position);
+		checkpointStatement.executeUpdate();
+	}
+
+	/**
+	 * Schedules an attempt to reconnect to the DB, if not already scheduled.
+	 */
+	private void scheduleReconnect() {
+
+		if(scheduler.isShutdown() || !reconnectScheduled.compareAndSet(false, true)) {
+			return;
+		}
+
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				reconnectScheduled.set(false);
+				if(!connect()) {
+					scheduleReconnect();
+				}
+			}
+		}, reconnectInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Called when the DB is unreachable, from now on the rows are written in the spool.
+	 */
+	private void goOffline() {
+		goOffline("Connection to the database lost, the rows are written in the spool.", null, null);
+	}
+
+	/**
+	 * Called when a write fails, from now on the rows are written in the spool until the spool is replayed. The rows of the
+	 * failed flush and then the ones still in the batches being filled are spooled before any newer row, so the replay keeps
+	 * the arrival order.
+	 * @param message logged if the DB was online
+	 * @param cause exception logged with the message, null if the stack trace is not useful
+	 * @param failedBatches batches of the failed flush, null if none
+	 * @return true if the rows of the batches have been written in the spool, false if they are lost.
+	 */
+	private boolean goOffline(String message, Throwable cause, TableBatch[] failedBatches) {
+
+		boolean spooled = true;
+		synchronized(flushLock) {
+			synchronized(spoolLock) {
+
+				if(online && cause != null) {
+					LOGGER.error(message, cause);
+				} else if(online) {
+					LOGGER.error(message);
+				}
+
+				//The writers that see the DB offline wait for the lock of the spool before appending their rows
+				online = false;
+
+				if(failedBatches != null) {
+					spooled = spoolTableBatches(failedBatches);
+				}
+
+				TableBatch[] pendingBatches = null;
+				synchronized(this) {
+					if(pendingRows > 0) {
+						pendingBatches = tableBatches;
+						tableBatches = takeTableBatches();
+						pendingRows = 0;
+					}
+				}
+
+				if(pendingBatches != null) {
+					spooled &= spoolTableBatches(pendingBatches);
+					recycleTableBatches(pendingBatches);
+				}
+			}
+		}
+
+		scheduleReconnect();
+		return spooled;
+	}
+
+	/**
+	 * Appends a row to the spool. It must be called holding the lock of the spool.
+	 * @return true if the row has been written in the spool, false if it is lost.
+	 */
+	private boolean spoolRow(int tableIndex, String aquariumId, long timestamp, float value, float level) {
+
+		if(spool == null) {
+			return false;
+		}
+
+		try {
+			spool.append(tableIndex, aquariumId, timestamp, value, level);
+			spoolPending = true;
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Problem during the writing of the spool, row of " + tables[tableIndex] + " lost.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Appends the rows of the batches to the spool.
+	 * @return true if the rows have been written in the spool, false if they are lost.
+	 */
+	private boolean spoolTableBatches(TableBatch[] batches) {
+
+		synchronized(spoolLock) {
+
+			if(spool == null) {
+				return false;
+			}
+
+			try {
+				for(int i = 0; i < batches.length; i++) {
+					batches[i].spool(spool, i);
+				}
+				spoolPending = true;
+				return true;
+			} catch (IOException e) {
+				LOGGER.error("Problem during the writing of the spool, rows lost.", e);
+				return false;
+			}
+		}
 	}
     
 
 	/**
-	 * This method allows to insert in the connected database the value passed as second parameter inside the table passed as first argument.
-	 * @param table in which the value must be inserted
-	 * @param value to insert inside the table
+	 * This method allows to insert in the connected database the value passed as third parameter inside the table of the kind
+	 * passed as second argument.
+	 * @see #insert(int, String, long, float, float)
+	 */
+    public boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp) {
+    	return insert(kind.ordinal(), aquariumId, timestamp, value, 0);
+    }
+    
+	/**
+	 * This method allows to insert in the connected database the level and the value inside the table of the kind passed as
+	 * second argument.
+	 * @see #insert(int, String, long, float, float)
+	 */
+    public boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp) {
+    	return insert(kind.ordinal(), aquariumId, timestamp, value, level);
+    }
+    
+	/**
+	 * This method allows to insert in the connected database the state of an actuator inside the table of the kind passed as
+	 * second argument.
+	 * @see #insert(int, String, long, float, float)
+	 */
+    public boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp) {
+    	return insert(kind.ordinal(), aquariumId, timestamp, active ? 1 : 0, 0);
+    }
+    
+	/**
+	 * Inserts a row in the table with the passed index, selected by the kind of the sample without any lookup.<br>
+	 * In batching mode the row is only added to the batch of its table and it is written at the next flush.<br>
+	 * While the DB is unreachable, or the spool still contains rows to be replayed, the row is appended to the spool.<br>
+	 * The method can be called concurrently by the writers of the ingestion pipeline and by the CoAP callbacks, each insertion
+	 * uses its own connection of the pool.
+	 * @param tableIndex index of the kind of the sample
+	 * @param aquariumId identifier of the aquarium that produced the value
+	 * @param timestamp arrival time of the value in milliseconds
+	 * @param value to insert inside the table, for the actuators 1 if active and 0 otherwise
 	 * @param level used if the table is CO2Dispenser
+	 * @return true if the value has been inserted, added to the batch or written in the spool, false otherwise.
 	 */
-    public boolean insertSample(String table, float value, Float level) {
-    	
+    private boolean insert(int tableIndex, String aquariumId, long timestamp, float value, float level) {
     	
-        try {
+    	//Kind registered after the creation of the manager
+    	if(tableIndex >= tables.length) {
+    		LOGGER.error("No table for the sample kind with index {}.", tableIndex);
+    		return false;
+    	}
         	
-        	//To avoid insertion when the connection is closed
-        	if(connection.isClosed()) {
-				return false;
-			}
+    	//The aggregates are updated at ingestion, also while the rows are spooled
+    	if(rollupAggregator != null && rollupAggregator.isAggregated(tableIndex)) {
+    		rollupAggregator.add(tableIndex, aquariumId, timestamp, value);
+    	}
+
+    	//To keep the arrival order the rows follow the ones already in the spool
+    	if(!online || spoolPending) {
+    		synchronized(spoolLock) {
+    			if(!online || spoolPending) {
+    				return spoolRow(tableIndex, aquariumId, timestamp, value, level);
+    			}
+    		}
+    	}
         	
-        	//If the table is the table of the pH
-        	if(table.equals(pHDatabaseTableName)) {
+    	if(batching) {
         		
-        		//Use the prepared statement of the pH
-        		preparedStatementPH.setFloat(1, value);
+    		//Add the row to the batch of its table, the batches are flushed when enough rows are accumulated
+    		boolean added = false;
+    		boolean full = false;
+    		synchronized(this) {
+    			
+    			//If the DB went offline in the meantime the batches have already been moved to the spool
+    			if(online && !spoolPending) {
+    				tableBatches[tableIndex].add(aquariumId, timestamp, value, level);
+    				pendingRows++;
+    				added = true;
+    				full = pendingRows >= batchSize;
+    			}
+    		}
+    		
+    		if(!added) {
+    			synchronized(spoolLock) {
+    				return spoolRow(tableIndex, aquariumId, timestamp, value, level);
+    			}
+    		}
+
+    		//The flush is performed without holding the lock, so the other writers can keep adding rows
+    		if(full) {
+    			return flush(batchSize);
+    		}
         		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementPH.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + pHDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
+    		return true;
+    	}
+        	
+    	PooledConnection pooledConnection = connectionPool.borrow();
+    	if(pooledConnection == null) {
+    		goOffline();
+    		synchronized(spoolLock) {
+    			return spoolRow(tableIndex, aquariumId, timestamp, value, level);
+    		}
+    	}
+
+        try {
+
+        	//Use the prepared statement of the table cached by the connection
+        	PreparedStatement preparedStatement = pooledConnection.prepare(insertStatements[tableIndex]);
+        	TableBatch.bind(preparedStatement, layouts[tableIndex], aquariumId, timestamp, value, level);
+    		
+    		//If something bad happens throw an exception, the program must continue
+    		if(preparedStatement.executeUpdate() != 1) {
+    			throw new SQLException("Problem during insertion in " + tables[tableIndex] + "!");
+    		}else {
+    			
+    			//Record inserted correctly
+    			connectionPool.release(pooledConnection);
+    			return true;
+    		}
         	
-        	//If the table is the table of the kH
-        	}else if(table.equals(kHDatabaseTableName) ) {
-        		
-        		//Use the prepared statement of the kH
-        		preparedStatementKH.setFloat(1, value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementKH.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + kHDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-        		
-        	//If the table is the table of the temperature
-        	}else if(table.equals(temperatureDatabaseTableName) ) {
-        		
-        		//Use the prepared statement of the temperature
-        		preparedStatementTemperature.setFloat(1, value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementTemperature.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + temperatureDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-        	}else if(table.equals(osmoticWaterTankDatabaseTableName) ) {
-        		
-        		//Use the prepared statement of the temperature
-        		preparedStatementOsmoticWaterTank.setFloat(1, value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementOsmoticWaterTank.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + osmoticWaterTankDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-        	}else if(table.equals(co2DispenserDatabaseTableName) ) {
-        		
-        		//Use the prepared statement of the temperature
-        		preparedStatementCO2Dispenser.setFloat(1, level);
-        		preparedStatementCO2Dispenser.setFloat(2, value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementCO2Dispenser.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + co2DispenserDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-        		
-        	//If the table is the table of the fan
-        	}else if(table.equals(fanDatabaseTableName) ) {
-        		
-        		boolean bool_value = (value == 0)?false:true;
-        		
-        		//Use the prepared statement of the Fan
-        		preparedStatementFan.setBoolean(1, bool_value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementFan.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + fanDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-        		
-        	//If the table is the table of the heater
-        	}else if(table.equals(heaterDatabaseTableName) ) {
-        		
-        		boolean bool_value = (value == 0)?false:true;
-        		
-        		//Use the prepared statement of the Heater
-        		preparedStatementHeater.setBoolean(1, bool_value);
-        		
-        		//If something bad happens throw an exception, the program must continue
-        		if(preparedStatementHeater.executeUpdate() != 1) {
-        			throw new SQLException(LOG_ERROR + " Problem during insertion in " + heaterDatabaseTableName + "!\n");
-        		}else {
-        			
-        			//Record inserted correctly
-        			return true;
-        		}
-
-        	}
 		} catch (SQLException e) {
-			e.printStackTrace();
+
+			//If the connection is lost the row is kept in the spool
+			if(!pooledConnection.isValid()) {
+				connectionPool.invalidate(pooledConnection);
+				goOffline();
+				synchronized(spoolLock) {
+					return spoolRow(tableIndex, aquariumId, timestamp, value, level);
+				}
+			}
+
+			boolean retryable = isRetryable(e, pooledConnection);
+			connectionPool.release(pooledConnection);
+
+			//A transaction rolled back by the DB is retried by the replay of the spool
+			if(retryable) {
+				goOffline("Problem during the insertion in " + tables[tableIndex] + ", the rows are written in the spool.", e, null);
+				synchronized(spoolLock) {
+					return spoolRow(tableIndex, aquariumId, timestamp, value, level);
+				}
+			}
+
+			//The DB rejected the row, writing it again would fail again
+			LOGGER.error("Row of {} rejected by the database and discarded [aquarium: {}, timestamp: {}, value: {}, level: {}]: {}",
+					tables[tableIndex], aquariumId, timestamp, value, level, e.getMessage());
+			return false;
 		} 
-        
-        //If the program arrives here there is a problem
-        return false;
+    }
+    
+    /**
+     * Writes all the pending rows with a single transaction, one executeBatch for each table.
+     * @return true if the rows have been committed or written in the spool, false otherwise.
+     */
+    public boolean flush() {
+    	return flush(1);
     }
 
     /**
-     * Releases this Connection object's database and JDBC resources immediately instead of waiting for them to be automatically released.
+     * Writes the pending rows if they are at least minRows. The flushes are serialized, so the batches are written, or moved to
+     * the spool, in the order in which they have been filled.
+     * @param minRows minimum number of pending rows, e.g. the batch size when the flush is triggered by a full batch that may
+     * have already been flushed by another writer
+     * @return true if the rows have been committed or written in the spool, false otherwise.
      */
-    public void close() {
+    private boolean flush(int minRows) {
+
+    	synchronized(flushLock) {
+    		
+    		TableBatch[] fullBatches;
+    		synchronized(this) {
+    			
+    			if(!batching || pendingRows == 0 || pendingRows < minRows) {
+    				return true;
+    			}
+    			
+    			fullBatches = tableBatches;
+    			tableBatches = takeTableBatches();
+    			pendingRows = 0;
+    		}
+    		
+    		return flush(fullBatches);
+    	}
+    }
+
+    /**
+     * Writes the passed batches with a single transaction on a connection of the pool. If the DB rejects some rows the others are
+     * written one at a time and the rejected ones are discarded; if the transaction fails for a retryable reason it is rolled back
+     * and the rows are written in the spool, so they are written by the replay. It must be called holding the flush lock.
+     * @param batches batches to be written, they are recycled at the end
+     * @return true if the rows have been committed or written in the spool, false otherwise.
+     */
+    private boolean flush(TableBatch[] batches) {
+
+    	//The DB is unreachable, keep the rows in the spool
+    	if(!online) {
+    		try {
+    			return goOffline(null, null, batches);
+    		} finally {
+    			recycleTableBatches(batches);
+    		}
+    	}
+
+    	PooledConnection pooledConnection = connectionPool.borrow();
+
     	try {
-    		this.preparedStatementCO2Dispenser.close();
-    		this.preparedStatementKH.close();
-    		this.preparedStatementOsmoticWaterTank.close();
-    		this.preparedStatementPH.close();
-    		this.preparedStatementTemperature.close();
-			this.connection.close();
-		} catch (SQLException e) {
-			// TODO Auto-generated catch block
-			System.out.println(LOG_ERROR + " Problem during the closing of the connection.");
-			e.printStackTrace();
-		}
+    		
+    		//The DB is unreachable, keep the rows in the spool
+    		if(pooledConnection == null) {
+    			return goOffline("Connection to the database lost, the rows are written in the spool.", null, batches);
+    		}
+    		
+    		try {
+    			for(int i = 0; i < batches.length; i++) {
+    				batches[i].execute(pooledConnection.prepare(insertStatements[i]));
+    			}
+    		} catch (SQLException e) {
+    			
+    			//The DB rejected some rows, the others are written one at a time without them
+    			if(isRetryable(e, pooledConnection)) {
+    				throw e;
+    			}
+    			pooledConnection.connection.rollback();
+    			executeRowByRow(pooledConnection, batches);
+    		}
+
+    		pooledConnection.connection.commit();
+    		connectionPool.release(pooledConnection);
+    		return true;
+    		
+    	} catch (SQLException e) {
+    		
+    		try {
+    			pooledConnection.connection.rollback();
+    		} catch (SQLException rollbackException) {
+    			//The connection is lost, nothing has been committed
+    		}
+
+    		//Keep the rows in the spool and wait for the connection
+    		if(!pooledConnection.isValid()) {
+    			connectionPool.invalidate(pooledConnection);
+    			return goOffline("Problem during the flush of the rows, rows written in the spool.", null, batches);
+    		}
+
+    		//The transaction has been rolled back by the DB, the rows are retried by the replay of the spool
+    		connectionPool.release(pooledConnection);
+    		return goOffline("Problem during the flush of the rows, transaction rolled back and rows written in the spool.", e, batches);
+    		
+    	} finally {
+    		
+    		//Empty the batches
+    		recycleTableBatches(batches);
+    	}
+    }
+
+    /**
+     * Writes the closed windows in the rollup tables with a single transaction. While the DB is unreachable the windows are kept
+     * in memory and written at the next sweep; if the writing fails for another reason they are discarded.
+     * @return true if the windows have been written or kept for the next sweep, false otherwise.
+     */
+    private boolean flushRollups() {
+
+    	if(!online) {
+    		return true;
+    	}
+
+    	List<RollupWindow> windows = new ArrayList<RollupWindow>();
+    	if(rollupAggregator.drainClosed(windows) == 0) {
+    		return true;
+    	}
+
+    	PooledConnection pooledConnection = connectionPool.borrow();
+    	if(pooledConnection == null) {
+    		rollupAggregator.requeue(windows);
+    		goOffline();
+    		return true;
+    	}
+
+    	try {
+
+    		for(RollupWindow window : windows) {
+    			PreparedStatement preparedStatement = pooledConnection.prepare(rollupUpsertStatements[window.resolution]);
+    			window.bind(preparedStatement);
+    			preparedStatement.addBatch();
+    		}
+
+    		for(String upsertStatement : rollupUpsertStatements) {
+    			pooledConnection.prepare(upsertStatement).executeBatch();
+    		}
+
+    		if(batching) {
+    			pooledConnection.connection.commit();
+    		}
+    		connectionPool.release(pooledConnection);
+    		return true;
+
+    	} catch (SQLException e) {
+
+    		try {
+    			for(String upsertStatement : rollupUpsertStatements) {
+    				pooledConnection.prepare(upsertStatement).clearBatch();
+    			}
+    			if(batching) {
+    				pooledConnection.connection.rollback();
+    			}
+    		} catch (SQLException rollbackException) {
+    			//The connection is lost, nothing has been committed
+    		}
+
+    		//Keep the windows until the connection is established again
+    		if(!pooledConnection.isValid()) {
+    			connectionPool.invalidate(pooledConnection);
+    			rollupAggregator.requeue(windows);
+    			goOffline();
+    			return true;
+    		}
+
+    		connectionPool.release(pooledConnection);
+    		LOGGER.error("Problem during the writing of " + windows.size() + " rollup windows, windows discarded.", e);
+    		return false;
+    	}
+    }
+
+    /**
+     * @return true if the DB is connected, false if the rows are written in the spool.
+     */
+    public boolean isOnline() {
+    	return online;
+    }
+    
+    @Override
+    public List<String> aquariums(SampleKind kind) {
+    	
+    	if(kind.ordinal() >= tables.length) {
+    		return null;
+    	}
+    	
+    	PooledConnection pooledConnection = connectionPool.borrow();
+    	if(pooledConnection == null) {
+    		return null;
+    	}
+    	
+    	try {
+    		
+    		//The distinct values are read from the index (aquarium, timestamp)
+    		List<String> aquariums = new ArrayList<String>();
+    		ResultSet resultSet = pooledConnection.prepare("SELECT DISTINCT aquarium FROM " + tables[kind.ordinal()]).executeQuery();
+    		while(resultSet.next()) {
+    			aquariums.add(resultSet.getString(1));
+    		}
+    		resultSet.close();
+    		
+    		connectionPool.release(pooledConnection);
+    		return aquariums;
+    		
+    	} catch (SQLException e) {
+    		LOGGER.error("Problem during the reading of the aquariums of " + tables[kind.ordinal()] + ".", e);
+    		releaseAfterError(pooledConnection);
+    		return null;
+    	}
+    }
+    
+    @Override
+    public boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor) {
+    	
+    	if(kind.ordinal() >= tables.length) {
+    		return false;
+    	}
+    	
+    	PooledConnection pooledConnection = connectionPool.borrow();
+    	if(pooledConnection == null) {
+    		return false;
+    	}
+    	
+    	try {
+    		
+    		PreparedStatement preparedStatement = pooledConnection.prepare(latestStatements[kind.ordinal()]);
+    		preparedStatement.setString(1, aquariumId);
+    		preparedStatement.setInt(2, count);
+    		
+    		ResultSet resultSet = preparedStatement.executeQuery();
+    		while(resultSet.next()) {
+    			visitor.visit(resultSet.getTimestamp(1).getTime(), resultSet.getFloat(2), resultSet.getFloat(3));
+    		}
+    		resultSet.close();
+    		
+    		connectionPool.release(pooledConnection);
+    		return true;
+    		
+    	} catch (SQLException e) {
+    		LOGGER.error("Problem during the reading of " + tables[kind.ordinal()] + " [aquarium: " + aquariumId + "].", e);
+    		releaseAfterError(pooledConnection);
+    		return false;
+    	}
+    }
+    
+    /**
+     * Returns to the pool a connection used by a failed query, closing it if it is no more valid.
+     */
+    private void releaseAfterError(PooledConnection pooledConnection) {
+    	if(pooledConnection.isValid()) {
+    		connectionPool.release(pooledConnection);
+    	} else {
+    		connectionPool.invalidate(pooledConnection);
+    	}
+    }
+
+    /**
+     * Releases the connections of the pool and the spool. The pending rows and the open windows of the rollups are written before
+     * closing the connections; while the DB is unreachable the pending rows are written in the spool instead.
+     */
+    public void close() {
+    	
+    	scheduler.shutdown();
+    	
+    	flush();
+
+    	if(online) {
+
+    		//The open windows are written too, a window continued after the restart is merged by the upsert
+    		if(rollupAggregator != null) {
+    			rollupAggregator.sweep(Long.MAX_VALUE);
+    			flushRollups();
+    		}
+    	}
+    	online = false;
+    	connectionPool.close();
+    	
+    	synchronized(spoolLock) {
+    		try {
+    			if(spool != null) {
+    				spool.close();
+    				spool = null;
+    			}
+    		} catch (IOException e) {
+    			LOGGER.error("Problem during the closing of the spool.", e);
+    		}
+    	}
     }
 }
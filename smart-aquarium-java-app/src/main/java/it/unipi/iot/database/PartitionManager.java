@@ -0,0 +1,199 @@
+package it.unipi.iot.database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import it.unipi.iot.database.ConnectionPool.PooledConnection;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
+/**
+ * Maintains the daily RANGE partitions of the tables of the samples, used by the DatabaseManager. <br>
+ * The tables are partitioned on UNIX_TIMESTAMP(timestamp) with one partition for each day (UTC), named pYYYYMMDD, followed by
+ * the partition pmax that receives the rows beyond the last day. At each run: <br>
+ * - the partitions of the next partitionsAhead days are created splitting pmax, which is empty if the job runs regularly, so
+ *   the split does not move any row <br>
+ * - the partitions older than the retention of the table are dropped, which removes their rows without scanning them <br>
+ * The tables not partitioned (see database-dump.sql) are skipped.
+ *
+ * @author Fabi8997
+ */
+class PartitionManager {
+	
+	private static final Logger LOGGER = new Logger("Database Manager", Colors.ANSI_GREEN);
+	
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	
+	//Partition that receives the rows beyond the last daily partition
+	private static final String MAX_PARTITION = "pmax";
+	
+	private static final String SELECT_PARTITIONS = "SELECT PARTITION_NAME FROM INFORMATION_SCHEMA.PARTITIONS "
+			+ "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+	
+	private final ConnectionPool connectionPool;
+	private final String schema;
+	
+	//Tables and their retention in days, 0 to keep the rows forever
+	private final String[] tables;
+	private final int[] retentionDays;
+	
+	//Number of daily partitions created ahead of the current day
+	private final int partitionsAhead;
+	
+	//Tables already reported as not partitioned
+	private final boolean[] reported;
+	
+	//Name of the daily partitions
+	private final SimpleDateFormat partitionFormat;
+	
+	/**
+	 * Class constructor.
+	 * @param connectionPool pool used to run the DDL statements
+	 * @param schema name of the database
+	 * @param tables tables of the samples
+	 * @param retentionDays retention in days of each table, 0 to keep the rows forever
+	 * @param partitionsAhead number of daily partitions created ahead of the current day
+	 */
+	PartitionManager(ConnectionPool connectionPool, String schema, String[] tables, int[] retentionDays, int partitionsAhead) {
+		this.connectionPool = connectionPool;
+		this.schema = schema;
+		this.tables = tables;
+		this.retentionDays = retentionDays;
+		this.partitionsAhead = Math.max(1, partitionsAhead);
+		this.reported = new boolean[tables.length];
+		this.partitionFormat = new SimpleDateFormat("'p'yyyyMMdd");
+		this.partitionFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+	
+	/**
+	 * Creates the future partitions and drops the expired ones of all the tables. It is called periodically by the scheduler
+	 * of the DatabaseManager.
+	 * @return false if the database is unreachable, true otherwise.
+	 */
+	boolean maintain() {
+		
+		PooledConnection pooledConnection = connectionPool.borrow();
+		if(pooledConnection == null) {
+			return false;
+		}
+		
+		long today = System.currentTimeMillis() / DAY * DAY;
+		for(int i = 0; i < tables.length; i++) {
+			try {
+				maintain(pooledConnection, i, today);
+			} catch (SQLException e) {
+				LOGGER.error("Problem during the maintenance of the partitions of " + tables[i] + ".", e);
+				
+				if(!pooledConnection.isValid()) {
+					connectionPool.invalidate(pooledConnection);
+					return false;
+				}
+			}
+		}
+		
+		connectionPool.release(pooledConnection);
+		return true;
+	}
+	
+	private void maintain(PooledConnection pooledConnection, int tableIndex, long today) throws SQLException {
+		
+		String table = tables[tableIndex];
+		
+		//Days of the existing daily partitions, in ascending order
+		PreparedStatement selectPartitions = pooledConnection.prepare(SELECT_PARTITIONS);
+		selectPartitions.setString(1, schema);
+		selectPartitions.setString(2, table);
+		
+		boolean partitioned = false;
+		List<Long> days = new ArrayList<Long>();
+		ResultSet resultSet = selectPartitions.executeQuery();
+		while(resultSet.next()) {
+			String name = resultSet.getString(1);
+			if(MAX_PARTITION.equals(name)) {
+				partitioned = true;
+			} else {
+				long day = dayOf(name);
+				if(day >= 0) {
+					days.add(day);
+				}
+			}
+		}
+		resultSet.close();
+		
+		if(!partitioned) {
+			if(!reported[tableIndex]) {
+				LOGGER.error("The table {} has no partition {}, its retention is not handled.", table, MAX_PARTITION);
+				reported[tableIndex] = true;
+			}
+			return;
+		}
+		
+		long lastDay = Long.MIN_VALUE;
+		for(long day : days) {
+			lastDay = Math.max(lastDay, day);
+		}
+		
+		Statement statement = pooledConnection.connection.createStatement();
+		try {
+			
+			//Split pmax to create the missing days up to the last one ahead, new partitions can only follow the existing ones
+			long firstDay = (lastDay == Long.MIN_VALUE) ? today : Math.max(lastDay + DAY, today - DAY * Math.max(0, retentionDays[tableIndex]));
+			long lastAheadDay = today + DAY * partitionsAhead;
+			if(firstDay <= lastAheadDay) {
+				
+				StringBuilder reorganize = new StringBuilder("ALTER TABLE ").append(table)
+						.append(" REORGANIZE PARTITION ").append(MAX_PARTITION).append(" INTO (");
+				for(long day = firstDay; day <= lastAheadDay; day += DAY) {
+					reorganize.append("PARTITION ").append(partitionFormat.format(day))
+					.append(" VALUES LESS THAN (").append((day + DAY) / 1000).append("), ");
+				}
+				reorganize.append("PARTITION ").append(MAX_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+				
+				statement.executeUpdate(reorganize.toString());
+				LOGGER.info("Created the partitions of {} up to {}.", table, partitionFormat.format(lastAheadDay));
+			}
+			
+			//Drop the partitions whose rows are all older than the retention
+			if(retentionDays[tableIndex] > 0) {
+				
+				long cutoff = today - DAY * retentionDays[tableIndex];
+				StringBuilder drop = new StringBuilder();
+				for(long day : days) {
+					if(day + DAY <= cutoff) {
+						drop.append((drop.length() == 0) ? "" : ", ").append(partitionFormat.format(day));
+					}
+				}
+				
+				if(drop.length() > 0) {
+					statement.executeUpdate("ALTER TABLE " + table + " DROP PARTITION " + drop);
+					LOGGER.info("Dropped the expired partitions of {}: {}.", table, drop);
+				}
+			}
+		
+		} finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * @param name name of a partition
+	 * @return the start of the day of a daily partition in milliseconds, or -1 if it is not a daily partition.
+	 */
+	private long dayOf(String name) {
+		try {
+			if(name.length() == 9) {
+				return partitionFormat.parse(name).getTime();
+			}
+		} catch (ParseException e) {
+			//Partition not created by this class
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,217 @@
+package it.unipi.iot.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Maintains in memory the min/max/avg/count aggregates of the samples of each sensor of each aquarium, at 1-minute and 1-hour
+ * granularity. <br>
+ * The aggregates are updated at ingestion by the DatabaseManager; a window is closed when a sample of a later window arrives or,
+ * if the sensor stops sending, by {@link #sweep(long)} once its end is older than closeDelay milliseconds. The closed windows are
+ * queued until the DatabaseManager writes them in the rollup tables.<br>
+ * The rows are written with an upsert that merges the aggregates, so a late sample of an already closed window, or a window
+ * continued after a restart, is combined with the row already stored.
+ *
+ * @author Fabi8997
+ */
+class RollupAggregator {
+	
+	//Duration in milliseconds of the windows of each granularity
+	static final long[] RESOLUTIONS = { 60 * 1000L, 60 * 60 * 1000L };
+	
+	/**
+	 * Aggregates of the samples of a sensor in a window. Once queued a window is no longer modified.
+	 */
+	static class RollupWindow {
+		
+		final int resolution;
+		final String sensor;
+		final String aquariumId;
+		final long start;
+		private float min;
+		private float max;
+		private double sum;
+		private int count;
+		
+		RollupWindow(int resolution, String sensor, String aquariumId, long start) {
+			this.resolution = resolution;
+			this.sensor = sensor;
+			this.aquariumId = aquariumId;
+			this.start = start;
+			this.min = Float.MAX_VALUE;
+			this.max = -Float.MAX_VALUE;
+			this.sum = 0;
+			this.count = 0;
+		}
+		
+		void add(float value) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value;
+			count++;
+		}
+		
+		/**
+		 * Binds the aggregates to a prepared statement created with {@link RollupAggregator#upsertStatement(String)}.
+		 * @throws SQLException
+		 */
+		void bind(PreparedStatement preparedStatement) throws SQLException {
+			preparedStatement.setString(1, aquariumId);
+			preparedStatement.setString(2, sensor);
+			preparedStatement.setTimestamp(3, new Timestamp(start));
+			preparedStatement.setFloat(4, min);
+			preparedStatement.setFloat(5, max);
+			preparedStatement.setFloat(6, (float) (sum / count));
+			preparedStatement.setInt(7, count);
+		}
+	}
+	
+	/**
+	 * Open windows of a sensor of an aquarium, one for each granularity.
+	 */
+	private static class SensorWindows {
+		final RollupWindow[] windows = new RollupWindow[RESOLUTIONS.length];
+	}
+	
+	//Names of the sensor tables, the index of a table is the one used by the DatabaseManager
+	private final String[] sensors;
+	
+	//Milliseconds after the end of a window before it is closed by the sweep, to wait for the samples still in the pipeline
+	private final long closeDelay;
+	
+	//Open windows for each aquarium, indexed by the index of the table
+	private final ConcurrentHashMap<String, SensorWindows[]> openWindows;
+	
+	//Windows closed and not yet written in the rollup tables
+	private final ConcurrentLinkedQueue<RollupWindow> closedWindows;
+	
+	/**
+	 * Class constructor.
+	 * @param sensors names of the tables of the DatabaseManager, a null name means that the table is not aggregated
+	 * @param closeDelay milliseconds after the end of a window before it is closed by the sweep
+	 */
+	RollupAggregator(String[] sensors, long closeDelay) {
+		this.sensors = sensors;
+		this.closeDelay = closeDelay;
+		this.openWindows = new ConcurrentHashMap<String, SensorWindows[]>();
+		this.closedWindows = new ConcurrentLinkedQueue<RollupWindow>();
+	}
+	
+	/**
+	 * @param table name of the rollup table
+	 * @return the upsert that inserts a window or merges it with the row already stored. MySQL evaluates the assignments from
+	 * left to right, so avg must be computed before count is updated.
+	 */
+	static String upsertStatement(String table) {
+		return "INSERT INTO " + table + " (aquarium, sensor, timestamp, min, max, avg, count) VALUES (?,?,?,?,?,?,?) "
+				+ "ON DUPLICATE KEY UPDATE min = LEAST(min, VALUES(min)), max = GREATEST(max, VALUES(max)), "
+				+ "avg = (avg * count + VALUES(avg) * VALUES(count)) / (count + VALUES(count)), count = count + VALUES(count)";
+	}
+	
+	/**
+	 * @param tableIndex index of the table of the sample in the DatabaseManager
+	 * @return true if the samples of the table are aggregated.
+	 */
+	boolean isAggregated(int tableIndex) {
+		return sensors[tableIndex] != null;
+	}
+	
+	/**
+	 * Adds a sample to the open windows of its sensor, closing the windows that it ends.
+	 * @param tableIndex index of the table of the sample in the DatabaseManager
+	 * @param aquariumId identifier of the aquarium of the sample
+	 * @param timestamp of the sample in milliseconds
+	 * @param value of the sample
+	 */
+	void add(int tableIndex, String aquariumId, long timestamp, float value) {
+		
+		SensorWindows[] aquariumWindows = openWindows.get(aquariumId);
+		if(aquariumWindows == null) {
+			aquariumWindows = new SensorWindows[sensors.length];
+			for(int i = 0; i < sensors.length; i++) {
+				aquariumWindows[i] = new SensorWindows();
+			}
+			SensorWindows[] previous = openWindows.putIfAbsent(aquariumId, aquariumWindows);
+			if(previous != null) {
+				aquariumWindows = previous;
+			}
+		}
+		
+		SensorWindows sensorWindows = aquariumWindows[tableIndex];
+		synchronized(sensorWindows) {
+			for(int r = 0; r < RESOLUTIONS.length; r++) {
+				
+				long start = timestamp - timestamp % RESOLUTIONS[r];
+				RollupWindow window = sensorWindows.windows[r];
+				
+				if(window == null || window.start < start) {
+					
+					//The sample starts a new window
+					if(window != null) {
+						closedWindows.offer(window);
+					}
+					window = new RollupWindow(r, sensors[tableIndex], aquariumId, start);
+					sensorWindows.windows[r] = window;
+				
+				} else if(window.start > start) {
+					
+					//Late sample of a closed window, it is merged by the upsert
+					RollupWindow late = new RollupWindow(r, sensors[tableIndex], aquariumId, start);
+					late.add(value);
+					closedWindows.offer(late);
+					continue;
+				}
+				
+				window.add(value);
+			}
+		}
+	}
+	
+	/**
+	 * Closes the open windows whose end is older than closeDelay milliseconds.
+	 * @param now current time in milliseconds, Long.MAX_VALUE closes all the windows
+	 */
+	void sweep(long now) {
+		
+		for(SensorWindows[] aquariumWindows : openWindows.values()) {
+			for(SensorWindows sensorWindows : aquariumWindows) {
+				synchronized(sensorWindows) {
+					for(int r = 0; r < RESOLUTIONS.length; r++) {
+						
+						RollupWindow window = sensorWindows.windows[r];
+						if(window != null && (now == Long.MAX_VALUE || window.start + RESOLUTIONS[r] + closeDelay <= now)) {
+							closedWindows.offer(window);
+							sensorWindows.windows[r] = null;
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Moves the closed windows to the passed collection.
+	 * @return the number of windows moved.
+	 */
+	int drainClosed(Collection<RollupWindow> windows) {
+		
+		int drained = 0;
+		RollupWindow window;
+		while((window = closedWindows.poll()) != null) {
+			windows.add(window);
+			drained++;
+		}
+		return drained;
+	}
+	
+	/**
+	 * Queues again windows that could not be written.
+	 */
+	void requeue(Collection<RollupWindow> windows) {
+		closedWindows.addAll(windows);
+	}
+}
@@ -0,0 +1,264 @@
+package it.unipi.iot.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only local file in which the DatabaseManager writes the rows while the database is unreachable. <br>
+ * The file starts with a header (magic number and generation) followed by the records, written sequentially with NIO:
+ * each record is [length (int) | CRC32 of the payload (int) | payload], where the payload is
+ * [table index (byte) | aquarium identifier (UTF-8, short length) | timestamp (long) | value (float) | level (float)].<br>
+ * A record is identified by (generation, position): the generation is incremented every time the spool is emptied after a
+ * complete replay, so a checkpoint of a previous generation is never applied to the new content. A truncated or corrupted
+ * tail, left by a crash during an append, is discarded when the spool is opened.
+ * 
+ * @author Fabi8997
+ */
+class SampleSpool {
+	
+	//"SPL1"
+	private static final int MAGIC = 0x53504c31;
+	
+	//Magic number and generation
+	static final long HEADER_SIZE = 12;
+	
+	//Length and CRC of a record
+	private static final int RECORD_HEADER_SIZE = 8;
+	
+	//Maximum size of the payload, the aquarium identifiers are at most 64 characters long
+	private static final int MAX_PAYLOAD_SIZE = 512;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	
+	//Generation of the content of the file and position of the end of the last valid record
+	private long generation;
+	private long end;
+	
+	//Reused buffers, the spool is accessed only by the DatabaseManager while holding its lock
+	private final ByteBuffer writeBuffer;
+	private final ByteBuffer readBuffer;
+	private final CRC32 crc;
+	
+	/**
+	 * Opens the spool, creating it if it does not exist, and discards the incomplete records at its end.
+	 * @param path path of the spool file
+	 * @throws IOException if the file cannot be opened or it is not a spool file
+	 */
+	SampleSpool(String path) throws IOException {
+		
+		this.file = new RandomAccessFile(new File(path), "rw");
+		this.channel = file.getChannel();
+		this.writeBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE);
+		this.readBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + MAX_PAYLOAD_SIZE);
+		this.crc = new CRC32();
+		
+		if(channel.size() < HEADER_SIZE) {
+			
+			//New spool
+			this.generation = 1;
+			writeHeader();
+			this.end = HEADER_SIZE;
+			return;
+		}
+		
+		//Read the header
+		ByteBuffer header = ByteBuffer.allocate((int) HEADER_SIZE);
+		readFully(header, 0);
+		header.flip();
+		if(header.getInt() != MAGIC) {
+			channel.close();
+			throw new IOException(path + " is not a spool file");
+		}
+		this.generation = header.getLong();
+		
+		//Look for the end of the last valid record and discard the rest
+		long position = HEADER_SIZE;
+		while(position < channel.size()) {
+			long next = nextRecord(position);
+			if(next < 0) {
+				break;
+			}
+			position = next;
+		}
+		this.end = position;
+		if(channel.size() > end) {
+			channel.truncate(end);
+			channel.force(true);
+		}
+	}
+	
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate((int) HEADER_SIZE);
+		header.putInt(MAGIC).putLong(generation);
+		header.flip();
+		while(header.hasRemaining()) {
+			channel.write(header, HEADER_SIZE - header.remaining());
+		}
+		channel.force(true);
+	}
+	
+	/**
+	 * Reads the buffer from the passed position until it is full.
+	 * @return false if the end of the file is reached before.
+	 */
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0) {
+				return false;
+			}
+			position += read;
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads and validates the record at the passed position, leaving its payload in the read buffer.
+	 * @return the position of the next record, or -1 if the record is incomplete or corrupted.
+	 */
+	private long nextRecord(long position) throws IOException {
+		
+		readBuffer.clear();
+		readBuffer.limit(RECORD_HEADER_SIZE);
+		if(!readFully(readBuffer, position)) {
+			return -1;
+		}
+		readBuffer.flip();
+		int length = readBuffer.getInt();
+		int checksum = readBuffer.getInt();
+		if(length <= 0 || length > MAX_PAYLOAD_SIZE) {
+			return -1;
+		}
+		
+		readBuffer.clear();
+		readBuffer.limit(length);
+		if(!readFully(readBuffer, position + RECORD_HEADER_SIZE)) {
+			return -1;
+		}
+		readBuffer.flip();
+		
+		crc.reset();
+		crc.update(readBuffer.array(), 0, length);
+		if((int) crc.getValue() != checksum) {
+			return -1;
+		}
+		
+		return position + RECORD_HEADER_SIZE + length;
+	}
+	
+	/**
+	 * Appends a row at the end of the spool and forces it on the disk.
+	 * @param tableIndex index of the table of the row in the DatabaseManager
+	 * @param aquariumId identifier of the aquarium of the row
+	 * @param timestamp of the row
+	 * @param value of the row
+	 * @param level of the row
+	 * @throws IOException
+	 */
+	void append(int tableIndex, String aquariumId, long timestamp, float value, float level) throws IOException {
+		
+		byte[] aquarium = aquariumId.getBytes(UTF8);
+		int length = 1 + 2 + aquarium.length + 8 + 4 + 4;
+		if(length > MAX_PAYLOAD_SIZE) {
+			throw new IOException("Aquarium identifier too long: " + aquariumId);
+		}
+		
+		//Payload
+		writeBuffer.clear();
+		writeBuffer.position(RECORD_HEADER_SIZE);
+		writeBuffer.put((byte) tableIndex);
+		writeBuffer.putShort((short) aquarium.length);
+		writeBuffer.put(aquarium);
+		writeBuffer.putLong(timestamp);
+		writeBuffer.putFloat(value);
+		writeBuffer.putFloat(level);
+		
+		//Length and checksum
+		crc.reset();
+		crc.update(writeBuffer.array(), RECORD_HEADER_SIZE, length);
+		writeBuffer.putInt(0, length);
+		writeBuffer.putInt(4, (int) crc.getValue());
+		writeBuffer.flip();
+		
+		long position = end;
+		while(writeBuffer.hasRemaining()) {
+			position += channel.write(writeBuffer, position);
+		}
+		channel.force(false);
+		end = position;
+	}
+	
+	/**
+	 * Reads the records starting from the passed position and adds them to the batches of their tables.
+	 * @param position position of the first record to be read
+	 * @param maxRecords maximum number of records to be read
+	 * @param tableBatches batches of the tables, indexed as in the records
+	 * @return the position of the first record not read.
+	 * @throws IOException
+	 */
+	long read(long position, int maxRecords, TableBatch[] tableBatches) throws IOException {
+		
+		for(int i = 0; i < maxRecords && position < end; i++) {
+			
+			long next = nextRecord(position);
+			if(next < 0) {
+				throw new IOException("Corrupted record at position " + position + " of the spool");
+			}
+			
+			int tableIndex = readBuffer.get();
+			byte[] aquarium = new byte[readBuffer.getShort()];
+			readBuffer.get(aquarium);
+			long timestamp = readBuffer.getLong();
+			float value = readBuffer.getFloat();
+			float level = readBuffer.getFloat();
+			
+			//Rows of unknown tables are skipped
+			if(tableIndex >= 0 && tableIndex < tableBatches.length) {
+				tableBatches[tableIndex].add(new String(aquarium, UTF8), timestamp, value, level);
+			}
+			
+			position = next;
+		}
+		
+		return position;
+	}
+	
+	/**
+	 * Empties the spool once all its records have been replayed, starting a new generation.
+	 * @throws IOException
+	 */
+	void reset() throws IOException {
+		channel.truncate(HEADER_SIZE);
+		generation++;
+		writeHeader();
+		end = HEADER_SIZE;
+	}
+	
+	long getGeneration() {
+		return generation;
+	}
+	
+	long getEnd() {
+		return end;
+	}
+	
+	/**
+	 * @return true if the spool contains no record.
+	 */
+	boolean isEmpty() {
+		return end == HEADER_SIZE;
+	}
+	
+	void close() throws IOException {
+		channel.close();
+		file.close();
+	}
+}
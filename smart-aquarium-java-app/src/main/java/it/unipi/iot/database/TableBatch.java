@@ -0,0 +1,242 @@
+package it.unipi.iot.database;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import it.unipi.iot.storage.SampleKind.Layout;
+
+/**
+ * Buffer of the rows waiting to be inserted in a table when the DatabaseManager works in batching mode or replays the spool. <br>
+ * The rows are kept in primitive arrays and are bound to the prepared statement of the table, taken from the cache of the
+ * pooled connection used for the flush, only when the batch is flushed.
+ * 
+ * @author Fabi8997
+ */
+class TableBatch {
+	
+	//Name of the table and layout of its columns
+	final String table;
+	final Layout layout;
+	
+	//SQL of the prepared statement used to insert in the table
+	final String insertStatement;
+	
+	//Rows waiting to be flushed
+	private String[] aquariumIds;
+	private long[] timestamps;
+	private float[] values;
+	private float[] levels;
+	private int size;
+	
+	/**
+	 * Class constructor.
+	 * @param table name of the table
+	 * @param layout layout of the columns of the table
+	 * @param capacity initial capacity of the buffer
+	 */
+	TableBatch(String table, Layout layout, int capacity) {
+		this.table = table;
+		this.layout = layout;
+		this.insertStatement = insertStatement(table, layout);
+		this.aquariumIds = new String[Math.max(1, capacity)];
+		this.timestamps = new long[aquariumIds.length];
+		this.values = new float[timestamps.length];
+		this.levels = new float[timestamps.length];
+		this.size = 0;
+	}
+	
+	/**
+	 * @param table name of the table
+	 * @param layout layout of the columns of the table
+	 * @return the INSERT statement of the table according to its layout
+	 */
+	static String insertStatement(String table, Layout layout) {
+		
+		String columns;
+		switch(layout) {
+		case LEVEL_VALUE:
+			columns = " (aquarium, timestamp, level, value) VALUES (?,?,?,?)";
+			break;
+		case ACTIVE:
+			columns = " (aquarium, timestamp, active) VALUES (?,?,?)";
+			break;
+		default:
+			columns = " (aquarium, timestamp, value) VALUES (?,?,?)";
+		}
+		
+		return "INSERT INTO " + table + columns;
+	}
+	
+	/**
+	 * @param table name of the table
+	 * @param layout layout of the columns of the table
+	 * @return the SELECT statement of the most recent rows of an aquarium, served by the index (aquarium, timestamp); each row
+	 * has the columns timestamp, value and level, for the ACTIVE layout the value is the active flag and the level is 0.
+	 */
+	static String latestStatement(String table, Layout layout) {
+		
+		String columns;
+		switch(layout) {
+		case LEVEL_VALUE:
+			columns = "timestamp, value, level";
+			break;
+		case ACTIVE:
+			columns = "timestamp, active, 0";
+			break;
+		default:
+			columns = "timestamp, value, 0";
+		}
+		
+		return "SELECT " + columns + " FROM " + table + " WHERE aquarium = ? ORDER BY timestamp DESC LIMIT ?";
+	}
+	
+	/**
+	 * Binds the passed row to the parameters of the prepared statement according to the layout of the table.
+	 * @param preparedStatement prepared statement created with {@link #insertStatement(String, Layout)}
+	 * @param layout layout of the columns of the table
+	 * @param aquariumId identifier of the aquarium of the row
+	 * @param timestamp of the row
+	 * @param value of the row, for the ACTIVE layout 0 means false
+	 * @param level of the row, used only with the LEVEL_VALUE layout
+	 * @throws SQLException
+	 */
+	static void bind(PreparedStatement preparedStatement, Layout layout, String aquariumId, long timestamp, float value, float level) throws SQLException {
+		
+		preparedStatement.setString(1, aquariumId);
+		preparedStatement.setTimestamp(2, new Timestamp(timestamp));
+		
+		switch(layout) {
+		case LEVEL_VALUE:
+			preparedStatement.setFloat(3, level);
+			preparedStatement.setFloat(4, value);
+			break;
+		case ACTIVE:
+			preparedStatement.setBoolean(3, value != 0);
+			break;
+		default:
+			preparedStatement.setFloat(3, value);
+		}
+	}
+	
+	/**
+	 * Appends a row to the buffer, growing it if needed.
+	 */
+	void add(String aquariumId, long timestamp, float value, float level) {
+		
+		if(size == timestamps.length) {
+			int capacity = size * 2;
+			String[] newAquariumIds = new String[capacity];
+			long[] newTimestamps = new long[capacity];
+			float[] newValues = new float[capacity];
+			float[] newLevels = new float[capacity];
+			System.arraycopy(aquariumIds, 0, newAquariumIds, 0, size);
+			System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+			System.arraycopy(values, 0, newValues, 0, size);
+			System.arraycopy(levels, 0, newLevels, 0, size);
+			aquariumIds = newAquariumIds;
+			timestamps = newTimestamps;
+			values = newValues;
+			levels = newLevels;
+		}
+		
+		aquariumIds[size] = aquariumId;
+		timestamps[size] = timestamp;
+		values[size] = value;
+		levels[size] = level;
+		size++;
+	}
+	
+	/**
+	 * Adds all the buffered rows to the batch of the prepared statement and executes it. The buffer is not cleared, this is done
+	 * with {@link #clear()} once the transaction is committed.
+	 * @param preparedStatement prepared statement created with {@link #insertStatement}
+	 * @throws SQLException if the batch fails or if a row is not inserted
+	 */
+	void execute(PreparedStatement preparedStatement) throws SQLException {
+		
+		if(size == 0) {
+			return;
+		}
+		
+		int[] results;
+		try {
+			for(int i = 0; i < size; i++) {
+				bind(preparedStatement, layout, aquariumIds[i], timestamps[i], values[i], levels[i]);
+				preparedStatement.addBatch();
+			}
+			
+			results = preparedStatement.executeBatch();
+			
+		} catch (SQLException e) {
+			
+			//The statement is cached by the connection, it must not keep the rows of the failed batch
+			try {
+				preparedStatement.clearBatch();
+			} catch (SQLException clearException) {
+				//The statement is closed together with its connection
+			}
+			throw e;
+		}
+		
+		for(int result : results) {
+			
+			//With the rewriting of the batched statements the driver can return SUCCESS_NO_INFO
+			if(result != 1 && result != PreparedStatement.SUCCESS_NO_INFO) {
+				throw new SQLException("Problem during the batch insertion in " + table + "!");
+			}
+		}
+	}
+	
+	/**
+	 * Binds the row with the passed index and executes the prepared statement, used to write the rows one at a time when the
+	 * batch has been rejected.
+	 * @param preparedStatement prepared statement created with {@link #insertStatement}
+	 * @param index index of the row in the buffer
+	 * @throws SQLException if the row is not inserted
+	 */
+	void executeRow(PreparedStatement preparedStatement, int index) throws SQLException {
+		
+		bind(preparedStatement, layout, aquariumIds[index], timestamps[index], values[index], levels[index]);
+		if(preparedStatement.executeUpdate() != 1) {
+			throw new SQLException("Problem during the insertion in " + table + "!");
+		}
+	}
+	
+	/**
+	 * @return the values of the row with the passed index, to be logged.
+	 */
+	String describeRow(int index) {
+		return "[aquarium: " + aquariumIds[index] + ", timestamp: " + timestamps[index] + ", value: " + values[index]
+				+ ", level: " + levels[index] + "]";
+	}
+	
+	/**
+	 * Appends all the buffered rows to the spool, used when the rows cannot be written in the database.
+	 * @param spool spool in which the rows are written
+	 * @param tableIndex index of the table in the DatabaseManager
+	 * @throws IOException
+	 */
+	void spool(SampleSpool spool, int tableIndex) throws IOException {
+		for(int i = 0; i < size; i++) {
+			spool.append(tableIndex, aquariumIds[i], timestamps[i], values[i], levels[i]);
+		}
+	}
+	
+	/**
+	 * Discards the rows of the buffer.
+	 */
+	void clear() {
+		
+		//Release the references to the identifiers
+		for(int i = 0; i < size; i++) {
+			aquariumIds[i] = null;
+		}
+		size = 0;
+	}
+	
+	int size() {
+		return size;
+	}
+}
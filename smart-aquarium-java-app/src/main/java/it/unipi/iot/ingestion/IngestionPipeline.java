@@ -0,0 +1,238 @@
+package it.unipi.iot.ingestion;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.storage.SampleStore;
+
+/**
+ * Staged ingestion pipeline between the MQTT callback and the database. <br>
+ * The callback thread only decodes the message into a {@link SampleRecord} and submits it to the pipeline; a set of dedicated
+ * writer threads drain the queues and insert the samples in the database, so that a slow database round-trip does not stall
+ * the reception of the messages.<br>
+ * Each writer owns a bounded queue and all the samples of a sensor are always routed to the same writer, in this way the samples
+ * of a sensor are inserted in the same order in which they arrived. When a queue is full the configured {@link OverflowPolicy}
+ * is applied.
+ * 
+ * @author Fabi8997
+ */
+public class IngestionPipeline {
+	
+	private static final Logger LOGGER = new Logger("MQTT Collector", Colors.ANSI_YELLOW);
+	
+	//Time waited by a writer on an empty queue before checking if the pipeline has been closed
+	private static final long POLL_TIMEOUT = 500;
+	
+	//Storage used by the writers to insert the samples
+	private final SampleStore db;
+	
+	//Policy applied when a queue is full
+	private final OverflowPolicy overflowPolicy;
+	
+	//One queue and one thread for each writer
+	private final ArrayBlockingQueue<SampleRecord>[] queues;
+	private final Writer[] writers;
+	
+	//Statistics about the samples lost due to the overflow policy
+	private final AtomicLong droppedSamples;
+	private final AtomicLong coalescedSamples;
+	
+	//Set when the pipeline stops accepting samples
+	private final AtomicBoolean closed;
+	
+	/**
+	 * Constructor of the class. It creates the queues and starts the writer threads.
+	 * @param configurationParameters configuration parameters, used to read the queue capacity, the number of writers and the
+	 * overflow policy
+	 * @param db storage used to insert the samples
+	 */
+	public IngestionPipeline(ConfigurationParameters configurationParameters, SampleStore db) {
+		
+		this.db = db;
+		this.overflowPolicy = OverflowPolicy.fromString(configurationParameters.ingestionOverflowPolicy);
+		
+		//At least one writer with at least one slot
+		int writerThreads = Math.max(1, configurationParameters.ingestionWriterThreads);
+		int queueCapacity = Math.max(1, configurationParameters.ingestionQueueCapacity / writerThreads);
+		
+		this.droppedSamples = new AtomicLong(0);
+		this.coalescedSamples = new AtomicLong(0);
+		this.closed = new AtomicBoolean(false);
+		
+		//Generic arrays cannot be created, the raw array only ever holds queues of samples
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		ArrayBlockingQueue<SampleRecord>[] queues = new ArrayBlockingQueue[writerThreads];
+		this.queues = queues;
+		this.writers = new Writer[writerThreads];
+		
+		for(int i = 0; i < writerThreads; i++) {
+			queues[i] = new ArrayBlockingQueue<SampleRecord>(queueCapacity);
+			writers[i] = new Writer(queues[i], i);
+			writers[i].start();
+		}
+	}
+	
+	/**
+	 * Submits a sample to the writer responsible for its sensor. If the queue of the writer is full the overflow policy is
+	 * applied; only the BLOCK policy can make the caller wait.
+	 * @param record sample to be inserted in the database
+	 * @return true if the sample has been queued, false if the pipeline is closed or the thread was interrupted while waiting.
+	 */
+	public boolean submit(SampleRecord record) {
+		
+		if(closed.get()) {
+			return false;
+		}
+		
+		ArrayBlockingQueue<SampleRecord> queue = queues[(record.sensorHash() & 0x7fffffff) % queues.length];
+		
+		//Fast path, there is room in the queue
+		if(queue.offer(record)) {
+			return true;
+		}
+		
+		switch(overflowPolicy) {
+		
+		case DROP_OLDEST:
+			return dropOldestAndOffer(queue, record);
+			
+		case COALESCE_LATEST:
+			
+			//Look for the oldest queued sample of the same sensor and replace it with the new one
+			Iterator<SampleRecord> iterator = queue.iterator();
+			while(iterator.hasNext()) {
+				SampleRecord queued = iterator.next();
+				if(queued.sameSensor(record) && queue.remove(queued)) {
+					coalescedSamples.incrementAndGet();
+					if(queue.offer(record)) {
+						return true;
+					}
+					break;
+				}
+			}
+			
+			//No sample of the same sensor, make room discarding the oldest one
+			return dropOldestAndOffer(queue, record);
+			
+		default:
+			try {
+				queue.put(record);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+	
+	/**
+	 * Discards the oldest samples of the queue until the passed one can be inserted.
+	 * @param queue full queue
+	 * @param record sample to insert
+	 * @return always true
+	 */
+	private boolean dropOldestAndOffer(ArrayBlockingQueue<SampleRecord> queue, SampleRecord record) {
+		while(!queue.offer(record)) {
+			if(queue.poll() != null) {
+				droppedSamples.incrementAndGet();
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of samples discarded due to the overflow policy.
+	 */
+	public long getDroppedSamples() {
+		return droppedSamples.get();
+	}
+	
+	/**
+	 * @return the number of samples replaced by a newer sample of the same sensor.
+	 */
+	public long getCoalescedSamples() {
+		return coalescedSamples.get();
+	}
+	
+	/**
+	 * @return the number of samples waiting to be written.
+	 */
+	public int getPendingSamples() {
+		int pending = 0;
+		for(ArrayBlockingQueue<SampleRecord> queue : queues) {
+			pending += queue.size();
+		}
+		return pending;
+	}
+	
+	/**
+	 * Stops accepting new samples and waits for the writers to drain their queues.
+	 */
+	public void close() {
+		
+		if(!closed.compareAndSet(false, true)) {
+			return;
+		}
+		
+		for(Writer writer : writers) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		
+		if(droppedSamples.get() > 0 || coalescedSamples.get() > 0) {
+			LOGGER.info("Ingestion pipeline closed [ dropped = {}, coalesced = {} ].", droppedSamples.get(), coalescedSamples.get());
+		}
+	}
+	
+	/**
+	 * Thread that drains a queue of the pipeline inserting the samples in the database.
+	 */
+	private class Writer extends Thread {
+		
+		private final ArrayBlockingQueue<SampleRecord> queue;
+		
+		public Writer(ArrayBlockingQueue<SampleRecord> queue, int index) {
+			super("ingestion-writer-" + index);
+			this.queue = queue;
+			this.setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			
+			//When the pipeline is closed the remaining samples are written before exiting
+			while(!closed.get() || !queue.isEmpty()) {
+				
+				SampleRecord record;
+				try {
+					record = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				
+				if(record == null) {
+					continue;
+				}
+				
+				//Insert in the table of the record the value of the record
+				if(db.insertSample(record.getAquariumId(), record.getKind(), record.getValue(), record.getTimestamp())) {
+					
+					//LOG
+					LOGGER.debug("Inserted {} in {} [aquarium: {}].", record, record.getKind(), record.getAquariumId());
+				}else {
+					LOGGER.warn("Unable to insert {} in {} [aquarium: {}].", record, record.getKind(), record.getAquariumId());
+				}
+			}
+		}
+	}
+}
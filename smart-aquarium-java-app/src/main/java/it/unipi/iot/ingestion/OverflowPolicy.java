@@ -0,0 +1,34 @@
+package it.unipi.iot.ingestion;
+
+/**
+ * Policy applied by the {@link IngestionPipeline} when a sample arrives and the writer queue that should receive it is full.
+ * <br>
+ * - BLOCK: the producer (the MQTT callback thread) waits until the writer frees a slot; no sample is ever lost <br>
+ * - DROP_OLDEST: the oldest queued sample is discarded to make room for the new one <br>
+ * - COALESCE_LATEST: the oldest queued sample of the same sensor is replaced by the new one, so that each sensor keeps its latest
+ *   reading; if the queue holds no sample of that sensor the oldest sample is discarded
+ * 
+ * @author Fabi8997
+ */
+public enum OverflowPolicy {
+	BLOCK,
+	DROP_OLDEST,
+	COALESCE_LATEST;
+	
+	/**
+	 * Returns the policy with the given name, ignoring the case. If the name is null or unknown the BLOCK policy is returned,
+	 * since it is the only one that never loses samples.
+	 * @param name name of the policy read from the configuration file
+	 * @return the corresponding policy
+	 */
+	public static OverflowPolicy fromString(String name) {
+		if(name != null) {
+			for(OverflowPolicy policy : values()) {
+				if(policy.name().equalsIgnoreCase(name.trim())) {
+					return policy;
+				}
+			}
+		}
+		return BLOCK;
+	}
+}
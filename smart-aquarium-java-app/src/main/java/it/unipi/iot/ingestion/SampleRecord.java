@@ -0,0 +1,83 @@
+package it.unipi.iot.ingestion;
+
+import it.unipi.iot.storage.SampleKind;
+
+/**
+ * Immutable record of a decoded sample waiting in the {@link IngestionPipeline} to be written in the database.
+ * 
+ * @author Fabi8997
+ */
+public final class SampleRecord {
+	
+	//Identifier of the aquarium in which the sensor is placed
+	private final String aquariumId;
+	
+	//Name of the sensor that produced the sample, it is also the key of the value in the JSON document (e.g. "pH")
+	private final String sensor;
+	
+	//Kind of the sample, it identifies the table in which the sample must be inserted
+	private final SampleKind kind;
+	
+	//Value of the sample
+	private final float value;
+	
+	//Arrival time of the sample in milliseconds
+	private final long timestamp;
+	
+	/**
+	 * Class constructor.
+	 * @param aquariumId identifier of the aquarium in which the sensor is placed
+	 * @param sensor name of the sensor that produced the sample
+	 * @param kind kind of the sample
+	 * @param value value of the sample
+	 * @param timestamp arrival time of the sample in milliseconds
+	 */
+	public SampleRecord(String aquariumId, String sensor, SampleKind kind, float value, long timestamp) {
+		this.aquariumId = aquariumId;
+		this.sensor = sensor;
+		this.kind = kind;
+		this.value = value;
+		this.timestamp = timestamp;
+	}
+
+	public String getAquariumId() {
+		return aquariumId;
+	}
+
+	public String getSensor() {
+		return sensor;
+	}
+
+	public SampleKind getKind() {
+		return kind;
+	}
+
+	public float getValue() {
+		return value;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	/**
+	 * Checks if this record and the passed one were produced by the same sensor.
+	 * @param other record to compare
+	 * @return true if the two records refer to the same sensor, false otherwise.
+	 */
+	public boolean sameSensor(SampleRecord other) {
+		return this.kind == other.kind && this.sensor.equals(other.sensor) && this.aquariumId.equals(other.aquariumId);
+	}
+
+	/**
+	 * @return hash of the sensor, used to route all the samples of a sensor to the same writer.
+	 */
+	public int sensorHash() {
+		return 31 * aquariumId.hashCode() + kind.ordinal();
+	}
+
+	@Override
+	public String toString() {
+		return "{\"" + sensor + "\":" + value + "}";
+	}
+}
@@ -0,0 +1,462 @@
+package it.unipi.iot.json;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Streaming decoder that extracts the decimal value associated to a key from a JSON document, working directly on the bytes of
+ * the payload.<br>
+ * Example: the decoder for the key "pH" returns 7.53 from the payload {"pH": 7.53}.<br>
+ * The document is scanned only once and the value is converted into a primitive float without creating any intermediate object
+ * (no String, no JSONObject, no Double). The document must be a well formed JSON object and the value associated to the key must
+ * be a decimal number (a number with a fraction or an exponent, that JSONParser converts into a Double).<br>
+ * The decoder is stricter than JSONParser on the separators: JSONParser skips the commas, so it also accepts documents with
+ * missing, repeated, leading or trailing commas, e.g. {"pH":7.53,} or {"pH":1.5 "a":1}, while the decoder requires exactly one
+ * comma between the members of an object and between the elements of an array, as in RFC 8259. The documents published by the
+ * sensors are always well formed, so the difference only affects malformed payloads.<br>
+ * The decoder has no mutable state, so a single instance can be shared by different threads.
+ * 
+ * @author Fabi8997
+ */
+public final class JSONFloatDecoder {
+	
+	//Maximum nesting of the values that are skipped
+	private static final int MAX_DEPTH = 32;
+	
+	//Exact powers of ten that can be represented by a double
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	//Largest mantissa that can be represented exactly by a double
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	
+	//Key whose value must be extracted
+	private final String key;
+	
+	/**
+	 * Class constructor.
+	 * @param key key whose value must be extracted from the documents
+	 */
+	public JSONFloatDecoder(String key) {
+		this.key = key;
+	}
+	
+	/**
+	 * Extracts the value associated to the key from the passed payload.
+	 * @param payload bytes of the JSON document
+	 * @return the value associated to the key
+	 * @throws ParseException if the document is malformed, if the key is missing or if its value is not a decimal number
+	 */
+	public float decode(byte[] payload) throws ParseException {
+		return decode(payload, 0, payload.length);
+	}
+	
+	/**
+	 * Extracts the value associated to the key from the passed portion of the payload.
+	 * @param payload bytes of the JSON document
+	 * @param offset first byte of the document
+	 * @param length length of the document
+	 * @return the value associated to the key
+	 * @throws ParseException if the document is malformed, if the key is missing or if its value is not a decimal number
+	 */
+	public float decode(byte[] payload, int offset, int length) throws ParseException {
+		
+		int end = offset + length;
+		int position = skipWhitespaces(payload, offset, end);
+		
+		//The document must be an object
+		position = expect(payload, position, end, '{');
+		position = skipWhitespaces(payload, position, end);
+		
+		boolean found = false;
+		float value = 0;
+		
+		if(position < end && payload[position] == '}') {
+			position++;
+		}else {
+			
+			while(true) {
+				
+				//Key of the member
+				int keyStart = position;
+				position = skipString(payload, position, end);
+				boolean matches = keyEquals(payload, keyStart + 1, position - 1);
+				
+				position = skipWhitespaces(payload, position, end);
+				position = expect(payload, position, end, ':');
+				position = skipWhitespaces(payload, position, end);
+				
+				if(matches) {
+					
+					//The value must be a decimal number, as duplicated keys the last one wins
+					int numberEnd = skipNumber(payload, position, end);
+					if(numberEnd < 0 || !isDecimal(payload, position, numberEnd)) {
+						throw new ParseException(position - offset, ParseException.ERROR_UNEXPECTED_TOKEN, key);
+					}
+					value = toFloat(payload, position, numberEnd);
+					found = true;
+					position = numberEnd;
+				}else {
+					position = skipValue(payload, position, end, 0);
+				}
+				
+				position = skipWhitespaces(payload, position, end);
+				if(position < end && payload[position] == ',') {
+					position = skipWhitespaces(payload, position + 1, end);
+				}else {
+					position = expect(payload, position, end, '}');
+					break;
+				}
+			}
+		}
+		
+		//Nothing can follow the object
+		position = skipWhitespaces(payload, position, end);
+		if(position != end) {
+			throw unexpected(payload, position, end);
+		}
+		
+		if(!found) {
+			throw new ParseException(length, ParseException.ERROR_UNEXPECTED_TOKEN, key);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Checks if the bytes in [start, end) of a string without quotes are equal to the key, decoding the escape sequences.
+	 */
+	private boolean keyEquals(byte[] payload, int start, int end) {
+		
+		int index = 0;
+		int position = start;
+		
+		while(position < end) {
+			
+			char c;
+			if(payload[position] == '\\') {
+				
+				//The escape sequences are validated by skipString
+				byte escaped = payload[position + 1];
+				switch(escaped) {
+				case 'b': c = '\b'; break;
+				case 'f': c = '\f'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case 'u':
+					c = (char) ((hexValue(payload[position + 2]) << 12) | (hexValue(payload[position + 3]) << 8)
+							| (hexValue(payload[position + 4]) << 4) | hexValue(payload[position + 5]));
+					position += 4;
+					break;
+				default: c = (char) escaped;
+				}
+				position += 2;
+				
+			}else if(payload[position] < 0) {
+				
+				//Keys with non ASCII characters are not used by the sensors
+				return false;
+			}else {
+				c = (char) payload[position++];
+			}
+			
+			if(index >= key.length() || key.charAt(index++) != c) {
+				return false;
+			}
+		}
+		
+		return index == key.length();
+	}
+	
+	/**
+	 * Skips a value of any type.
+	 * @return the position following the value
+	 */
+	private int skipValue(byte[] payload, int position, int end, int depth) throws ParseException {
+		
+		if(position >= end || depth > MAX_DEPTH) {
+			throw unexpected(payload, position, end);
+		}
+		
+		switch(payload[position]) {
+		
+		case '"':
+			return skipString(payload, position, end);
+			
+		case '{':
+			position = skipWhitespaces(payload, position + 1, end);
+			if(position < end && payload[position] == '}') {
+				return position + 1;
+			}
+			while(true) {
+				position = skipString(payload, position, end);
+				position = skipWhitespaces(payload, position, end);
+				position = expect(payload, position, end, ':');
+				position = skipWhitespaces(payload, position, end);
+				position = skipValue(payload, position, end, depth + 1);
+				position = skipWhitespaces(payload, position, end);
+				if(position < end && payload[position] == ',') {
+					position = skipWhitespaces(payload, position + 1, end);
+				}else {
+					return expect(payload, position, end, '}');
+				}
+			}
+			
+		case '[':
+			position = skipWhitespaces(payload, position + 1, end);
+			if(position < end && payload[position] == ']') {
+				return position + 1;
+			}
+			while(true) {
+				position = skipValue(payload, position, end, depth + 1);
+				position = skipWhitespaces(payload, position, end);
+				if(position < end && payload[position] == ',') {
+					position = skipWhitespaces(payload, position + 1, end);
+				}else {
+					return expect(payload, position, end, ']');
+				}
+			}
+			
+		case 't':
+			return skipLiteral(payload, position, end, "true");
+		case 'f':
+			return skipLiteral(payload, position, end, "false");
+		case 'n':
+			return skipLiteral(payload, position, end, "null");
+			
+		default:
+			int numberEnd = skipNumber(payload, position, end);
+			if(numberEnd < 0) {
+				throw unexpected(payload, position, end);
+			}
+			return numberEnd;
+		}
+	}
+	
+	/**
+	 * Skips a string validating its escape sequences.
+	 * @return the position following the closing quote
+	 */
+	private int skipString(byte[] payload, int position, int end) throws ParseException {
+		
+		position = expect(payload, position, end, '"');
+		
+		while(position < end) {
+			
+			byte b = payload[position];
+			
+			if(b == '"') {
+				return position + 1;
+			}
+			
+			if(b == '\\') {
+				if(position + 1 >= end) {
+					break;
+				}
+				switch(payload[position + 1]) {
+				case '"': case '\\': case '/': case 'b': case 'f': case 'n': case 'r': case 't':
+					position += 2;
+					break;
+				case 'u':
+					if(position + 5 >= end || hexValue(payload[position + 2]) < 0 || hexValue(payload[position + 3]) < 0
+							|| hexValue(payload[position + 4]) < 0 || hexValue(payload[position + 5]) < 0) {
+						throw unexpected(payload, position, end);
+					}
+					position += 6;
+					break;
+				default:
+					throw unexpected(payload, position, end);
+				}
+			}else {
+				position++;
+			}
+		}
+		
+		//Unterminated string
+		throw unexpected(payload, end, end);
+	}
+	
+	/**
+	 * Skips a number with the syntax -?[0-9]+(\.[0-9]+)?([eE][-+]?[0-9]+)?
+	 * @return the position following the number or -1 if there is no valid number at the passed position
+	 */
+	private static int skipNumber(byte[] payload, int position, int end) {
+		
+		if(position < end && payload[position] == '-') {
+			position++;
+		}
+		
+		int digits = position;
+		while(position < end && isDigit(payload[position])) {
+			position++;
+		}
+		if(position == digits) {
+			return -1;
+		}
+		
+		if(position < end && payload[position] == '.') {
+			digits = ++position;
+			while(position < end && isDigit(payload[position])) {
+				position++;
+			}
+			if(position == digits) {
+				return -1;
+			}
+		}
+		
+		if(position < end && (payload[position] == 'e' || payload[position] == 'E')) {
+			position++;
+			if(position < end && (payload[position] == '+' || payload[position] == '-')) {
+				position++;
+			}
+			digits = position;
+			while(position < end && isDigit(payload[position])) {
+				position++;
+			}
+			if(position == digits) {
+				return -1;
+			}
+		}
+		
+		return position;
+	}
+	
+	/**
+	 * Checks if a valid number has a fraction or an exponent.
+	 */
+	private static boolean isDecimal(byte[] payload, int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(payload[i] == '.' || payload[i] == 'e' || payload[i] == 'E') {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Converts a valid number into a float. The result is the same of (float) Double.parseDouble(number): when the digits fit
+	 * in the mantissa of a double and the exponent is small the conversion is exact, otherwise it falls back to Double.parseDouble.
+	 */
+	private static float toFloat(byte[] payload, int start, int end) {
+		
+		int position = start;
+		boolean negative = false;
+		if(payload[position] == '-') {
+			negative = true;
+			position++;
+		}
+		
+		long mantissa = 0;
+		int exponent = 0;
+		int significantDigits = 0;
+		boolean exact = true;
+		
+		//Integer and fractional digits
+		boolean fraction = false;
+		for(; position < end; position++) {
+			byte b = payload[position];
+			if(b == '.') {
+				fraction = true;
+				continue;
+			}
+			if(!isDigit(b)) {
+				break;
+			}
+			if(mantissa != 0 || b != '0') {
+				significantDigits++;
+			}
+			if(significantDigits > 18) {
+				exact = false;
+				break;
+			}
+			mantissa = mantissa * 10 + (b - '0');
+			if(fraction) {
+				exponent--;
+			}
+		}
+		
+		//Exponent
+		if(exact && position < end && (payload[position] == 'e' || payload[position] == 'E')) {
+			position++;
+			boolean negativeExponent = false;
+			if(payload[position] == '+' || payload[position] == '-') {
+				negativeExponent = payload[position] == '-';
+				position++;
+			}
+			int explicitExponent = 0;
+			for(; position < end; position++) {
+				explicitExponent = explicitExponent * 10 + (payload[position] - '0');
+				if(explicitExponent > 1000) {
+					exact = false;
+					break;
+				}
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		if(exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+			
+			//Both operands are exact, so the result is correctly rounded as in Double.parseDouble
+			double result = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+			return (float) (negative ? -result : result);
+		}
+		
+		//Rare case: too many digits or an exponent too large
+		char[] chars = new char[end - start];
+		for(int i = start; i < end; i++) {
+			chars[i - start] = (char) payload[i];
+		}
+		return (float) Double.parseDouble(new String(chars));
+	}
+	
+	private static int skipLiteral(byte[] payload, int position, int end, String literal) throws ParseException {
+		for(int i = 0; i < literal.length(); i++) {
+			if(position + i >= end || payload[position + i] != literal.charAt(i)) {
+				throw unexpected(payload, position + i, end);
+			}
+		}
+		return position + literal.length();
+	}
+	
+	private static int skipWhitespaces(byte[] payload, int position, int end) {
+		while(position < end && (payload[position] == ' ' || payload[position] == '\t' || payload[position] == '\n' || payload[position] == '\r')) {
+			position++;
+		}
+		return position;
+	}
+	
+	private static int expect(byte[] payload, int position, int end, char expected) throws ParseException {
+		if(position >= end || payload[position] != expected) {
+			throw unexpected(payload, position, end);
+		}
+		return position + 1;
+	}
+	
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+	
+	private static int hexValue(byte b) {
+		if(b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		if(b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+		if(b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Creates the exception for an unexpected character, or for the unexpected end of the document.
+	 */
+	private static ParseException unexpected(byte[] payload, int position, int end) {
+		if(position >= end) {
+			return new ParseException(position, ParseException.ERROR_UNEXPECTED_TOKEN, null);
+		}
+		return new ParseException(position, ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) payload[position]));
+	}
+}
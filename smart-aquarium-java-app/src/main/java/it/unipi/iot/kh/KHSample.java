@@ -1,9 +1,11 @@
 package it.unipi.iot.kh;
 
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import it.unipi.iot.json.JSONFloatDecoder;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
 /**
 
  * Class that represent a pH sample, this sample is sensed by the pH sensor and sent through a MQTT message to the broker.
@@ -13,6 +15,11 @@ import org.json.simple.parser.ParseException;
 
 public class KHSample {
 	
+	private static final Logger LOGGER = new Logger("kHSample", Colors.ANSI_YELLOW);
+	
+	//Decoder shared by all the samples, it extracts the value associated to the key kH
+	private static final JSONFloatDecoder DECODER = new JSONFloatDecoder("kH");
+	
 	
 	/**
 	 * pH value present inside the JSON string sent by the sensor
@@ -29,19 +36,33 @@ public class KHSample {
 	public KHSample(String JSONString) {
 		try {
 			
-		
-			JSONParser parser = new JSONParser();
-			JSONObject phJSONObject= (JSONObject) parser.parse(JSONString);
-			
-			//Initialize the value of pHValue with the value associated to the pH key
-			this.kHValue = new Float((Double)phJSONObject.get("kH"));
+			//Initialize the value of kHValue with the value associated to the kH key
+			this.kHValue = DECODER.decode(JSONString.getBytes());
 			
 		} catch (ParseException e) {
-			System.out.println("[kHSample] Error during the parsing from JSON to kHSample object.");
-			e.printStackTrace();
+			LOGGER.error("Error during the parsing from JSON to kHSample object.", e);
 		}
 	}
 	
+	/**
+	 * Constructor of the class KHSample that reads the value directly from the bytes of the MQTT payload.
+	 * @param payload bytes of the JSON document published in the topic "kH"
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key kH
+	 */
+	public KHSample(byte[] payload) throws ParseException {
+		this.kHValue = DECODER.decode(payload);
+	}
+	
+	/**
+	 * Reads the value associated to the key kH directly from the bytes of the MQTT payload, without creating any object.
+	 * @param payload bytes of the JSON document published in the topic "kH"
+	 * @return the kH value
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key kH
+	 */
+	public static float decode(byte[] payload) throws ParseException {
+		return DECODER.decode(payload);
+	}
+	
 	
 
 	/**
@@ -54,12 +75,9 @@ public class KHSample {
 
 
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public String toString() {
-		JSONObject jsonObject = new JSONObject();
-		jsonObject.put("kH", this.kHValue);
-		return jsonObject.toJSONString();
+		return "{\"kH\":" + this.kHValue + "}";
 	}
 	
 	
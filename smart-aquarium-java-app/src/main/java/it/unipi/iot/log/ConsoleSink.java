@@ -0,0 +1,69 @@
+package it.unipi.iot.log;
+
+import java.io.PrintStream;
+import java.util.regex.Pattern;
+
+/**
+ * Sink that prints the records on the console in the format used by the application, "[Component] message", with the name
+ * of the component coloured with the colour of the logger, or red for the warnings and the errors. <br>
+ * The output is buffered and flushed when the queue of the writer is empty or the buffer is full.
+ * 
+ * @author Fabi8997
+ */
+public class ConsoleSink implements LogSink {
+	
+	//Characters buffered before printing them even if other records are queued
+	private static final int BUFFER_SIZE = 8192;
+	
+	//ANSI colour codes contained in the messages
+	private static final Pattern ANSI_CODE = Pattern.compile("\u001B\\[[;\\d]*m");
+	
+	private final PrintStream out;
+	
+	//False to print the records without the ANSI colour codes, e.g. when the output is redirected to a file
+	private final boolean colors;
+	
+	private final StringBuilder buffer;
+	
+	/**
+	 * Class constructor.
+	 * @param out stream on which the records are printed
+	 * @param colors true to colour the name of the component
+	 */
+	public ConsoleSink(PrintStream out, boolean colors) {
+		this.out = out;
+		this.colors = colors;
+		this.buffer = new StringBuilder(BUFFER_SIZE);
+	}
+	
+	@Override
+	public void write(LogRecord record) {
+		
+		Logger logger = record.getLogger();
+		buffer.append('[');
+		if(colors) {
+			buffer.append(record.getLevel().compareTo(LogLevel.WARN) >= 0 ? Colors.ANSI_RED : logger.getColor());
+		}
+		buffer.append(logger.getName());
+		if(colors) {
+			buffer.append(Colors.ANSI_RESET);
+		}
+		buffer.append("] ").append(colors ? record.getMessage() : ANSI_CODE.matcher(record.getMessage()).replaceAll("")).append('\n');
+		
+		if(record.getThrowable() != null) {
+			flush();
+			record.getThrowable().printStackTrace(out);
+		} else if(buffer.length() >= BUFFER_SIZE) {
+			flush();
+		}
+	}
+	
+	@Override
+	public void flush() {
+		if(buffer.length() > 0) {
+			out.print(buffer);
+			out.flush();
+			buffer.setLength(0);
+		}
+	}
+}
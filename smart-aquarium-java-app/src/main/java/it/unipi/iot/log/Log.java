@@ -0,0 +1,181 @@
+package it.unipi.iot.log;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.MetricsRegistry;
+
+/**
+ * Asynchronous writer of the log records of the application. <br>
+ * The {@link Logger}s check the level and append the records to a lock-free queue, so the MQTT and CoAP threads never wait
+ * for the console; a background thread takes the records from the queue, builds their messages and writes them to the
+ * sinks, flushing the sinks when the queue is empty. When the queue is full the new records are dropped and counted in the
+ * metric log_dropped_records_total.
+ * 
+ * @author Fabi8997
+ */
+public final class Log {
+	
+	//Maximum time for which the writer waits without checking the queue
+	private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	private static final Counter DROPPED = MetricsRegistry.DEFAULT.counter("log_dropped_records_total",
+			"Log records dropped because the queue of the writer was full.");
+	
+	//Records waiting for the writer
+	private static final ConcurrentLinkedQueue<LogRecord> queue = new ConcurrentLinkedQueue<LogRecord>();
+	
+	//Records queued or being written, and records not yet flushed by the sinks
+	private static final AtomicInteger pending = new AtomicInteger(0);
+	private static final AtomicInteger unflushed = new AtomicInteger(0);
+	
+	private static final List<LogSink> sinks = new CopyOnWriteArrayList<LogSink>();
+	
+	private static volatile LogLevel level = LogLevel.INFO;
+	private static volatile int capacity = 8192;
+	
+	//True while the writer is parked waiting for new records
+	private static volatile boolean waiting = false;
+	
+	private static final Thread writer;
+	
+	static {
+		sinks.add(new ConsoleSink(System.out, true));
+		
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	private Log() {
+	}
+	
+	/**
+	 * Applies the log parameters of the configuration: the level, the size of the queue and the colours of the console.
+	 * @param configurationParameters
+	 */
+	public static void configure(ConfigurationParameters configurationParameters) {
+		level = LogLevel.fromString(configurationParameters.logLevel);
+		capacity = Math.max(1, configurationParameters.logQueueCapacity);
+		setSink(new ConsoleSink(System.out, configurationParameters.logColors));
+	}
+	
+	/**
+	 * Replaces the sinks with the passed one; the records already queued are written to the new sink.
+	 */
+	public static void setSink(LogSink sink) {
+		sinks.add(sink);
+		for(LogSink old : sinks) {
+			if(old != sink) {
+				sinks.remove(old);
+			}
+		}
+	}
+	
+	public static void addSink(LogSink sink) {
+		sinks.add(sink);
+	}
+	
+	public static void setLevel(LogLevel newLevel) {
+		level = newLevel;
+	}
+	
+	public static LogLevel getLevel() {
+		return level;
+	}
+	
+	/**
+	 * @return true if the records of the passed level are written.
+	 */
+	public static boolean isEnabled(LogLevel recordLevel) {
+		return recordLevel.compareTo(level) >= 0;
+	}
+	
+	/**
+	 * Appends a record to the queue of the writer, or drops it if the queue is full.
+	 */
+	static void enqueue(LogRecord record) {
+		
+		if(pending.incrementAndGet() > capacity) {
+			pending.decrementAndGet();
+			DROPPED.increment();
+			return;
+		}
+		
+		unflushed.incrementAndGet();
+		queue.offer(record);
+		if(waiting) {
+			LockSupport.unpark(writer);
+		}
+	}
+	
+	/**
+	 * Loop of the writer thread.
+	 */
+	private static void write() {
+		
+		//Records written since the last flush
+		int written = 0;
+		
+		while(true) {
+			
+			LogRecord record = queue.poll();
+			if(record == null) {
+				
+				for(LogSink sink : sinks) {
+					sink.flush();
+				}
+				unflushed.addAndGet(-written);
+				written = 0;
+				
+				//The queue is checked again after setting the flag, so a record queued meanwhile is not left waiting
+				waiting = true;
+				if(queue.isEmpty()) {
+					LockSupport.parkNanos(WRITER_PARK_NANOS);
+				}
+				waiting = false;
+				continue;
+			}
+			
+			for(LogSink sink : sinks) {
+				try {
+					sink.write(record);
+				} catch (RuntimeException e) {
+					//A failing sink must not stop the writer
+					e.printStackTrace();
+				}
+			}
+			pending.decrementAndGet();
+			written++;
+		}
+	}
+	
+	/**
+	 * Waits until the queued records are written, used before the application exits.
+	 * @param timeout maximum milliseconds to wait
+	 */
+	public static void flush(long timeout) {
+		
+		long deadline = System.currentTimeMillis() + timeout;
+		LockSupport.unpark(writer);
+		while(unflushed.get() > 0 && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+}
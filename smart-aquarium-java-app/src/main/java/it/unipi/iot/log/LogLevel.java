@@ -0,0 +1,33 @@
+package it.unipi.iot.log;
+
+/**
+ * Levels of the log records, from the most verbose. <br>
+ * - DEBUG: a record for each sample received, inserted or notified <br>
+ * - INFO: registrations, commands sent to the actuators, startup and shutdown <br>
+ * - WARN: recoverable errors, e.g. a malformed message or a failed insert <br>
+ * - ERROR: errors that stop a component
+ * 
+ * @author Fabi8997
+ */
+public enum LogLevel {
+	DEBUG,
+	INFO,
+	WARN,
+	ERROR;
+	
+	/**
+	 * Returns the level with the given name, ignoring the case. If the name is null or unknown the INFO level is returned.
+	 * @param name name of the level read from the configuration file
+	 * @return the corresponding level
+	 */
+	public static LogLevel fromString(String name) {
+		if(name != null) {
+			for(LogLevel level : values()) {
+				if(level.name().equalsIgnoreCase(name.trim())) {
+					return level;
+				}
+			}
+		}
+		return INFO;
+	}
+}
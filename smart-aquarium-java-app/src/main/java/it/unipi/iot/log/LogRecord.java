@@ -0,0 +1,63 @@
+package it.unipi.iot.log;
+
+/**
+ * Record queued by a {@link Logger}. It keeps the format and the arguments of the message, that is built by the background
+ * writer only when the record is written, so the arguments must not be modified after logging them.
+ * 
+ * @author Fabi8997
+ */
+public final class LogRecord {
+	
+	private final long timestamp;
+	private final LogLevel level;
+	private final Logger logger;
+	private final String format;
+	private final Object[] arguments;
+	private final Throwable throwable;
+	
+	LogRecord(LogLevel level, Logger logger, String format, Object[] arguments, Throwable throwable) {
+		this.timestamp = System.currentTimeMillis();
+		this.level = level;
+		this.logger = logger;
+		this.format = format;
+		this.arguments = arguments;
+		this.throwable = throwable;
+	}
+	
+	public long getTimestamp() {
+		return timestamp;
+	}
+	
+	public LogLevel getLevel() {
+		return level;
+	}
+	
+	public Logger getLogger() {
+		return logger;
+	}
+	
+	public Throwable getThrowable() {
+		return throwable;
+	}
+	
+	/**
+	 * @return the message, with each "{}" of the format replaced by the next argument.
+	 */
+	public String getMessage() {
+		
+		if(arguments == null || arguments.length == 0) {
+			return format;
+		}
+		
+		StringBuilder sb = new StringBuilder(format.length() + 16 * arguments.length);
+		int argument = 0;
+		int from = 0;
+		int placeholder;
+		while(argument < arguments.length && (placeholder = format.indexOf("{}", from)) >= 0) {
+			sb.append(format, from, placeholder).append(arguments[argument++]);
+			from = placeholder + 2;
+		}
+		sb.append(format, from, format.length());
+		return sb.toString();
+	}
+}
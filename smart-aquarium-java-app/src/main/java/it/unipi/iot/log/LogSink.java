@@ -0,0 +1,20 @@
+package it.unipi.iot.log;
+
+/**
+ * Destination of the log records, called only by the background writer of the {@link Log}, one record at a time.
+ * 
+ * @author Fabi8997
+ */
+public interface LogSink {
+	
+	/**
+	 * Writes a record.
+	 * @param record record to write
+	 */
+	void write(LogRecord record);
+	
+	/**
+	 * Writes the records buffered by the sink, called when the queue of the writer is empty.
+	 */
+	void flush();
+}
@@ -0,0 +1,146 @@
+package it.unipi.iot.log;
+
+/**
+ * Logger of a component of the application, e.g. the MQTT collector. <br>
+ * The messages are formats in which each "{}" is replaced by the next argument; the message is built by the background
+ * writer of the {@link Log}, so a call at a disabled level only compares the level, and the callers pass the values to log
+ * without building strings. The calls with up to three arguments allocate nothing when the level is disabled; before logging
+ * primitive values at the DEBUG level on a hot path check {@link #isDebugEnabled()}, to avoid boxing them.
+ * 
+ * @author Fabi8997
+ */
+public final class Logger {
+	
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	
+	//Name of the component and colour of the name on the console
+	private final String name;
+	private final String color;
+	
+	/**
+	 * Class constructor.
+	 * @param name name of the component, printed before each message
+	 * @param color colour of the name, one of the {@link Colors}
+	 */
+	public Logger(String name, String color) {
+		this.name = name;
+		this.color = color;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getColor() {
+		return color;
+	}
+	
+	public boolean isDebugEnabled() {
+		return Log.isEnabled(LogLevel.DEBUG);
+	}
+	
+	private void log(LogLevel level, String format, Object[] arguments, Throwable throwable) {
+		Log.enqueue(new LogRecord(level, this, format, arguments, throwable));
+	}
+	
+	public void debug(String message) {
+		if(Log.isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, message, NO_ARGUMENTS, null);
+		}
+	}
+	
+	public void debug(String format, Object argument) {
+		if(Log.isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, format, new Object[] {argument}, null);
+		}
+	}
+	
+	public void debug(String format, Object first, Object second) {
+		if(Log.isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, format, new Object[] {first, second}, null);
+		}
+	}
+	
+	public void debug(String format, Object first, Object second, Object third) {
+		if(Log.isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, format, new Object[] {first, second, third}, null);
+		}
+	}
+	
+	public void debug(String format, Object... arguments) {
+		if(Log.isEnabled(LogLevel.DEBUG)) {
+			log(LogLevel.DEBUG, format, arguments, null);
+		}
+	}
+	
+	public void info(String message) {
+		if(Log.isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, message, NO_ARGUMENTS, null);
+		}
+	}
+	
+	public void info(String format, Object argument) {
+		if(Log.isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, format, new Object[] {argument}, null);
+		}
+	}
+	
+	public void info(String format, Object first, Object second) {
+		if(Log.isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, format, new Object[] {first, second}, null);
+		}
+	}
+	
+	public void info(String format, Object first, Object second, Object third) {
+		if(Log.isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, format, new Object[] {first, second, third}, null);
+		}
+	}
+	
+	public void info(String format, Object... arguments) {
+		if(Log.isEnabled(LogLevel.INFO)) {
+			log(LogLevel.INFO, format, arguments, null);
+		}
+	}
+	
+	public void warn(String message) {
+		if(Log.isEnabled(LogLevel.WARN)) {
+			log(LogLevel.WARN, message, NO_ARGUMENTS, null);
+		}
+	}
+	
+	public void warn(String format, Object argument) {
+		if(Log.isEnabled(LogLevel.WARN)) {
+			log(LogLevel.WARN, format, new Object[] {argument}, null);
+		}
+	}
+	
+	public void warn(String format, Object first, Object second) {
+		if(Log.isEnabled(LogLevel.WARN)) {
+			log(LogLevel.WARN, format, new Object[] {first, second}, null);
+		}
+	}
+	
+	public void warn(String format, Object first, Object second, Object third) {
+		if(Log.isEnabled(LogLevel.WARN)) {
+			log(LogLevel.WARN, format, new Object[] {first, second, third}, null);
+		}
+	}
+	
+	public void warn(String format, Object... arguments) {
+		if(Log.isEnabled(LogLevel.WARN)) {
+			log(LogLevel.WARN, format, arguments, null);
+		}
+	}
+	
+	public void error(String format, Object... arguments) {
+		log(LogLevel.ERROR, format, arguments, null);
+	}
+	
+	/**
+	 * Logs an error with the stack trace of its cause.
+	 */
+	public void error(String message, Throwable throwable) {
+		log(LogLevel.ERROR, message, NO_ARGUMENTS, throwable);
+	}
+}
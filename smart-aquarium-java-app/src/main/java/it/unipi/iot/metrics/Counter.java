@@ -0,0 +1,53 @@
+package it.unipi.iot.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Monotonic counter updated without locks by many threads. <br>
+ * Each thread adds to the cell of its stripe; the cells are a cache line apart, so concurrent updates do not contend on the
+ * same line. The value is the sum of the cells, computed only when it is read.
+ * 
+ * @author Fabi8997
+ */
+public class Counter {
+	
+	//Distance in longs between two cells, so that each cell is on its own cache line
+	private static final int PADDING = 8;
+	
+	private final String name;
+	private final String help;
+	private final AtomicLongArray cells;
+	
+	Counter(String name, String help) {
+		this.name = name;
+		this.help = help;
+		this.cells = new AtomicLongArray(Stripes.COUNT * PADDING);
+	}
+	
+	public void increment() {
+		cells.getAndIncrement(Stripes.current() * PADDING);
+	}
+	
+	public void add(long delta) {
+		cells.getAndAdd(Stripes.current() * PADDING, delta);
+	}
+	
+	/**
+	 * @return the sum of the cells; the updates running concurrently may be included or not.
+	 */
+	public long sum() {
+		long sum = 0;
+		for(int i = 0; i < Stripes.COUNT; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getHelp() {
+		return help;
+	}
+}
@@ -0,0 +1,112 @@
+package it.unipi.iot.metrics;
+
+/**
+ * Counts of the buckets of a {@link LatencyHistogram} at a point in time, used to compute the statistics shown to the user
+ * and exported by the metrics endpoint. The durations are in nanoseconds.
+ * 
+ * @author Fabi8997
+ */
+public class HistogramSnapshot {
+	
+	private final long[] counts;
+	private final long count;
+	private final long sum;
+	
+	HistogramSnapshot(long[] counts, long sum) {
+		this.counts = counts;
+		this.sum = sum;
+		long count = 0;
+		for(long bucketCount : counts) {
+			count += bucketCount;
+		}
+		this.count = count;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public long getSum() {
+		return sum;
+	}
+	
+	public double getMean() {
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+	
+	/**
+	 * @param quantile between 0 and 1
+	 * @return the upper bound of the bucket containing the quantile, 0 if nothing has been recorded.
+	 */
+	public long getQuantile(double quantile) {
+		
+		if(count == 0) {
+			return 0;
+		}
+		
+		long rank = Math.max(1, (long) Math.ceil(quantile * count));
+		long seen = 0;
+		for(int bucket = 0; bucket < counts.length; bucket++) {
+			seen += counts[bucket];
+			if(seen >= rank) {
+				return LatencyHistogram.upperBoundOf(bucket);
+			}
+		}
+		return getMax();
+	}
+	
+	/**
+	 * @return the upper bound of the highest non empty bucket, 0 if nothing has been recorded.
+	 */
+	public long getMax() {
+		for(int bucket = counts.length - 1; bucket >= 0; bucket--) {
+			if(counts[bucket] > 0) {
+				return LatencyHistogram.upperBoundOf(bucket);
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * @param nanos duration in nanoseconds
+	 * @return the number of recorded durations less than or equal to the passed one, counting whole buckets.
+	 */
+	public long countAtMost(long nanos) {
+		long atMost = 0;
+		for(int bucket = 0; bucket < counts.length && LatencyHistogram.upperBoundOf(bucket) <= nanos; bucket++) {
+			atMost += counts[bucket];
+		}
+		return atMost;
+	}
+	
+	@Override
+	public String toString() {
+		
+		if(count == 0) {
+			return "no samples";
+		}
+		
+		return "count: " + count
+				+ ", mean: " + format((long) getMean())
+				+ ", p50: " + format(getQuantile(0.5))
+				+ ", p90: " + format(getQuantile(0.9))
+				+ ", p99: " + format(getQuantile(0.99))
+				+ ", max: " + format(getMax());
+	}
+	
+	/**
+	 * @return the duration with the most readable unit.
+	 */
+	private static String format(long nanos) {
+		if(nanos < 1000L) {
+			return nanos + " ns";
+		}
+		if(nanos < 1000000L) {
+			return String.format("%.1f us", nanos / 1e3);
+		}
+		if(nanos < 1000000000L) {
+			return String.format("%.1f ms", nanos / 1e6);
+		}
+		return String.format("%.2f s", nanos / 1e9);
+	}
+}
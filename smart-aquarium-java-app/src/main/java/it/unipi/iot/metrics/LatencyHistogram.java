@@ -0,0 +1,109 @@
+package it.unipi.iot.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with logarithmic buckets, updated without locks by many threads. <br>
+ * Each power of two is split in {@value #SUB_BUCKETS} buckets, so a recorded duration is known with an error below 25%
+ * from one nanosecond to hundreds of years, using a fixed array of counts. Recording a duration finds its bucket with a few
+ * bit operations and increments a count of the stripe of the current thread (see {@link Counter}); the stripes are merged
+ * only by {@link #snapshot()}.
+ * 
+ * @author Fabi8997
+ */
+public class LatencyHistogram {
+	
+	//Bits of the duration after the most significant one used to select the bucket, and buckets for each power of two
+	private static final int SUB_BUCKET_BITS = 2;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	//Number of buckets, enough for any positive long
+	static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final String name;
+	private final String help;
+	
+	//Counts of the buckets of each stripe, each stripe is a contiguous block of BUCKETS counts
+	private final AtomicLongArray counts;
+	
+	//Sum of the recorded durations
+	private final Counter sum;
+	
+	LatencyHistogram(String name, String help) {
+		this.name = name;
+		this.help = help;
+		this.counts = new AtomicLongArray(Stripes.COUNT * BUCKETS);
+		this.sum = new Counter(name, help);
+	}
+	
+	/**
+	 * @param nanos duration in nanoseconds, not negative
+	 * @return the index of the bucket of the duration.
+	 */
+	static int bucketOf(long nanos) {
+		
+		if(nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	/**
+	 * @param bucket index of a bucket
+	 * @return the greatest duration in nanoseconds counted in the bucket.
+	 */
+	static long upperBoundOf(int bucket) {
+		
+		if(bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Records a duration.
+	 * @param nanos duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(Stripes.current() * BUCKETS + bucketOf(nanos));
+		sum.add(nanos);
+	}
+	
+	/**
+	 * Records the time elapsed from a start time.
+	 * @param startNanos value of System.nanoTime() at the start
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+	
+	/**
+	 * @return the counts of the buckets merged over the stripes; the recordings running concurrently may be included or not.
+	 */
+	public HistogramSnapshot snapshot() {
+		
+		long[] merged = new long[BUCKETS];
+		for(int stripe = 0; stripe < Stripes.COUNT; stripe++) {
+			int base = stripe * BUCKETS;
+			for(int bucket = 0; bucket < BUCKETS; bucket++) {
+				merged[bucket] += counts.get(base + bucket);
+			}
+		}
+		
+		return new HistogramSnapshot(merged, sum.sum());
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getHelp() {
+		return help;
+	}
+}
@@ -0,0 +1,120 @@
+package it.unipi.iot.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the counters and of the latency histograms of the application. <br>
+ * The instrumented classes look up their metrics once, usually in a static field, and then record on them without accessing
+ * the registry. The registry builds the text shown by the ":get metrics" command and the text exported in the Prometheus
+ * format by the {@link MetricsServer}.
+ * 
+ * @author Fabi8997
+ */
+public class MetricsRegistry {
+	
+	//Registry shared by the whole application
+	public static final MetricsRegistry DEFAULT = new MetricsRegistry();
+	
+	//Upper bounds in nanoseconds of the cumulative buckets exported, the powers of two from about 1us to about 68s
+	private static final int MIN_EXPORTED_EXPONENT = 10;
+	private static final int MAX_EXPORTED_EXPONENT = 36;
+	
+	private final ConcurrentHashMap<String, Counter> counters;
+	private final ConcurrentHashMap<String, LatencyHistogram> histograms;
+	
+	public MetricsRegistry() {
+		this.counters = new ConcurrentHashMap<String, Counter>();
+		this.histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+	}
+	
+	/**
+	 * Returns the counter with the passed name, creating it if it does not exist.
+	 * @param name name of the counter in the Prometheus format, e.g. mqtt_messages_total
+	 * @param help description of the counter
+	 * @return the counter
+	 */
+	public Counter counter(String name, String help) {
+		Counter counter = counters.get(name);
+		if(counter == null) {
+			Counter newCounter = new Counter(name, help);
+			counter = counters.putIfAbsent(name, newCounter);
+			if(counter == null) {
+				counter = newCounter;
+			}
+		}
+		return counter;
+	}
+	
+	/**
+	 * Returns the histogram with the passed name, creating it if it does not exist.
+	 * @param name name of the histogram in the Prometheus format, e.g. storage_insert_seconds
+	 * @param help description of the histogram
+	 * @return the histogram
+	 */
+	public LatencyHistogram histogram(String name, String help) {
+		LatencyHistogram histogram = histograms.get(name);
+		if(histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram(name, help);
+			histogram = histograms.putIfAbsent(name, newHistogram);
+			if(histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+	
+	/**
+	 * @param prefix text written at the start of each line
+	 * @return the value of each counter and the statistics of each histogram, one per line, ordered by name.
+	 */
+	public String summary(String prefix) {
+		
+		StringBuilder sb = new StringBuilder();
+		for(Counter counter : new TreeMap<String, Counter>(counters).values()) {
+			sb.append(prefix).append(counter.getName()).append(": ").append(counter.sum()).append("\n");
+		}
+		for(LatencyHistogram histogram : new TreeMap<String, LatencyHistogram>(histograms).values()) {
+			sb.append(prefix).append(histogram.getName()).append(": ").append(histogram.snapshot()).append("\n");
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return the metrics in the Prometheus text exposition format, the durations are exported in seconds.
+	 */
+	public String toPrometheus() {
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for(Map.Entry<String, Counter> entry : new TreeMap<String, Counter>(counters).entrySet()) {
+			Counter counter = entry.getValue();
+			sb.append("# HELP ").append(counter.getName()).append(' ').append(counter.getHelp()).append('\n');
+			sb.append("# TYPE ").append(counter.getName()).append(" counter\n");
+			sb.append(counter.getName()).append(' ').append(counter.sum()).append('\n');
+		}
+		
+		for(Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			HistogramSnapshot snapshot = histogram.snapshot();
+			String name = histogram.getName();
+			
+			sb.append("# HELP ").append(name).append(' ').append(histogram.getHelp()).append('\n');
+			sb.append("# TYPE ").append(name).append(" histogram\n");
+			for(int exponent = MIN_EXPORTED_EXPONENT; exponent <= MAX_EXPORTED_EXPONENT; exponent++) {
+				long bound = (1L << exponent) - 1;
+				sb.append(name).append("_bucket{le=\"").append(seconds(bound)).append("\"} ").append(snapshot.countAtMost(bound)).append('\n');
+			}
+			sb.append(name).append("_bucket{le=\"+Inf\"} ").append(snapshot.getCount()).append('\n');
+			sb.append(name).append("_sum ").append(seconds(snapshot.getSum())).append('\n');
+			sb.append(name).append("_count ").append(snapshot.getCount()).append('\n');
+		}
+		
+		return sb.toString();
+	}
+	
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+}
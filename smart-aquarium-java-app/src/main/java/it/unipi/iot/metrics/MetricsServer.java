@@ -0,0 +1,77 @@
+package it.unipi.iot.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
+/**
+ * Local HTTP endpoint that exports the metrics of a {@link MetricsRegistry} in the Prometheus text format at the path
+ * /metrics, so they can be scraped by a monitoring system. It uses the HTTP server of the JDK on a single thread.
+ * 
+ * @author Fabi8997
+ */
+public class MetricsServer {
+	
+	private static final Logger LOGGER = new Logger("Metrics", Colors.ANSI_YELLOW);
+	
+	private final HttpServer server;
+	private final ExecutorService executor;
+	
+	/**
+	 * Class constructor, it binds the endpoint.
+	 * @param registry metrics exported
+	 * @param address address on which the endpoint listens
+	 * @param port port on which the endpoint listens
+	 * @throws IOException if the address cannot be bound
+	 */
+	public MetricsServer(final MetricsRegistry registry, String address, int port) throws IOException {
+		
+		this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-server");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				
+				byte[] body = registry.toPrometheus().getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+		});
+		server.setExecutor(executor);
+	}
+	
+	public void start() {
+		server.start();
+		LOGGER.info("Metrics exported at http://{}:{}/metrics", server.getAddress().getHostString(), server.getAddress().getPort());
+	}
+	
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
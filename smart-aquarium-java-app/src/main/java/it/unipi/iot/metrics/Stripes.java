@@ -0,0 +1,24 @@
+package it.unipi.iot.metrics;
+
+/**
+ * Selection of the stripe used by the current thread in the striped counters and histograms. <br>
+ * The number of stripes is a power of two larger than the number of processors, and the stripe of a thread is selected by
+ * its identifier, so the threads recording at the same time write different memory locations most of the time.
+ * 
+ * @author Fabi8997
+ */
+final class Stripes {
+	
+	//Number of stripes, a power of two
+	static final int COUNT = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+	
+	private Stripes() {
+	}
+	
+	/**
+	 * @return the stripe of the current thread, between 0 and COUNT - 1.
+	 */
+	static int current() {
+		return (int) Thread.currentThread().getId() & (COUNT - 1);
+	}
+}
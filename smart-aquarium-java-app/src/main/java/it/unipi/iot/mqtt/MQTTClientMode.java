@@ -0,0 +1,31 @@
+package it.unipi.iot.mqtt;
+
+/**
+ * Modes of the MQTT client of the {@link MQTTCollector}: <br>
+ * - SYNC: every publish waits until the message is delivered to the broker, as the original blocking client <br>
+ * - ASYNC: the publishes return immediately a token that completes when the message is delivered, up to MQTTMaxInflight
+ *   messages can be waiting for the acknowledgement of the broker
+ * 
+ * @author Fabi8997
+ */
+public enum MQTTClientMode {
+	SYNC,
+	ASYNC;
+	
+	/**
+	 * Returns the mode with the given name, ignoring the case. If the name is null or unknown the SYNC mode is returned,
+	 * since it is the original behavior of the application.
+	 * @param name name of the mode read from the configuration file
+	 * @return the corresponding mode
+	 */
+	public static MQTTClientMode fromString(String name) {
+		if(name != null) {
+			for(MQTTClientMode mode : values()) {
+				if(mode.name().equalsIgnoreCase(name.trim())) {
+					return mode;
+				}
+			}
+		}
+		return SYNC;
+	}
+}
@@ -1,295 +1,463 @@
 package it.unipi.iot.mqtt;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.json.simple.parser.ParseException;
 
+import it.unipi.iot.aquarium.Aquarium;
+import it.unipi.iot.aquarium.AquariumRegistry;
+import it.unipi.iot.aquarium.Metric;
+import it.unipi.iot.aquarium.SampleListener;
+import it.unipi.iot.aquarium.SensorSnapshot;
 import it.unipi.iot.configuration.ConfigurationParameters;
-import it.unipi.iot.database.DatabaseManager;
-import it.unipi.iot.kh.KHSample;
+import it.unipi.iot.configuration.SensorDefinition;
+import it.unipi.iot.ingestion.IngestionPipeline;
+import it.unipi.iot.ingestion.SampleRecord;
+import it.unipi.iot.json.JSONFloatDecoder;
 import it.unipi.iot.log.Colors;
-import it.unipi.iot.ph.PHSample;
-import it.unipi.iot.temperature.TemperatureSample;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
+import it.unipi.iot.storage.SampleKind;
+import it.unipi.iot.storage.SampleStore;
 
 /**
  * This class is used to handle the interaction between the MQTT-based devices and the SmartAquariumAPP. <br>
  * It subscribes to the topics in which the sensors will publish their values; It manages the interaction with the database inserting 
  * the received values in the correct tables and manages the publishes messages in order to implement the simulation of the values
- * of the sensors in the correct way.
+ * of the sensors in the correct way.<br>
+ * The sensors of an aquarium publish in the topic "&lt;topic&gt;/&lt;aquarium id&gt;" (e.g. pH/tank42); a sensor that publishes in
+ * the plain topic (e.g. pH) belongs to the default aquarium. The same rule is used for the topics of the simulation.<br>
+ * The messages are dispatched by a {@link TopicDispatcher} to the handler of their base topic; besides pH, kH and temperature,
+ * the additional sensors listed in the configuration file are handled in the same way and stored in their own tables.<br>
+ * The messages are processed on the callback thread of the client or, if MQTTCallbackThreads is greater than 0, on a pool of
+ * threads that keeps the messages of each sensor in order. In ASYNC mode the publishes of the simulation do not wait for the
+ * delivery (see {@link MQTTClientMode}).<br>
+ * With MQTTPersistentSession the broker keeps the session of the collector while the application is stopped and queues the
+ * readings published with QoS 1; they are delivered at the next connection, see {@link #awaitCatchUp()}. For this reason the
+ * subscriptions are not removed when the collector is closed. The client acknowledges a message when {@link #messageArrived}
+ * returns, so with a persistent session the messages are always processed on the callback thread and MQTTCallbackThreads is
+ * ignored: once acknowledged, a reading has been applied to its aquarium and queued in the ingestion pipeline. The readings still
+ * queued in the pipeline, or in a batch of the database waiting for the flush, are written when the collector is closed but are
+ * lost if the application crashes.
  * @author Fabi8997
  * 
  */
 public class MQTTCollector implements MqttCallback {
 	
 	
-	private static final String LOG = "[" + Colors.ANSI_YELLOW + "MQTT Collector" + Colors.ANSI_RESET + " ]";
-	private static final String LOG_ERROR = "[" + Colors.ANSI_RED + "MQTT Collector" + Colors.ANSI_RESET + " ]";
+	private static final Logger LOGGER = new Logger("MQTT Collector", Colors.ANSI_YELLOW);
 	
-	//Topic to retrieve the data published by the sensors
-	private final String pHTopic;
-	private final String kHTopic;
-	private final String temperatureTopic;
+	//Metrics of the reception
+	private static final LatencyHistogram MESSAGE_ARRIVED = MetricsRegistry.DEFAULT.histogram("mqtt_message_arrived_seconds",
+			"Time spent in the MQTT callback for each message.");
+	private static final LatencyHistogram MESSAGE_PROCESSING = MetricsRegistry.DEFAULT.histogram("mqtt_message_processing_seconds",
+			"Time spent decoding and dispatching each message.");
+	private static final Counter MALFORMED_MESSAGES = MetricsRegistry.DEFAULT.counter("mqtt_malformed_messages_total",
+			"MQTT messages discarded because malformed.");
+	
+	//Maximum milliseconds to wait for the processing of the queued messages at the closing
+	private static final long CLOSE_TIMEOUT = 5000;
+
+	//Handlers of the topics in which the sensors publish their values
+	private final TopicDispatcher dispatcher;
+	
+	//Topics of the simulation
 	private final String osmoticWaterTankTopic;
 	private final String fanTopic;
 	private final String heaterTopic;
 	private final String co2DispenserTopic;
 	
-	//Names of the tables in which will be stored the samples
-	private final String pHDatabaseTableName;
-	private final String kHDatabaseTableName;
-	private final String temperatureDatabaseTableName;
+	//Pipeline that inserts the samples in the DB without blocking the callback thread
+	private final IngestionPipeline pipeline;
 	
-	//DB manager to set up the connection to the DB and to query it
-	private final DatabaseManager db;
+	//Registry of the aquariums, it keeps track of the last value of each sensor
+	private final AquariumRegistry aquariumRegistry;
 	
+	//Notified when a new value is received, used to trigger the control logic
+	private volatile SampleListener sampleListener;
+
     //Parameters of the MQTT broker and MQTT client
 	private final String broker;
 	private final String clientId;
 	
-	//To keep track of the last value
-	private float currentKH;
-	private float currentPH;
-	private float currentTemperature;
+	//MqttClient to subscribe and publish, in SYNC mode every operation waits for its completion
+	private MqttAsyncClient mqttClient;
+	private final MQTTClientMode mode;
 	
-	//To know if the currentKH was already read
-	private boolean newCurrentKH;
-	private boolean newCurrentPH;
-	private boolean newCurrentTemperature;
+	//Quality of service of the messages of the simulation
+	private final int simulationQoS;
 	
-	//MqttClient to subscribe and publish
-	private MqttClient mqttClient;
+	//Threads that process the received messages, null if they are processed on the callback thread
+	private final StripedExecutor callbackExecutor;
+	
+	//True if the session is kept by the broker between the connections
+	private final boolean persistentSession;
+	
+	//Catch-up of the messages queued by the broker: it ends when no message is received for catchUpQuietPeriod milliseconds
+	private final long catchUpQuietPeriod;
+	private final long catchUpTimeout;
+	private final AtomicLong receivedMessages;
+	private volatile long lastMessageTime;
 	
 	//Thread safe variable accessed by the control loop thread!
 	private AtomicBoolean closed;
 	
 	/**
 	 * Constructor of the class MQTT Collector. <br> It reads the configuration parameters read from the configuration file config.xml
-	 * and initialize its parameters; The passed DatabaseManager is used to insert the samples inside the database.<br>
+	 * and initialize its parameters; The passed SampleStore is used by the ingestion pipeline to store the samples.<br>
 	 * The constructor sets up the connection with the MQTT broker using as its ID the MQTTClientId, sets up the callback for the incoming 
-	 * messages and finally subscribe to the three topics in which the sensors publish their values: pH, kH and temperature.
+	 * messages and finally subscribe to the topics in which the sensors publish their values: pH, kH, temperature and the additional
+	 * sensors of the configuration, both for the default aquarium and for the other aquariums.<br>
+	 * The kinds of samples of the additional sensors must be registered before the creation of the SampleStore.
 	 * @param configurationParameters configuration parameters read from the configuration file
-	 * @param db database manager to interact with the MYSQL database
+	 * @param db storage of the samples, the MYSQL database or the local files
+	 * @param aquariumRegistry registry in which the last values of the sensors of each aquarium are stored
 	 * @throws MqttException
 	 */
-	public MQTTCollector(ConfigurationParameters configurationParameters, DatabaseManager db) throws MqttException {
+	public MQTTCollector(ConfigurationParameters configurationParameters, SampleStore db, AquariumRegistry aquariumRegistry) throws MqttException {
 		
-		//Assign the passed DB to the DB manager of the class MQTT to be used in the callback
-		this.db = db;
+		//Create the pipeline that will insert the received samples using the passed storage
+		this.pipeline = new IngestionPipeline(configurationParameters, db);
+		this.aquariumRegistry = aquariumRegistry;
 		
 		//Retrieve the values from the configuration file 
-		this.pHTopic = configurationParameters.pHTopic;
-		this.kHTopic = configurationParameters.kHTopic;
-		this.temperatureTopic = configurationParameters.temperatureTopic;
 		this.osmoticWaterTankTopic = configurationParameters.osmoticWaterTankTopic;
 		this.fanTopic = configurationParameters.fanTopic;
 		this.heaterTopic = configurationParameters.heaterTopic;
 		this.co2DispenserTopic = configurationParameters.co2DispenserTopic;
 
-		this.pHDatabaseTableName = configurationParameters.pHDatabaseTableName;
-		this.kHDatabaseTableName = configurationParameters.kHDatabaseTableName;
-		this.temperatureDatabaseTableName = configurationParameters.temperatureDatabaseTableName;
-		
         this.broker = configurationParameters.MQTTBroker;
         this.clientId = configurationParameters.MQTTClientId;
-		
-        //Set the values that indicates that no data has been received yet
-        this.currentKH = 0;
-        this.currentPH = 0;
-        this.currentTemperature = 0;
+        this.mode = MQTTClientMode.fromString(configurationParameters.MQTTClientMode);
+        this.simulationQoS = configurationParameters.MQTTSimulationQoS;
+        this.persistentSession = configurationParameters.MQTTPersistentSession;
+        this.catchUpQuietPeriod = configurationParameters.MQTTCatchUpQuietPeriod;
+        this.catchUpTimeout = configurationParameters.MQTTCatchUpTimeout;
+        this.receivedMessages = new AtomicLong(0);
         
-        //current values not read yet
-        this.newCurrentKH = false;
-        this.newCurrentPH = false;
-        this.newCurrentTemperature = false;
+        //With a persistent session the message must be processed before its acknowledgement, i.e. on the callback thread
+        if(configurationParameters.MQTTCallbackThreads > 0 && persistentSession) {
+        	LOGGER.warn("MQTTCallbackThreads ignored with MQTTPersistentSession, the messages are processed on the callback thread.");
+        }
         
+        if(configurationParameters.MQTTCallbackThreads > 0 && !persistentSession) {
+        	this.callbackExecutor = new StripedExecutor(configurationParameters.MQTTCallbackThreads,
+        			configurationParameters.MQTTCallbackQueueCapacity, "mqtt-callback");
+        } else {
+        	this.callbackExecutor = null;
+        }
         
+        //Register the handlers of the sensors, the topics are resolved once here
+        this.dispatcher = new TopicDispatcher();
+        //The broker queues for a persistent session only the messages of the subscriptions with QoS 1 or 2
+        int minQoS = persistentSession ? 1 : 0;
+        int sensorQoS = Math.max(minQoS, configurationParameters.MQTTSensorQoS);
+        dispatcher.register(configurationParameters.pHTopic, new SensorHandler("pH", SampleKind.PH, Metric.PH), sensorQoS);
+        dispatcher.register(configurationParameters.kHTopic, new SensorHandler("kH", SampleKind.KH, Metric.KH), sensorQoS);
+        dispatcher.register(configurationParameters.temperatureTopic, new SensorHandler("temperature", SampleKind.TEMPERATURE, Metric.TEMPERATURE), sensorQoS);
+        if(configurationParameters.sensors != null) {
+        	for(SensorDefinition sensor : configurationParameters.sensors) {
+        		try {
+        			SampleKind kind = SampleKind.register(sensor.name, sensor.table, SampleKind.Layout.VALUE);
+        			dispatcher.register(sensor.topic, new SensorHandler(sensor.key, kind, null), (sensor.qos != null) ? Math.max(minQoS, sensor.qos) : sensorQoS);
+        		} catch (IllegalArgumentException e) {
+        			LOGGER.warn("Discarded the sensor {}: {}", sensor, e.getMessage());
+        		}
+        	}
+        }
+		
         //Connect the mqttClient to the broker
-		this.mqttClient = new MqttClient(broker, clientId);
-        System.out.println(LOG + " Connecting to broker: "+broker);
+        //The messages not yet acknowledged are stored in files, so that they survive a restart of the application
+        if(persistentSession) {
+        	this.mqttClient = new MqttAsyncClient(broker, clientId, new MqttDefaultFilePersistence(configurationParameters.MQTTPersistenceDirectory));
+        } else {
+        	this.mqttClient = new MqttAsyncClient(broker, clientId);
+        }
+        LOGGER.info("Connecting to broker: {} [mode: {}, persistent session: {}]", broker, mode, persistentSession);
         
         this.mqttClient.setCallback( this );
         
-        this.mqttClient.connect();
-        
-        //Subscribe to the pH topic
-        this.mqttClient.subscribe(pHTopic);
+        //Maximum number of publishes waiting for the acknowledgement of the broker
+        MqttConnectOptions connectOptions = new MqttConnectOptions();
+        connectOptions.setMaxInflight(Math.max(1, configurationParameters.MQTTMaxInflight));
+        connectOptions.setCleanSession(!persistentSession);
+        this.lastMessageTime = System.currentTimeMillis();
+        this.mqttClient.connect(connectOptions).waitForCompletion();
         
-        //Subscribe to the kH topic
-        this.mqttClient.subscribe(kHTopic);
-        
-        //Subscribe to the temperature topic
-        this.mqttClient.subscribe(temperatureTopic);
+        //Subscribe to the topics of the sensors, both of the default aquarium and of the others
+        String[] topicFilters = dispatcher.getTopicFilters();
+        this.mqttClient.subscribe(topicFilters, dispatcher.getQoS(topicFilters)).waitForCompletion();
         
         //Not closed
         this.closed = new AtomicBoolean(false);
         
 	}
-
-	public float getCurrentKH() {
-		this.newCurrentKH = false;
-		return currentKH;
-	}
-
-	public float getCurrentPH() {
-		this.newCurrentPH = false;
-		return currentPH;
+	
+	public boolean isClosed() {
+		return this.closed.get();
 	}
-
-	public float getCurrentTemperature() {
-		this.newCurrentTemperature = false;
-		return currentTemperature;
+	
+	/**
+	 * Waits until the messages queued by the broker during the downtime of the application have been processed, so that the
+	 * current values of the aquariums are rebuilt before the control logic starts. The backlog is considered drained when no
+	 * message is received for MQTTCatchUpQuietPeriod milliseconds, and in any case after MQTTCatchUpTimeout milliseconds.<br>
+	 * The samples of the backlog are stored by the ingestion pipeline, in batches if the batching of the database is enabled.
+	 * If the session is not persistent it returns immediately.
+	 */
+	public void awaitCatchUp() {
+		
+		if(!persistentSession) {
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		long deadline = start + catchUpTimeout;
+		try {
+			
+			while(true) {
+				long now = System.currentTimeMillis();
+				long quietUntil = lastMessageTime + catchUpQuietPeriod;
+				if(now >= quietUntil || now >= deadline) {
+					break;
+				}
+				Thread.sleep(Math.min(quietUntil, deadline) - now);
+			}
+			
+			//The messages received must also be decoded
+			if(callbackExecutor != null) {
+				callbackExecutor.awaitIdle(Math.max(0, deadline - System.currentTimeMillis()));
+			}
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		LOGGER.info("Caught up with {} messages in {} ms.", receivedMessages.get(), System.currentTimeMillis() - start);
 	}
-
-	public boolean isNewCurrentKH() {
-		return newCurrentKH;
+	
+	/**
+	 * Sets the listener notified every time a new pH, kH or temperature value is received. <br>
+	 * The listener is also notified of the fresh values already stored, e.g. the ones recovered by the catch-up, which otherwise
+	 * would wait for the next value of the same sensor.
+	 * @param sampleListener listener to be notified
+	 */
+	public void setSampleListener(SampleListener sampleListener) {
+		this.sampleListener = sampleListener;
+		
+		if(sampleListener == null) {
+			return;
+		}
+		
+		//A value received in the meantime can be notified twice, the listener already schedules one evaluation at a time
+		for(Aquarium aquarium : aquariumRegistry.getAll()) {
+			SensorSnapshot snapshot = aquarium.getSnapshot();
+			for(Metric metric : Metric.values()) {
+				if(snapshot.isFresh(metric)) {
+					sampleListener.sampleArrived(aquarium, metric);
+				}
+			}
+		}
 	}
-
-	public boolean isNewCurrentPH() {
-		return newCurrentPH;
+	
+	/**
+	 * Notifies the listener, if any, that a new value has been stored in the aquarium.
+	 * @param aquarium aquarium to which the sensor belongs
+	 * @param metric metric of the new value
+	 */
+	private void notifySample(Aquarium aquarium, Metric metric) {
+		SampleListener listener = this.sampleListener;
+		if(listener != null) {
+			listener.sampleArrived(aquarium, metric);
+		}
 	}
 
-	public boolean isNewCurrentTemperature() {
-		return newCurrentTemperature;
-	}
-	
-	public boolean isClosed() {
-		return this.closed.get();
+	/**
+	 * Returns the topic in which the messages for the passed aquarium must be published.
+	 * @param topic base topic
+	 * @param aquariumId identifier of the aquarium
+	 * @return the base topic for the default aquarium, otherwise the base topic followed by the identifier of the aquarium
+	 */
+	private String aquariumTopic(String topic, String aquariumId) {
+		if(aquariumId == null || aquariumId.equals(aquariumRegistry.getDefaultAquariumId())) {
+			return topic;
+		}
+		return topic + "/" + aquariumId;
 	}
 
 	/**
 	 * Send a message to simulate the osmotic water tank status. This methods is published in the osmotic water tank topic,
 	 * the temperature device will read it and simulates its behavior accordingly.
+	 * @param aquariumId identifier of the aquarium to be simulated
 	 * @param message
+	 * @return the token of the delivery, or null if the message cannot be published
 	 */
-	public void simulateOsmoticWaterTank(String message) {
-		try {
-			mqttClient.publish( this.osmoticWaterTankTopic , new MqttMessage(message.getBytes()));
-		} catch (MqttPersistenceException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		} catch (MqttException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		}
+	public IMqttDeliveryToken simulateOsmoticWaterTank(String aquariumId, String message) {
+		return publish(aquariumTopic(this.osmoticWaterTankTopic, aquariumId), message);
 	}
 	
 	/**
 	 * Send a message to simulate the fan status. This methods is published in the fan topic, the temperature device will read it
 	 * and simulates its behavior accordingly.
+	 * @param aquariumId identifier of the aquarium to be simulated
 	 * @param message
+	 * @return the token of the delivery, or null if the message cannot be published
 	 */
-	public void simulateFan(String message) {
-		try {
-			mqttClient.publish( this.fanTopic , new MqttMessage(message.getBytes()));
-		} catch (MqttPersistenceException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		} catch (MqttException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		}
+	public IMqttDeliveryToken simulateFan(String aquariumId, String message) {
+		return publish(aquariumTopic(this.fanTopic, aquariumId), message);
 	}
 	
 	/**
 	 * Send a message to simulate the heater status. This methods is published in the heater topic, the temperature device will read it
 	 * and simulates its behavior accordingly.
+	 * @param aquariumId identifier of the aquarium to be simulated
 	 * @param message
+	 * @return the token of the delivery, or null if the message cannot be published
 	 */
-	public void simulateHeater(String message) {
-		try {
-			mqttClient.publish( this.heaterTopic , new MqttMessage(message.getBytes()));
-		} catch (MqttPersistenceException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		} catch (MqttException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
-		}
+	public IMqttDeliveryToken simulateHeater(String aquariumId, String message) {
+		return publish(aquariumTopic(this.heaterTopic, aquariumId), message);
 	}
 	
 	/**
 	 * Send a message to simulate the CO2 dispensed. This methods is published in the co2 topic, the PH device will read it
 	 * and simulates its behavior accordingly.
+	 * @param aquariumId identifier of the aquarium to be simulated
 	 * @param message
+	 * @return the token of the delivery, or null if the message cannot be published
+	 */
+	public IMqttDeliveryToken simulateCo2Dispenser(String aquariumId, String message) {
+		return publish(aquariumTopic(this.co2DispenserTopic, aquariumId), message);
+	}
+	
+	/**
+	 * Publishes a message of the simulation. In SYNC mode the method waits until the message is delivered, in ASYNC mode it
+	 * returns immediately; if MQTTMaxInflight messages are already waiting for the acknowledgement the message is discarded.
+	 * @param topic topic of the message
+	 * @param message content of the message
+	 * @return the token of the delivery, or null if the message cannot be published
 	 */
-	public void simulateCo2Dispenser(String message) {
+	private IMqttDeliveryToken publish(String topic, String message) {
+		
+		MqttMessage mqttMessage = new MqttMessage(message.getBytes());
+		mqttMessage.setQos(simulationQoS);
+		
 		try {
-			
-			mqttClient.publish( this.co2DispenserTopic , new MqttMessage(message.getBytes()));
-		} catch (MqttPersistenceException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
+			IMqttDeliveryToken token = mqttClient.publish(topic, mqttMessage);
+			if(mode == MQTTClientMode.SYNC) {
+				token.waitForCompletion();
+			}
+			return token;
 		} catch (MqttException e) {
-			System.out.println(LOG_ERROR + " " + e.getMessage());
+			LOGGER.warn(e.getMessage());
+			return null;
 		}
 	}
 	
 	@Override
 	public void connectionLost(Throwable cause) {
-		System.out.println(LOG_ERROR + " Connection lost due to the following cause: " + cause.getMessage());
+		LOGGER.error("Connection lost due to the following cause: {}", cause.getMessage());
 
 	}
 
 
 	@Override
-	public void messageArrived(String topic, MqttMessage message) throws Exception {
+	public void messageArrived(final String topic, MqttMessage message) throws Exception {
 		
-		if(topic.equals(pHTopic)) {
-			
-			//Create a pH sample object passing the JSON document
-			PHSample pHSample = new PHSample(new String(message.getPayload()));
-
-			//DEBUG
-			//System.out.println(String.format("[%s] %s", topic, pHSample));
-			
-			//Insert in the table passed as first argument the pH value passed as second argument
-			db.insertSample(this.pHDatabaseTableName, pHSample.getpHValue(), null);
-			
-			//Update the current value
-			this.currentPH = pHSample.getpHValue();
-			this.newCurrentPH = true;
-			
-			//LOG
-			System.out.println(LOG + " Inserted " + pHSample + " in " + this.pHDatabaseTableName + "." );
+		long start = System.nanoTime();
+		final byte[] payload = message.getPayload();
+		receivedMessages.incrementAndGet();
+		lastMessageTime = System.currentTimeMillis();
 		
-		}else if(topic.equals(kHTopic)) {
+		if(callbackExecutor == null) {
+			process(topic, payload);
+		} else {
 			
-			//Create a pH sample object passing the JSON document
-			KHSample kHSample = new KHSample(new String(message.getPayload()));
-
-			//DEBUG
-			//System.out.println(String.format("[%s] %s", topic, kHSample));
+			//The messages of the same topic, i.e. of the same sensor, are processed by the same thread in arrival order
+			callbackExecutor.execute(topic, new Runnable() {
+				@Override
+				public void run() {
+					process(topic, payload);
+				}
+			});
+		}
+		
+		MESSAGE_ARRIVED.recordSince(start);
+	}
+	
+	/**
+	 * Decodes a received message with the handler of its topic.
+	 * @param topic topic of the message
+	 * @param payload bytes of the message
+	 */
+	private void process(String topic, byte[] payload) {
+		
+		//Only the decoding is performed here, the insertion is performed by the writers of the pipeline
+		long start = System.nanoTime();
+		try {
 			
-			//Insert in the table passed as first argument the kH value passed as second argument
-			db.insertSample(this.kHDatabaseTableName, kHSample.getkHValue() , null);
+			if(!dispatcher.dispatch(topic, payload)) {
+				//LOG
+				LOGGER.info("[{}] {}", topic, new String(payload));
+			}
 			
-			//Update the current value
-			this.currentKH = kHSample.getkHValue();
-			this.newCurrentKH = true;
+		} catch (ParseException e) {
 			
-			//LOG
-			System.out.println(LOG + " Inserted " + kHSample + " in " + this.kHDatabaseTableName + "." );
+			//Malformed messages are discarded, throwing the exception would close the connection with the broker
+			LOGGER.warn("Discarded malformed message [{}] {}", topic, new String(payload));
+			MALFORMED_MESSAGES.increment();
+		}
+		
+		MESSAGE_PROCESSING.recordSince(start);
+	}
+	
+	/**
+	 * Handler of the topic of a sensor that publishes a decimal value: the value is read directly from the bytes of the JSON
+	 * document, stored as current value of the aquarium if the sensor is evaluated by the control logic, and queued to be
+	 * inserted in the table of its kind.
+	 */
+	private class SensorHandler implements TopicHandler {
+		
+		private final JSONFloatDecoder decoder;
+		private final String sensor;
+		private final SampleKind kind;
+		
+		//Metric of the aquarium updated by the sensor, null if the value is only stored
+		private final Metric metric;
+		
+		SensorHandler(String key, SampleKind kind, Metric metric) {
+			this.decoder = new JSONFloatDecoder(key);
+			this.sensor = key;
+			this.kind = kind;
+			this.metric = metric;
+		}
+		
+		@Override
+		public void handle(String aquariumId, byte[] payload) throws ParseException {
 			
+			float value = decoder.decode(payload);
 			
-		}else if(topic.equals(temperatureTopic)) {
-					
-			//Create a pH sample object passing the JSON document
-			TemperatureSample temperatureSample = new TemperatureSample(new String(message.getPayload()));
-
 			//DEBUG
-			//System.out.println(String.format("[%s] %s", topic, temperatureSample));
-			
-			//Insert in the table passed as first argument the temperature value passed as second argument
-			db.insertSample(this.temperatureDatabaseTableName, temperatureSample.getTemperatureValue() , null);
+			//System.out.println(String.format("[%s] %s", sensor, value));
 			
 			//Update the current value
-			this.currentTemperature = temperatureSample.getTemperatureValue();
-			this.newCurrentTemperature = true;
+			long timestamp = System.currentTimeMillis();
+			Aquarium aquarium = aquariumRegistry.getOrCreate(aquariumId);
+			if(metric != null) {
+				aquarium.setCurrentValue(metric, value, timestamp);
+				notifySample(aquarium, metric);
+			}
 			
-			//LOG
-			System.out.println(LOG + " Inserted " + temperatureSample + " in " + this.temperatureDatabaseTableName + "." );
-		}else {
-			//LOG
-			System.out.println(LOG + " " + String.format("[%s] %s", topic,new String(message.getPayload()) ));
-
+			//Queue the value to be inserted in the table of the kind
+			pipeline.submit(new SampleRecord(aquarium.getId(), sensor, kind, value, timestamp));
 		}
 	}
 
@@ -307,31 +475,35 @@ public class MQTTCollector implements MqttCallback {
 		
 		try {
 			
-			//Unsubscribe from the topics
-			System.out.println(LOG + " Unsubscribing from the topics...");
-			this.mqttClient.unsubscribe(new String[]{
-					this.co2DispenserTopic,
-					this.fanTopic,
-					this.heaterTopic,
-					this.kHTopic,
-					this.osmoticWaterTankTopic,
-					this.pHTopic,
-					this.temperatureTopic});
+			//Unsubscribe from the topics, except with a persistent session: the broker would delete the subscriptions of the
+			//session and would not queue the readings published until the restart, so awaitCatchUp() would have nothing to recover
+			if(!persistentSession) {
+				LOGGER.info("Unsubscribing from the topics...");
+				this.mqttClient.unsubscribe(dispatcher.getTopicFilters()).waitForCompletion();
+			}
 			
-			//Disconnect from the server
-			System.out.println(LOG + " Disconnecting from the server...");
-			this.mqttClient.disconnect();
+			//Disconnect from the server, the pending publishes are completed before
+			LOGGER.info("Disconnecting from the server...");
+			this.mqttClient.disconnect().waitForCompletion();
 			
 			//Close the client
-			System.out.println(LOG + " Closing the client and releasing the resources...");
+			LOGGER.info("Closing the client and releasing the resources...");
 			this.mqttClient.close();
 			
-			System.out.println(LOG + " MQTT Collector closed successfully.");
+			//Process the messages still queued in the executor
+			if(this.callbackExecutor != null) {
+				this.callbackExecutor.close(CLOSE_TIMEOUT);
+			}
+			
+			//Write the samples still queued in the pipeline
+			LOGGER.info("Flushing the ingestion pipeline...");
+			this.pipeline.close();
+			
+			LOGGER.info("MQTT Collector closed successfully.");
 			
 		} catch (MqttException e) {
-			System.out.println(LOG_ERROR + " Problem during the closing of the MQTT collector!");
-			e.printStackTrace();
+			LOGGER.error("Problem during the closing of the MQTT collector!", e);
 		}
 	}
 	
-}
\ No newline at end of file
+}
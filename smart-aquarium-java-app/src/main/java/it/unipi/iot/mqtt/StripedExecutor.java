@@ -0,0 +1,108 @@
+package it.unipi.iot.mqtt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor that processes the messages received by the MQTT collector on a set of threads. <br>
+ * Each thread has its own queue and the messages with the same key (the topic, that identifies the sensor and the aquarium)
+ * are always executed by the same thread, so the messages of a sensor are processed in arrival order while the messages of
+ * different sensors are processed in parallel. When a queue is full the caller waits, slowing down the reception.
+ * 
+ * @author Fabi8997
+ */
+class StripedExecutor {
+	
+	//Milliseconds between two checks of the pending tasks
+	private static final long IDLE_POLL_INTERVAL = 10;
+	
+	private final ThreadPoolExecutor[] stripes;
+	
+	/**
+	 * Class constructor.
+	 * @param threads number of threads
+	 * @param queueCapacity maximum number of messages waiting in the queue of each thread
+	 * @param name prefix of the names of the threads
+	 */
+	StripedExecutor(int threads, int queueCapacity, final String name) {
+		
+		this.stripes = new ThreadPoolExecutor[Math.max(1, threads)];
+		
+		//The caller waits for a free slot instead of running the task, that would overtake the queued messages of the sensor
+		RejectedExecutionHandler waitForSlot = new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+				if(executor.isShutdown()) {
+					throw new RejectedExecutionException("The executor is closed");
+				}
+				try {
+					executor.getQueue().put(task);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException(e);
+				}
+			}
+		};
+		
+		for(int i = 0; i < stripes.length; i++) {
+			final int index = i;
+			stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, name + "-" + index);
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, waitForSlot);
+		}
+	}
+	
+	/**
+	 * Executes the task on the thread of the key, after the tasks with the same key already submitted.
+	 * @param key key of the task
+	 * @param task task to be executed
+	 */
+	void execute(String key, Runnable task) {
+		stripes[(key.hashCode() & 0x7fffffff) % stripes.length].execute(task);
+	}
+	
+	/**
+	 * Waits until all the submitted tasks have been executed.
+	 * @param timeout maximum milliseconds to wait
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	void awaitIdle(long timeout) throws InterruptedException {
+		
+		long deadline = System.currentTimeMillis() + timeout;
+		for(ThreadPoolExecutor stripe : stripes) {
+			while(stripe.getCompletedTaskCount() < stripe.getTaskCount() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(IDLE_POLL_INTERVAL);
+			}
+		}
+	}
+	
+	/**
+	 * Stops accepting tasks and waits for the execution of the queued ones.
+	 * @param timeout maximum milliseconds to wait
+	 */
+	void close(long timeout) {
+		
+		for(ThreadPoolExecutor stripe : stripes) {
+			stripe.shutdown();
+		}
+		
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			for(ThreadPoolExecutor stripe : stripes) {
+				stripe.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package it.unipi.iot.mqtt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Dispatch table that maps each base topic to the handler of its messages. <br>
+ * The handlers are registered before the subscription, then the table is only read: a message published in
+ * "&lt;topic&gt;" or "&lt;topic&gt;/&lt;aquarium id&gt;" is dispatched with a single lookup of its base topic, whatever
+ * the number of registered sensors.
+ * 
+ * @author Fabi8997
+ */
+public class TopicDispatcher {
+	
+	//Suffix of the topics used to receive the values of all the aquariums
+	private static final String AQUARIUM_WILDCARD = "/+";
+	
+	//Handler of each base topic
+	private final Map<String, TopicHandler> handlers;
+	
+	//Quality of service of the subscription of each base topic
+	private final Map<String, Integer> qos;
+	
+	public TopicDispatcher() {
+		this.handlers = new HashMap<String, TopicHandler>();
+		this.qos = new HashMap<String, Integer>();
+	}
+	
+	/**
+	 * Registers the handler of the messages published in the base topic, both for the default aquarium and for the others.
+	 * @param topic base topic, without '/'
+	 * @param handler handler of the messages
+	 * @param qos quality of service of the subscription, from 0 to 2
+	 * @throws IllegalArgumentException if the topic or the quality of service are not valid or a handler is already registered
+	 * for the topic
+	 */
+	public void register(String topic, TopicHandler handler, int qos) {
+		
+		if(topic == null || topic.isEmpty() || topic.indexOf('/') >= 0 || topic.indexOf('+') >= 0 || topic.indexOf('#') >= 0) {
+			throw new IllegalArgumentException("Invalid base topic: " + topic);
+		}
+		
+		if(handlers.containsKey(topic)) {
+			throw new IllegalArgumentException("A handler is already registered for the topic " + topic);
+		}
+		
+		if(qos < 0 || qos > 2) {
+			throw new IllegalArgumentException("Invalid quality of service for the topic " + topic + ": " + qos);
+		}
+		
+		handlers.put(topic, handler);
+		this.qos.put(topic, qos);
+	}
+	
+	/**
+	 * @return the topic filters to subscribe to, the base topic and the wildcard of the aquariums for each handler.
+	 */
+	public String[] getTopicFilters() {
+		List<String> filters = new ArrayList<String>();
+		for(String topic : handlers.keySet()) {
+			filters.add(topic);
+			filters.add(topic + AQUARIUM_WILDCARD);
+		}
+		return filters.toArray(new String[filters.size()]);
+	}
+	
+	/**
+	 * @param filters topic filters returned by {@link #getTopicFilters()}
+	 * @return the quality of service of the subscription of each filter.
+	 */
+	public int[] getQoS(String[] filters) {
+		int[] result = new int[filters.length];
+		for(int i = 0; i < filters.length; i++) {
+			int separator = filters[i].indexOf('/');
+			result[i] = qos.get((separator >= 0) ? filters[i].substring(0, separator) : filters[i]);
+		}
+		return result;
+	}
+	
+	/**
+	 * Dispatches a message to the handler of its base topic.
+	 * @param topic topic of the message
+	 * @param payload bytes of the message
+	 * @return true if a handler is registered for the topic, false otherwise.
+	 * @throws ParseException if the payload is malformed
+	 */
+	public boolean dispatch(String topic, byte[] payload) throws ParseException {
+		
+		//Split the topic in the base topic and the identifier of the aquarium
+		String baseTopic = topic;
+		String aquariumId = null;
+		int separator = topic.indexOf('/');
+		if(separator >= 0) {
+			baseTopic = topic.substring(0, separator);
+			aquariumId = topic.substring(separator + 1);
+		}
+		
+		TopicHandler handler = handlers.get(baseTopic);
+		if(handler == null) {
+			return false;
+		}
+		
+		handler.handle(aquariumId, payload);
+		return true;
+	}
+}
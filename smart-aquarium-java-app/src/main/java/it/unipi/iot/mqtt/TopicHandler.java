@@ -0,0 +1,20 @@
+package it.unipi.iot.mqtt;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Handler of the messages published in a base topic, registered in the {@link TopicDispatcher}.
+ * 
+ * @author Fabi8997
+ */
+public interface TopicHandler {
+	
+	/**
+	 * Decodes the payload of a message and processes its value. It is called on the callback thread of the MQTT client, so
+	 * it must not block.
+	 * @param aquariumId identifier of the aquarium that published the message, null for the default aquarium
+	 * @param payload bytes of the message
+	 * @throws ParseException if the payload is malformed
+	 */
+	public void handle(String aquariumId, byte[] payload) throws ParseException;
+}
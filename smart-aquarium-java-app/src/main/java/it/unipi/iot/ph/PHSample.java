@@ -1,9 +1,11 @@
 package it.unipi.iot.ph;
 
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import it.unipi.iot.json.JSONFloatDecoder;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
 /**
  * Class that represent a pH sample, this sample is sensed by the pH sensor and sent through a MQTT message to the broker.
  * This class allows to parse the JSON string sent by the sensor and offers the methods to insert the sample inside the DB.
@@ -11,6 +13,11 @@ import org.json.simple.parser.ParseException;
  */
 public class PHSample {
 	
+	private static final Logger LOGGER = new Logger("pHSample", Colors.ANSI_YELLOW);
+	
+	//Decoder shared by all the samples, it extracts the value associated to the key pH
+	private static final JSONFloatDecoder DECODER = new JSONFloatDecoder("pH");
+	
 	
 	/**
 	 * pH value present inside the JSON string sent by the sensor
@@ -27,19 +34,33 @@ public class PHSample {
 	public PHSample(String JSONString) {
 		try {
 			
-		
-			JSONParser parser = new JSONParser();
-			JSONObject phJSONObject= (JSONObject) parser.parse(JSONString);
-			
 			//Initialize the value of pHValue with the value associated to the pH key
-			this.pHValue = new Float((Double)phJSONObject.get("pH"));
+			this.pHValue = DECODER.decode(JSONString.getBytes());
 			
 		} catch (ParseException e) {
-			System.out.println("[pHSample] Error during the parsing from JSON to pHSample object.");
-			e.printStackTrace();
+			LOGGER.error("Error during the parsing from JSON to pHSample object.", e);
 		}
 	}
 	
+	/**
+	 * Constructor of the class PHSample that reads the value directly from the bytes of the MQTT payload.
+	 * @param payload bytes of the JSON document published in the topic "pH"
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key pH
+	 */
+	public PHSample(byte[] payload) throws ParseException {
+		this.pHValue = DECODER.decode(payload);
+	}
+	
+	/**
+	 * Reads the value associated to the key pH directly from the bytes of the MQTT payload, without creating any object.
+	 * @param payload bytes of the JSON document published in the topic "pH"
+	 * @return the pH value
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key pH
+	 */
+	public static float decode(byte[] payload) throws ParseException {
+		return DECODER.decode(payload);
+	}
+	
 	
 
 	/**
@@ -52,12 +73,9 @@ public class PHSample {
 
 
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public String toString() {
-		JSONObject jsonObject = new JSONObject();
-		jsonObject.put("pH", this.pHValue);
-		return jsonObject.toJSONString();
+		return "{\"pH\":" + this.pHValue + "}";
 	}
 	
 	
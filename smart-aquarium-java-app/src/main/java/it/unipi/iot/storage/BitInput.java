@@ -0,0 +1,56 @@
+package it.unipi.iot.storage;
+
+import java.io.IOException;
+
+/**
+ * Reads the bits written by a {@link BitOutput}, most significant first.
+ * 
+ * @author Fabi8997
+ */
+class BitInput {
+	
+	private final byte[] buffer;
+	
+	//Position of the next bit and position of the end of the column
+	private int bitPosition;
+	private final int bitLimit;
+	
+	/**
+	 * Class constructor.
+	 * @param buffer buffer containing the bits
+	 * @param offset position in bytes of the first bit
+	 * @param length length in bytes of the column
+	 */
+	BitInput(byte[] buffer, int offset, int length) {
+		this.buffer = buffer;
+		this.bitPosition = offset * 8;
+		this.bitLimit = (offset + length) * 8;
+	}
+	
+	boolean readBit() throws IOException {
+		return readBits(1) != 0;
+	}
+	
+	/**
+	 * @param bits number of bits to read, at most 64
+	 * @return the bits read, in the least significant positions.
+	 * @throws IOException if the column ends before the bits
+	 */
+	long readBits(int bits) throws IOException {
+		
+		if(bitPosition + bits > bitLimit) {
+			throw new IOException("Truncated column");
+		}
+		
+		long value = 0;
+		while(bits > 0) {
+			int available = 8 - (bitPosition & 7);
+			int n = Math.min(available, bits);
+			int chunk = ((buffer[bitPosition >>> 3] & 0xff) >>> (available - n)) & ((1 << n) - 1);
+			value = (value << n) | chunk;
+			bitPosition += n;
+			bits -= n;
+		}
+		return value;
+	}
+}
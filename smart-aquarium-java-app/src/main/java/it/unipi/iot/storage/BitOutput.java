@@ -0,0 +1,71 @@
+package it.unipi.iot.storage;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer in which the bits are written most significant first, used to encode the columns of a segment.
+ * 
+ * @author Fabi8997
+ */
+class BitOutput {
+	
+	private byte[] buffer;
+	
+	//Number of bits written
+	private int bitLength;
+	
+	/**
+	 * Class constructor.
+	 * @param capacity initial capacity in bytes
+	 */
+	BitOutput(int capacity) {
+		this.buffer = new byte[Math.max(8, capacity)];
+		this.bitLength = 0;
+	}
+	
+	void writeBit(boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+	
+	/**
+	 * Writes the least significant bits of a value.
+	 * @param value value to write
+	 * @param bits number of bits to write, at most 64
+	 */
+	void writeBits(long value, int bits) {
+		
+		//The new bytes of the buffer are zero, the bits are written with an OR
+		int required = (bitLength + bits + 7) >>> 3;
+		if(required > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+		}
+		
+		while(bits > 0) {
+			int free = 8 - (bitLength & 7);
+			int n = Math.min(free, bits);
+			int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+			buffer[bitLength >>> 3] |= chunk << (free - n);
+			bitLength += n;
+			bits -= n;
+		}
+	}
+	
+	int byteLength() {
+		return (bitLength + 7) >>> 3;
+	}
+	
+	/**
+	 * @return the internal buffer, valid up to {@link #byteLength()}.
+	 */
+	byte[] buffer() {
+		return buffer;
+	}
+	
+	/**
+	 * Discards the bits written, keeping the buffer.
+	 */
+	void reset() {
+		Arrays.fill(buffer, 0, byteLength(), (byte) 0);
+		bitLength = 0;
+	}
+}
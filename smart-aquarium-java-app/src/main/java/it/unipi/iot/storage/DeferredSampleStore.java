@@ -0,0 +1,85 @@
+package it.unipi.iot.storage;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
+/**
+ * Storage whose backend is still being opened, used at startup so that the MQTT collector and the CoAP network controller can
+ * be created while the connection to the database is established. <br>
+ * Each call waits until the backend is open and then is forwarded to it; if the backend cannot be opened the inserts and the
+ * reads fail, as they do on an offline storage.
+ * 
+ * @author Fabi8997
+ */
+public class DeferredSampleStore implements SampleStore {
+	
+	private static final Logger LOGGER = new Logger("Deferred Sample Store", Colors.ANSI_GREEN);
+	
+	//Result of the opening of the backend
+	private final Future<SampleStore> backend;
+	
+	/**
+	 * Class constructor.
+	 * @param backend future completed with the storage once it is open
+	 */
+	public DeferredSampleStore(Future<SampleStore> backend) {
+		this.backend = backend;
+	}
+	
+	/**
+	 * Waits until the backend is open.
+	 * @return the backend, or null if it could not be opened.
+	 */
+	private SampleStore backend() {
+		try {
+			return backend.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.error("The storage could not be opened: {}", e.getCause());
+		}
+		return null;
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp) {
+		SampleStore store = backend();
+		return (store != null) && store.insertSample(aquariumId, kind, value, timestamp);
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp) {
+		SampleStore store = backend();
+		return (store != null) && store.insertSample(aquariumId, kind, level, value, timestamp);
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp) {
+		SampleStore store = backend();
+		return (store != null) && store.insertSample(aquariumId, kind, active, timestamp);
+	}
+	
+	@Override
+	public List<String> aquariums(SampleKind kind) {
+		SampleStore store = backend();
+		return (store != null) ? store.aquariums(kind) : null;
+	}
+	
+	@Override
+	public boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor) {
+		SampleStore store = backend();
+		return (store != null) && store.latest(kind, aquariumId, count, visitor);
+	}
+	
+	@Override
+	public void close() {
+		SampleStore store = backend();
+		if(store != null) {
+			store.close();
+		}
+	}
+}
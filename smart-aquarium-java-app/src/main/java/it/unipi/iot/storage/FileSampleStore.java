@@ -0,0 +1,365 @@
+package it.unipi.iot.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+import it.unipi.iot.storage.SampleKind.Layout;
+
+/**
+ * Embedded storage of the samples in local files, used instead of the MySQL database on the devices without a database server.
+ * <br>
+ * Each kind of sample of each aquarium is a {@link SeriesFile} in the directory timeSeriesDirectory/table/, containing columnar segments
+ * compressed with delta-of-delta timestamps and XOR values (see {@link SegmentEncoder}), so the regular timestamps and the
+ * repeated or slowly changing values take a few bits instead of a row of the database.<br>
+ * The open segments are sealed when they reach timeSeriesSegmentPoints samples and every timeSeriesFlushInterval milliseconds,
+ * so a crash loses at most the samples of the last interval.
+ * 
+ * @author Fabi8997
+ */
+public class FileSampleStore implements SampleStore {
+	
+	private static final Logger LOGGER = new Logger("File Sample Store", Colors.ANSI_GREEN);
+	
+	//Extension of the files of the series
+	private static final String EXTENSION = ".tss";
+	
+	//Windows scanned to find the most recent samples: one hour, one day, one week and the whole series
+	private static final long[] LATEST_WINDOWS = {60 * 60 * 1000L, 24 * 60 * 60 * 1000L, 7 * 24 * 60 * 60 * 1000L, Long.MAX_VALUE};
+	
+	//Directory containing a subdirectory for each table
+	private final File directory;
+	
+	//Number of samples of a segment
+	private final int segmentPoints;
+	
+	//Table and layout of each kind of sample, indexed by kind
+	private final String[] tables;
+	private final Layout[] layouts;
+	
+	//Open files of each aquarium, indexed by kind
+	private final ConcurrentHashMap<String, AtomicReferenceArray<SeriesFile>> series;
+	
+	//Thread that seals periodically the open segments
+	private final ScheduledExecutorService scheduler;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Constructor that creates the directory of the files and starts the periodic sealing of the segments.
+	 * @param configurationParameters
+	 */
+	public FileSampleStore(ConfigurationParameters configurationParameters) {
+		
+		this.directory = new File(configurationParameters.timeSeriesDirectory);
+		this.segmentPoints = Math.max(1, configurationParameters.timeSeriesSegmentPoints);
+		this.series = new ConcurrentHashMap<String, AtomicReferenceArray<SeriesFile>>();
+		
+		//One directory for each kind of sample registered so far
+		List<SampleKind> kinds = SampleKind.values();
+		this.tables = new String[kinds.size()];
+		this.layouts = new Layout[kinds.size()];
+		for(SampleKind kind : kinds) {
+			tables[kind.ordinal()] = kind.getTable(configurationParameters);
+			layouts[kind.ordinal()] = kind.getLayout();
+		}
+		this.closed = false;
+		
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			LOGGER.error("Cannot create the directory {}.", directory);
+		}
+		
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "file-store-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		long flushInterval = configurationParameters.timeSeriesFlushInterval;
+		if(flushInterval > 0) {
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+		
+		LOGGER.info("Storing the samples in {}.", directory.getAbsolutePath());
+	}
+	
+	/**
+	 * @param kindIndex index of the kind of the samples
+	 * @param aquariumId identifier of the aquarium
+	 * @param create true to create the file if it does not exist
+	 * @return the file of the series, or null if it does not exist and create is false.
+	 * @throws IOException if the file cannot be opened
+	 */
+	private SeriesFile seriesOf(int kindIndex, String aquariumId, boolean create) throws IOException {
+		
+		AtomicReferenceArray<SeriesFile> aquariumSeries = series.get(aquariumId);
+		if(aquariumSeries == null) {
+			AtomicReferenceArray<SeriesFile> newSeries = new AtomicReferenceArray<SeriesFile>(tables.length);
+			aquariumSeries = series.putIfAbsent(aquariumId, newSeries);
+			if(aquariumSeries == null) {
+				aquariumSeries = newSeries;
+			}
+		}
+		
+		SeriesFile seriesFile = aquariumSeries.get(kindIndex);
+		if(seriesFile != null) {
+			return seriesFile;
+		}
+		
+		File tableDirectory = new File(directory, tables[kindIndex]);
+		File path = new File(tableDirectory, fileName(aquariumId));
+		if(!create && !path.exists()) {
+			return null;
+		}
+		
+		//Different threads can open the same series, only one file is kept
+		synchronized(series) {
+			seriesFile = aquariumSeries.get(kindIndex);
+			if(seriesFile == null) {
+				if(!tableDirectory.isDirectory() && !tableDirectory.mkdirs()) {
+					throw new IOException("Cannot create the directory " + tableDirectory);
+				}
+				seriesFile = new SeriesFile(path, segmentPoints, layouts[kindIndex] == Layout.LEVEL_VALUE);
+				aquariumSeries.set(kindIndex, seriesFile);
+			}
+			return seriesFile;
+		}
+	}
+	
+	/**
+	 * @return the name of the file of an aquarium, encoded so that any identifier is a valid file name.
+	 */
+	private static String fileName(String aquariumId) {
+		try {
+			return URLEncoder.encode(aquariumId, "UTF-8").replace("*", "%2A") + EXTENSION;
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp) {
+		return append(kind.ordinal(), aquariumId, timestamp, value, 0);
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp) {
+		return append(kind.ordinal(), aquariumId, timestamp, value, level);
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp) {
+		return append(kind.ordinal(), aquariumId, timestamp, active ? 1 : 0, 0);
+	}
+	
+	/**
+	 * Appends a sample to the open segment of its series.
+	 * @return true if the sample has been stored, false otherwise.
+	 */
+	private boolean append(int kindIndex, String aquariumId, long timestamp, float value, float level) {
+		
+		if(closed) {
+			return false;
+		}
+		
+		//Kind registered after the creation of the store
+		if(kindIndex >= tables.length) {
+			LOGGER.error("No table for the sample kind with index {}.", kindIndex);
+			return false;
+		}
+		
+		try {
+			seriesOf(kindIndex, aquariumId, true).append(timestamp, value, level);
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Problem during the writing of a sample of " + tables[kindIndex] + " of the aquarium " + aquariumId + ".", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Passes to the visitor the samples of a kind of an aquarium in a time range, in the order in which they were stored.
+	 * @param kind kind of the samples
+	 * @param aquariumId identifier of the aquarium
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @param visitor receives the samples
+	 * @return true if the scan has been completed, false if the series cannot be read.
+	 */
+	public boolean scan(SampleKind kind, String aquariumId, long from, long to, SampleVisitor visitor) {
+		
+		if(kind.ordinal() >= tables.length) {
+			return false;
+		}
+		
+		try {
+			SeriesFile seriesFile = seriesOf(kind.ordinal(), aquariumId, false);
+			if(seriesFile != null) {
+				seriesFile.scan(from, to, visitor);
+			}
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Problem during the reading of " + tables[kind.ordinal()] + " of the aquarium " + aquariumId + ".", e);
+			return false;
+		}
+	}
+	
+	@Override
+	public List<String> aquariums(SampleKind kind) {
+		
+		if(kind.ordinal() >= tables.length) {
+			return null;
+		}
+		
+		List<String> aquariums = new ArrayList<String>();
+		File[] files = new File(directory, tables[kind.ordinal()]).listFiles();
+		if(files == null) {
+			return aquariums;
+		}
+		
+		for(File file : files) {
+			String name = file.getName();
+			if(name.endsWith(EXTENSION)) {
+				try {
+					aquariums.add(URLDecoder.decode(name.substring(0, name.length() - EXTENSION.length()), "UTF-8"));
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return aquariums;
+	}
+	
+	/**
+	 * The series are scanned on windows of increasing length ending at the current time, until the window contains count
+	 * samples, so usually only the last segments are decoded.
+	 */
+	@Override
+	public boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor) {
+		
+		LatestSamples latestSamples = new LatestSamples(Math.max(1, count));
+		long now = System.currentTimeMillis();
+		for(long window : LATEST_WINDOWS) {
+			latestSamples.clear();
+			if(!scan(kind, aquariumId, (window == Long.MAX_VALUE) ? Long.MIN_VALUE : now - window, Long.MAX_VALUE, latestSamples)) {
+				return false;
+			}
+			if(latestSamples.isFull()) {
+				break;
+			}
+		}
+		
+		latestSamples.visitFromMostRecent(visitor);
+		return true;
+	}
+	
+	/**
+	 * Keeps the last samples received from a scan.
+	 */
+	private static class LatestSamples implements SampleVisitor {
+		
+		private final long[] timestamps;
+		private final float[] values;
+		private final float[] levels;
+		
+		//Samples visited, the last ones are in the arrays at position count % length
+		private int count;
+		
+		LatestSamples(int capacity) {
+			this.timestamps = new long[capacity];
+			this.values = new float[capacity];
+			this.levels = new float[capacity];
+		}
+		
+		@Override
+		public void visit(long timestamp, float value, float level) {
+			int index = count % timestamps.length;
+			timestamps[index] = timestamp;
+			values[index] = value;
+			levels[index] = level;
+			count++;
+		}
+		
+		boolean isFull() {
+			return count >= timestamps.length;
+		}
+		
+		void clear() {
+			count = 0;
+		}
+		
+		void visitFromMostRecent(SampleVisitor visitor) {
+			for(int i = 1; i <= Math.min(count, timestamps.length); i++) {
+				int index = (count - i) % timestamps.length;
+				visitor.visit(timestamps[index], values[index], levels[index]);
+			}
+		}
+	}
+	
+	/**
+	 * Seals the open segments of all the series.
+	 */
+	public void flush() {
+		for(AtomicReferenceArray<SeriesFile> aquariumSeries : series.values()) {
+			for(int i = 0; i < aquariumSeries.length(); i++) {
+				SeriesFile seriesFile = aquariumSeries.get(i);
+				if(seriesFile == null) {
+					continue;
+				}
+				try {
+					seriesFile.seal();
+				} catch (IOException e) {
+					LOGGER.error("Problem during the sealing of a segment, it will be retried.", e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Seals the open segments and closes the files.
+	 */
+	@Override
+	public void close() {
+		
+		closed = true;
+		scheduler.shutdown();
+		
+		synchronized(series) {
+			for(AtomicReferenceArray<SeriesFile> aquariumSeries : series.values()) {
+				for(int i = 0; i < aquariumSeries.length(); i++) {
+					SeriesFile seriesFile = aquariumSeries.get(i);
+					if(seriesFile == null) {
+						continue;
+					}
+					try {
+						seriesFile.close();
+					} catch (IOException e) {
+						LOGGER.error("Problem during the closing of a series.", e);
+					}
+				}
+			}
+			series.clear();
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package it.unipi.iot.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * Kind of a sample stored by a {@link SampleStore}: it identifies the table in which the sample is written and the layout of
+ * its columns. <br>
+ * The kinds work as an open enum: the ones handled by the application are constants, new kinds of sensors are added with
+ * {@link #register(String, String, Layout)}. Each kind has a progressive index used by the stores to select the prepared
+ * statement or the file of the kind with an array access; since the stores size their arrays when they are created, the kinds
+ * must be registered before.<br>
+ * The index of the constants is also written in the spool of the DatabaseManager, so new kinds must only be added at the end.
+ * 
+ * @author Fabi8997
+ */
+public final class SampleKind {
+	
+	/**
+	 * Layout of the columns of a table: <br>
+	 * - VALUE: (aquarium, timestamp, value) <br>
+	 * - LEVEL_VALUE: (aquarium, timestamp, level, value) <br>
+	 * - ACTIVE: (aquarium, timestamp, active)
+	 */
+	public enum Layout { VALUE, LEVEL_VALUE, ACTIVE }
+	
+	//Registered kinds, ordered by index
+	private static final List<SampleKind> KINDS = new ArrayList<SampleKind>();
+	
+	public static final SampleKind PH = define("PH", null, Layout.VALUE);
+	public static final SampleKind KH = define("KH", null, Layout.VALUE);
+	public static final SampleKind TEMPERATURE = define("Temperature", null, Layout.VALUE);
+	public static final SampleKind OSMOTIC_WATER_TANK = define("OsmoticWaterTank", null, Layout.VALUE);
+	public static final SampleKind CO2_DISPENSER = define("CO2Dispenser", null, Layout.LEVEL_VALUE);
+	public static final SampleKind FAN = define("Fan", null, Layout.ACTIVE);
+	public static final SampleKind HEATER = define("Heater", null, Layout.ACTIVE);
+	
+	private final int index;
+	private final String name;
+	private final Layout layout;
+	
+	//Table of the kinds registered at runtime, the tables of the constants are read from the configuration
+	private final String table;
+	
+	private SampleKind(int index, String name, String table, Layout layout) {
+		this.index = index;
+		this.name = name;
+		this.table = table;
+		this.layout = layout;
+	}
+	
+	private static synchronized SampleKind define(String name, String table, Layout layout) {
+		SampleKind kind = new SampleKind(KINDS.size(), name, table, layout);
+		KINDS.add(kind);
+		return kind;
+	}
+	
+	/**
+	 * Registers a new kind of sample, or returns the one already registered with the same name.
+	 * @param name name of the kind
+	 * @param table table in which the samples of the kind are written
+	 * @param layout layout of the columns of the table
+	 * @return the kind
+	 * @throws IllegalArgumentException if a kind with the same name but a different table or layout exists
+	 */
+	public static synchronized SampleKind register(String name, String table, Layout layout) {
+		
+		SampleKind existing = byName(name);
+		if(existing != null) {
+			if(existing.layout != layout || (existing.table != null && !existing.table.equals(table))) {
+				throw new IllegalArgumentException("The sample kind " + name + " is already registered with a different table or layout");
+			}
+			return existing;
+		}
+		
+		return define(name, table, layout);
+	}
+	
+	/**
+	 * @param name name of the kind, case insensitive
+	 * @return the kind with the passed name, or null if it is not registered.
+	 */
+	public static synchronized SampleKind byName(String name) {
+		for(SampleKind kind : KINDS) {
+			if(kind.name.equalsIgnoreCase(name)) {
+				return kind;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the registered kinds, ordered by index.
+	 */
+	public static synchronized List<SampleKind> values() {
+		return Collections.unmodifiableList(new ArrayList<SampleKind>(KINDS));
+	}
+	
+	/**
+	 * @return the number of registered kinds, that is the size of the arrays indexed by kind.
+	 */
+	public static synchronized int count() {
+		return KINDS.size();
+	}
+	
+	public int ordinal() {
+		return index;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public Layout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 * @param configurationParameters configuration containing the names of the tables
+	 * @return the name of the table in which the samples of the kind are written.
+	 */
+	public String getTable(ConfigurationParameters configurationParameters) {
+		
+		if(table != null) {
+			return table;
+		}
+		
+		if(this == PH) {
+			return configurationParameters.pHDatabaseTableName;
+		}else if(this == KH) {
+			return configurationParameters.kHDatabaseTableName;
+		}else if(this == TEMPERATURE) {
+			return configurationParameters.temperatureDatabaseTableName;
+		}else if(this == OSMOTIC_WATER_TANK) {
+			return configurationParameters.osmoticWaterTankDatabaseTableName;
+		}else if(this == CO2_DISPENSER) {
+			return configurationParameters.co2DispenserDatabaseTableName;
+		}else if(this == FAN) {
+			return configurationParameters.fanDatabaseTableName;
+		}else {
+			return configurationParameters.heaterDatabaseTableName;
+		}
+	}
+	
+	/**
+	 * @param configurationParameters configuration containing the retention of the tables
+	 * @return the number of days for which the samples of the kind are kept in the database, 0 to keep them forever.
+	 */
+	public int getRetentionDays(ConfigurationParameters configurationParameters) {
+		
+		if(table != null) {
+			return 0;
+		}
+		
+		if(this == PH) {
+			return configurationParameters.pHRetentionDays;
+		}else if(this == KH) {
+			return configurationParameters.kHRetentionDays;
+		}else if(this == TEMPERATURE) {
+			return configurationParameters.temperatureRetentionDays;
+		}else if(this == OSMOTIC_WATER_TANK) {
+			return configurationParameters.osmoticWaterTankRetentionDays;
+		}else if(this == CO2_DISPENSER) {
+			return configurationParameters.co2DispenserRetentionDays;
+		}else if(this == FAN) {
+			return configurationParameters.fanRetentionDays;
+		}else {
+			return configurationParameters.heaterRetentionDays;
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,68 @@
+package it.unipi.iot.storage;
+
+import java.util.List;
+
+/**
+ * Storage in which the application writes the samples of the sensors and the state changes of the actuators. <br>
+ * The MQTT collector, the CoAP network controller and the temperature controller write only through this interface, so the
+ * backend is chosen in the configuration (see {@link StorageBackend}): the MySQL database handled by the DatabaseManager or the
+ * embedded compressed files of the {@link FileSampleStore}.<br>
+ * The samples are identified by their {@link SampleKind} and by the aquarium that produced them; the implementations select
+ * the destination of a kind through its index and receive only primitive values. The implementations must be thread-safe.
+ * 
+ * @author Fabi8997
+ */
+public interface SampleStore {
+	
+	/**
+	 * Stores a value of a kind with the VALUE layout.
+	 * @param aquariumId identifier of the aquarium that produced the value
+	 * @param kind kind of the value
+	 * @param value value to store
+	 * @param timestamp arrival time of the value in milliseconds
+	 * @return true if the value has been stored, false otherwise.
+	 */
+	boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp);
+	
+	/**
+	 * Stores a level/value pair of a kind with the LEVEL_VALUE layout.
+	 * @param aquariumId identifier of the aquarium that produced the value
+	 * @param kind kind of the value
+	 * @param level level to store
+	 * @param value value to store
+	 * @param timestamp arrival time of the value in milliseconds
+	 * @return true if the value has been stored, false otherwise.
+	 */
+	boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp);
+	
+	/**
+	 * Stores the state of an actuator of a kind with the ACTIVE layout.
+	 * @param aquariumId identifier of the aquarium of the actuator
+	 * @param kind kind of the actuator
+	 * @param active state to store
+	 * @param timestamp time of the change of state in milliseconds
+	 * @return true if the state has been stored, false otherwise.
+	 */
+	boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp);
+	
+	/**
+	 * @param kind kind of the samples
+	 * @return the identifiers of the aquariums that stored at least a sample of the kind, or null if the storage cannot be read.
+	 */
+	List<String> aquariums(SampleKind kind);
+	
+	/**
+	 * Reads the most recent samples of a kind of an aquarium, used to restore the state of the application at the startup.
+	 * @param kind kind of the samples
+	 * @param aquariumId identifier of the aquarium
+	 * @param count maximum number of samples to read
+	 * @param visitor receives the samples from the most recent one; for the ACTIVE layout the value is 1 if active, 0 otherwise
+	 * @return true if the samples have been read, false if the storage cannot be read.
+	 */
+	boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor);
+	
+	/**
+	 * Writes the pending values and releases the resources of the storage.
+	 */
+	void close();
+}
@@ -0,0 +1,17 @@
+package it.unipi.iot.storage;
+
+/**
+ * Receives the samples returned by a scan of the {@link FileSampleStore}, in the order in which they were stored, or by a read of
+ * the most recent samples of a {@link SampleStore}.
+ * 
+ * @author Fabi8997
+ */
+public interface SampleVisitor {
+	
+	/**
+	 * @param timestamp of the sample in milliseconds
+	 * @param value of the sample
+	 * @param level of the sample, 0 if the table has no level
+	 */
+	void visit(long timestamp, float value, float level);
+}
@@ -0,0 +1,170 @@
+package it.unipi.iot.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Decodes the segments written by the {@link SegmentEncoder}.
+ * 
+ * @author Fabi8997
+ */
+class SegmentDecoder {
+	
+	/**
+	 * Header of a segment.
+	 */
+	static class Header {
+		int count;
+		long minTimestamp;
+		long maxTimestamp;
+		int timestampBytes;
+		int valueBytes;
+		int levelBytes;
+		int crc;
+		
+		/**
+		 * @return the size of the columns that follow the header.
+		 */
+		int columnsSize() {
+			return timestampBytes + valueBytes + levelBytes;
+		}
+	}
+	
+	/**
+	 * Column of floats compressed with the XOR of consecutive values.
+	 */
+	private static class XorColumn {
+		
+		private final BitInput input;
+		private int previousBits;
+		private int previousLeading;
+		private int previousTrailing;
+		
+		XorColumn(BitInput input) {
+			this.input = input;
+		}
+		
+		float next(boolean first) throws IOException {
+			
+			if(first) {
+				previousBits = (int) input.readBits(32);
+				return Float.intBitsToFloat(previousBits);
+			}
+			
+			if(input.readBit()) {
+				
+				//New window of meaningful bits
+				if(input.readBit()) {
+					previousLeading = (int) input.readBits(5);
+					int meaningful = (int) input.readBits(5) + 1;
+					previousTrailing = 32 - previousLeading - meaningful;
+				}
+				
+				int meaningful = 32 - previousLeading - previousTrailing;
+				int xor = (int) input.readBits(meaningful) << previousTrailing;
+				previousBits ^= xor;
+			}
+			
+			return Float.intBitsToFloat(previousBits);
+		}
+	}
+	
+	private SegmentDecoder() {
+	}
+	
+	/**
+	 * Reads a header.
+	 * @param buffer buffer positioned at the beginning of the header
+	 * @return the header, or null if the buffer does not contain a valid header.
+	 */
+	static Header readHeader(ByteBuffer buffer) {
+		
+		if(buffer.remaining() < SegmentEncoder.HEADER_SIZE || buffer.getInt() != SegmentEncoder.MAGIC) {
+			return null;
+		}
+		
+		Header header = new Header();
+		header.count = buffer.getInt();
+		header.minTimestamp = buffer.getLong();
+		header.maxTimestamp = buffer.getLong();
+		header.timestampBytes = buffer.getInt();
+		header.valueBytes = buffer.getInt();
+		header.levelBytes = buffer.getInt();
+		header.crc = buffer.getInt();
+		
+		if(header.count <= 0 || header.timestampBytes < 0 || header.valueBytes < 0 || header.levelBytes < 0) {
+			return null;
+		}
+		return header;
+	}
+	
+	/**
+	 * @param header header of the segment
+	 * @param columns columns of the segment
+	 * @return true if the CRC of the columns matches the one of the header.
+	 */
+	static boolean verify(Header header, byte[] columns) {
+		CRC32 crc = new CRC32();
+		crc.update(columns, 0, header.columnsSize());
+		return (int) crc.getValue() == header.crc;
+	}
+	
+	/**
+	 * Decodes the samples of a segment, passing the ones in the range to the visitor.
+	 * @param header header of the segment
+	 * @param columns columns of the segment
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @param visitor receives the samples in the range
+	 * @throws IOException if the segment is corrupted
+	 */
+	static void decode(Header header, byte[] columns, long from, long to, SampleVisitor visitor) throws IOException {
+		
+		BitInput timestamps = new BitInput(columns, 0, header.timestampBytes);
+		XorColumn values = new XorColumn(new BitInput(columns, header.timestampBytes, header.valueBytes));
+		XorColumn levels = (header.levelBytes == 0) ? null
+				: new XorColumn(new BitInput(columns, header.timestampBytes + header.valueBytes, header.levelBytes));
+		
+		long timestamp = 0;
+		long delta = 0;
+		for(int i = 0; i < header.count; i++) {
+			
+			boolean first = i == 0;
+			if(first) {
+				timestamp = timestamps.readBits(64);
+			} else {
+				delta += readDeltaOfDelta(timestamps);
+				timestamp += delta;
+			}
+			
+			float value = values.next(first);
+			float level = (levels == null) ? 0 : levels.next(first);
+			
+			if(timestamp >= from && timestamp < to) {
+				visitor.visit(timestamp, value, level);
+			}
+		}
+	}
+	
+	private static long readDeltaOfDelta(BitInput timestamps) throws IOException {
+		
+		if(!timestamps.readBit()) {
+			return 0;
+		}
+		if(!timestamps.readBit()) {
+			return signExtend(timestamps.readBits(7), 7);
+		}
+		if(!timestamps.readBit()) {
+			return signExtend(timestamps.readBits(9), 9);
+		}
+		if(!timestamps.readBit()) {
+			return signExtend(timestamps.readBits(12), 12);
+		}
+		return timestamps.readBits(64);
+	}
+	
+	private static long signExtend(long value, int bits) {
+		return (value << (64 - bits)) >> (64 - bits);
+	}
+}
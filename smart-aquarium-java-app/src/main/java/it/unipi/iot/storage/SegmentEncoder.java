@@ -0,0 +1,222 @@
+package it.unipi.iot.storage;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes the samples of a series into a columnar segment, with the compression of the Gorilla time-series database: <br>
+ * - timestamps: the first one is written in 64 bits, the following ones as the delta of their delta from the previous
+ *   timestamp, with a variable-length prefix ('0' for 0, '10' + 7 bits, '110' + 9 bits, '1110' + 12 bits, '1111' + 64 bits) <br>
+ * - values and levels: the first one is written in 32 bits, the following ones as the XOR with the previous one: '0' if equal,
+ *   otherwise '1' followed by '0' and the meaningful bits if they fall in the window of the previous XOR, or by '1', the number
+ *   of leading zeros (5 bits), the number of meaningful bits minus one (5 bits) and the meaningful bits. <br>
+ * The segment on disk is [header | timestamps | values | levels], where the header is [magic (int) | count (int) |
+ * min timestamp (long) | max timestamp (long) | length of each column (3 int) | CRC32 of the columns (int)]; the level column
+ * is omitted if the samples have no level.
+ * 
+ * @author Fabi8997
+ */
+class SegmentEncoder {
+	
+	//"TSG1"
+	static final int MAGIC = 0x54534731;
+	
+	static final int HEADER_SIZE = 40;
+	
+	/**
+	 * Column of floats compressed with the XOR of consecutive values.
+	 */
+	private static class XorColumn {
+		
+		final BitOutput output;
+		private int previousBits;
+		private int previousLeading;
+		private int previousTrailing;
+		
+		XorColumn(int capacity) {
+			this.output = new BitOutput(capacity);
+			reset();
+		}
+		
+		void add(float value, boolean first) {
+			
+			int bits = Float.floatToRawIntBits(value);
+			if(first) {
+				output.writeBits(bits, 32);
+				previousBits = bits;
+				return;
+			}
+			
+			int xor = bits ^ previousBits;
+			previousBits = bits;
+			
+			if(xor == 0) {
+				output.writeBit(false);
+				return;
+			}
+			output.writeBit(true);
+			
+			int leading = Integer.numberOfLeadingZeros(xor);
+			int trailing = Integer.numberOfTrailingZeros(xor);
+			
+			//The meaningful bits fall in the window of the previous XOR
+			if(previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				output.writeBit(false);
+				output.writeBits(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+				return;
+			}
+			
+			int meaningful = 32 - leading - trailing;
+			output.writeBit(true);
+			output.writeBits(leading, 5);
+			output.writeBits(meaningful - 1, 5);
+			output.writeBits(xor >>> trailing, meaningful);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+		
+		void reset() {
+			output.reset();
+			previousBits = 0;
+			previousLeading = -1;
+			previousTrailing = 0;
+		}
+	}
+	
+	//Timestamp column
+	private final BitOutput timestamps;
+	private long previousTimestamp;
+	private long previousDelta;
+	
+	//Value and level columns, the level column is written only for the kinds with the LEVEL_VALUE layout
+	private final XorColumn values;
+	private final XorColumn levels;
+	private final boolean hasLevel;
+	
+	//Number of samples and range of their timestamps
+	private int count;
+	private long minTimestamp;
+	private long maxTimestamp;
+	
+	/**
+	 * Class constructor.
+	 * @param capacity expected number of samples of a segment, used to size the buffers
+	 * @param hasLevel true if the samples have a level
+	 */
+	SegmentEncoder(int capacity, boolean hasLevel) {
+		this.timestamps = new BitOutput(capacity * 2);
+		this.values = new XorColumn(capacity * 2);
+		this.levels = new XorColumn(hasLevel ? capacity * 2 : 0);
+		this.hasLevel = hasLevel;
+		reset();
+	}
+	
+	/**
+	 * Appends a sample to the segment.
+	 * @param timestamp of the sample in milliseconds
+	 * @param value of the sample
+	 * @param level of the sample, ignored if the samples have no level
+	 */
+	void add(long timestamp, float value, float level) {
+		
+		boolean first = count == 0;
+		
+		if(first) {
+			timestamps.writeBits(timestamp, 64);
+			previousDelta = 0;
+			minTimestamp = timestamp;
+			maxTimestamp = timestamp;
+		} else {
+			long delta = timestamp - previousTimestamp;
+			writeDeltaOfDelta(delta - previousDelta);
+			previousDelta = delta;
+			minTimestamp = Math.min(minTimestamp, timestamp);
+			maxTimestamp = Math.max(maxTimestamp, timestamp);
+		}
+		previousTimestamp = timestamp;
+		
+		values.add(value, first);
+		if(hasLevel) {
+			levels.add(level, first);
+		}
+		count++;
+	}
+	
+	private void writeDeltaOfDelta(long deltaOfDelta) {
+		
+		if(deltaOfDelta == 0) {
+			timestamps.writeBit(false);
+		} else if(fits(deltaOfDelta, 7)) {
+			timestamps.writeBits(0x2, 2);
+			timestamps.writeBits(deltaOfDelta, 7);
+		} else if(fits(deltaOfDelta, 9)) {
+			timestamps.writeBits(0x6, 3);
+			timestamps.writeBits(deltaOfDelta, 9);
+		} else if(fits(deltaOfDelta, 12)) {
+			timestamps.writeBits(0xe, 4);
+			timestamps.writeBits(deltaOfDelta, 12);
+		} else {
+			timestamps.writeBits(0xf, 4);
+			timestamps.writeBits(deltaOfDelta, 64);
+		}
+	}
+	
+	/**
+	 * @return true if the value can be represented in two's complement with the passed number of bits.
+	 */
+	private static boolean fits(long value, int bits) {
+		return value >= -(1L << (bits - 1)) && value < (1L << (bits - 1));
+	}
+	
+	int size() {
+		return count;
+	}
+	
+	boolean isEmpty() {
+		return count == 0;
+	}
+	
+	/**
+	 * @return the segment containing the samples added since the last reset, ready to be written.
+	 */
+	ByteBuffer toSegment() {
+		
+		int timestampBytes = timestamps.byteLength();
+		int valueBytes = values.output.byteLength();
+		int levelBytes = hasLevel ? levels.output.byteLength() : 0;
+		
+		CRC32 crc = new CRC32();
+		crc.update(timestamps.buffer(), 0, timestampBytes);
+		crc.update(values.output.buffer(), 0, valueBytes);
+		crc.update(levels.output.buffer(), 0, levelBytes);
+		
+		ByteBuffer segment = ByteBuffer.allocate(HEADER_SIZE + timestampBytes + valueBytes + levelBytes);
+		segment.putInt(MAGIC);
+		segment.putInt(count);
+		segment.putLong(minTimestamp);
+		segment.putLong(maxTimestamp);
+		segment.putInt(timestampBytes);
+		segment.putInt(valueBytes);
+		segment.putInt(levelBytes);
+		segment.putInt((int) crc.getValue());
+		segment.put(timestamps.buffer(), 0, timestampBytes);
+		segment.put(values.output.buffer(), 0, valueBytes);
+		segment.put(levels.output.buffer(), 0, levelBytes);
+		segment.flip();
+		return segment;
+	}
+	
+	/**
+	 * Discards the samples, keeping the buffers for the next segment.
+	 */
+	void reset() {
+		timestamps.reset();
+		values.reset();
+		levels.reset();
+		count = 0;
+		previousTimestamp = 0;
+		previousDelta = 0;
+		minTimestamp = 0;
+		maxTimestamp = 0;
+	}
+}
@@ -0,0 +1,196 @@
+package it.unipi.iot.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import it.unipi.iot.storage.SegmentDecoder.Header;
+
+/**
+ * Append-only file containing the samples of a table of an aquarium, as a sequence of segments written by the
+ * {@link SegmentEncoder}. <br>
+ * The samples are encoded in memory in the open segment, that is sealed and appended to the file when it reaches the
+ * configured number of samples or when {@link #seal()} is called. A segment truncated or corrupted by a crash during its
+ * writing is discarded when the file is opened.
+ * 
+ * @author Fabi8997
+ */
+class SeriesFile {
+	
+	private final File path;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	
+	//Position of the end of the last valid segment
+	private long end;
+	
+	//Open segment and number of samples after which it is sealed
+	private final SegmentEncoder encoder;
+	private final int segmentPoints;
+	
+	/**
+	 * Opens the file, creating it if it does not exist, and discards the incomplete segments at its end.
+	 * @param path path of the file
+	 * @param segmentPoints number of samples of a segment
+	 * @param hasLevel true if the samples have a level
+	 * @throws IOException if the file cannot be opened
+	 */
+	SeriesFile(File path, int segmentPoints, boolean hasLevel) throws IOException {
+		
+		this.path = path;
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = file.getChannel();
+		this.segmentPoints = Math.max(1, segmentPoints);
+		this.encoder = new SegmentEncoder(this.segmentPoints, hasLevel);
+		
+		//Look for the end of the last valid segment
+		ByteBuffer headerBuffer = ByteBuffer.allocate(SegmentEncoder.HEADER_SIZE);
+		long position = 0;
+		while(true) {
+			Header header = readHeader(headerBuffer, position);
+			if(header == null) {
+				break;
+			}
+			
+			byte[] columns = readColumns(header, position);
+			if(columns == null || !SegmentDecoder.verify(header, columns)) {
+				break;
+			}
+			position += SegmentEncoder.HEADER_SIZE + header.columnsSize();
+		}
+		
+		this.end = position;
+		if(channel.size() > end) {
+			channel.truncate(end);
+		}
+	}
+	
+	/**
+	 * @return the header of the segment at the passed position, or null if there is no valid header.
+	 */
+	private Header readHeader(ByteBuffer headerBuffer, long position) throws IOException {
+		headerBuffer.clear();
+		if(!readFully(headerBuffer, position)) {
+			return null;
+		}
+		headerBuffer.flip();
+		return SegmentDecoder.readHeader(headerBuffer);
+	}
+	
+	/**
+	 * @return the columns of the segment at the passed position, or null if the file ends before them.
+	 */
+	private byte[] readColumns(Header header, long position) throws IOException {
+		byte[] columns = new byte[header.columnsSize()];
+		if(!readFully(ByteBuffer.wrap(columns), position + SegmentEncoder.HEADER_SIZE)) {
+			return null;
+		}
+		return columns;
+	}
+	
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0) {
+				return false;
+			}
+			position += read;
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds a sample to the open segment, sealing it if it is full.
+	 * @throws IOException if the segment cannot be written
+	 */
+	synchronized void append(long timestamp, float value, float level) throws IOException {
+		encoder.add(timestamp, value, level);
+		if(encoder.size() >= segmentPoints) {
+			seal();
+		}
+	}
+	
+	/**
+	 * Appends the open segment to the file and forces it on the disk.
+	 * @throws IOException if the segment cannot be written, in this case the samples are kept in the open segment
+	 */
+	synchronized void seal() throws IOException {
+		
+		if(encoder.isEmpty()) {
+			return;
+		}
+		
+		ByteBuffer segment = encoder.toSegment();
+		int length = segment.remaining();
+		long position = end;
+		while(segment.hasRemaining()) {
+			position += channel.write(segment, position);
+		}
+		channel.force(false);
+		
+		end += length;
+		encoder.reset();
+	}
+	
+	/**
+	 * Passes to the visitor the samples in the range, reading sequentially the segments of the file and then the open one.
+	 * The segments outside the range are skipped using their header, without decoding them.
+	 * @param from first timestamp of the range, included
+	 * @param to last timestamp of the range, excluded
+	 * @param visitor receives the samples
+	 * @throws IOException if the file cannot be read
+	 */
+	void scan(long from, long to, SampleVisitor visitor) throws IOException {
+		
+		//The sealed segments and a copy of the open one are taken together, so no sample is missed by a concurrent seal
+		long sealedEnd;
+		ByteBuffer openSegment = null;
+		synchronized(this) {
+			sealedEnd = end;
+			if(!encoder.isEmpty()) {
+				openSegment = encoder.toSegment();
+			}
+		}
+		
+		ByteBuffer headerBuffer = ByteBuffer.allocate(SegmentEncoder.HEADER_SIZE);
+		long position = 0;
+		while(position < sealedEnd) {
+			
+			Header header = readHeader(headerBuffer, position);
+			if(header == null) {
+				throw new IOException("Corrupted segment at " + position + " of " + path);
+			}
+			
+			if(header.maxTimestamp >= from && header.minTimestamp < to) {
+				byte[] columns = readColumns(header, position);
+				if(columns == null) {
+					throw new IOException("Truncated segment at " + position + " of " + path);
+				}
+				SegmentDecoder.decode(header, columns, from, to, visitor);
+			}
+			position += SegmentEncoder.HEADER_SIZE + header.columnsSize();
+		}
+		
+		if(openSegment != null) {
+			Header header = SegmentDecoder.readHeader(openSegment);
+			byte[] columns = new byte[header.columnsSize()];
+			openSegment.get(columns);
+			SegmentDecoder.decode(header, columns, from, to, visitor);
+		}
+	}
+	
+	/**
+	 * Seals the open segment and closes the file.
+	 * @throws IOException
+	 */
+	synchronized void close() throws IOException {
+		try {
+			seal();
+		} finally {
+			channel.close();
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package it.unipi.iot.storage;
+
+/**
+ * Backends in which the samples can be stored. <br>
+ * - MYSQL: the MySQL database, one table for each kind of sample <br>
+ * - FILE: local files with compressed columnar segments, one file for each table and aquarium, that need no database server
+ * 
+ * @author Fabi8997
+ */
+public enum StorageBackend {
+	MYSQL,
+	FILE;
+	
+	/**
+	 * Returns the backend with the given name, ignoring the case. If the name is null or unknown the MYSQL backend is returned,
+	 * since it is the original storage of the application.
+	 * @param name name of the backend read from the configuration file
+	 * @return the corresponding backend
+	 */
+	public static StorageBackend fromString(String name) {
+		if(name != null) {
+			for(StorageBackend backend : values()) {
+				if(backend.name().equalsIgnoreCase(name.trim())) {
+					return backend;
+				}
+			}
+		}
+		return MYSQL;
+	}
+}
@@ -0,0 +1,75 @@
+package it.unipi.iot.storage;
+
+import java.util.List;
+
+import it.unipi.iot.metrics.Counter;
+import it.unipi.iot.metrics.LatencyHistogram;
+import it.unipi.iot.metrics.MetricsRegistry;
+
+/**
+ * Storage that measures the duration of the inserts of another storage and counts the failed ones, in the metrics
+ * storage_insert_seconds and storage_insert_failures_total. The reads and the closing are forwarded without measuring them.
+ * 
+ * @author Fabi8997
+ */
+public class TimedSampleStore implements SampleStore {
+	
+	private static final LatencyHistogram INSERT_LATENCY = MetricsRegistry.DEFAULT.histogram("storage_insert_seconds",
+			"Duration of the inserts in the storage of the samples.");
+	private static final Counter INSERT_FAILURES = MetricsRegistry.DEFAULT.counter("storage_insert_failures_total",
+			"Inserts in the storage of the samples that failed.");
+	
+	private final SampleStore store;
+	
+	/**
+	 * Class constructor.
+	 * @param store storage measured
+	 */
+	public TimedSampleStore(SampleStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * Records the duration and the result of an insert.
+	 */
+	private static boolean measured(long start, boolean inserted) {
+		INSERT_LATENCY.recordSince(start);
+		if(!inserted) {
+			INSERT_FAILURES.increment();
+		}
+		return inserted;
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float value, long timestamp) {
+		long start = System.nanoTime();
+		return measured(start, store.insertSample(aquariumId, kind, value, timestamp));
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, float level, float value, long timestamp) {
+		long start = System.nanoTime();
+		return measured(start, store.insertSample(aquariumId, kind, level, value, timestamp));
+	}
+	
+	@Override
+	public boolean insertSample(String aquariumId, SampleKind kind, boolean active, long timestamp) {
+		long start = System.nanoTime();
+		return measured(start, store.insertSample(aquariumId, kind, active, timestamp));
+	}
+	
+	@Override
+	public List<String> aquariums(SampleKind kind) {
+		return store.aquariums(kind);
+	}
+	
+	@Override
+	public boolean latest(SampleKind kind, String aquariumId, int count, SampleVisitor visitor) {
+		return store.latest(kind, aquariumId, count, visitor);
+	}
+	
+	@Override
+	public void close() {
+		store.close();
+	}
+}
@@ -1,9 +1,11 @@
 package it.unipi.iot.temperature;
 
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import it.unipi.iot.json.JSONFloatDecoder;
+import it.unipi.iot.log.Colors;
+import it.unipi.iot.log.Logger;
+
 /**
  * Class that represent a temperature sample, this sample is sensed by the temperature sensor and sent through a MQTT message to the broker.
  * This class allows to parse the JSON string sent by the sensor and offers the methods to insert the sample inside the DB.
@@ -11,6 +13,11 @@ import org.json.simple.parser.ParseException;
  */
 public class TemperatureSample {
 	
+	private static final Logger LOGGER = new Logger("temperatureSample", Colors.ANSI_YELLOW);
+	
+	//Decoder shared by all the samples, it extracts the value associated to the key temperature
+	private static final JSONFloatDecoder DECODER = new JSONFloatDecoder("temperature");
+	
 	
 	/**
 	 * temperature value present inside the JSON string sent by the sensor
@@ -27,19 +34,33 @@ public class TemperatureSample {
 	public TemperatureSample(String JSONString) {
 		try {
 			
-		
-			JSONParser parser = new JSONParser();
-			JSONObject temperatureJSONObject= (JSONObject) parser.parse(JSONString);
-			
 			//Initialize the value of temperatureValue with the value associated to the temperature key
-			this.temperatureValue = new Float((Double)temperatureJSONObject.get("temperature"));
+			this.temperatureValue = DECODER.decode(JSONString.getBytes());
 			
 		} catch (ParseException e) {
-			System.out.println("[temperatureSample] Error during the parsing from JSON to temperatureSample object.");
-			e.printStackTrace();
+			LOGGER.error("Error during the parsing from JSON to temperatureSample object.", e);
 		}
 	}
 	
+	/**
+	 * Constructor of the class TemperatureSample that reads the value directly from the bytes of the MQTT payload.
+	 * @param payload bytes of the JSON document published in the topic "temperature"
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key temperature
+	 */
+	public TemperatureSample(byte[] payload) throws ParseException {
+		this.temperatureValue = DECODER.decode(payload);
+	}
+	
+	/**
+	 * Reads the value associated to the key temperature directly from the bytes of the MQTT payload, without creating any object.
+	 * @param payload bytes of the JSON document published in the topic "temperature"
+	 * @return the temperature value
+	 * @throws ParseException if the document is malformed or does not contain a decimal value associated to the key temperature
+	 */
+	public static float decode(byte[] payload) throws ParseException {
+		return DECODER.decode(payload);
+	}
+	
 	
 
 	/**
@@ -52,12 +73,9 @@ public class TemperatureSample {
 
 
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public String toString() {
-		JSONObject jsonObject = new JSONObject();
-		jsonObject.put("temperature", this.temperatureValue);
-		return jsonObject.toJSONString();
+		return "{\"temperature\":" + this.temperatureValue + "}";
 	}
 	
 	
@@ -0,0 +1,107 @@
+package it.unipi.iot.aquarium;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link SampleRingBuffer}: ranges, overwriting of the oldest samples, retention and aggregates.
+ *
+ * @author Fabi8997
+ */
+public class SampleRingBufferTest {
+	
+	private static final long HOUR = 3600000L;
+	
+	//Timestamps close to the current time, so the samples are not older than the retention
+	private long now;
+	
+	@Before
+	public void setUp() {
+		now = System.currentTimeMillis();
+	}
+	
+	@Test
+	public void returnsTheSamplesInTheHalfOpenRange() {
+		
+		SampleRingBuffer buffer = new SampleRingBuffer(10, HOUR);
+		for(int i = 0; i < 5; i++) {
+			buffer.add(now + i * 1000, i);
+		}
+		
+		HistoryRange range = buffer.range(now + 1000, now + 4000);
+		assertArrayEquals(new long[] {now + 1000, now + 2000, now + 3000}, range.getTimestamps());
+		assertArrayEquals(new float[] {1, 2, 3}, range.getValues(), 0);
+		
+		assertEquals(5, buffer.range(0, Long.MAX_VALUE).size());
+		assertEquals(0, buffer.range(now + 10000, Long.MAX_VALUE).size());
+		assertEquals(0, buffer.range(now + 3000, now + 3000).size());
+	}
+	
+	@Test
+	public void overwritesTheOldestSamplesWhenFull() {
+		
+		SampleRingBuffer buffer = new SampleRingBuffer(4, HOUR);
+		for(int i = 0; i < 11; i++) {
+			buffer.add(now + i * 1000, i);
+		}
+		
+		assertEquals(4, buffer.size());
+		HistoryRange range = buffer.range(0, Long.MAX_VALUE);
+		assertArrayEquals(new float[] {7, 8, 9, 10}, range.getValues(), 0);
+		
+		//The binary search works across the end of the arrays
+		range = buffer.range(now + 8000, now + 10000);
+		assertArrayEquals(new long[] {now + 8000, now + 9000}, range.getTimestamps());
+	}
+	
+	@Test
+	public void keepsTheBufferOrderedWhenASampleIsLate() {
+		
+		SampleRingBuffer buffer = new SampleRingBuffer(4, HOUR);
+		buffer.add(now + 2000, 1);
+		buffer.add(now + 1000, 2);
+		buffer.add(now + 3000, 3);
+		
+		assertArrayEquals(new long[] {now + 2000, now + 2000, now + 3000}, buffer.range(0, Long.MAX_VALUE).getTimestamps());
+	}
+	
+	@Test
+	public void ignoresTheSamplesOlderThanTheRetention() {
+		
+		SampleRingBuffer buffer = new SampleRingBuffer(10, HOUR);
+		buffer.add(now - 3 * HOUR, 1);
+		buffer.add(now - 2 * HOUR, 2);
+		buffer.add(now - 1000, 3);
+		buffer.add(now, 4);
+		
+		assertEquals(4, buffer.size());
+		assertArrayEquals(new float[] {3, 4}, buffer.range(0, Long.MAX_VALUE).getValues(), 0);
+		assertEquals(2, buffer.aggregate(0, Long.MAX_VALUE).getCount());
+	}
+	
+	@Test
+	public void aggregatesTheSamplesInTheRange() {
+		
+		SampleRingBuffer buffer = new SampleRingBuffer(3, HOUR);
+		buffer.add(now, 100);
+		buffer.add(now + 1000, 7.5f);
+		buffer.add(now + 2000, 6.5f);
+		buffer.add(now + 3000, 8.0f);
+		
+		HistoryAggregate aggregate = buffer.aggregate(0, Long.MAX_VALUE);
+		assertEquals(3, aggregate.getCount());
+		assertEquals(6.5f, aggregate.getMin(), 0);
+		assertEquals(8.0f, aggregate.getMax(), 0);
+		assertEquals(7.333333f, aggregate.getAvg(), 1e-5);
+		assertEquals(now + 1000, aggregate.getFirstTimestamp());
+		assertEquals(now + 3000, aggregate.getLastTimestamp());
+		assertEquals(8.0f, aggregate.getLast(), 0);
+		
+		assertSame(HistoryAggregate.EMPTY, buffer.aggregate(now + 4000, Long.MAX_VALUE));
+		assertSame(HistoryAggregate.EMPTY, new SampleRingBuffer(3, HOUR).aggregate(0, Long.MAX_VALUE));
+	}
+}
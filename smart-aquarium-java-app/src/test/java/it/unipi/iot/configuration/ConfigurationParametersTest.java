@@ -0,0 +1,50 @@
+package it.unipi.iot.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.Test;
+
+/**
+ * Tests of the {@link ConfigurationParameters}: a copy can be modified without affecting the published instance.
+ *
+ * @author Fabi8997
+ */
+public class ConfigurationParametersTest {
+	
+	@Test
+	public void copiesTheParameters() {
+		
+		ConfigurationParameters published = new ConfigurationParameters();
+		published.pHTopic = "pH";
+		published.temperatureKp = 1;
+		published.databasePoolSize = 4;
+		
+		ConfigurationParameters copy = published.copy();
+		assertEquals("pH", copy.pHTopic);
+		assertEquals(1, copy.temperatureKp, 0);
+		assertEquals(4, copy.databasePoolSize);
+		
+		copy.temperatureKp = 2;
+		copy.databasePoolSize = 8;
+		assertEquals(1, published.temperatureKp, 0);
+		assertEquals(4, published.databasePoolSize);
+	}
+	
+	@Test
+	public void copiesTheSensors() {
+		
+		SensorDefinition nitrate = new SensorDefinition();
+		nitrate.name = "nitrate";
+		nitrate.topic = "nitrate";
+		ConfigurationParameters published = new ConfigurationParameters();
+		published.sensors = new SensorDefinition[] {nitrate};
+		
+		ConfigurationParameters copy = published.copy();
+		assertNotSame(published.sensors, copy.sensors);
+		assertEquals("nitrate", copy.sensors[0].name);
+		
+		copy.sensors[0].topic = "sensors/nitrate";
+		assertEquals("nitrate", published.sensors[0].topic);
+	}
+}
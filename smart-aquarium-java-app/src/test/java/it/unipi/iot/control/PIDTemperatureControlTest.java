@@ -0,0 +1,127 @@
+package it.unipi.iot.control;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+
+/**
+ * Tests of the {@link PIDTemperatureControl}: hysteresis band, minimum dwell time and integral term.
+ *
+ * @author Fabi8997
+ */
+public class PIDTemperatureControlTest {
+	
+	private ConfigurationParameters configurationParameters;
+	
+	//Timestamps in the time base of System.nanoTime(), as passed by the control loop
+	private long start;
+	
+	@Before
+	public void setUp() {
+		
+		configurationParameters = new ConfigurationParameters();
+		configurationParameters.temperatureLowerBound = 24;
+		configurationParameters.temperatureUpperBound = 26;
+		configurationParameters.temperatureOptimalValue = 25;
+		configurationParameters.temperatureKp = 1;
+		configurationParameters.temperatureKi = 0;
+		configurationParameters.temperatureKd = 0;
+		configurationParameters.temperatureHysteresis = 1;
+		configurationParameters.temperatureMinDwellTime = 10000;
+		
+		start = System.nanoTime();
+	}
+	
+	private long at(long seconds) {
+		return start + TimeUnit.SECONDS.toNanos(seconds);
+	}
+	
+	@Test
+	public void staysIdleInsideTheHysteresisBand() {
+		
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.5f, at(0)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 24.2f, at(8)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.9f, at(16)));
+	}
+	
+	@Test
+	public void heatsAndCoolsOutsideTheHysteresisBand() {
+		
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		assertEquals(TemperatureAction.HEAT, control.decide(configurationParameters, 23.8f, at(0)));
+		assertEquals(TemperatureAction.HEAT, control.getAction());
+		
+		control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		assertEquals(TemperatureAction.COOL, control.decide(configurationParameters, 26.2f, at(0)));
+	}
+	
+	@Test
+	public void keepsTheStatusForTheDwellTime() {
+		
+		//Inside the bounds, so the change to COOL is not urgent
+		configurationParameters.temperatureKp = 2;
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.HEAT);
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.0f, at(0)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.8f, at(5)));
+		assertEquals(TemperatureAction.COOL, control.decide(configurationParameters, 25.8f, at(10)));
+	}
+	
+	@Test
+	public void turnsOffAtTheOptimalValueAfterTheDwellTime() {
+		
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		assertEquals(TemperatureAction.HEAT, control.decide(configurationParameters, 23.8f, at(0)));
+		
+		//The output is 0 but the heater has not pushed the temperature past the optimal value yet
+		assertEquals(TemperatureAction.HEAT, control.decide(configurationParameters, 25.0f, at(5)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.0f, at(10)));
+	}
+	
+	@Test
+	public void ignoresTheDwellTimeWhenUrgent() {
+		
+		//Past the optimal value with the heater on
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		assertEquals(TemperatureAction.HEAT, control.decide(configurationParameters, 23.8f, at(0)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 25.2f, at(1)));
+		
+		//Out of the bounds
+		assertEquals(TemperatureAction.COOL, control.decide(configurationParameters, 26.2f, at(2)));
+	}
+	
+	@Test
+	public void integratesASteadyError() {
+		
+		configurationParameters.temperatureKp = 0;
+		configurationParameters.temperatureKi = 0.1f;
+		configurationParameters.temperatureHysteresis = 0.5f;
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		
+		//0.5 C below the optimal value: the integral term exceeds the hysteresis after 10 seconds
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 24.5f, at(0)));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 24.5f, at(8)));
+		assertEquals(TemperatureAction.HEAT, control.decide(configurationParameters, 24.5f, at(16)));
+	}
+	
+	@Test
+	public void clampsTheIntegral() {
+		
+		//The integral term alone can ask for 1 C at most, less than the hysteresis
+		configurationParameters.temperatureKp = 0;
+		configurationParameters.temperatureKi = 0.1f;
+		configurationParameters.temperatureHysteresis = 2;
+		PIDTemperatureControl control = new PIDTemperatureControl(TemperatureAction.IDLE);
+		control.decide(configurationParameters, 24.9f, at(0));
+		assertEquals(TemperatureAction.IDLE, control.decide(configurationParameters, 24.9f, at(3600)));
+		
+		//Without the clamp the error accumulated in an hour below the optimal value would still ask for the heater
+		configurationParameters.temperatureHysteresis = 0.5f;
+		assertEquals(TemperatureAction.COOL, control.decide(configurationParameters, 25.5f, at(3800)));
+	}
+}
@@ -0,0 +1,223 @@
+package it.unipi.iot.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.unipi.iot.configuration.ConfigurationParameters;
+import it.unipi.iot.storage.SampleKind;
+
+/**
+ * Tests of the {@link DatabaseManager} on an in-memory H2 database in MYSQL mode: the rows rejected by the database are
+ * discarded without blocking the following ones, both when they are written and when the spool is replayed.
+ *
+ * @author Fabi8997
+ */
+public class DatabaseManagerTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	//A new database for each test, kept until the last connection is closed by tearDown()
+	private static int databases = 0;
+	
+	private String url;
+	private Connection connection;
+	private ConfigurationParameters configurationParameters;
+	private DatabaseManager databaseManager;
+	
+	@Before
+	public void setUp() throws SQLException {
+		
+		url = "jdbc:h2:mem:database-manager-test-" + (databases++) + ";MODE=MySQL";
+		connection = DriverManager.getConnection(url, "sa", "");
+		
+		configurationParameters = new ConfigurationParameters();
+		configurationParameters.pHDatabaseTableName = "PH";
+		configurationParameters.kHDatabaseTableName = "KH";
+		configurationParameters.temperatureDatabaseTableName = "Temperature";
+		configurationParameters.osmoticWaterTankDatabaseTableName = "OsmoticWaterTank";
+		configurationParameters.co2DispenserDatabaseTableName = "CO2Dispenser";
+		configurationParameters.fanDatabaseTableName = "Fan";
+		configurationParameters.heaterDatabaseTableName = "Heater";
+		configurationParameters.databaseUsername = "sa";
+		configurationParameters.databasePassword = "";
+		configurationParameters.databasePoolSize = 2;
+		configurationParameters.databaseBatchFlushInterval = 0;
+		configurationParameters.databaseReconnectInterval = 60000;
+		configurationParameters.spoolReplayBatchSize = 4;
+		configurationParameters.spoolFile = new File(folder.getRoot(), "samples.spool").getPath();
+		
+		//A pH is never above 14, a higher value is rejected by the constraint of the table
+		Statement statement = connection.createStatement();
+		for(SampleKind kind : SampleKind.values()) {
+			
+			String columns;
+			switch(kind.getLayout()) {
+			case LEVEL_VALUE:
+				columns = "level float NOT NULL, value float NOT NULL";
+				break;
+			case ACTIVE:
+				columns = "active tinyint(1) NOT NULL";
+				break;
+			default:
+				columns = (kind == SampleKind.PH) ? "value float NOT NULL CHECK (value <= 14)" : "value float NOT NULL";
+			}
+			
+			statement.execute("CREATE TABLE " + kind.getTable(configurationParameters) + " (id int NOT NULL AUTO_INCREMENT, "
+					+ "aquarium varchar(64) NOT NULL, timestamp timestamp NOT NULL, " + columns + ", PRIMARY KEY (id))");
+		}
+		statement.execute("CREATE TABLE SpoolCheckpoint (id tinyint NOT NULL, generation bigint NOT NULL, position bigint NOT NULL, "
+				+ "PRIMARY KEY (id))");
+		statement.close();
+	}
+	
+	@After
+	public void tearDown() throws SQLException {
+		if(databaseManager != null) {
+			databaseManager.close();
+		}
+		connection.close();
+	}
+	
+	private DatabaseManager open(int batchSize) {
+		configurationParameters.databaseBatchSize = batchSize;
+		
+		//Once closed the database cannot be opened again, as a server that is not reachable
+		databaseManager = new DatabaseManager(configurationParameters, url + ";IFEXISTS=TRUE");
+		return databaseManager;
+	}
+	
+	/**
+	 * @return the values stored in the table, in order of insertion.
+	 */
+	private List<Float> values(String table) throws SQLException {
+		
+		List<Float> values = new ArrayList<Float>();
+		Statement statement = connection.createStatement();
+		ResultSet resultSet = statement.executeQuery("SELECT value FROM " + table + " ORDER BY id");
+		while(resultSet.next()) {
+			values.add(resultSet.getFloat(1));
+		}
+		statement.close();
+		return values;
+	}
+	
+	private static List<Float> list(float... values) {
+		List<Float> list = new ArrayList<Float>();
+		for(float value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+	
+	@Test
+	public void discardsARejectedRowWithoutBatching() throws SQLException {
+		
+		DatabaseManager manager = open(1);
+		assertTrue(manager.insertSample("default", SampleKind.PH, 7.1f, 1000));
+		assertFalse(manager.insertSample("default", SampleKind.PH, 99f, 2000));
+		assertTrue(manager.insertSample("default", SampleKind.PH, 7.3f, 3000));
+		
+		assertTrue(manager.isOnline());
+		assertEquals(list(7.1f, 7.3f), values("PH"));
+	}
+	
+	@Test
+	public void writesTheOtherRowsOfARejectedBatch() throws SQLException {
+		
+		DatabaseManager manager = open(8);
+		manager.insertSample("default", SampleKind.PH, 7.1f, 1000);
+		manager.insertSample("default", SampleKind.KH, 5.5f, 1000);
+		manager.insertSample("default", SampleKind.PH, 99f, 2000);
+		manager.insertSample("default", SampleKind.PH, 7.3f, 3000);
+		assertTrue(manager.flush());
+		
+		assertTrue(manager.isOnline());
+		assertEquals(list(7.1f, 7.3f), values("PH"));
+		assertEquals(list(5.5f), values("KH"));
+		
+		//The next batches are written in the DB, not in the spool
+		manager.insertSample("default", SampleKind.PH, 7.4f, 4000);
+		assertTrue(manager.flush());
+		assertEquals(list(7.1f, 7.3f, 7.4f), values("PH"));
+	}
+	
+	@Test
+	public void discardsTheRowsOfAMissingTable() throws SQLException {
+		
+		DatabaseManager manager = open(8);
+		Statement statement = connection.createStatement();
+		statement.execute("ALTER TABLE KH RENAME TO KH_OLD");
+		statement.close();
+		
+		manager.insertSample("default", SampleKind.KH, 5.5f, 1000);
+		manager.insertSample("default", SampleKind.PH, 7.1f, 1000);
+		manager.insertSample("default", SampleKind.KH, 5.6f, 2000);
+		assertTrue(manager.flush());
+		
+		assertTrue(manager.isOnline());
+		assertEquals(list(7.1f), values("PH"));
+	}
+	
+	@Test
+	public void spoolsTheRowsWhenTheConnectionIsLost() throws IOException, SQLException {
+		
+		DatabaseManager manager = open(8);
+		manager.insertSample("default", SampleKind.PH, 7.1f, 1000);
+		manager.insertSample("default", SampleKind.PH, 99f, 2000);
+		
+		//Closes the in-memory database and all its connections
+		Statement statement = connection.createStatement();
+		statement.execute("SHUTDOWN");
+		
+		assertTrue(manager.flush());
+		assertFalse(manager.isOnline());
+		manager.close();
+		databaseManager = null;
+		
+		//Every row is kept, also the one that would be rejected
+		SampleSpool spool = new SampleSpool(configurationParameters.spoolFile);
+		TableBatch[] batches = {new TableBatch("PH", SampleKind.PH.getLayout(), 4)};
+		spool.read(SampleSpool.HEADER_SIZE, 100, batches);
+		spool.close();
+		assertEquals(2, batches[0].size());
+	}
+	
+	@Test
+	public void skipsTheRejectedRowsWhenReplayingTheSpool() throws IOException, SQLException {
+		
+		//Rows left in the spool by a previous execution, the second one is rejected
+		SampleSpool spool = new SampleSpool(configurationParameters.spoolFile);
+		float[] values = {7.1f, 99f, 7.2f, 7.3f, 7.4f, 7.5f};
+		for(int i = 0; i < values.length; i++) {
+			spool.append(SampleKind.PH.ordinal(), "default", 1000L * i, values[i], 0);
+		}
+		spool.close();
+		
+		DatabaseManager manager = open(8);
+		assertTrue(manager.isOnline());
+		assertEquals(list(7.1f, 7.2f, 7.3f, 7.4f, 7.5f), values("PH"));
+		
+		//The spool has been emptied, the new rows are written in the DB
+		manager.insertSample("default", SampleKind.PH, 7.6f, 6000);
+		assertTrue(manager.flush());
+		assertEquals(6, values("PH").size());
+	}
+}
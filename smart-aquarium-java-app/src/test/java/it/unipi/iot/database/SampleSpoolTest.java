@@ -0,0 +1,281 @@
+package it.unipi.iot.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.unipi.iot.storage.SampleKind.Layout;
+
+/**
+ * Tests of the {@link SampleSpool}: order of the records, recovery of a truncated or corrupted tail and generations.
+ *
+ * @author Fabi8997
+ */
+public class SampleSpoolTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private String path;
+	
+	@Before
+	public void setUp() {
+		path = new File(folder.getRoot(), "samples.spool").getPath();
+	}
+	
+	/**
+	 * Prepared statement that records the rows bound by a {@link TableBatch}.
+	 */
+	private static class RecordingStatement implements InvocationHandler {
+		
+		final List<Object[]> rows = new ArrayList<Object[]>();
+		private Object[] row = new Object[4];
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if(name.startsWith("set")) {
+				row[(Integer) args[0] - 1] = args[1];
+			} else if(name.equals("addBatch")) {
+				rows.add(row);
+				row = new Object[4];
+			} else if(name.equals("executeBatch")) {
+				int[] results = new int[rows.size()];
+				for(int i = 0; i < results.length; i++) {
+					results[i] = 1;
+				}
+				return results;
+			}
+			return null;
+		}
+		
+		PreparedStatement statement() {
+			return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {PreparedStatement.class}, this);
+		}
+	}
+	
+	private static TableBatch[] batches() {
+		return new TableBatch[] {
+				new TableBatch("PH", Layout.VALUE, 4),
+				new TableBatch("CO2Dispenser", Layout.LEVEL_VALUE, 4)
+		};
+	}
+	
+	private static List<Object[]> rows(TableBatch batch) throws SQLException {
+		RecordingStatement recording = new RecordingStatement();
+		batch.execute(recording.statement());
+		return recording.rows;
+	}
+	
+	private static void assertRow(Object[] row, String aquariumId, long timestamp, float value) {
+		assertEquals(aquariumId, row[0]);
+		assertEquals(new Timestamp(timestamp), row[1]);
+		assertEquals(value, (Float) row[2], 0);
+	}
+	
+	@Test
+	public void readsTheRecordsInOrder() throws IOException, SQLException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		assertTrue(spool.isEmpty());
+		for(int i = 0; i < 10; i++) {
+			spool.append(0, "aquarium-" + (i % 3), 1000L * i, 7 + i / 10f, 0);
+		}
+		spool.append(1, "aquarium-0", 5000L, 12.5f, 80f);
+		assertFalse(spool.isEmpty());
+		
+		TableBatch[] batches = batches();
+		assertEquals(spool.getEnd(), spool.read(SampleSpool.HEADER_SIZE, 100, batches));
+		spool.close();
+		
+		List<Object[]> ph = rows(batches[0]);
+		assertEquals(10, ph.size());
+		for(int i = 0; i < 10; i++) {
+			assertRow(ph.get(i), "aquarium-" + (i % 3), 1000L * i, 7 + i / 10f);
+		}
+		
+		//The level is bound before the value
+		List<Object[]> co2 = rows(batches[1]);
+		assertEquals(1, co2.size());
+		assertEquals("aquarium-0", co2.get(0)[0]);
+		assertEquals(80f, (Float) co2.get(0)[2], 0);
+		assertEquals(12.5f, (Float) co2.get(0)[3], 0);
+	}
+	
+	@Test
+	public void readsInChunksFromAPosition() throws IOException, SQLException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		for(int i = 0; i < 7; i++) {
+			spool.append(0, "default", i, i, 0);
+		}
+		
+		//Replay in batches of 3 records, as after a checkpoint
+		long position = SampleSpool.HEADER_SIZE;
+		int chunks = 0;
+		List<Object[]> replayed = new ArrayList<Object[]>();
+		while(position < spool.getEnd()) {
+			TableBatch[] batches = batches();
+			position = spool.read(position, 3, batches);
+			replayed.addAll(rows(batches[0]));
+			chunks++;
+		}
+		spool.close();
+		
+		assertEquals(3, chunks);
+		assertEquals(7, replayed.size());
+		for(int i = 0; i < 7; i++) {
+			assertRow(replayed.get(i), "default", i, i);
+		}
+	}
+	
+	@Test
+	public void keepsTheRecordsAfterReopening() throws IOException, SQLException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		spool.append(0, "default", 1L, 7.1f, 0);
+		spool.append(0, "default", 2L, 7.2f, 0);
+		long end = spool.getEnd();
+		long generation = spool.getGeneration();
+		spool.close();
+		
+		spool = new SampleSpool(path);
+		assertEquals(end, spool.getEnd());
+		assertEquals(generation, spool.getGeneration());
+		
+		//New records follow the old ones
+		spool.append(0, "default", 3L, 7.3f, 0);
+		TableBatch[] batches = batches();
+		spool.read(SampleSpool.HEADER_SIZE, 100, batches);
+		spool.close();
+		
+		List<Object[]> rows = rows(batches[0]);
+		assertEquals(3, rows.size());
+		assertRow(rows.get(2), "default", 3L, 7.3f);
+	}
+	
+	@Test
+	public void discardsATruncatedTail() throws IOException, SQLException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		spool.append(0, "default", 1L, 7.1f, 0);
+		long complete = spool.getEnd();
+		spool.append(0, "default", 2L, 7.2f, 0);
+		long end = spool.getEnd();
+		spool.close();
+		
+		//Crash in the middle of the second append
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		file.setLength(end - 5);
+		file.close();
+		
+		spool = new SampleSpool(path);
+		assertEquals(complete, spool.getEnd());
+		assertEquals(complete, new File(path).length());
+		
+		TableBatch[] batches = batches();
+		spool.read(SampleSpool.HEADER_SIZE, 100, batches);
+		spool.close();
+		
+		List<Object[]> rows = rows(batches[0]);
+		assertEquals(1, rows.size());
+		assertRow(rows.get(0), "default", 1L, 7.1f);
+	}
+	
+	@Test
+	public void discardsACorruptedTail() throws IOException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		spool.append(0, "default", 1L, 7.1f, 0);
+		long complete = spool.getEnd();
+		spool.append(0, "default", 2L, 7.2f, 0);
+		long end = spool.getEnd();
+		spool.close();
+		
+		//Flip a bit of the value of the last record, the CRC does not match anymore
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		file.seek(end - 5);
+		int b = file.read();
+		file.seek(end - 5);
+		file.write(b ^ 0x01);
+		file.close();
+		
+		spool = new SampleSpool(path);
+		assertEquals(complete, spool.getEnd());
+		spool.close();
+	}
+	
+	@Test
+	public void startsANewGenerationWhenReset() throws IOException {
+		
+		SampleSpool spool = new SampleSpool(path);
+		long generation = spool.getGeneration();
+		spool.append(0, "default", 1L, 7.1f, 0);
+		spool.reset();
+		
+		assertTrue(spool.isEmpty());
+		assertEquals(SampleSpool.HEADER_SIZE, spool.getEnd());
+		assertEquals(generation + 1, spool.getGeneration());
+		spool.close();
+		
+		//The generation is stored in the header
+		spool = new SampleSpool(path);
+		assertTrue(spool.isEmpty());
+		assertEquals(generation + 1, spool.getGeneration());
+		spool.close();
+	}
+	
+	@Test
+	public void rejectsAFileThatIsNotASpool() throws IOException {
+		
+		FileOutputStream output = new FileOutputStream(path);
+		output.write("this is not a spool file".getBytes("UTF-8"));
+		output.close();
+		
+		try {
+			new SampleSpool(path).close();
+			fail("Opened a file that is not a spool");
+		} catch (IOException e) {
+			//Expected
+		}
+	}
+	
+	@Test
+	public void rejectsIdentifiersTooLong() throws IOException {
+		
+		StringBuilder identifier = new StringBuilder();
+		for(int i = 0; i < 600; i++) {
+			identifier.append('a');
+		}
+		
+		SampleSpool spool = new SampleSpool(path);
+		try {
+			spool.append(0, identifier.toString(), 1L, 7.1f, 0);
+			fail("Appended an identifier longer than a record");
+		} catch (IOException e) {
+			//Expected, nothing has been written
+			assertTrue(spool.isEmpty());
+		} finally {
+			spool.close();
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package it.unipi.iot.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link JSONFloatDecoder}, using JSONParser as the reference on the documents that both accept.
+ *
+ * @author Fabi8997
+ */
+public class JSONFloatDecoderTest {
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final JSONFloatDecoder decoder = new JSONFloatDecoder("pH");
+	
+	private float decode(String document) throws ParseException {
+		return decoder.decode(document.getBytes(UTF8));
+	}
+	
+	private void assertRejected(String document) {
+		try {
+			decode(document);
+			fail("Accepted " + document);
+		} catch (ParseException e) {
+			//Expected
+		}
+	}
+	
+	@Test
+	public void decodesTheValueOfTheKey() throws ParseException {
+		assertEquals(7.53f, decode("{\"pH\":7.53}"), 0);
+		assertEquals(7.53f, decode(" {\n\t\"pH\" : 7.53 \r\n} "), 0);
+		assertEquals(-0.5f, decode("{\"pH\":-0.5}"), 0);
+		assertEquals(1.5e-3f, decode("{\"pH\":1.5E-3}"), 0);
+		assertEquals(2e2f, decode("{\"pH\":2e+2}"), 0);
+	}
+	
+	@Test
+	public void skipsTheOtherMembers() throws ParseException {
+		assertEquals(6.9f, decode("{\"id\":\"aq-1\",\"pH\":6.9,\"ok\":true}"), 0);
+		assertEquals(6.9f, decode("{\"a\":{\"b\":[1,2.5,{\"pH\":1.0}],\"c\":null},\"pH\":6.9,\"d\":false}"), 0);
+		assertEquals(6.9f, decode("{\"s\":\"x\\\"y\\\\z\\u00e8\",\"pH\":6.9}"), 0);
+	}
+	
+	@Test
+	public void matchesEscapedKeys() throws ParseException {
+		assertEquals(7.1f, decode("{\"\\u0070H\":7.1}"), 0);
+		assertRejected("{\"pHx\":7.1}");
+		assertRejected("{\"p\":7.1}");
+	}
+	
+	@Test
+	public void lastDuplicatedKeyWins() throws ParseException {
+		assertEquals(8.2f, decode("{\"pH\":7.1,\"pH\":8.2}"), 0);
+	}
+	
+	@Test
+	public void decodesAPortionOfTheBuffer() throws ParseException {
+		byte[] payload = "xx{\"pH\":7.25}yy".getBytes(UTF8);
+		assertEquals(7.25f, decoder.decode(payload, 2, payload.length - 4), 0);
+	}
+	
+	@Test
+	public void rejectsMissingKeysAndValuesThatAreNotDecimal() {
+		assertRejected("{}");
+		assertRejected("{\"kH\":7.5}");
+		assertRejected("{\"pH\":7}");
+		assertRejected("{\"pH\":\"7.5\"}");
+		assertRejected("{\"pH\":null}");
+		assertRejected("{\"pH\":[7.5]}");
+	}
+	
+	@Test
+	public void rejectsMalformedDocuments() {
+		assertRejected("");
+		assertRejected("[7.5]");
+		assertRejected("{\"pH\":7.5");
+		assertRejected("{\"pH\":7.5}}");
+		assertRejected("{\"pH\":7.5}{}");
+		assertRejected("{\"pH\" 7.5}");
+		assertRejected("{\"pH\":7.}");
+		assertRejected("{\"pH\":-.5}");
+		assertRejected("{\"pH\":1e}");
+		assertRejected("{\"s\":\"abc,\"pH\":7.5}");
+		assertRejected("{\"s\":\"\\x\",\"pH\":7.5}");
+		assertRejected("{\"s\":\"\\u12g4\",\"pH\":7.5}");
+		assertRejected("{\"a\":tru,\"pH\":7.5}");
+	}
+	
+	@Test
+	public void isStricterThanJSONParserOnTheCommas() throws ParseException {
+		String[] documents = {
+				"{\"pH\":7.53,}",
+				"{\"pH\":1.5 \"a\":1}",
+				"{,\"pH\":1.5}",
+				"{\"a\":[1,],\"pH\":1.5}"
+		};
+		for(String document : documents) {
+			
+			//Accepted by JSONParser, see the documentation of the decoder
+			new JSONParser().parse(document);
+			assertRejected(document);
+		}
+	}
+	
+	@Test
+	public void convertsLikeJSONParser() throws ParseException {
+		
+		Random random = new Random(42);
+		for(int i = 0; i < 10000; i++) {
+			
+			String number;
+			switch(i % 4) {
+			case 0:
+				number = String.valueOf(random.nextFloat() * 14);
+				break;
+			case 1:
+				number = String.valueOf(random.nextDouble() * 1000 - 500);
+				break;
+			case 2:
+				number = String.format("%.2f", random.nextFloat() * 14).replace(',', '.');
+				break;
+			default:
+				number = (random.nextInt(2000000) - 1000000) + "e" + (random.nextInt(80) - 40);
+			}
+			
+			String document = "{\"pH\":" + number + "}";
+			JSONObject expected = (JSONObject) new JSONParser().parse(document);
+			assertEquals(document, ((Double) expected.get("pH")).floatValue(), decode(document), 0);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package it.unipi.iot.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Round-trip tests of the {@link SegmentEncoder} and the {@link SegmentDecoder}.
+ *
+ * @author Fabi8997
+ */
+public class SegmentCodecTest {
+	
+	/**
+	 * Collects the decoded samples.
+	 */
+	private static class Samples implements SampleVisitor {
+		
+		final List<Long> timestamps = new ArrayList<Long>();
+		final List<Float> values = new ArrayList<Float>();
+		final List<Float> levels = new ArrayList<Float>();
+		
+		@Override
+		public void visit(long timestamp, float value, float level) {
+			timestamps.add(timestamp);
+			values.add(value);
+			levels.add(level);
+		}
+	}
+	
+	private static Samples decode(ByteBuffer segment, long from, long to) throws IOException {
+		
+		SegmentDecoder.Header header = SegmentDecoder.readHeader(segment);
+		assertNotNull(header);
+		byte[] columns = new byte[header.columnsSize()];
+		segment.get(columns);
+		assertTrue(SegmentDecoder.verify(header, columns));
+		
+		Samples samples = new Samples();
+		SegmentDecoder.decode(header, columns, from, to, samples);
+		return samples;
+	}
+	
+	/**
+	 * Encodes the samples and checks that they are decoded bit by bit.
+	 */
+	private static void assertRoundTrip(long[] timestamps, float[] values, float[] levels) throws IOException {
+		
+		SegmentEncoder encoder = new SegmentEncoder(4, levels != null);
+		for(int i = 0; i < timestamps.length; i++) {
+			encoder.add(timestamps[i], values[i], (levels != null) ? levels[i] : 0);
+		}
+		assertEquals(timestamps.length, encoder.size());
+		
+		Samples samples = decode(encoder.toSegment(), Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(timestamps.length, samples.timestamps.size());
+		for(int i = 0; i < timestamps.length; i++) {
+			assertEquals("timestamp " + i, timestamps[i], (long) samples.timestamps.get(i));
+			assertEquals("value " + i, Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(samples.values.get(i)));
+			float level = (levels != null) ? levels[i] : 0;
+			assertEquals("level " + i, Float.floatToRawIntBits(level), Float.floatToRawIntBits(samples.levels.get(i)));
+		}
+	}
+	
+	@Test
+	public void roundTripsEveryEncodingOfTheTimestamps() throws IOException {
+		
+		//Deltas of delta of 0, 7, 9, 12 and 64 bits, positive and negative, and timestamps going back
+		long[] timestamps = {1700000000000L, 1700000001000L, 1700000002000L, 1700000003050L, 1700000003990L,
+				1700000005200L, 1700000005300L, 1700000009000L, 1700000009000L, 1800000000000L, 1600000000000L,
+				1600000000001L, Long.MAX_VALUE / 2, 0L};
+		float[] values = new float[timestamps.length];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = 7 + i / 100f;
+		}
+		assertRoundTrip(timestamps, values, null);
+	}
+	
+	@Test
+	public void roundTripsEveryEncodingOfTheValues() throws IOException {
+		
+		//Repeated values, values in the window of the previous XOR and values that need a new window
+		float[] values = {7.5f, 7.5f, 7.51f, 7.52f, -7.52f, 0f, -0f, 1e-30f, 3.4e38f, Float.NaN, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.MIN_VALUE, 7.5f, 7.5f};
+		long[] timestamps = new long[values.length];
+		float[] levels = new float[values.length];
+		for(int i = 0; i < values.length; i++) {
+			timestamps[i] = 1000L * i;
+			levels[i] = 100 - (i % 3) * 0.25f;
+		}
+		assertRoundTrip(timestamps, values, levels);
+	}
+	
+	@Test
+	public void roundTripsRandomSeries() throws IOException {
+		
+		Random random = new Random(7);
+		for(int series = 0; series < 50; series++) {
+			
+			int count = 1 + random.nextInt(2000);
+			long[] timestamps = new long[count];
+			float[] values = new float[count];
+			float[] levels = new float[count];
+			long timestamp = random.nextLong() >>> 20;
+			float value = random.nextFloat() * 14;
+			for(int i = 0; i < count; i++) {
+				timestamp += (random.nextInt(10) == 0) ? random.nextInt(100000) - 5000 : 1000 + random.nextInt(20);
+				value = (random.nextInt(4) == 0) ? value : value + (float) random.nextGaussian() / 10;
+				timestamps[i] = timestamp;
+				values[i] = value;
+				levels[i] = random.nextInt(1000) / 10f;
+			}
+			assertRoundTrip(timestamps, values, (series % 2 == 0) ? levels : null);
+		}
+	}
+	
+	@Test
+	public void decodesOnlyTheSamplesInTheRange() throws IOException {
+		
+		SegmentEncoder encoder = new SegmentEncoder(16, false);
+		for(int i = 0; i < 10; i++) {
+			encoder.add(1000L * i, i, 0);
+		}
+		
+		Samples samples = decode(encoder.toSegment(), 3000, 6000);
+		assertEquals(3, samples.timestamps.size());
+		assertEquals(3000L, (long) samples.timestamps.get(0));
+		assertEquals(5f, samples.values.get(2), 0);
+	}
+	
+	@Test
+	public void writesTheRangeOfTheTimestampsInTheHeader() {
+		
+		SegmentEncoder encoder = new SegmentEncoder(16, false);
+		encoder.add(5000, 1, 0);
+		encoder.add(2000, 2, 0);
+		encoder.add(9000, 3, 0);
+		
+		SegmentDecoder.Header header = SegmentDecoder.readHeader(encoder.toSegment());
+		assertEquals(3, header.count);
+		assertEquals(2000, header.minTimestamp);
+		assertEquals(9000, header.maxTimestamp);
+		assertEquals(0, header.levelBytes);
+	}
+	
+	@Test
+	public void reusesTheEncoderAfterAReset() throws IOException {
+		
+		SegmentEncoder encoder = new SegmentEncoder(4, true);
+		for(int i = 0; i < 100; i++) {
+			encoder.add(1000L * i, i, -i);
+		}
+		encoder.toSegment();
+		encoder.reset();
+		assertTrue(encoder.isEmpty());
+		
+		encoder.add(42, 6.5f, 1.5f);
+		Samples samples = decode(encoder.toSegment(), Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(1, samples.timestamps.size());
+		assertEquals(42L, (long) samples.timestamps.get(0));
+		assertEquals(6.5f, samples.values.get(0), 0);
+		assertEquals(1.5f, samples.levels.get(0), 0);
+	}
+	
+	@Test
+	public void detectsCorruptedSegments() {
+		
+		SegmentEncoder encoder = new SegmentEncoder(16, false);
+		for(int i = 0; i < 10; i++) {
+			encoder.add(1000L * i, 7 + i / 10f, 0);
+		}
+		ByteBuffer segment = encoder.toSegment();
+		
+		//A flipped bit in the columns does not match the CRC
+		SegmentDecoder.Header header = SegmentDecoder.readHeader(segment.duplicate());
+		byte[] columns = new byte[header.columnsSize()];
+		((ByteBuffer) segment.duplicate().position(SegmentEncoder.HEADER_SIZE)).get(columns);
+		columns[columns.length / 2] ^= 0x10;
+		assertFalse(SegmentDecoder.verify(header, columns));
+		
+		//A wrong magic number or a truncated header is not a segment
+		ByteBuffer wrongMagic = segment.duplicate();
+		wrongMagic.putInt(0, 0);
+		assertNull(SegmentDecoder.readHeader(wrongMagic));
+		assertNull(SegmentDecoder.readHeader(ByteBuffer.wrap(new byte[SegmentEncoder.HEADER_SIZE - 1])));
+	}
+}